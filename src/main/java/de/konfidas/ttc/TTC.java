@@ -1,15 +1,24 @@
 package de.konfidas.ttc;
 
+import de.konfidas.ttc.exceptions.BadFormatForLogMessageException;
 import de.konfidas.ttc.exceptions.BadFormatForTARException;
 import de.konfidas.ttc.exceptions.CertificateLoadException;
+import de.konfidas.ttc.messages.LogMessage;
+import de.konfidas.ttc.messages.TransactionLogMessage;
+import de.konfidas.ttc.messages.VerificationCache;
 import de.konfidas.ttc.reporting.HtmlReporter;
 import de.konfidas.ttc.reporting.Reporter;
 import de.konfidas.ttc.reporting.TextReporter;
 import de.konfidas.ttc.tars.LogMessageArchive;
 import de.konfidas.ttc.tars.LogMessageArchiveImplementation;
+import de.konfidas.ttc.tars.StreamingLogMessageArchive;
+import de.konfidas.ttc.tars.TransactionIndex;
 import de.konfidas.ttc.utilities.CertificateHelper;
+import de.konfidas.ttc.utilities.IntegrityKey;
 import de.konfidas.ttc.validation.*;
 import org.apache.commons.cli.*;
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Hex;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.slf4j.LoggerFactory;
 import org.slf4j.Logger;
@@ -22,6 +31,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.Security;
 import java.security.cert.X509Certificate;
+import java.text.MessageFormat;
 import java.util.*;
 
 import static ch.qos.logback.classic.Level.*;
@@ -45,13 +55,39 @@ public class TTC {
         options.addOption("g", "generateHtmlReport", true, properties.getString("de.konfidas.ttc.help_htmlOut"));//NON-NLS
         options.addOption("v", "validator", true, properties.getString("de.konfidas.ttc.help_selectValidators"));//NON-NLS
         options.addOption("f", "forceSignatureCounterToStartWithOne", true, properties.getString("de.konfidas.ttc.help_forceSignatureCounterToStartWithOne"));//NON-NLS
+        options.addOption("s", "stream", true, properties.getString("de.konfidas.ttc.help_stream"));//NON-NLS
+        options.addOption("p", "threads", true, properties.getString("de.konfidas.ttc.help_threads"));//NON-NLS
+        options.addOption("x", "index", false, properties.getString("de.konfidas.ttc.help_index"));//NON-NLS
+        options.addOption("c", "verificationCache", true, properties.getString("de.konfidas.ttc.help_verificationCache"));//NON-NLS
+        options.addOption("r", "reverify", false, properties.getString("de.konfidas.ttc.help_reverify"));//NON-NLS
+        options.addOption("k", "certPathCache", true, properties.getString("de.konfidas.ttc.help_certPathCache"));//NON-NLS
+        options.addOption("T", "trustStore", true, properties.getString("de.konfidas.ttc.help_trustStore"));//NON-NLS
+        options.addOption("P", "trustStorePassword", true, properties.getString("de.konfidas.ttc.help_trustStorePassword"));//NON-NLS
+        options.addOption("l", "crls", true, properties.getString("de.konfidas.ttc.help_crls"));//NON-NLS
+        options.addOption("m", "sortMemory", true, properties.getString("de.konfidas.ttc.help_sortMemory"));//NON-NLS
+        options.addOption("C", "checkpoints", true, properties.getString("de.konfidas.ttc.help_checkpoints"));//NON-NLS
+        options.addOption("K", "checkpointKey", true, properties.getString("de.konfidas.ttc.help_checkpointKey"));//NON-NLS
+        options.addOption(Option.builder().longOpt("progress").hasArg().desc(properties.getString("de.konfidas.ttc.help_progress")).build());//NON-NLS
+        options.addOption(Option.builder().longOpt("resume").desc(properties.getString("de.konfidas.ttc.help_resume")).build());//NON-NLS
+        options.addOption(Option.builder().longOpt("transaction").hasArg().desc(properties.getString("de.konfidas.ttc.help_transaction")).build());//NON-NLS
 
         CommandLineParser parser = new DefaultParser();
         CommandLine cmd;
 
         String trustCertPath;
         X509Certificate trustedCert = null;
+        TrustStore trustStore = null;
+        CrlStore crlStore = null;
         Boolean skipLegitLogMessagesInReporting = false;
+        int streamingWindow = 0;
+        int decoderThreads = 1;
+        int sortMemory = 0;
+        boolean useIndex = false;
+        VerificationCache verificationCache = null;
+        CertPathValidationCache certPathCache = null;
+        CheckpointStore checkpointStore = null;
+        File progressDirectory = null;
+        IntegrityKey progressKey = null;
         Collection<Validator> listOfValidators = new ArrayList<>();
 
 
@@ -73,7 +109,60 @@ public class TTC {
                 skipLegitLogMessagesInReporting = true;
             }
 
-            if (!(cmd.hasOption("t") || cmd.hasOption("n"))) {//NON-NLS
+            if (cmd.hasOption("s")) {//NON-NLS
+                streamingWindow = parseIntOption(cmd, "s");//NON-NLS
+            }
+
+            if (cmd.hasOption("p")) {//NON-NLS
+                decoderThreads = parseIntOption(cmd, "p");//NON-NLS
+            }
+
+            if (cmd.hasOption("m")) {//NON-NLS
+                sortMemory = parseIntOption(cmd, "m");//NON-NLS
+                // Extern sortiert wird nur beim Streaming, sonst liegen die LogMessages ohnehin im Speicher.
+                if (streamingWindow == 0) {
+                    streamingWindow = StreamingLogMessageArchive.DEFAULT_WINDOW;
+                }
+            }
+
+            if (cmd.hasOption("progress") || cmd.hasOption("resume")) {//NON-NLS
+                if (!cmd.hasOption("progress")) {//NON-NLS
+                    logger.error(properties.getString("de.konfidas.ttc.resumeRequiresProgress"));
+                    logger.error(properties.getString("de.konfidas.tts.programWillExit"));
+                    System.exit(1);
+                }
+                progressKey = loadIntegrityKey(cmd, "progress");//NON-NLS
+                progressDirectory = new File(cmd.getOptionValue("progress"));//NON-NLS
+                if (!progressDirectory.isDirectory() && !progressDirectory.mkdirs()) {
+                    logger.error(String.format(properties.getString("de.konfidas.ttc.progressDirectoryNotCreated"), progressDirectory));
+                    logger.error(properties.getString("de.konfidas.tts.programWillExit"));
+                    System.exit(1);
+                }
+                // Der Fortschritt wird nur für gestreamte Archive vermerkt.
+                if (streamingWindow == 0) {
+                    streamingWindow = StreamingLogMessageArchive.DEFAULT_WINDOW;
+                }
+            }
+
+            if (cmd.hasOption("x")) {//NON-NLS
+                useIndex = true;
+            }
+
+            // Die Suche nach einer Transaktion validiert nichts und beendet das Programm.
+            if (cmd.hasOption("transaction")) {//NON-NLS
+                printTransaction(cmd.getOptionValue("transaction"), cmd.getArgs(), decoderThreads);//NON-NLS
+                System.exit(0);
+            }
+
+            if (cmd.hasOption("c")) {//NON-NLS
+                verificationCache = VerificationCache.open(new File(cmd.getOptionValue("c")), loadIntegrityKey(cmd, "c"), cmd.hasOption("r"));//NON-NLS
+            }
+
+            if (cmd.hasOption("k")) {//NON-NLS
+                certPathCache = CertPathValidationCache.open(new File(cmd.getOptionValue("k")), loadIntegrityKey(cmd, "k"));//NON-NLS
+            }
+
+            if (!(cmd.hasOption("t") || cmd.hasOption("T") || cmd.hasOption("n"))) {//NON-NLS
                 System.err.println(properties.getString("de.konfidas.ttc.errorParsingCommandEitherRootMustBePresentOrOptionChosen"));
             }
 
@@ -86,6 +175,27 @@ public class TTC {
                 }
             }
 
+            if (cmd.hasOption("T")) {//NON-NLS
+                String password = cmd.getOptionValue("P");//NON-NLS
+                try {
+                    trustStore = TrustStore.load(new File(cmd.getOptionValue("T")), password == null ? null : password.toCharArray());//NON-NLS
+                } catch (CertificateLoadException e) {
+                    logger.error(e.getMessage(), e);
+                    logger.error(properties.getString("de.konfidas.tts.programWillExit"));
+                    System.exit(1);
+                }
+            }
+
+            if (cmd.hasOption("l")) {//NON-NLS
+                try {
+                    crlStore = CrlStore.load(new File(cmd.getOptionValue("l")));//NON-NLS
+                } catch (CertificateLoadException e) {
+                    logger.error(e.getMessage(), e);
+                    logger.error(properties.getString("de.konfidas.tts.programWillExit"));
+                    System.exit(1);
+                }
+            }
+
             if (cmd.hasOption("v")) {//NON-NLS
                 String stringOfValidators = cmd.getOptionValue("v");//NON-NLS
                 String[] listOfValidatorsString = stringOfValidators.split(",");//NON-NLS
@@ -104,8 +214,13 @@ public class TTC {
 
             } else {
                 listOfValidators.add(new CertificateFileNameValidator());
-                listOfValidators.add(new TimeStampValidator());
-                listOfValidators.add(new LogMessageSignatureValidator());
+                // Die Partitionen nach Seriennummer halten alle LogMessages im Speicher.
+                if (decoderThreads > 1 && sortMemory == 0) {
+                    listOfValidators.add(new PerSerialValidator(TimeStampValidator::new, decoderThreads));
+                } else {
+                    listOfValidators.add(new TimeStampValidator());
+                }
+                listOfValidators.add(new LogMessageSignatureValidator(decoderThreads, verificationCache));
 
             }
 
@@ -126,13 +241,49 @@ public class TTC {
 
             }
 
-            AggregatedValidator validator = new AggregatedValidator();
+            if (progressDirectory != null) {
+                for (Validator val : listOfValidators) {
+                    if (val instanceof LogMessageSignatureValidator) {
+                        ((LogMessageSignatureValidator) val).setProgress(progressDirectory, progressKey, cmd.hasOption("resume"));//NON-NLS
+                    }
+                }
+            }
+
+            if (cmd.hasOption("C")) {//NON-NLS
+                File keyFile = integrityKeyFile(cmd, "C");//NON-NLS
+                try {
+                    checkpointStore = CheckpointStore.open(new File(cmd.getOptionValue("C")), keyFile);//NON-NLS
+                    int restored = checkpointStore.restore(listOfValidators);
+                    logger.debug("Restored {} checkpoints of generation {} from {}", restored, checkpointStore.getGeneration(), checkpointStore.getDirectory());//NON-NLS
+                } catch (IOException e) {
+                    logger.error(e.getMessage());
+                    logger.error(properties.getString("de.konfidas.tts.programWillExit"));
+                    System.exit(1);
+                }
+            }
+
+            AggregatedValidator validator = newAggregatedValidator(decoderThreads, sortMemory, progressDirectory);
             for (Validator val : listOfValidators) {
                 validator.add(val);
             }
 
-            if (cmd.hasOption("t")) {//NON-NLS
-                validator.add(new CertificateValidator(Collections.singleton(trustedCert)));
+            if (cmd.hasOption("t") || cmd.hasOption("T")) {//NON-NLS
+                if (trustStore == null) {
+                    trustStore = new TrustStore();
+                }
+                if (trustedCert != null) {
+                    trustStore.addAnchor(trustedCert);
+                }
+                CertificateValidator certificateValidator;
+                if (crlStore != null) {
+                    certificateValidator = new CertificateValidator(trustStore, crlStore);
+                } else {
+                    certificateValidator = new CertificateValidator(trustStore).setEnableRevocationChecking(false);
+                }
+                if (certPathCache != null) {
+                    certificateValidator.setCache(certPathCache);
+                }
+                validator.add(certificateValidator);
             }
 
             Collection<LogMessageArchive> tarArchives = new ArrayList<>();
@@ -150,10 +301,28 @@ public class TTC {
                 }
             }
             for (File inputFile : inputFiles) {
-                LogMessageArchiveImplementation tar = new LogMessageArchiveImplementation(inputFile);
+                LogMessageArchive tar;
+                if (streamingWindow > 0) {
+                    StreamingLogMessageArchive streamingTar = new StreamingLogMessageArchive(inputFile, streamingWindow, decoderThreads);
+                    if (sortMemory > 0) {
+                        streamingTar.setExternalSort(sortMemory * 1024L * 1024L, null);
+                    }
+                    tar = streamingTar;
+                } else {
+                    tar = new LogMessageArchiveImplementation(inputFile, decoderThreads, useIndex);
+                }
                 tarArchives.add(tar);
                 valResults = validator.validate(tar);
             }
+            if (checkpointStore != null) {
+                checkpointStore.save(listOfValidators);
+            }
+            if (verificationCache != null) {
+                verificationCache.close();
+            }
+            if (certPathCache != null) {
+                certPathCache.close();
+            }
 
             if (cmd.hasOption("g")) {//NON-NLS
                 String reportPath = cmd.getOptionValue("g");//NON-NLS
@@ -171,6 +340,18 @@ public class TTC {
                 System.out.println(textReporter.createReport(tarArchives, valResults, skipLegitLogMessagesInReporting));
             }
 
+            // Erst nach dem Bericht ist der Lauf abgeschlossen und muss nicht mehr fortgesetzt werden können.
+            for (Validator val : listOfValidators) {
+                if (val instanceof LogMessageSignatureValidator) {
+                    ((LogMessageSignatureValidator) val).discardProgress();
+                }
+            }
+            for (LogMessageArchive tar : tarArchives) {
+                if (tar instanceof StreamingLogMessageArchive) {
+                    ((StreamingLogMessageArchive) tar).close();
+                }
+            }
+
         } catch (BadFormatForTARException e) {
             e.printStackTrace();
         } catch (ParseException e) {
@@ -182,4 +363,111 @@ public class TTC {
         }
 
     }
+
+    /**
+     * Gibt die LogMessages einer Transaktion aus jedem Archiv aus. Dazu wird der {@link TransactionIndex} neben dem
+     * Archiv verwendet und, falls er fehlt oder veraltet ist, beim einmaligen Lesen des Archivs angelegt.
+     *
+     * @param transaction Seriennummer der TSE in Hex und Transaktionsnummer, durch einen Doppelpunkt getrennt.
+     */
+    static void printTransaction(String transaction, String[] archives, int threads) throws IOException, BadFormatForTARException {
+        byte[] serialNumber = null;
+        long transactionNumber = -1;
+        int separator = transaction.lastIndexOf(':');
+        try {
+            serialNumber = Hex.decodeHex(transaction.substring(0, Math.max(separator, 0)));
+            transactionNumber = Long.parseLong(transaction.substring(separator + 1));
+        } catch (DecoderException | NumberFormatException e) {
+            // Wird unten gemeldet.
+        }
+        if (separator < 1 || transactionNumber < 0 || serialNumber == null) {
+            logger.error(String.format(properties.getString("de.konfidas.ttc.invalidTransaction"), transaction));
+            logger.error(properties.getString("de.konfidas.tts.programWillExit"));
+            System.exit(1);
+        }
+
+        boolean found = false;
+        for (String archive : archives) {
+            File tarFile = new File(archive);
+            TransactionIndex index = TransactionIndex.load(tarFile);
+            if (index == null) {
+                index = new LogMessageArchiveImplementation(tarFile, threads, true).getTransactionIndex();
+            }
+            List<TransactionIndex.Entry> entries = index.getTransaction(serialNumber, transactionNumber);
+            List<LogMessage> messages;
+            try {
+                messages = index.readTransaction(tarFile, serialNumber, transactionNumber);
+            } catch (BadFormatForLogMessageException e) {
+                logger.error(e.getMessage(), e);
+                continue;
+            }
+            for (int i = 0; i < entries.size(); i++) {
+                TransactionIndex.Entry entry = entries.get(i);
+                TransactionLogMessage msg = (TransactionLogMessage) messages.get(i);
+                System.out.println(String.format(properties.getString("de.konfidas.ttc.transactionEntry"), tarFile.getName(),
+                        entry.getOperationType(), entry.getSignatureCounter(), msg.getClientID(), msg.getProcessType(), entry.getName(), entry.getOffset()));
+            }
+            found |= !entries.isEmpty();
+        }
+        if (!found) {
+            logger.warn(String.format(properties.getString("de.konfidas.ttc.transactionNotFound"), transaction));
+        }
+    }
+
+    /**
+     * @return den Schlüssel aus Option K, mit dem die Datei der Option gegen Veränderung geschützt wird. Ohne Option K
+     * wird das Programm beendet.
+     */
+    static IntegrityKey loadIntegrityKey(CommandLine cmd, String option) {
+        File keyFile = integrityKeyFile(cmd, option);
+        try {
+            return IntegrityKey.loadOrCreate(keyFile);
+        } catch (IOException e) {
+            logger.error(e.getMessage());
+            logger.error(properties.getString("de.konfidas.tts.programWillExit"));
+            System.exit(1);
+            return null;
+        }
+    }
+
+    /**
+     * @return einen {@link ConcurrentAggregatedValidator}, falls mit mehreren Threads dekodiert wird. Extern sortierte
+     * Archive werden in einem Durchlauf über die gemischten Läufe validiert, und der Fortschritt wird nur für
+     * gestreamte Archive vermerkt. In beiden Fällen wird daher sequentiell der {@link AggregatedValidator} verwendet.
+     */
+    static AggregatedValidator newAggregatedValidator(int decoderThreads, int sortMemory, File progressDirectory) {
+        if (decoderThreads > 1 && sortMemory == 0 && progressDirectory == null) {
+            return new ConcurrentAggregatedValidator(decoderThreads);
+        }
+        return new AggregatedValidator();
+    }
+
+    /**
+     * @return die Datei des Schlüssels aus Option K, die für die Option benötigt wird. Ohne Option K wird das Programm
+     * beendet.
+     */
+    static File integrityKeyFile(CommandLine cmd, String option) {
+        if (!cmd.hasOption("K")) {//NON-NLS
+            logger.error(String.format(properties.getString("de.konfidas.ttc.integrityKeyRequired"), option));
+            logger.error(properties.getString("de.konfidas.tts.programWillExit"));
+            System.exit(1);
+        }
+        return new File(cmd.getOptionValue("K"));//NON-NLS
+    }
+
+    static int parseIntOption(CommandLine cmd, String option) {
+        String value = cmd.getOptionValue(option);
+        try {
+            int result = Integer.parseInt(value);
+            if (result < 1) {
+                throw new NumberFormatException(value);
+            }
+            return result;
+        } catch (NumberFormatException e) {
+            logger.error(MessageFormat.format(properties.getString("de.konfidas.ttc.errorParsingNumber"), value, option));
+            logger.error(properties.getString("de.konfidas.tts.programWillExit"));
+            System.exit(1);
+            return 0;
+        }
+    }
 }
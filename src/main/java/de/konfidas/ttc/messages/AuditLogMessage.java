@@ -1,10 +1,8 @@
 package de.konfidas.ttc.messages;
 
-import de.konfidas.ttc.utilities.ByteArrayOutputStream;
 import de.konfidas.ttc.exceptions.BadFormatForLogMessageException;
 import de.konfidas.ttc.utilities.oid;
-import org.bouncycastle.asn1.ASN1OctetString;
-import org.bouncycastle.asn1.ASN1Primitive;
+import de.konfidas.ttc.utilities.DerElement;
 
 import java.io.IOException;
 import java.util.List;
@@ -21,8 +19,8 @@ public class AuditLogMessage extends LogMessageImplementation {
     }
 
     @Override
-    void parseCertifiedDataType(ByteArrayOutputStream dtbsStream, List<ASN1Primitive> logMessageAsASN1List, ListIterator<ASN1Primitive> logMessageIterator) throws IOException {
-        super.parseCertifiedDataType(dtbsStream,logMessageAsASN1List,logMessageIterator);
+    void parseCertifiedDataType(List<DerElement> logMessageElements, ListIterator<DerElement> logMessageIterator) throws IOException {
+        super.parseCertifiedDataType(logMessageElements,logMessageIterator);
         if(this.certifiedDataType != oid.id_SE_API_SE_audit_log){
             this.allErrors.add(new LogMessageImplementation.CertifiedDataTypeParsingError(String.format(properties.getString("de.konfidas.ttc.messages.invalidCertifiedDataType"),this.certifiedDataType.getName()), null));
 //            throw new LogMessageImplementation.CertifiedDataTypeParsingException(String.format(properties.getString("de.konfidas.ttc.messages.invalidCertifiedDataType"),this.certifiedDataType.getName()), null);
@@ -30,11 +28,14 @@ public class AuditLogMessage extends LogMessageImplementation {
     }
 
     @Override
-        void parseCertifiedData(ByteArrayOutputStream dtbsStream, List<ASN1Primitive> logMessageAsASN1List, ListIterator<ASN1Primitive> logMessageIterator) throws IOException{
+        void parseCertifiedData(List<DerElement> logMessageElements, ListIterator<DerElement> logMessageIterator) throws IOException{
 
-            if (!logMessageIterator.hasNext()) this.allErrors.add(new LogMessageParsingError(properties.getString("de.konfidas.ttc.messages.certifiedDataElementNotFound")));
-            ASN1Primitive nextElement = logMessageAsASN1List.get(logMessageIterator.nextIndex());
-            if (getEncodedTag(nextElement) >= 127 ) {
+            if (!logMessageIterator.hasNext()) {
+                this.allErrors.add(new LogMessageParsingError(properties.getString("de.konfidas.ttc.messages.certifiedDataElementNotFound")));
+                return;
+            }
+            DerElement nextElement = logMessageElements.get(logMessageIterator.nextIndex());
+            if ((byte) nextElement.getTag() >= 127 ) {
                 this.allErrors.add(new LogMessageParsingError(properties.getString("de.konfidas.ttc.messages.certifiedDataElementNotFound")));
 //                throw new LogMessageParsingException(properties.getString("de.konfidas.ttc.messages.certifiedDataElementNotFound"));
             }
@@ -42,17 +43,19 @@ public class AuditLogMessage extends LogMessageImplementation {
 
 
     @Override
-    void parseSeAuditData(ByteArrayOutputStream dtbsStream, List<ASN1Primitive> logMessageAsASN1List, ListIterator<ASN1Primitive> logMessageIterator) throws  IOException {
-        if (!logMessageIterator.hasNext()) this.allErrors.add(new LogMessageParsingError(properties.getString("de.konfidas.ttc.messages.seAuditDataNotFound")));
-        ASN1Primitive nextElement = logMessageAsASN1List.get(logMessageIterator.nextIndex());
-        if (!(nextElement instanceof ASN1OctetString)) {
+    void parseSeAuditData(List<DerElement> logMessageElements, ListIterator<DerElement> logMessageIterator) throws  IOException {
+        if (!logMessageIterator.hasNext()) {
+            this.allErrors.add(new LogMessageParsingError(properties.getString("de.konfidas.ttc.messages.seAuditDataNotFound")));
+            return;
+        }
+        DerElement nextElement = logMessageElements.get(logMessageIterator.nextIndex());
+        if (!nextElement.isOctetString()) {
 //            throw new LogMessageParsingException(String.format(properties.getString("de.konfidas.ttc.messages.seAuditDataWrongDatatype"),  nextElement.getClass()));
-            this.allErrors.add(new LogMessageParsingError(String.format(properties.getString("de.konfidas.ttc.messages.seAuditDataWrongDatatype"),  nextElement.getClass())));
+            this.allErrors.add(new LogMessageParsingError(String.format(properties.getString("de.konfidas.ttc.messages.seAuditDataWrongDatatype"),  nextElement)));
             return;
         }
 
-        ASN1Primitive element = logMessageIterator.next();
-        this.seAuditData = ((ASN1OctetString) element).getOctets();
-        dtbsStream.write(this.getEncodedValue(element));
+        DerElement element = logMessageIterator.next();
+        this.seAuditData = element.toPrimitiveOctetString();
     }
 }
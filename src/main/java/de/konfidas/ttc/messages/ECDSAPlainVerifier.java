@@ -0,0 +1,148 @@
+package de.konfidas.ttc.messages;
+
+import org.bouncycastle.crypto.params.AsymmetricKeyParameter;
+import org.bouncycastle.crypto.params.ECDomainParameters;
+import org.bouncycastle.crypto.params.ECPublicKeyParameters;
+import org.bouncycastle.jcajce.provider.asymmetric.util.ECUtil;
+import org.bouncycastle.math.ec.ECCurve;
+import org.bouncycastle.math.ec.ECPoint;
+import org.bouncycastle.util.BigIntegers;
+
+import java.math.BigInteger;
+import java.security.InvalidKeyException;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Prüft ECDSA Signaturen im plain Format (r || s) über den Hashwert des DTBS für einen festen öffentlichen Schlüssel.
+ *
+ * Eine TSE signiert sehr viele LogMessages mit demselben Schlüssel. Beim Anlegen werden daher für den Basispunkt G und
+ * für den öffentlichen Punkt Q Comb-Tabellen mit {@value #WIDTH} Bit Breite berechnet. Für u1 * G + u2 * Q werden
+ * dann beide Skalare in einer gemeinsamen Schleife über die Spalten des Combs ausgewertet, das benötigt nur etwa
+ * bitLength / {@value #WIDTH} Punktverdopplungen und doppelt so viele Additionen. Da bei der Prüfung keine geheimen
+ * Daten verarbeitet werden, wird direkt in die Tabellen indiziert und nicht in konstanter Zeit gesucht.
+ *
+ * Die Tabellen umfassen je 2^{@value #WIDTH} Punkte, eine Instanz sollte daher je Zertifikat einmal angelegt und
+ * wiederverwendet werden. Sie kann von mehreren Threads gleichzeitig benutzt werden. Die Tabelle für G hängt nur von
+ * der Kurve ab und wird je Domain Parameter einmal berechnet und von allen Instanzen geteilt.
+ */
+final class ECDSAPlainVerifier {
+    final static int WIDTH = 12;
+    final static ConcurrentHashMap<ECDomainParameters, ECPoint[]> generatorTables = new ConcurrentHashMap<>();
+
+    final BigInteger n;
+    final int signatureLength;
+    final int columns;
+    final ECPoint infinity;
+    final ECPoint[] gTable;
+    final ECPoint[] qTable;
+
+    ECDSAPlainVerifier(X509Certificate certificate) throws InvalidKeyException {
+        this(ECUtil.generatePublicKeyParameter(certificate.getPublicKey()));
+    }
+
+    ECDSAPlainVerifier(AsymmetricKeyParameter publicKey) throws InvalidKeyException {
+        if (!(publicKey instanceof ECPublicKeyParameters)) {
+            throw new InvalidKeyException("EC public key expected");//NON-NLS
+        }
+        ECPublicKeyParameters key = (ECPublicKeyParameters) publicKey;
+        ECDomainParameters domain = key.getParameters();
+        this.n = domain.getN();
+        this.signatureLength = 2 * BigIntegers.getUnsignedByteLength(n);
+        this.columns = (n.bitLength() + WIDTH - 1) / WIDTH;
+        this.gTable = generatorTables.computeIfAbsent(domain, d -> combTable(d.getG(), columns));
+        // Die Punkte beider Tabellen müssen auf derselben Instanz der Kurve liegen
+        ECCurve curve = gTable[0].getCurve();
+        this.infinity = curve.getInfinity();
+        this.qTable = combTable(curve.importPoint(key.getQ()), columns);
+    }
+
+    /**
+     * Berechnet für jeden Index i die Summe der Punkte 2^(j * columns) * p für alle gesetzten Bits j von i.
+     */
+    static ECPoint[] combTable(ECPoint p, int columns) {
+        ECPoint[] rows = new ECPoint[WIDTH];
+        rows[0] = p.normalize();
+        for (int j = 1; j < WIDTH; j++) {
+            rows[j] = rows[j - 1].timesPow2(columns);
+        }
+
+        ECPoint[] table = new ECPoint[1 << WIDTH];
+        table[0] = p.getCurve().getInfinity();
+        for (int j = 0; j < WIDTH; j++) {
+            int bit = 1 << j;
+            for (int i = 0; i < bit; i++) {
+                table[bit + i] = table[i].add(rows[j]);
+            }
+        }
+        p.getCurve().normalizeAll(table);
+        return table;
+    }
+
+    /**
+     * @param digest         der Hashwert des DTBS
+     * @param signatureValue die Signatur als Konkatenation von r und s, jeweils mit der Bytelänge der Ordnung n
+     * @return true, falls die Signatur zum Hashwert und zum Schlüssel passt.
+     */
+    boolean verify(byte[] digest, byte[] signatureValue) {
+        if (signatureValue.length != signatureLength) {
+            return false;
+        }
+        int length = signatureValue.length / 2;
+        BigInteger r = BigIntegers.fromUnsignedByteArray(signatureValue, 0, length);
+        BigInteger s = BigIntegers.fromUnsignedByteArray(signatureValue, length, length);
+
+        if (r.signum() <= 0 || r.compareTo(n) >= 0 || s.signum() <= 0 || s.compareTo(n) >= 0) {
+            return false;
+        }
+
+        BigInteger e = calculateE(n, digest);
+        BigInteger w = BigIntegers.modOddInverseVar(n, s);
+        BigInteger u1 = e.multiply(w).mod(n);
+        BigInteger u2 = r.multiply(w).mod(n);
+
+        ECPoint point = sumOfTwoMultiplies(u1, u2).normalize();
+        if (point.isInfinity()) {
+            return false;
+        }
+        return point.getAffineXCoord().toBigInteger().mod(n).equals(r);
+    }
+
+    /**
+     * @return u1 * G + u2 * Q über die Comb-Tabellen.
+     */
+    ECPoint sumOfTwoMultiplies(BigInteger u1, BigInteger u2) {
+        ECPoint result = infinity;
+        for (int column = columns - 1; column >= 0; column--) {
+            result = result.twice();
+            int g = 0;
+            int q = 0;
+            for (int j = WIDTH - 1; j >= 0; j--) {
+                int bit = column + j * columns;
+                g = (g << 1) | (u1.testBit(bit) ? 1 : 0);
+                q = (q << 1) | (u2.testBit(bit) ? 1 : 0);
+            }
+            if (g != 0) {
+                result = result.add(gTable[g]);
+            }
+            if (q != 0) {
+                result = result.add(qTable[q]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Kürzt den Hashwert wie in ECDSA vorgesehen auf die Bitlänge der Ordnung n.
+     */
+    static BigInteger calculateE(BigInteger n, byte[] digest) {
+        int log2n = n.bitLength();
+        int messageBitLength = digest.length * 8;
+
+        BigInteger e = new BigInteger(1, digest);
+        if (log2n < messageBitLength) {
+            e = e.shiftRight(messageBitLength - log2n);
+        }
+        return e;
+    }
+}
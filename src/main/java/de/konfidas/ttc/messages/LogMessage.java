@@ -6,6 +6,8 @@ import de.konfidas.ttc.utilities.oid;
 import org.bouncycastle.asn1.ASN1Primitive;
 
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collection;
 
@@ -13,10 +15,59 @@ public interface LogMessage {
     LogTime getLogTime();
     BigInteger getSignatureCounter();
     byte[] getSerialNumber();
+
+    /**
+     * @return die serialNumber als ByteBuffer. Implementierungen können hier eine Sicht auf die kodierte LogMessage
+     * liefern, statt die Daten zu kopieren.
+     */
+    default ByteBuffer getSerialNumberBuffer() {
+        byte[] serialNumber = getSerialNumber();
+        return serialNumber == null ? null : ByteBuffer.wrap(serialNumber).asReadOnlyBuffer();
+    }
+
     String getFileName();
+
+    /**
+     * @return die Bestandteile des Dateinamens oder null, falls der Dateiname keine LogMessage bezeichnet.
+     */
+    default LogMessageFileName getParsedFileName() {
+        return LogMessageFileName.parse(getFileName());
+    }
+
     String getSignatureAlgorithm();
     byte[] getDTBS();
+
+    /**
+     * @return den DTBS als ByteBuffer, z.B. für Signature.update(ByteBuffer).
+     */
+    default ByteBuffer getDTBSBuffer() {
+        byte[] dtbs = getDTBS();
+        return dtbs == null ? null : ByteBuffer.wrap(dtbs).asReadOnlyBuffer();
+    }
+
+    /**
+     * @return den Hashwert des DTBS für Signaturalgorithmen, die nur den Hashwert signieren (ECDSA), sonst null.
+     */
+    default byte[] getDTBSDigest() {
+        SignatureAlgorithm algorithm = SignatureAlgorithm.fromOid(getSignatureAlgorithm());
+        byte[] dtbs = getDTBS();
+        if (algorithm == null || !algorithm.isPreHashed() || dtbs == null) {
+            return null;
+        }
+        try {
+            return algorithm.createDigest().digest(dtbs);
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        }
+    }
+
     byte[] getSignatureValue();
+
+    default ByteBuffer getSignatureValueBuffer() {
+        byte[] signatureValue = getSignatureValue();
+        return signatureValue == null ? null : ByteBuffer.wrap(signatureValue).asReadOnlyBuffer();
+    }
+
     int getVersion();
     oid getCertifiedDataType();
     Collection<ASN1Primitive> getSignatureAlgorithmParameters();
@@ -0,0 +1,184 @@
+package de.konfidas.ttc.messages;
+
+import de.konfidas.ttc.messages.logtime.LogTime;
+
+import java.math.BigInteger;
+
+/**
+ * Die Bestandteile des Dateinamens einer LogMessage, z.B.
+ * {@code Unixt_1614596427_Sig-17_Log-Tra_No-8_Start_Client-42.log} oder {@code Unixt_1614596427_Sig-3_Log-Sys_selfTest.log}.
+ *
+ * Der Dateiname wird in einem Durchlauf ohne reguläre Ausdrücke zerlegt. Erkannt werden das Zeitformat, der Zeitstempel,
+ * der Signaturzähler und die Art der LogMessage, für Transaktionen außerdem Transaktionsnummer, Operation und Client
+ * und für SystemLogs die Operation.
+ */
+public final class LogMessageFileName {
+    public enum Kind {
+        TRANSACTION, SYSTEM, AUDIT, UNKNOWN
+    }
+
+    final String fileName;
+    final LogTime.Type timeFormat;
+    final String timestamp;
+    final BigInteger signatureCounter;
+    final Kind kind;
+    final String operation;
+    final BigInteger transactionNumber;
+    final String clientId;
+
+    LogMessageFileName(String fileName, LogTime.Type timeFormat, String timestamp, BigInteger signatureCounter, Kind kind, String operation, BigInteger transactionNumber, String clientId) {
+        this.fileName = fileName;
+        this.timeFormat = timeFormat;
+        this.timestamp = timestamp;
+        this.signatureCounter = signatureCounter;
+        this.kind = kind;
+        this.operation = operation;
+        this.transactionNumber = transactionNumber;
+        this.clientId = clientId;
+    }
+
+    /**
+     * Zerlegt den Dateinamen einer LogMessage. Akzeptiert werden alle Namen der Form
+     * {@code (Gent|Unixt|Utc)_<Zeit>_Sig-<N>_Log-<...>log}. Ist die Art der LogMessage nicht bekannt, ist
+     * {@link #getKind()} {@link Kind#UNKNOWN}.
+     *
+     * @return die Bestandteile des Namens oder null, falls der Name keine LogMessage bezeichnet.
+     */
+    public static LogMessageFileName parse(String fileName) {
+        LogTime.Type timeFormat;
+        int pos;
+        if (fileName.startsWith("Unixt_")) {//NON-NLS
+            timeFormat = LogTime.Type.UNIX;
+            pos = 6;
+        } else if (fileName.startsWith("Gent_")) {//NON-NLS
+            timeFormat = LogTime.Type.GENERALIZED;
+            pos = 5;
+        } else if (fileName.startsWith("Utc_")) {//NON-NLS
+            timeFormat = LogTime.Type.UTC;
+            pos = 4;
+        } else {
+            return null;
+        }
+
+        // Zeitstempel bis _Sig-, dann mindestens eine Ziffer bis _Log-
+        int sig = fileName.indexOf("_Sig-", pos + 1);//NON-NLS
+        if (sig < 0) {
+            return null;
+        }
+        int digitsStart = sig + 5;
+        int digitsEnd = digitsStart;
+        while (digitsEnd < fileName.length() && isDigit(fileName.charAt(digitsEnd))) {
+            digitsEnd++;
+        }
+        if (digitsEnd == digitsStart || !fileName.startsWith("_Log-", digitsEnd)) {//NON-NLS
+            return null;
+        }
+        int bodyStart = digitsEnd + 5;
+        if (fileName.length() - bodyStart < 4 || !fileName.endsWith("log")) {//NON-NLS
+            return null;
+        }
+        int bodyEnd = fileName.endsWith(".log") ? fileName.length() - 4 : fileName.length() - 3;//NON-NLS
+
+        String timestamp = fileName.substring(pos, sig);
+        BigInteger signatureCounter = new BigInteger(fileName.substring(digitsStart, digitsEnd));
+        String body = fileName.substring(bodyStart, Math.max(bodyStart, bodyEnd));
+
+        if (body.startsWith("Tra")) {//NON-NLS
+            return parseTransaction(fileName, timeFormat, timestamp, signatureCounter, body);
+        }
+        if (body.startsWith("Sys_")) {//NON-NLS
+            int end = body.indexOf('_', 4);
+            String operation = body.substring(4, end < 0 ? body.length() : end);
+            return new LogMessageFileName(fileName, timeFormat, timestamp, signatureCounter, Kind.SYSTEM, operation, null, null);
+        }
+        if (body.startsWith("Aud")) {//NON-NLS
+            return new LogMessageFileName(fileName, timeFormat, timestamp, signatureCounter, Kind.AUDIT, null, null, null);
+        }
+        return new LogMessageFileName(fileName, timeFormat, timestamp, signatureCounter, Kind.UNKNOWN, null, null, null);
+    }
+
+    /**
+     * Zerlegt {@code Tra_No-<N>_<Start|Update|Finish>_Client-<Client>}.
+     */
+    static LogMessageFileName parseTransaction(String fileName, LogTime.Type timeFormat, String timestamp, BigInteger signatureCounter, String body) {
+        int client = body.indexOf("_Client-");//NON-NLS
+        if (client < 0) {
+            return new LogMessageFileName(fileName, timeFormat, timestamp, signatureCounter, Kind.UNKNOWN, null, null, null);
+        }
+        String operation = body.substring(body.lastIndexOf('_', client - 1) + 1, client);
+        if (!operation.equals("Start") && !operation.equals("Update") && !operation.equals("Finish")) {//NON-NLS
+            return new LogMessageFileName(fileName, timeFormat, timestamp, signatureCounter, Kind.UNKNOWN, null, null, null);
+        }
+
+        BigInteger transactionNumber = null;
+        if (body.startsWith("Tra_No-")) {//NON-NLS
+            int end = 7;
+            while (end < body.length() && isDigit(body.charAt(end))) {
+                end++;
+            }
+            if (end > 7) {
+                transactionNumber = new BigInteger(body.substring(7, end));
+            }
+        }
+        return new LogMessageFileName(fileName, timeFormat, timestamp, signatureCounter, Kind.TRANSACTION, operation, transactionNumber, body.substring(client + 8));
+    }
+
+    static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * @return das Zeitformat aus dem Präfix des Namens (Unixt, Gent oder Utc).
+     */
+    public LogTime.Type getTimeFormat() {
+        return timeFormat;
+    }
+
+    /**
+     * @return den Zeitstempel aus dem Namen, unverändert als Text.
+     */
+    public String getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * @return den Signaturzähler aus dem Namen (Sig-N).
+     */
+    public BigInteger getSignatureCounter() {
+        return signatureCounter;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    /**
+     * @return für Transaktionen Start, Update oder Finish, für SystemLogs die Operation, z.B. selfTest, sonst null.
+     */
+    public String getOperation() {
+        return operation;
+    }
+
+    /**
+     * @return die Transaktionsnummer aus dem Namen (No-N) oder null.
+     */
+    public BigInteger getTransactionNumber() {
+        return transactionNumber;
+    }
+
+    /**
+     * @return die Client-ID aus dem Namen einer Transaktion oder null.
+     */
+    public String getClientId() {
+        return clientId;
+    }
+
+    @Override
+    public String toString() {
+        return fileName;
+    }
+}
@@ -5,7 +5,8 @@ import de.konfidas.ttc.messages.logtime.GeneralizedLogTime;
 import de.konfidas.ttc.messages.logtime.LogTime;
 import de.konfidas.ttc.messages.logtime.UnixLogTime;
 import de.konfidas.ttc.messages.logtime.UtcLogTime;
-import de.konfidas.ttc.utilities.ByteArrayOutputStream;
+import de.konfidas.ttc.utilities.DerCursor;
+import de.konfidas.ttc.utilities.DerElement;
 import de.konfidas.ttc.exceptions.BadFormatForLogMessageException;
 import de.konfidas.ttc.errors.*;
 import de.konfidas.ttc.utilities.oid;
@@ -14,7 +15,10 @@ import org.bouncycastle.asn1.*;
 import java.io.File;
 import java.io.IOException;
 import java.math.*;
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.text.MessageFormat;
 import java.text.ParseException;
 import java.util.*;
@@ -75,19 +79,24 @@ public abstract class LogMessageImplementation implements LogMessage {
     int version = 0;
     oid certifiedDataType;
     final ArrayList<ASN1Primitive> certifiedData = new ArrayList<>();
-    byte[] serialNumber;
+    DerElement serialNumber;
     String signatureAlgorithm = "";
-    final ArrayList<ASN1Primitive> signatureAlgorithmParameters = new ArrayList<>();
+    final ArrayList<DerElement> signatureAlgorithmParameterElements = new ArrayList<>();
+    ArrayList<ASN1Primitive> signatureAlgorithmParameters;
     protected ArrayList<TtcError> allErrors = new ArrayList<>();
 
     LogTime logTime;
 
     byte[] encoded;
-    byte[] signatureValue;
+    DerElement signatureValue;
     BigInteger signatureCounter = new BigInteger("5");
-    byte[] seAuditData;
-    byte[] dtbs;
+    DerElement seAuditData;
+    int dtbsOffset = -1;
+    int dtbsLength;
+    int signatureElementOffset;
+    byte[] dtbsDigest;
     final String filename;
+    LogMessageFileName parsedFileName;
 
     public ArrayList<TtcError> getAllErrors(){return allErrors;}
 
@@ -110,7 +119,12 @@ public abstract class LogMessageImplementation implements LogMessage {
 
     @Override
     public byte[] getSerialNumber() {
-        return this.serialNumber;
+        return this.serialNumber == null ? null : this.serialNumber.getValue();
+    }
+
+    @Override
+    public ByteBuffer getSerialNumberBuffer() {
+        return this.serialNumber == null ? null : this.serialNumber.getValueBuffer();
     }
 
     @Override
@@ -118,19 +132,68 @@ public abstract class LogMessageImplementation implements LogMessage {
         return this.filename;
     }
 
+    @Override
+    public LogMessageFileName getParsedFileName() {
+        if (parsedFileName == null) {
+            parsedFileName = LogMessageFileName.parse(this.filename);
+        }
+        return parsedFileName;
+    }
+
     @Override
     public byte[] getSignatureValue() {
-        return this.signatureValue;
+        return this.signatureValue == null ? null : this.signatureValue.getValue();
+    }
+
+    @Override
+    public ByteBuffer getSignatureValueBuffer() {
+        return this.signatureValue == null ? null : this.signatureValue.getValueBuffer();
     }
 
     @Override
     public byte[] getDTBS() {
-        return this.dtbs;
+        return this.dtbsOffset < 0 ? null : Arrays.copyOfRange(this.encoded, this.dtbsOffset, this.dtbsOffset + this.dtbsLength);
+    }
+
+    /**
+     * @return den DTBS als Sicht auf den Inhalt der LogMessage. Der DTBS besteht aus den Elementen von version bis
+     * logTime mit Tag und Länge, liegt also zusammenhängend vor dem signatureValue.
+     */
+    @Override
+    public ByteBuffer getDTBSBuffer() {
+        return this.dtbsOffset < 0 ? null : ByteBuffer.wrap(this.encoded, this.dtbsOffset, this.dtbsLength).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * @return den beim Parsen berechneten Hashwert des DTBS oder null, falls der Signaturalgorithmus die Signatur nicht
+     * über den Hashwert bildet.
+     */
+    @Override
+    public byte[] getDTBSDigest() {
+        return this.dtbsDigest == null ? null : this.dtbsDigest.clone();
+    }
+
+    /**
+     * Berechnet den Hashwert des DTBS direkt aus dem Inhalt der LogMessage, solange dieser beim Parsen noch im Cache liegt.
+     */
+    byte[] calculateDTBSDigest() {
+        SignatureAlgorithm algorithm = SignatureAlgorithm.fromOid(this.signatureAlgorithm);
+        if (algorithm == null || !algorithm.isPreHashed()) {
+            return null;
+        }
+        try {
+            MessageDigest digest = algorithm.createDigest();
+            digest.update(this.encoded, this.dtbsOffset, this.dtbsLength);
+            return digest.digest();
+        } catch (NoSuchAlgorithmException e) {
+            logger.debug("Digest {} is not available, the DTBS of {} will be hashed during verification.", algorithm.getDigestAlgorithm(), this.filename);//NON-NLS
+            return null;
+        }
     }
 
     @Override
     public byte[] getSeAuditData() {
-        return this.seAuditData;
+        return this.seAuditData == null ? null : this.seAuditData.getValue();
     }
 
     @Override
@@ -145,7 +208,19 @@ public abstract class LogMessageImplementation implements LogMessage {
     public BigInteger getSignatureCounter() { return signatureCounter; }
 
     @Override
-    public Collection<ASN1Primitive> getSignatureAlgorithmParameters(){
+    public synchronized Collection<ASN1Primitive> getSignatureAlgorithmParameters(){
+        if (this.signatureAlgorithmParameters == null) {
+            // Die Parameter werden erst beim ersten Zugriff als BouncyCastle Objekte erzeugt
+            ArrayList<ASN1Primitive> parameters = new ArrayList<>();
+            for (DerElement element : this.signatureAlgorithmParameterElements) {
+                try {
+                    parameters.add(element.toASN1Primitive());
+                } catch (IOException e) {
+                    this.allErrors.add(new LogMessageParsingError(properties.getString("de.konfidas.ttc.messages.failedToParseMessage"), e));
+                }
+            }
+            this.signatureAlgorithmParameters = parameters;
+        }
         return this.signatureAlgorithmParameters;
     }
 
@@ -160,161 +235,127 @@ public abstract class LogMessageImplementation implements LogMessage {
     }
 
     /**
-     * Diese Funktion gibt die Lönge eines ASN1Elements als integer zurück.
-     * Falls die Länge nicht in ein Integer oasst, wird ein Fehler geworfen
-     * Bei indefinite lgenght encoding wir 0 zurückgegeben
-     *
-     * @param element
-     * @return Gibt die Länge des Elements als integer zurück
-     * @throws IOException
-     * @throws ExtendLengthValueExceedsInteger Wird geworfen, falls element mit einer extended length kodiert ist, die mehr als 4 bytes erfordert
+     * Die LogMessage wird mit einem {@link DerCursor} in einem Durchlauf über den Inhalt gelesen. Dabei werden nur die
+     * Positionen der Elemente bestimmt, BouncyCastle Objekte werden nur für Felder erzeugt, die sie benötigen.
+     * serialNumber, seAuditData, signatureValue und der DTBS verweisen auf den Inhalt und werden erst beim Zugriff
+     * über die byte[] Getter kopiert.
      */
-    private int getEncodedLength(ASN1Primitive element) throws IOException {
-        byte[] elementContent = element.getEncoded();
-
-        if ( elementContent[1] == (byte) 0b10000000) {
-            //indefinte length encoding
-            return 0;
-        } else if ((elementContent[1] & 0b10000000) == 0) {
-            //Case: Definite length encocding, one byte
-            return elementContent[1];
-        } else {
-            //Extended length encoding (limitiert auf max 4 bytes für die Länge)
-            int elementNumberOfLengthBytes = (elementContent[1] & 0b01111111);
-            if (elementNumberOfLengthBytes > 4) {
-                this.allErrors.add(new ExtendLengthValueExceedsIntegerError(properties.getString("de.konfidas.ttc.messages.extendedLengthLongerThanInt"), null));
-            }
-
-            byte[] lengthBytesFromElement = Arrays.copyOfRange(elementContent, 2, 2+elementNumberOfLengthBytes); //we need to have 4 bytes for an integer
-            return new BigInteger(1,lengthBytesFromElement).intValue();
-        }
-    }
-
-    byte[] getEncodedValue(ASN1Primitive element) throws IOException {
-        byte[] elementContent = element.getEncoded();
-        int elementLength = this.getEncodedLength(element);
-//        logger.debug(String.valueOf(elementContent.length));
-//        logger.debug(String.valueOf(elementLength));
-        return Arrays.copyOfRange(elementContent, elementContent.length - elementLength, elementContent.length + 1);
-    }
-
-    int getEncodedTag(ASN1Primitive element) throws IOException {
-        byte[] elementContent = element.getEncoded();
-        return elementContent[0];
-    }
-
     void parse(byte[] content)  {
         this.encoded = content;
 
-        try (ByteArrayOutputStream dtbsStream = new ByteArrayOutputStream()) {
-            final ASN1InputStream inputStreamDecoder = new ASN1InputStream(content);
-            ASN1Primitive logMessageAsASN1 = inputStreamDecoder.readObject();
-
+        try {
+            DerCursor cursor = new DerCursor(content);
+            DerElement logMessageElement = cursor.hasNext() ? cursor.next() : null;
 
-            if (logMessageAsASN1 instanceof ASN1Sequence) {
+            if (logMessageElement != null && logMessageElement.getTag() == DerElement.SEQUENCE) {
 
-                List<ASN1Primitive> logMessageAsASN1List = Collections.list(((ASN1Sequence) logMessageAsASN1).getObjects());
-                ListIterator<ASN1Primitive> logMessageIterator = logMessageAsASN1List.listIterator();
+                List<DerElement> logMessageElements = logMessageElement.getChildren();
+                ListIterator<DerElement> logMessageIterator = logMessageElements.listIterator();
 
                 //Das erste Element MUSS die versionNumber sein
-                parseVersionNumber(dtbsStream, logMessageAsASN1List, logMessageIterator);
-                parseCertifiedDataType(dtbsStream, logMessageAsASN1List, logMessageIterator);
+                parseVersionNumber(logMessageElements, logMessageIterator);
+                parseCertifiedDataType(logMessageElements, logMessageIterator);
 
-                parseCertifiedData(dtbsStream, logMessageAsASN1List, logMessageIterator);
+                parseCertifiedData(logMessageElements, logMessageIterator);
 
                 //FIXME: Dieser Teil des Parsers ist tricky. Wir gehen aktuell davon aus, dass wenn certifiedDataType gesetzt ist, dass dann auch certifiedData vorhanden ist. Aber hier gibt es einige
                 //theoretische Fälle, die Probleme machen können.
 
-                parseSerialNumber(dtbsStream, logMessageAsASN1List, logMessageIterator);
-                parseSignatureAlgorithm(dtbsStream, logMessageAsASN1List, logMessageIterator);
-                parseSeAuditData(dtbsStream, logMessageAsASN1List, logMessageIterator);
+                parseSerialNumber(logMessageElements, logMessageIterator);
+                parseSignatureAlgorithm(logMessageElements, logMessageIterator);
+                parseSeAuditData(logMessageElements, logMessageIterator);
 
 
-                parseSignatureCounter(dtbsStream, logMessageAsASN1List, logMessageIterator);
-                parseTime(dtbsStream, logMessageAsASN1List, logMessageIterator);
-                parseSignature(dtbsStream, logMessageAsASN1List, logMessageIterator);
+                parseSignatureCounter(logMessageElements, logMessageIterator);
+                parseTime(logMessageElements, logMessageIterator);
+                parseSignature(logMessageElements, logMessageIterator);
 
 
-                //Speichern des DTBS aus dem BufferedWriter
-                this.dtbs = dtbsStream.toByteArray();
+                // Der DTBS umfasst alle Elemente der LogMessage vor dem signatureValue
+                if (!logMessageElements.isEmpty()) {
+                    int dtbsEnd = (this.signatureValue != null) ? signatureElementOffset : logMessageElement.getValueOffset() + logMessageElement.getValueLength();
+                    this.dtbsOffset = logMessageElements.get(0).getOffset();
+                    this.dtbsLength = dtbsEnd - this.dtbsOffset;
+                    this.dtbsDigest = calculateDTBSDigest();
+                }
             }
         } catch (IOException | NoSuchElementException | ParseException e) {
             this.allErrors.add(new LogMessageParsingError(properties.getString("de.konfidas.ttc.messages.failedToParseMessage"), e));
         }
     }
 
-    private void parseVersionNumber(ByteArrayOutputStream dtbsStream, List<ASN1Primitive> logMessageAsASN1List, ListIterator<ASN1Primitive> logMessageIterator) throws  IOException {
-        if (!logMessageIterator.hasNext()) { this.allErrors.add(new LogMessageParsingError(properties.getString("de.konfidas.ttc.messages.versionElementNotFound")));}
-        ASN1Primitive nextElement = logMessageAsASN1List.get(logMessageIterator.nextIndex());
-        if (!(nextElement instanceof ASN1Integer)) {
-            this.allErrors.add(new LogMessageParsingError(String.format(properties.getString("de.konfidas.ttc.messages.versionFieldOfWrongType"), nextElement.getClass())));
+    private void parseVersionNumber(List<DerElement> logMessageElements, ListIterator<DerElement> logMessageIterator) throws  IOException {
+        if (!logMessageIterator.hasNext()) {
+            this.allErrors.add(new LogMessageParsingError(properties.getString("de.konfidas.ttc.messages.versionElementNotFound")));
+            return;
+        }
+        DerElement nextElement = logMessageElements.get(logMessageIterator.nextIndex());
+        if (nextElement.getTag() != DerElement.INTEGER) {
+            this.allErrors.add(new LogMessageParsingError(String.format(properties.getString("de.konfidas.ttc.messages.versionFieldOfWrongType"), nextElement)));
             return;
         }
 
-        ASN1Primitive element = logMessageIterator.next();
-        this.version = ((ASN1Integer) element).intValueExact();
+        DerElement element = logMessageIterator.next();
+        this.version = element.getValueAsBigInteger().intValueExact();
         if (this.version != 2) {
             this.allErrors.add(new LogMessageParsingError(properties.getString("de.konfidas.ttc.messages.wrongVersionNumber")));
         }
-        dtbsStream.write(this.getEncodedValue(element));
     }
 
-    void parseCertifiedDataType(ByteArrayOutputStream dtbsStream, List<ASN1Primitive> logMessageAsASN1List, ListIterator<ASN1Primitive> logMessageIterator) throws  IOException {
-        if (!logMessageIterator.hasNext()) {this.allErrors.add(new LogMessageParsingError(properties.getString("de.konfidas.ttc.messages.certifiedDataTypeNotFound")));}
-        ASN1Primitive nextElement = logMessageAsASN1List.get(logMessageIterator.nextIndex());
-        if (!(nextElement instanceof ASN1ObjectIdentifier)) {
-            this.allErrors.add(new LogMessageParsingError(String.format(properties.getString("de.konfidas.ttc.messages.certifiedDataTypeOfWrongType"), nextElement.getClass())));
+    void parseCertifiedDataType(List<DerElement> logMessageElements, ListIterator<DerElement> logMessageIterator) throws  IOException {
+        if (!logMessageIterator.hasNext()) {
+            this.allErrors.add(new LogMessageParsingError(properties.getString("de.konfidas.ttc.messages.certifiedDataTypeNotFound")));
+            return;
+        }
+        DerElement nextElement = logMessageElements.get(logMessageIterator.nextIndex());
+        if (nextElement.getTag() != DerElement.OBJECT_IDENTIFIER) {
+            this.allErrors.add(new LogMessageParsingError(String.format(properties.getString("de.konfidas.ttc.messages.certifiedDataTypeOfWrongType"), nextElement)));
             return;
         }
 
-        ASN1Primitive element = logMessageIterator.next();
+        DerElement element = logMessageIterator.next();
 
         try { this.certifiedDataType = oid.fromBytes(element.getEncoded()); } catch (oid.UnknownOidException e) {
             this.allErrors.add(new CertifiedDataTypeParsingError(properties.getString("de.konfidas.ttc.messages.oidForCertifiedDataUnknown"), e));
         }
-        dtbsStream.write(this.getEncodedValue(element));
 
     }
 
-    private void parseSerialNumber(ByteArrayOutputStream dtbsStream, List<ASN1Primitive> logMessageAsASN1List, ListIterator<ASN1Primitive> logMessageIterator) throws  IOException {
+    private void parseSerialNumber(List<DerElement> logMessageElements, ListIterator<DerElement> logMessageIterator) throws  IOException {
         if (!logMessageIterator.hasNext()) {
             this.allErrors.add(new LogMessageParsingError(properties.getString("de.konfidas.ttc.messages.serialNumberNotFound")));
         return;
         }
-        ASN1Primitive nextElement = logMessageAsASN1List.get(logMessageIterator.nextIndex());
-        if (!(nextElement instanceof ASN1OctetString)) {
-            this.allErrors.add(new LogMessageParsingError(String.format(properties.getString("de.konfidas.ttc.messages.serialNumberOfWrongType"), nextElement.getClass())));
+        DerElement nextElement = logMessageElements.get(logMessageIterator.nextIndex());
+        if (!nextElement.isOctetString()) {
+            this.allErrors.add(new LogMessageParsingError(String.format(properties.getString("de.konfidas.ttc.messages.serialNumberOfWrongType"), nextElement)));
         return;
         }
 
-        ASN1Primitive element = logMessageIterator.next();
+        DerElement element = logMessageIterator.next();
 
-        this.serialNumber = ((ASN1OctetString) element).getOctets();
-        dtbsStream.write(this.serialNumber);
+        this.serialNumber = element.toPrimitiveOctetString();
 
     }
 
-    private void parseSignatureAlgorithm(ByteArrayOutputStream dtbsStream, List<ASN1Primitive> logMessageAsASN1List, ListIterator<ASN1Primitive> logMessageIterator) throws  IOException {
+    private void parseSignatureAlgorithm(List<DerElement> logMessageElements, ListIterator<DerElement> logMessageIterator) throws  IOException {
         if (!logMessageIterator.hasNext()) {
             this.allErrors.add(new LogMessageParsingError(properties.getString("de.konfidas.ttc.messages.signatureAlgorithmNotFound")));
             return;
         }
-        ASN1Primitive nextElement = logMessageAsASN1List.get(logMessageIterator.nextIndex());
-        if (!(nextElement instanceof ASN1Sequence)) {
-            this.allErrors.add(new LogMessageParsingError(String.format(properties.getString("de.konfidas.ttc.messages.signatureAlgorithmOfWrongType"), nextElement.getClass())));
+        DerElement nextElement = logMessageElements.get(logMessageIterator.nextIndex());
+        if (nextElement.getTag() != DerElement.SEQUENCE) {
+            this.allErrors.add(new LogMessageParsingError(String.format(properties.getString("de.konfidas.ttc.messages.signatureAlgorithmOfWrongType"), nextElement)));
             return;
         }
 
-        ASN1Primitive element = logMessageIterator.next();
+        DerCursor sigAlgorithmCursor = logMessageIterator.next().children();
 
-        Enumeration<ASN1Primitive> sigAlgorithmEnumeration = ((ASN1Sequence) element).getObjects();
-
-        element = sigAlgorithmEnumeration.nextElement();
         // Erst lesen wir den signatureAlgorihtm selbst
+        DerElement element = sigAlgorithmCursor.hasNext() ? sigAlgorithmCursor.next() : null;
 
-        if (element instanceof ASN1ObjectIdentifier) {
-            this.signatureAlgorithm = element.toString();
-            dtbsStream.write(this.getEncodedValue(element));
+        if (element != null && element.getTag() == DerElement.OBJECT_IDENTIFIER) {
+            this.signatureAlgorithm = element.getValueAsObjectIdentifier();
 
             if (!Arrays.asList(allowedAlgorithms).contains(this.signatureAlgorithm)) {
                 this.allErrors.add(new LogMessageParsingError(String.format(properties.getString("de.konfidas.ttc.messages.invalidOIDForSignatureAlgorithm"), this.signatureAlgorithm)));
@@ -323,9 +364,8 @@ public abstract class LogMessageImplementation implements LogMessage {
 
 
             //Dann eine Schleife über den Rest für die SignatureAlgorithmParameters
-            while (sigAlgorithmEnumeration.hasMoreElements()) {
-                element = sigAlgorithmEnumeration.nextElement();
-                this.signatureAlgorithmParameters.add(element);
+            while (sigAlgorithmCursor.hasNext()) {
+                this.signatureAlgorithmParameterElements.add(sigAlgorithmCursor.next());
             }
 
         } else {
@@ -334,70 +374,67 @@ public abstract class LogMessageImplementation implements LogMessage {
 
     }
 
-    abstract void parseSeAuditData(ByteArrayOutputStream dtbsStream, List<ASN1Primitive> logMessageAsASN1List, ListIterator<ASN1Primitive> logMessageIterator) throws IOException;
+    abstract void parseSeAuditData(List<DerElement> logMessageElements, ListIterator<DerElement> logMessageIterator) throws IOException;
 
 
-    private void parseSignatureCounter(ByteArrayOutputStream dtbsStream, List<ASN1Primitive> logMessageAsASN1List, ListIterator<ASN1Primitive> logMessageIterator) throws IOException {
+    private void parseSignatureCounter(List<DerElement> logMessageElements, ListIterator<DerElement> logMessageIterator) throws IOException {
         if (!logMessageIterator.hasNext()) {
             this.allErrors.add(new LogMessageParsingError(properties.getString("de.konfidas.ttc.messages.sigantureCounterNotFound")));
         return;
         }
-        ASN1Primitive nextElement = logMessageAsASN1List.get(logMessageIterator.nextIndex());
-        if (!(nextElement instanceof ASN1Integer)) {
-            this.allErrors.add( new LogMessageParsingError(String.format(properties.getString("de.konfidas.ttc.messages.sigantureCounterOfWrongType"), nextElement.getClass())));
+        DerElement nextElement = logMessageElements.get(logMessageIterator.nextIndex());
+        if (nextElement.getTag() != DerElement.INTEGER) {
+            this.allErrors.add( new LogMessageParsingError(String.format(properties.getString("de.konfidas.ttc.messages.sigantureCounterOfWrongType"), nextElement)));
             return;
         }
 
-        ASN1Primitive element = logMessageIterator.next();
-        this.signatureCounter = ((ASN1Integer) element).getValue();
-        dtbsStream.write(this.getEncodedValue(element));
+        DerElement element = logMessageIterator.next();
+        this.signatureCounter = element.getValueAsBigInteger();
 
     }
 
 
-    private void parseTime(ByteArrayOutputStream dtbsStream, List<ASN1Primitive> logMessageAsASN1List, ListIterator<ASN1Primitive> logMessageIterator) throws IOException, ParseException {
+    private void parseTime(List<DerElement> logMessageElements, ListIterator<DerElement> logMessageIterator) throws IOException, ParseException {
         if (!logMessageIterator.hasNext()) {
             this.allErrors.add(new LogMessageParsingError(properties.getString("de.konfidas.ttc.messages.logTimeNotFound")));
         return;
         }
-        ASN1Primitive nextElement = logMessageAsASN1List.get(logMessageIterator.nextIndex());
-        if (!(nextElement instanceof ASN1Integer)&& !(nextElement instanceof ASN1UTCTime) && !(nextElement instanceof ASN1GeneralizedTime)) {
-            this.allErrors.add(new LogMessageParsingError(String.format(properties.getString("de.konfidas.ttc.messages.logTimeInvalidType"), nextElement.getClass())));
+        DerElement nextElement = logMessageElements.get(logMessageIterator.nextIndex());
+        int tag = nextElement.getTag();
+        if (tag != DerElement.INTEGER && tag != DerElement.UTC_TIME && tag != DerElement.GENERALIZED_TIME) {
+            this.allErrors.add(new LogMessageParsingError(String.format(properties.getString("de.konfidas.ttc.messages.logTimeInvalidType"), nextElement)));
             return;
         }
 
-        ASN1Primitive element = logMessageIterator.next();
+        DerElement element = logMessageIterator.next();
 
-        if (element instanceof ASN1Integer) {
-            this.logTime = new UnixLogTime(((ASN1Integer) element).getValue().intValue());
-            dtbsStream.write(this.getEncodedValue(element));
-        } else if (element instanceof ASN1UTCTime) {
-            this.logTime = new UtcLogTime(((ASN1UTCTime) element));
-            dtbsStream.write(this.getEncodedValue(element));
-        } else if (element instanceof ASN1GeneralizedTime) {
-            this.logTime = new GeneralizedLogTime((ASN1GeneralizedTime) element);
-            dtbsStream.write(this.getEncodedValue(element));
+        if (tag == DerElement.INTEGER) {
+            this.logTime = new UnixLogTime(element.getValueAsBigInteger().intValue());
+        } else if (tag == DerElement.UTC_TIME) {
+            this.logTime = new UtcLogTime(ASN1UTCTime.getInstance(element.toASN1Primitive()));
+        } else {
+            this.logTime = new GeneralizedLogTime(ASN1GeneralizedTime.getInstance(element.toASN1Primitive()));
         }
     }
 
-    private void parseSignature(ByteArrayOutputStream dtbsStream, List<ASN1Primitive> logMessageAsASN1List, ListIterator<ASN1Primitive> logMessageIterator) throws IOException {
+    private void parseSignature(List<DerElement> logMessageElements, ListIterator<DerElement> logMessageIterator) throws IOException {
         if (!logMessageIterator.hasNext()) {
             this.allErrors.add(new LogMessageParsingError(properties.getString("de.konfidas.ttc.messages.signatureNotFound")));
         return;
         }
-        ASN1Primitive nextElement = logMessageAsASN1List.get(logMessageIterator.nextIndex());
-        if (!(nextElement instanceof ASN1OctetString)) {
-            this.allErrors.add(new LogMessageParsingError(String.format(properties.getString("de.konfidas.ttc.messages.signatureWrongType"), nextElement.getClass())));
+        DerElement nextElement = logMessageElements.get(logMessageIterator.nextIndex());
+        if (!nextElement.isOctetString()) {
+            this.allErrors.add(new LogMessageParsingError(String.format(properties.getString("de.konfidas.ttc.messages.signatureWrongType"), nextElement)));
         return;}
 
-        ASN1Primitive element = logMessageIterator.next();
-        this.signatureValue = ((ASN1OctetString) element).getOctets();
-        dtbsStream.write(this.getEncodedValue(element));
+        DerElement element = logMessageIterator.next();
+        this.signatureValue = element.toPrimitiveOctetString();
+        this.signatureElementOffset = element.getOffset();
 
     }
 
 
-    abstract void parseCertifiedData(ByteArrayOutputStream dtbsStream, List<ASN1Primitive> logMessageAsASN1List, ListIterator<ASN1Primitive> logMessageIterator) throws IOException;
+    abstract void parseCertifiedData(List<DerElement> logMessageElements, ListIterator<DerElement> logMessageIterator) throws IOException;
 
 
     public class LogMessageParsingException extends BadFormatForLogMessageException {
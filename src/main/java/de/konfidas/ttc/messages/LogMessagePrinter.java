@@ -48,7 +48,7 @@ public class LogMessagePrinter {
         return_value.append(System.lineSeparator());
         return_value.append(String.format("[certifiedData]clientID: %s", ((TransactionLogMessage) msg).clientID));//NON-NLS
         return_value.append(System.lineSeparator());
-        return_value.append(String.format("[certifiedData]processData: %s",Hex.encodeHexString(((TransactionLogMessage)msg).processData)));//NON-NLS
+        return_value.append(String.format("[certifiedData]processData: %s",Hex.encodeHexString(((TransactionLogMessage)msg).getProcessData())));//NON-NLS
         return_value.append(System.lineSeparator());
         return_value.append(String.format("[certifiedData]processType: %s", ((TransactionLogMessage) msg).processType));//NON-NLS
         return_value.append(System.lineSeparator());
@@ -1,6 +1,7 @@
 package de.konfidas.ttc.messages;
 
 import de.konfidas.ttc.exceptions.LogMessageVerificationException;
+import org.apache.commons.codec.DecoderException;
 import org.apache.commons.codec.binary.Hex;
 import org.bouncycastle.asn1.ASN1ObjectIdentifier;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
@@ -9,20 +10,60 @@ import org.bouncycastle.operator.DefaultAlgorithmNameFinder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.ByteBuffer;
 import java.security.*;
+import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
-import java.util.Locale;
-import java.util.Map;
-import java.util.ResourceBundle;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
+/**
+ * Prüft die Signaturen von LogMessages mit den Zertifikaten eines Archivs.
+ *
+ * Die Zertifikate werden einmalig nach den Bytes ihrer Seriennummer (dem Hashwert des öffentlichen Schlüssels)
+ * abgelegt, so dass für eine LogMessage kein Hex-String gebildet werden muss. Die JCA Namen der Algorithmen werden
+ * einmal pro OID aufgelöst. Initialisierte Signature Objekte werden je Thread, Zertifikat und Algorithmus
+ * wiederverwendet, eine Instanz des Verifiers kann daher von mehreren Threads gleichzeitig benutzt werden. Für ECDSA
+ * werden je Zertifikat Tabellen für die Punktmultiplikation vorberechnet, siehe {@link ECDSAPlainVerifier}. Da für
+ * jedes Archiv ein eigener Verifier angelegt wird, werden die Tabellen der zuletzt benutzten
+ * {@value #MAX_CACHED_ECDSA_VERIFIERS} Zertifikate über ihren Fingerprint zwischen den Instanzen geteilt.
+ */
 public class LogMessageSignatureVerifier {
     final static Logger logger = LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
     static Locale locale = new Locale("de", "DE");//NON-NLS
     static ResourceBundle properties = ResourceBundle.getBundle("ttc",locale);//NON-NLS
+
+    final static AlgorithmNameFinder nameFinder = new DefaultAlgorithmNameFinder();
+    final static ConcurrentHashMap<String, String> algorithmNames = new ConcurrentHashMap<>();
+
+    final static int MAX_CACHED_ECDSA_VERIFIERS = 16;
+    final static Map<ByteBuffer, ECDSAPlainVerifier> ecdsaVerifiers = Collections.synchronizedMap(new ECDSAVerifierCache());
+
     final Map<? extends String, ? extends X509Certificate> certs;
+    final HashMap<ByteBuffer, VerificationKey> keys = new HashMap<>();
+    final VerificationCache cache;
 
     public LogMessageSignatureVerifier(Map<? extends String, ? extends X509Certificate> certs){
+        this(certs, null);
+    }
+
+    /**
+     * @param cache Cache erfolgreicher Prüfungen. LogMessages, die darin enthalten sind, werden nicht erneut geprüft.
+     *              Mit null wird jede LogMessage geprüft.
+     */
+    public LogMessageSignatureVerifier(Map<? extends String, ? extends X509Certificate> certs, VerificationCache cache){
         this.certs = certs;
+        this.cache = cache;
+        if (certs != null) {
+            for (Map.Entry<? extends String, ? extends X509Certificate> entry : certs.entrySet()) {
+                try {
+                    keys.put(ByteBuffer.wrap(Hex.decodeHex(entry.getKey())), new VerificationKey(entry.getValue()));
+                } catch (DecoderException e) {
+                    // Der Schlüssel ist keine Seriennummer in Hex-Darstellung, eine LogMessage kann ihn nie referenzieren.
+                    logger.debug("Ignoring certificate {} for signature verification", entry.getKey());//NON-NLS
+                }
+            }
+        }
     }
 
     public void verify(LogMessage msg) throws LogMessageVerificationException {
@@ -33,37 +74,147 @@ public class LogMessageSignatureVerifier {
             throw new LogMessageVerificationException(properties.getString("de.konfidas.ttc.messages.noMessageFound"), null);
         }
 
-        byte[] serial = msg.getSerialNumber();
-        X509Certificate cert = certs.get(Hex.encodeHexString(msg.getSerialNumber()).toUpperCase(Locale.ROOT));
+        ByteBuffer serial = msg.getSerialNumberBuffer();
+        VerificationKey key = (serial == null) ? null : keys.get(serial);
 
-        if(cert == null){
-            throw new CertificateNotFoundException(String.format(properties.getString("de.konfidas.ttc.messages.failedToIdentifyCertForSerial"), Hex.encodeHexString(serial)));
+        if(key == null){
+            throw new CertificateNotFoundException(String.format(properties.getString("de.konfidas.ttc.messages.failedToIdentifyCertForSerial"), serial == null ? null : Hex.encodeHexString(serial)));
+        }
+
+        byte[] signatureValue = msg.getSignatureValue();
+        if (signatureValue == null) {
+            throw new LogMessageVerificationException(properties.getString("de.konfidas.ttc.messages.signatureCouldNotBeVerified"));
         }
 
         try {
-            ASN1ObjectIdentifier algoIdentifier = new ASN1ObjectIdentifier(msg.getSignatureAlgorithm());
-            AlgorithmNameFinder nameFinder = new DefaultAlgorithmNameFinder();
-            String algoName = nameFinder.getAlgorithmName(algoIdentifier);
+            ByteBuffer cacheKey = null;
+            if (cache != null && msg.getEncoded() != null) {
+                cacheKey = VerificationCache.key(msg.getEncoded(), key.getFingerprint());
+                if (cache.contains(cacheKey)) {
+                    logger.debug("The signature of logMessage {} has already been validated.",msg);//NON-NLS
+                    return;
+                }
+            }
 
-            Signature st = Signature.getInstance(algoName, BouncyCastleProvider.PROVIDER_NAME);
-            st.initVerify(cert.getPublicKey());
+            SignatureAlgorithm algorithm = SignatureAlgorithm.fromOid(msg.getSignatureAlgorithm());
+            byte[] digest = (algorithm != null && algorithm.isPreHashed()) ? msg.getDTBSDigest() : null;
 
-            st.update(msg.getDTBS());
+            boolean valid;
+            if (digest != null) {
+                valid = key.getECDSAVerifier().verify(digest, signatureValue);
+            } else {
+                ByteBuffer dtbs = msg.getDTBSBuffer();
+                if (dtbs == null) {
+                    throw new LogMessageVerificationException(properties.getString("de.konfidas.ttc.messages.signatureCouldNotBeVerified"));
+                }
+                valid = key.verify(getAlgorithmName(msg.getSignatureAlgorithm()), dtbs, signatureValue);
+            }
 
-            byte[] signatureValue = msg.getSignatureValue();
-            st.verify(signatureValue);
+            if (!valid) {
+                throw new LogMessageVerificationException(properties.getString("de.konfidas.ttc.messages.signatureCouldNotBeVerified"));
+            }
             logger.debug("The signature of logMessage {} has been validated successfully.",msg);//NON-NLS
+            if (cacheKey != null) {
+                cache.add(cacheKey);
+            }
         } catch (NoSuchProviderException e) {
             throw new LogMessageVerificationException(properties.getString("de.konfidas.ttc.messages.bouncyCastleNotFound"), e);
         } catch (NoSuchAlgorithmException e) {
             throw new LogMessageVerificationException(properties.getString("de.konfidas.ttc.messages.algortihmNotSupported"), e);
         } catch (SignatureException e) {
             throw new LogMessageVerificationException(properties.getString("de.konfidas.ttc.messages.signatureCouldNotBeVerified"), e);
-        } catch (InvalidKeyException e) {
+        } catch (InvalidKeyException | CertificateEncodingException e) {
             throw new LogMessageVerificationException(properties.getString("de.konfidas.ttc.messages.keyForSignatureValidationCouldNotBeRead"), e);
         }
     }
 
+    /**
+     * @return den JCA Namen des Signaturalgorithmus zur OID. Der Name wird nur beim ersten Aufruf je OID gesucht.
+     */
+    static String getAlgorithmName(String oid) {
+        return algorithmNames.computeIfAbsent(oid, o -> nameFinder.getAlgorithmName(new ASN1ObjectIdentifier(o)));
+    }
+
+    /**
+     * Der öffentliche Schlüssel eines Zertifikats mit den daraus abgeleiteten Objekten für die Prüfung.
+     */
+    static class VerificationKey {
+        final X509Certificate certificate;
+        final ThreadLocal<HashMap<String, Signature>> signatures = ThreadLocal.withInitial(HashMap::new);
+        volatile ECDSAPlainVerifier ecdsaVerifier;
+        volatile byte[] fingerprint;
+
+        VerificationKey(X509Certificate certificate) {
+            this.certificate = certificate;
+        }
+
+        /**
+         * @return die Prüfung für ECDSA mit den vorberechneten Tabellen zu diesem Schlüssel. Sie wird aus dem
+         * gemeinsamen Cache übernommen oder beim ersten Aufruf angelegt; rufen mehrere Threads gleichzeitig zum ersten
+         * Mal auf, wird eventuell mehrfach gerechnet.
+         */
+        ECDSAPlainVerifier getECDSAVerifier() throws InvalidKeyException, CertificateEncodingException {
+            ECDSAPlainVerifier result = ecdsaVerifier;
+            if (result == null) {
+                ByteBuffer cacheKey = ByteBuffer.wrap(getFingerprint());
+                result = ecdsaVerifiers.get(cacheKey);
+                if (result == null) {
+                    result = new ECDSAPlainVerifier(certificate);
+                    ecdsaVerifiers.put(cacheKey, result);
+                }
+                ecdsaVerifier = result;
+            }
+            return result;
+        }
+
+        byte[] getFingerprint() throws CertificateEncodingException {
+            byte[] result = fingerprint;
+            if (result == null) {
+                result = VerificationCache.fingerprint(certificate);
+                fingerprint = result;
+            }
+            return result;
+        }
+
+        /**
+         * Prüft die Signatur mit dem für diesen Thread initialisierten Signature Objekt. Nach verify() ist es wieder im
+         * Zustand nach initVerify() und kann für die nächste LogMessage benutzt werden.
+         */
+        boolean verify(String algorithmName, ByteBuffer dtbs, byte[] signatureValue) throws NoSuchAlgorithmException, NoSuchProviderException, InvalidKeyException, SignatureException {
+            HashMap<String, Signature> cache = signatures.get();
+            Signature st = cache.get(algorithmName);
+            if (st == null) {
+                st = Signature.getInstance(algorithmName, BouncyCastleProvider.PROVIDER_NAME);
+                st.initVerify(certificate.getPublicKey());
+                cache.put(algorithmName, st);
+            }
+            try {
+                st.update(dtbs);
+                return st.verify(signatureValue);
+            } catch (SignatureException | RuntimeException e) {
+                // Der Zustand nach einem Fehler ist nicht festgelegt, das Objekt wird daher nicht wiederverwendet.
+                cache.remove(algorithmName);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Hält die ECDSA Prüfungen der zuletzt benutzten Zertifikate und verwirft die am längsten nicht benutzte.
+     */
+    static class ECDSAVerifierCache extends LinkedHashMap<ByteBuffer, ECDSAPlainVerifier> {
+        private static final long serialVersionUID = 1L;
+
+        ECDSAVerifierCache() {
+            super(MAX_CACHED_ECDSA_VERIFIERS, 0.75f, true);
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ByteBuffer, ECDSAPlainVerifier> eldest) {
+            return size() > MAX_CACHED_ECDSA_VERIFIERS;
+        }
+    }
+
     public static class CertificateNotFoundException extends LogMessageVerificationException{
         public CertificateNotFoundException(String message) {
             super(message);
@@ -0,0 +1,75 @@
+package de.konfidas.ttc.messages;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+
+/**
+ * Die Signaturalgorithmen für LogMessages nach BSI TR-03111 mit dem zugehörigen Hashverfahren.
+ *
+ * Bei ECDSA wird nur der Hashwert des DTBS signiert. Für diese Algorithmen kann der Hashwert beim Parsen berechnet und
+ * die Signatur direkt über den Hashwert geprüft werden. ECSDSA (Schnorr) bezieht den Hashwert dagegen in die Signatur
+ * selbst ein, hier wird der vollständige DTBS benötigt.
+ */
+public enum SignatureAlgorithm {
+    ECDSA_PLAIN_SHA224("0.4.0.127.0.7.1.1.4.1.2", "SHA-224", true),//NON-NLS
+    ECDSA_PLAIN_SHA256("0.4.0.127.0.7.1.1.4.1.3", "SHA-256", true),//NON-NLS
+    ECDSA_PLAIN_SHA384("0.4.0.127.0.7.1.1.4.1.4", "SHA-384", true),//NON-NLS
+    ECDSA_PLAIN_SHA512("0.4.0.127.0.7.1.1.4.1.5", "SHA-512", true),//NON-NLS
+    ECDSA_PLAIN_SHA3_224("0.4.0.127.0.7.1.1.4.1.8", "SHA3-224", true),//NON-NLS
+    ECDSA_PLAIN_SHA3_256("0.4.0.127.0.7.1.1.4.1.9", "SHA3-256", true),//NON-NLS
+    ECDSA_PLAIN_SHA3_384("0.4.0.127.0.7.1.1.4.1.10", "SHA3-384", true),//NON-NLS
+    ECDSA_PLAIN_SHA3_512("0.4.0.127.0.7.1.1.4.1.11", "SHA3-512", true),//NON-NLS
+    ECSDSA_PLAIN_SHA224("0.4.0.127.0.7.1.1.4.4.1", "SHA-224", false),//NON-NLS
+    ECSDSA_PLAIN_SHA256("0.4.0.127.0.7.1.1.4.4.2", "SHA-256", false),//NON-NLS
+    ECSDSA_PLAIN_SHA384("0.4.0.127.0.7.1.1.4.4.3", "SHA-384", false),//NON-NLS
+    ECSDSA_PLAIN_SHA512("0.4.0.127.0.7.1.1.4.4.4", "SHA-512", false),//NON-NLS
+    ECSDSA_PLAIN_SHA3_224("0.4.0.127.0.7.1.1.4.4.5", "SHA3-224", false),//NON-NLS
+    ECSDSA_PLAIN_SHA3_256("0.4.0.127.0.7.1.1.4.4.6", "SHA3-256", false),//NON-NLS
+    ECSDSA_PLAIN_SHA3_384("0.4.0.127.0.7.1.1.4.4.7", "SHA3-384", false),//NON-NLS
+    ECSDSA_PLAIN_SHA3_512("0.4.0.127.0.7.1.1.4.4.8", "SHA3-512", false);//NON-NLS
+
+    final static HashMap<String, SignatureAlgorithm> byOid = new HashMap<>();
+
+    static {
+        for (SignatureAlgorithm algorithm : values()) {
+            byOid.put(algorithm.oid, algorithm);
+        }
+    }
+
+    final String oid;
+    final String digestAlgorithm;
+    final boolean preHashed;
+
+    SignatureAlgorithm(String oid, String digestAlgorithm, boolean preHashed) {
+        this.oid = oid;
+        this.digestAlgorithm = digestAlgorithm;
+        this.preHashed = preHashed;
+    }
+
+    /**
+     * @return den Algorithmus zur OID in Punktnotation oder null, falls die OID nicht bekannt ist.
+     */
+    public static SignatureAlgorithm fromOid(String oid) {
+        return byOid.get(oid);
+    }
+
+    public String getOid() {
+        return oid;
+    }
+
+    public String getDigestAlgorithm() {
+        return digestAlgorithm;
+    }
+
+    /**
+     * @return true, falls die Signatur über den Hashwert des DTBS geprüft werden kann.
+     */
+    public boolean isPreHashed() {
+        return preHashed;
+    }
+
+    public MessageDigest createDigest() throws NoSuchAlgorithmException {
+        return MessageDigest.getInstance(digestAlgorithm);
+    }
+}
@@ -1,12 +1,10 @@
 package de.konfidas.ttc.messages;
 
-import de.konfidas.ttc.utilities.ByteArrayOutputStream;
 import de.konfidas.ttc.exceptions.BadFormatForLogMessageException;
 import de.konfidas.ttc.utilities.oid;
+import de.konfidas.ttc.utilities.DerElement;
 import org.bouncycastle.asn1.ASN1InputStream;
-import org.bouncycastle.asn1.ASN1OctetString;
 import org.bouncycastle.asn1.ASN1Primitive;
-import org.bouncycastle.asn1.DLTaggedObject;
 
 import java.io.IOException;
 import java.text.MessageFormat;
@@ -18,8 +16,8 @@ import java.util.ResourceBundle;
 public abstract class SystemLogMessage extends LogMessageImplementation {
     static Locale locale = new Locale("de", "DE"); //NON-NLS
     static ResourceBundle properties = ResourceBundle.getBundle("ttc", locale);//NON-NLS
-    ASN1Primitive operationType;
-    DLTaggedObject systemOperationData;
+    DerElement operationType;
+    DerElement systemOperationData;
     ASN1Primitive additionalInternalData;
 
 
@@ -28,9 +26,9 @@ public abstract class SystemLogMessage extends LogMessageImplementation {
     }
 
     @Override
-    void parseCertifiedDataType(ByteArrayOutputStream dtbsStream, List<ASN1Primitive> logMessageAsASN1List, ListIterator<ASN1Primitive> logMessageIterator) throws IOException {
+    void parseCertifiedDataType(List<DerElement> logMessageElements, ListIterator<DerElement> logMessageIterator) throws IOException {
 
-        super.parseCertifiedDataType(dtbsStream, logMessageAsASN1List, logMessageIterator);
+        super.parseCertifiedDataType(logMessageElements, logMessageIterator);
         if (this.certifiedDataType != oid.id_SE_API_system_log) {
             this.allErrors.add(new LogMessageImplementation.CertifiedDataTypeParsingError(String.format(properties.getString("de.konfidas.ttc.messages.invalidCertifiedDataType2"), this.certifiedDataType.getName()), null));
         }
@@ -38,111 +36,104 @@ public abstract class SystemLogMessage extends LogMessageImplementation {
 
 
     @Override
-    void parseCertifiedData(ByteArrayOutputStream dtbsStream, List<ASN1Primitive> logMessageAsASN1List, ListIterator<ASN1Primitive> logMessageIterator) throws IOException {
-        parseOperationType(dtbsStream, logMessageAsASN1List, logMessageIterator);
-        parseSystemOperationDataElement(dtbsStream, logMessageAsASN1List, logMessageIterator);
+    void parseCertifiedData(List<DerElement> logMessageElements, ListIterator<DerElement> logMessageIterator) throws IOException {
+        parseOperationType(logMessageElements, logMessageIterator);
+        parseSystemOperationDataElement(logMessageElements, logMessageIterator);
         // systemOperationData has tag 0x81 (i.e. context-specific, not-constructed, but contains a constructed element
         // so BouncyCastle does not parse the content (because the tag does not signal, that there is ASN1 Structure within to parse.
         // for this reason, we have to manually parse the content, which we do here:
-        int a = this.allErrors.size();
-        ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        systemOperationData.encodeTo(baos);
-        byte[] content = baos.toByteArray();
-        content[0] = 0x30;
+        if (systemOperationData != null) {
+            byte[] content = systemOperationData.getEncoded();
+            content[0] = 0x30;
 
-        try (ASN1InputStream inputStreamDecoder = new ASN1InputStream(content)) {
-            parseSystemOperationDataContent(inputStreamDecoder);
+            try (ASN1InputStream inputStreamDecoder = new ASN1InputStream(content)) {
+                parseSystemOperationDataContent(inputStreamDecoder);
+            }
         }
         // A clean solution would be, to fix the ASN1 definition of systemlogs and use a context-specific constructed tag here, i.e. 0xA1 instead of 0x81,
         // but this requires TR-03151 to be fixed.
 
-        parseAdditionalInternalData(dtbsStream, logMessageAsASN1List, logMessageIterator);
+        parseAdditionalInternalData(logMessageElements, logMessageIterator);
 
     }
 
 
-    void parseOperationType(ByteArrayOutputStream dtbsStream, List<ASN1Primitive> logMessageAsASN1List, ListIterator<ASN1Primitive> logMessageIterator) throws IOException {
-        if (!logMessageIterator.hasNext())
+    void parseOperationType(List<DerElement> logMessageElements, ListIterator<DerElement> logMessageIterator) throws IOException {
+        if (!logMessageIterator.hasNext()) {
             this.allErrors.add(new OperationTypeParsingError(properties.getString("de.konfidas.ttc.messages.operationsTypeElementNotFound")));
+            return;
+        }
 
-
-        ASN1Primitive nextElement = logMessageAsASN1List.get(logMessageIterator.nextIndex());
-        if (!(nextElement instanceof DLTaggedObject)) {
-            this.allErrors.add(new OperationTypeParsingError(String.format(properties.getString("de.konfidas.ttc.messages.operationsTypeInvalidType"), nextElement.getClass())));
+        DerElement nextElement = logMessageElements.get(logMessageIterator.nextIndex());
+        if (!nextElement.isContextSpecific()) {
+            this.allErrors.add(new OperationTypeParsingError(String.format(properties.getString("de.konfidas.ttc.messages.operationsTypeInvalidType"), nextElement)));
             return;
         }
 
-        ASN1Primitive element = logMessageIterator.next();
+        DerElement element = logMessageIterator.next();
 
-        int tag = ((DLTaggedObject) element).getTagNo();
+        int tag = element.getTagNumber();
         if (tag != 0) {
             this.allErrors.add(new OperationTypeParsingError(String.format(properties.getString("de.konfidas.ttc.messages.operationTypeNotFound"), tag)));
             return;
         }
 
-        dtbsStream.write(element.getEncoded());
         operationType = element;
 
 
     }
 
-    void parseSystemOperationDataElement(ByteArrayOutputStream dtbsStream, List<ASN1Primitive> logMessageAsASN1List, ListIterator<ASN1Primitive> logMessageIterator) throws IOException {
+    void parseSystemOperationDataElement(List<DerElement> logMessageElements, ListIterator<DerElement> logMessageIterator) throws IOException {
         if (!logMessageIterator.hasNext()) {
             this.allErrors.add(new SystemOperationDataParsingError(properties.getString("de.konfidas.ttc.message.systemOperationDataNotFound")));
             return;
         }
-        ASN1Primitive nextElement = logMessageAsASN1List.get(logMessageIterator.nextIndex());
-        if (!(nextElement instanceof DLTaggedObject)) {
-            this.allErrors.add(new SystemOperationDataParsingError(String.format(properties.getString("de.konfidas.ttc.message.systemOperationDataWrongType"), nextElement.getClass())));
+        DerElement nextElement = logMessageElements.get(logMessageIterator.nextIndex());
+        if (!nextElement.isContextSpecific()) {
+            this.allErrors.add(new SystemOperationDataParsingError(String.format(properties.getString("de.konfidas.ttc.message.systemOperationDataWrongType"), nextElement)));
             return;
         }
 
-        ASN1Primitive element = logMessageIterator.next();
+        DerElement element = logMessageIterator.next();
 
-        int tag = ((DLTaggedObject) element).getTagNo();
+        int tag = element.getTagNumber();
         if (tag != 1) {
             this.allErrors.add(new SystemOperationDataParsingError(String.format(properties.getString("de.konfidas.ttc.message.systemOperationDataWrongExpectedElement"), tag)));
             return;
         }
 
 
-        dtbsStream.write(element.getEncoded());
-        systemOperationData = (DLTaggedObject) element;
+        systemOperationData = element;
     }
 
     protected abstract void parseSystemOperationDataContent(ASN1InputStream stream) throws IOException;
 
-    void parseAdditionalInternalData(ByteArrayOutputStream dtbsStream, List<ASN1Primitive> logMessageAsASN1List, ListIterator<ASN1Primitive> logMessageIterator) throws IOException {
+    void parseAdditionalInternalData(List<DerElement> logMessageElements, ListIterator<DerElement> logMessageIterator) throws IOException {
         if (!logMessageIterator.hasNext()) {
             this.allErrors.add(new LogMessageParsingError(String.format("early end of certifiedData while parsing: {}.", this.getFileName())));
 
             return;
         }
 
-        ASN1Primitive nextElement = logMessageAsASN1List.get(logMessageIterator.nextIndex());
+        DerElement nextElement = logMessageElements.get(logMessageIterator.nextIndex());
 
-        try {
-            if (((DLTaggedObject) nextElement).getTagNo() == 6) {
-                // Data shall not exist
-                this.allErrors.add(new LogMessageParsingError(String.format("found additionalInternalData in certifiedData while parsing {}", this.getFileName())));
-
-                return;
-            }
-
-        } catch (ClassCastException ex) {
+        if (nextElement.isContextSpecific() && nextElement.getTagNumber() == 6) {
+            // Data shall not exist
+            this.allErrors.add(new LogMessageParsingError(String.format("found additionalInternalData in certifiedData while parsing {}", this.getFileName())));
 
+            return;
         }
     }
 
     @Override
-    void parseSeAuditData(ByteArrayOutputStream dtbsStream, List<ASN1Primitive> logMessageAsASN1List, ListIterator<ASN1Primitive> logMessageIterator) {
+    void parseSeAuditData(List<DerElement> logMessageElements, ListIterator<DerElement> logMessageIterator) {
 
         if (!logMessageIterator.hasNext()) {
             this.allErrors.add(new LogMessageParsingError(properties.getString("de.konfidas.ttc.message.seAuditDataNotFound")));
             return;
         }
-        ASN1Primitive nextElement = logMessageAsASN1List.get(logMessageIterator.nextIndex());
-        if (nextElement instanceof ASN1OctetString) {
+        DerElement nextElement = logMessageElements.get(logMessageIterator.nextIndex());
+        if (nextElement.isOctetString()) {
             this.allErrors.add(new LogMessageParsingError(properties.getString("de.konfidas.ttc.message.seAuditDataNotFound ")));
             return;
         }
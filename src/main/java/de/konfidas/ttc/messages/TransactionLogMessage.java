@@ -1,6 +1,6 @@
 package de.konfidas.ttc.messages;
 
-import de.konfidas.ttc.utilities.ByteArrayOutputStream;
+import de.konfidas.ttc.utilities.DerElement;
 import de.konfidas.ttc.exceptions.BadFormatForLogMessageException;
 import de.konfidas.ttc.utilities.oid;
 import org.bouncycastle.asn1.*;
@@ -9,6 +9,8 @@ import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.text.MessageFormat;
 import java.util.Collection;
 import java.util.List;
@@ -19,7 +21,7 @@ public class TransactionLogMessage extends LogMessageImplementation {
     final static Logger logger = LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
     String operationType;
     String clientID;
-    byte[] processData;
+    DerElement processData;
     String processType;
     byte[] additionalExternalData;
     BigInteger transactionNumber;
@@ -46,11 +48,18 @@ public class TransactionLogMessage extends LogMessageImplementation {
     }
 
     public byte[] getProcessData() {
-        return processData;
+        return processData == null ? null : processData.getValue();
+    }
+
+    /**
+     * @return processData als Sicht auf den Inhalt der LogMessage, ohne die Daten zu kopieren.
+     */
+    public ByteBuffer getProcessDataBuffer() {
+        return processData == null ? null : processData.getValueBuffer();
     }
 
     public void setProcessData(byte[] processData) {
-        this.processData = processData;
+        this.processData = processData == null ? null : DerElement.octetString(processData);
     }
 
     public String getProcessType() {
@@ -86,105 +95,124 @@ public class TransactionLogMessage extends LogMessageImplementation {
     }
 
     @Override
-    void parseCertifiedDataType(ByteArrayOutputStream dtbsStream, List<ASN1Primitive> logMessageAsASN1List, ListIterator<ASN1Primitive> logMessageIterator) throws IOException {
+    void parseCertifiedDataType(List<DerElement> logMessageElements, ListIterator<DerElement> logMessageIterator) throws IOException {
 //        void parseCertifiedDataType(ByteArrayOutputStream dtbsStream, Enumeration<ASN1Primitive> asn1Primitives) throws IOException, LogMessage.CertifiedDataTypeParsingException, ExtendLengthValueExceedsInteger {
-        super.parseCertifiedDataType(dtbsStream, logMessageAsASN1List, logMessageIterator);
+        super.parseCertifiedDataType(logMessageElements, logMessageIterator);
         if (this.certifiedDataType != oid.id_SE_API_transaction_log) {
             this.allErrors.add(new CertifiedDataTypeParsingError(String.format(properties.getString("de.konfidas.ttc.messages.certifiedDataTypeWrongType"), this.certifiedDataType.getName()), null));
         }
     }
 
     @Override
-    void parseCertifiedData(ByteArrayOutputStream dtbsStream, List<ASN1Primitive> logMessageAsASN1List, ListIterator<ASN1Primitive> logMessageIterator) throws IOException {
-        parseOperationType(dtbsStream, logMessageAsASN1List, logMessageIterator);
-        parseClientID(dtbsStream, logMessageAsASN1List, logMessageIterator);
-        parseProcessData(dtbsStream, logMessageAsASN1List, logMessageIterator);
-        parseProcessType(dtbsStream, logMessageAsASN1List, logMessageIterator);
-        parseAdditionalExternalData(dtbsStream, logMessageAsASN1List, logMessageIterator);
-        parseTransactionNumber(dtbsStream, logMessageAsASN1List, logMessageIterator);
-        parseAdditionalInternalData(dtbsStream, logMessageAsASN1List, logMessageIterator);
+    void parseCertifiedData(List<DerElement> logMessageElements, ListIterator<DerElement> logMessageIterator) throws IOException {
+        parseOperationType(logMessageElements, logMessageIterator);
+        parseClientID(logMessageElements, logMessageIterator);
+        parseProcessData(logMessageElements, logMessageIterator);
+        parseProcessType(logMessageElements, logMessageIterator);
+        parseAdditionalExternalData(logMessageElements, logMessageIterator);
+        parseTransactionNumber(logMessageElements, logMessageIterator);
+        parseAdditionalInternalData(logMessageElements, logMessageIterator);
 
 
     }
 
-    void parseOperationType(ByteArrayOutputStream dtbsStream, List<ASN1Primitive> logMessageAsASN1List, ListIterator<ASN1Primitive> logMessageIterator) throws IOException {
-        if (!logMessageIterator.hasNext())
+    /**
+     * Liefert den Inhalt eines implizit getaggten Elements. In der primitiven Form ist das der Wert des Elements, die
+     * constructed Form wird über BouncyCastle zusammengesetzt.
+     */
+    byte[] getImplicitOctets(DerElement element) throws IOException {
+        if (!element.isConstructed()) {
+            return element.getValue();
+        }
+        return ASN1OctetString.getInstance(ASN1TaggedObject.getInstance(element.toASN1Primitive()), false).getOctets();
+    }
+
+    void parseOperationType(List<DerElement> logMessageElements, ListIterator<DerElement> logMessageIterator) throws IOException {
+        if (!logMessageIterator.hasNext()) {
             this.allErrors.add(new LogMessageParsingError(properties.getString("de.konfidas.ttc.messages.certifiedDataNotFound")));
+            return;
+        }
 
-        ASN1Primitive nextElement = logMessageAsASN1List.get(logMessageIterator.nextIndex());
+        DerElement nextElement = logMessageElements.get(logMessageIterator.nextIndex());
 
-        if (!(nextElement instanceof DLTaggedObject))
-            this.allErrors.add(new LogMessageParsingError(String.format(properties.getString("de.konfidas.ttc.messages.operationTypeInCertifiedDataWrongType"), nextElement.getClass())));
+        if (!nextElement.isContextSpecific()) {
+            this.allErrors.add(new LogMessageParsingError(String.format(properties.getString("de.konfidas.ttc.messages.operationTypeInCertifiedDataWrongType"), nextElement)));
+            return;
+        }
 
-        if (((DLTaggedObject) nextElement).getTagNo() != 0)
-            this.allErrors.add(new LogMessageParsingError(String.format(properties.getString("de.konfidas.ttc.messages.operationTypeInCertifiedDataWrongTag"), ((DLTaggedObject) nextElement).getTagNo())));
+        if (nextElement.getTagNumber() != 0)
+            this.allErrors.add(new LogMessageParsingError(String.format(properties.getString("de.konfidas.ttc.messages.operationTypeInCertifiedDataWrongTag"), nextElement.getTagNumber())));
 
-        DLTaggedObject element = (DLTaggedObject) logMessageIterator.next();
-        DERPrintableString innerElement = DERPrintableString.getInstance(element, false);
-        operationType = innerElement.toString();
-        dtbsStream.write(getEncodedValue(innerElement));
+        DerElement element = logMessageIterator.next();
+        byte[] octets = getImplicitOctets(element);
+        operationType = new String(octets, StandardCharsets.ISO_8859_1);
 
     }
 
-    void parseClientID(ByteArrayOutputStream dtbsStream, List<ASN1Primitive> logMessageAsASN1List, ListIterator<ASN1Primitive> logMessageIterator) throws IOException {
-        if (!logMessageIterator.hasNext())
+    void parseClientID(List<DerElement> logMessageElements, ListIterator<DerElement> logMessageIterator) throws IOException {
+        if (!logMessageIterator.hasNext()) {
             this.allErrors.add(new LogMessageParsingError(properties.getString("de.konfidas.ttc.messages.clientIDInCertifiedDataNotFound")));
+            return;
+        }
 
-        ASN1Primitive nextElement = logMessageAsASN1List.get(logMessageIterator.nextIndex());
-        if (!(nextElement instanceof DLTaggedObject))
-            this.allErrors.add(new LogMessageParsingError(String.format(properties.getString("de.konfidas.ttc.messages.clientIDInCertifiedDataWrongTag"), nextElement.getClass())));
-
-        if (((DLTaggedObject) nextElement).getTagNo() != 1)
-            this.allErrors.add(new LogMessageParsingError(String.format(properties.getString("de.konfidas.ttc.messages.clientIDInCertifiedDataWrongTag2"), +((DLTaggedObject) nextElement).getTagNo())));
+        DerElement nextElement = logMessageElements.get(logMessageIterator.nextIndex());
+        if (!nextElement.isContextSpecific()) {
+            this.allErrors.add(new LogMessageParsingError(String.format(properties.getString("de.konfidas.ttc.messages.clientIDInCertifiedDataWrongTag"), nextElement)));
+            return;
+        }
 
-        DLTaggedObject element = (DLTaggedObject) logMessageIterator.next();
+        if (nextElement.getTagNumber() != 1)
+            this.allErrors.add(new LogMessageParsingError(String.format(properties.getString("de.konfidas.ttc.messages.clientIDInCertifiedDataWrongTag2"), nextElement.getTagNumber())));
 
-        DERPrintableString innerElement = DERPrintableString.getInstance(element, false);
-        clientID = innerElement.toString();
-        dtbsStream.write(getEncodedValue(innerElement));
+        DerElement element = logMessageIterator.next();
+        byte[] octets = getImplicitOctets(element);
+        clientID = new String(octets, StandardCharsets.ISO_8859_1);
 
     }
 
-    void parseProcessData(ByteArrayOutputStream dtbsStream, List<ASN1Primitive> logMessageAsASN1List, ListIterator<ASN1Primitive> logMessageIterator) throws IOException {
-        if (!logMessageIterator.hasNext())
+    void parseProcessData(List<DerElement> logMessageElements, ListIterator<DerElement> logMessageIterator) throws IOException {
+        if (!logMessageIterator.hasNext()) {
             this.allErrors.add(new LogMessageParsingError(properties.getString("de.konfidas.ttc.messages.processDataInCertifiedDataNotFound")));
+            return;
+        }
 
-        ASN1Primitive nextElement = logMessageAsASN1List.get(logMessageIterator.nextIndex());
-        if ((!(nextElement instanceof DLTaggedObject) && !(nextElement instanceof BERTaggedObject)))
-            this.allErrors.add(new LogMessageParsingError(String.format(properties.getString("de.konfidas.ttc.messages.processDataInCertifiedDataWrongTag"), nextElement.getClass())));
-
-
-        if (((ASN1TaggedObject) nextElement).getTagNo() != 2)
-            this.allErrors.add(new LogMessageParsingError(String.format(properties.getString("de.konfidas.ttc.messages.processDataInCertifiedDataWrongTag2"), ((DLTaggedObject) nextElement).getTagNo())));
+        DerElement nextElement = logMessageElements.get(logMessageIterator.nextIndex());
+        if (!nextElement.isContextSpecific()) {
+            this.allErrors.add(new LogMessageParsingError(String.format(properties.getString("de.konfidas.ttc.messages.processDataInCertifiedDataWrongTag"), nextElement)));
+            return;
+        }
 
-        ASN1TaggedObject element = (ASN1TaggedObject) logMessageIterator.next();
-        ASN1OctetString innerElement = ASN1OctetString.getInstance(element, false);
+        if (nextElement.getTagNumber() != 2)
+            this.allErrors.add(new LogMessageParsingError(String.format(properties.getString("de.konfidas.ttc.messages.processDataInCertifiedDataWrongTag2"), nextElement.getTagNumber())));
 
-        processData = innerElement.getOctets();
-        dtbsStream.write(getEncodedValue(innerElement));
+        DerElement element = logMessageIterator.next();
+        // In der primitiven Form verweist processData direkt auf den Inhalt der LogMessage
+        processData = element.isConstructed() ? DerElement.octetString(getImplicitOctets(element)) : element;
 
     }
 
-    void parseProcessType(ByteArrayOutputStream dtbsStream, List<ASN1Primitive> logMessageAsASN1List, ListIterator<ASN1Primitive> logMessageIterator) throws IOException {
-        if (!logMessageIterator.hasNext())
+    void parseProcessType(List<DerElement> logMessageElements, ListIterator<DerElement> logMessageIterator) throws IOException {
+        if (!logMessageIterator.hasNext()) {
             this.allErrors.add(new LogMessageParsingError(properties.getString("de.konfidas.ttc.messages.processTypeInCertifiedDataNotFound")));
+            return;
+        }
 
-        ASN1Primitive nextElement = logMessageAsASN1List.get(logMessageIterator.nextIndex());
-        if (!(nextElement instanceof DLTaggedObject))
-            this.allErrors.add(new LogMessageParsingError(String.format(properties.getString("de.konfidas.ttc.messages.processTyoeInCertifiedDataWrongType"), nextElement.getClass())));
-
-        if (((DLTaggedObject) nextElement).getTagNo() != 3)
-            this.allErrors.add(new LogMessageParsingError(MessageFormat.format(properties.getString("de.konfidas.ttc.messages.processTypeInCertifiedDataWrongTag"), ((DLTaggedObject) nextElement).getTagNo())));
+        DerElement nextElement = logMessageElements.get(logMessageIterator.nextIndex());
+        if (!nextElement.isContextSpecific()) {
+            this.allErrors.add(new LogMessageParsingError(String.format(properties.getString("de.konfidas.ttc.messages.processTyoeInCertifiedDataWrongType"), nextElement)));
+            return;
+        }
 
-        DLTaggedObject element = (DLTaggedObject) logMessageIterator.next();
-        DERPrintableString innerElement = DERPrintableString.getInstance(element, false);
+        if (nextElement.getTagNumber() != 3)
+            this.allErrors.add(new LogMessageParsingError(MessageFormat.format(properties.getString("de.konfidas.ttc.messages.processTypeInCertifiedDataWrongTag"), nextElement.getTagNumber())));
 
-        processType = innerElement.toString();
-        dtbsStream.write(getEncodedValue(innerElement));
+        DerElement element = logMessageIterator.next();
+        byte[] octets = getImplicitOctets(element);
+        processType = new String(octets, StandardCharsets.ISO_8859_1);
 
     }
 
-    void parseAdditionalExternalData(ByteArrayOutputStream dtbsStream, List<ASN1Primitive> logMessageAsASN1List, ListIterator<ASN1Primitive> logMessageIterator) throws IOException {
+    void parseAdditionalExternalData(List<DerElement> logMessageElements, ListIterator<DerElement> logMessageIterator) throws IOException {
 
         if (!logMessageIterator.hasNext()) {
             this.allErrors.add(new LogMessageParsingError(String.format("early end of certifiedData while parsing: {}.", this.getFileName())));
@@ -192,15 +220,15 @@ public class TransactionLogMessage extends LogMessageImplementation {
             return;
         }
 
-        ASN1Primitive nextElement = logMessageAsASN1List.get(logMessageIterator.nextIndex());
-        if (!(nextElement instanceof DLTaggedObject)) {
-            this.allErrors.add(new LogMessageParsingError(String.format("additionalExternalData in certifiedData has to be DLTaggedObject, but is {}", nextElement.getClass())));
+        DerElement nextElement = logMessageElements.get(logMessageIterator.nextIndex());
+        if (!nextElement.isContextSpecific()) {
+            this.allErrors.add(new LogMessageParsingError(String.format("additionalExternalData in certifiedData has to be DLTaggedObject, but is {}", nextElement)));
 
             return;
 
         }
 
-        if (((DLTaggedObject) nextElement).getTagNo() == 4) {
+        if (nextElement.getTagNumber() == 4) {
             //external Data shall not exist
             this.allErrors.add(new LogMessageParsingError(String.format("found additionalExternalData in certifiedData while parsing {}", this.getFileName())));
 
@@ -209,55 +237,53 @@ public class TransactionLogMessage extends LogMessageImplementation {
 
     }
 
-    void parseTransactionNumber(ByteArrayOutputStream dtbsStream, List<ASN1Primitive> logMessageAsASN1List, ListIterator<ASN1Primitive> logMessageIterator) throws IOException {
-        if (!logMessageIterator.hasNext())
+    void parseTransactionNumber(List<DerElement> logMessageElements, ListIterator<DerElement> logMessageIterator) throws IOException {
+        if (!logMessageIterator.hasNext()) {
             this.allErrors.add(new LogMessageParsingError(properties.getString("de.konfidas.ttc.messages.transactionNumberInCertifiedDataNotFound")));
+            return;
+        }
 
-        ASN1Primitive nextElement = logMessageAsASN1List.get(logMessageIterator.nextIndex());
-        if (!(nextElement instanceof DLTaggedObject))
-            this.allErrors.add(new LogMessageParsingError(String.format(properties.getString("de.konfidas.ttc.messages.transactionNumberInCertifiedDataWrongTag"), nextElement.getClass())));
-        try {
-            if (((DLTaggedObject) nextElement).getTagNo() != 5)
-                this.allErrors.add(new LogMessageParsingError((String.format(MessageFormat.format(properties.getString("de.konfidas.ttc.messages.transactionNumberInCertifiedDataWrongType2"), ((DLTaggedObject) nextElement).getTagNo())))));
+        DerElement nextElement = logMessageElements.get(logMessageIterator.nextIndex());
+        if (!nextElement.isContextSpecific() || nextElement.isConstructed()) {
+            this.allErrors.add(new LogMessageParsingError(String.format(properties.getString("de.konfidas.ttc.messages.transactionNumberInCertifiedDataWrongTag"), nextElement)));
+            return;
+        }
 
-            DLTaggedObject element = (DLTaggedObject) logMessageIterator.next();
-            ASN1Integer innerElement = ASN1Integer.getInstance(element, false);
+        if (nextElement.getTagNumber() != 5)
+            this.allErrors.add(new LogMessageParsingError((String.format(MessageFormat.format(properties.getString("de.konfidas.ttc.messages.transactionNumberInCertifiedDataWrongType2"), nextElement.getTagNumber())))));
 
-            transactionNumber = innerElement.getValue();
-            dtbsStream.write(getEncodedValue(innerElement));
-        } catch (ClassCastException ex) {
-            this.allErrors.add(new LogMessageParsingError(properties.getString("de.konfidas.ttc.messages.transactionNumberInCertifiedDataWrongType2")));
-        }
+        DerElement element = logMessageIterator.next();
+        transactionNumber = element.getValueAsBigInteger();
 
     }
 
-    void parseAdditionalInternalData(ByteArrayOutputStream dtbsStream, List<ASN1Primitive> logMessageAsASN1List, ListIterator<ASN1Primitive> logMessageIterator) throws IOException {
+    void parseAdditionalInternalData(List<DerElement> logMessageElements, ListIterator<DerElement> logMessageIterator) throws IOException {
         if (!logMessageIterator.hasNext()) {
             this.allErrors.add(new LogMessageParsingError(String.format("early end of certifiedData while parsing: {}.", this.getFileName())));
 
             return;
         }
 
-        ASN1Primitive nextElement = logMessageAsASN1List.get(logMessageIterator.nextIndex());
+        DerElement nextElement = logMessageElements.get(logMessageIterator.nextIndex());
 
-        try {
-            if (((DLTaggedObject) nextElement).getTagNo() == 6) {
-                // Data shall not exist
-                this.allErrors.add(new LogMessageParsingError(String.format("found additionalInternalData in certifiedData while parsing {}", this.getFileName())));
+        if (nextElement.isContextSpecific() && nextElement.getTagNumber() == 6) {
+            // Data shall not exist
+            this.allErrors.add(new LogMessageParsingError(String.format("found additionalInternalData in certifiedData while parsing {}", this.getFileName())));
 
-                return;
-            }
-        } catch (ClassCastException ex) {}
+            return;
+        }
 
     }
 
     @Override
-    void parseSeAuditData(ByteArrayOutputStream dtbsStream, List<ASN1Primitive> logMessageAsASN1List, ListIterator<ASN1Primitive> logMessageIterator) {
+    void parseSeAuditData(List<DerElement> logMessageElements, ListIterator<DerElement> logMessageIterator) {
 
-        if (!logMessageIterator.hasNext())
+        if (!logMessageIterator.hasNext()) {
             this.allErrors.add(new LogMessageParsingError(properties.getString("de.konfidas.ttc.messages.seAuditDataNotFound")));
-        ASN1Primitive nextElement = logMessageAsASN1List.get(logMessageIterator.nextIndex());
-        if (nextElement instanceof ASN1OctetString)
+            return;
+        }
+        DerElement nextElement = logMessageElements.get(logMessageIterator.nextIndex());
+        if (nextElement.isOctetString())
             this.allErrors.add(new LogMessageParsingError(properties.getString("de.konfidas.ttc.messages.seAuditDataElementNotFound")));
     }
 
@@ -274,11 +300,11 @@ public class TransactionLogMessage extends LogMessageImplementation {
 
     @Override
     public Collection<ASN1Primitive> getSignatureAlgorithmParameters() {
-        return this.signatureAlgorithmParameters;
+        return super.getSignatureAlgorithmParameters();
     }
 
     @Override
     public byte[] getSeAuditData() {
-        return this.seAuditData;
+        return super.getSeAuditData();
     }
 }
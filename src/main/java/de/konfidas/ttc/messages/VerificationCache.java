@@ -0,0 +1,232 @@
+package de.konfidas.ttc.messages;
+
+import de.konfidas.ttc.utilities.IntegrityKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Mac;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Ein persistenter Cache erfolgreicher Signaturprüfungen.
+ *
+ * Ein Eintrag besteht aus dem SHA-256 Hashwert der vollständig kodierten LogMessage und dem SHA-256 Fingerprint des
+ * Zertifikats, mit dem ihre Signatur erfolgreich geprüft wurde. Da die Signatur Teil der kodierten LogMessage ist,
+ * belegt ein Eintrag genau diese LogMessage mit genau diesem Zertifikat. Überlappende Exporte einer TSE müssen so nur
+ * für die neuen LogMessages ECDSA rechnen.
+ *
+ * Die Datei beginnt mit einem Header aus Magic und Version, danach folgen Blöcke aus der Anzahl der Einträge, den
+ * Einträgen mit je {@value #RECORD_LENGTH} Bytes und einem HMAC-SHA256 über Anzahl und Einträge. Ein Eintrag erspart
+ * die Prüfung der Signatur, daher wird die gesamte Datei verworfen, sobald der HMAC eines Blocks nicht stimmt. Neue
+ * Einträge werden mit {@link #flush()} bzw. {@link #close()} als weitere Blöcke an die Datei angehängt.
+ */
+public class VerificationCache implements Closeable {
+    final static Logger logger = LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
+    static Locale locale = new Locale("de", "DE");//NON-NLS
+    static ResourceBundle properties = ResourceBundle.getBundle("ttc",locale);//NON-NLS
+
+    final static int MAGIC = 0x54544356; // "TTCV"
+    final static int VERSION = 2;
+    final static int HEADER_LENGTH = 2 * Integer.BYTES;
+    final static int HASH_LENGTH = 32;
+    final static int RECORD_LENGTH = 2 * HASH_LENGTH;
+    final static int MAX_RECORDS_PER_BLOCK = 4096;
+    final static int BLOCK_OVERHEAD = Integer.BYTES + IntegrityKey.MAC_LENGTH;
+
+    final File file;
+    final IntegrityKey key;
+    final boolean reverify;
+    final Set<ByteBuffer> entries = ConcurrentHashMap.newKeySet();
+    final ConcurrentLinkedQueue<ByteBuffer> pending = new ConcurrentLinkedQueue<>();
+    long validLength;
+
+    VerificationCache(File file, IntegrityKey key, boolean reverify) {
+        this.file = file;
+        this.key = key;
+        this.reverify = reverify;
+    }
+
+    /**
+     * Öffnet den Cache in der Datei. Existiert sie nicht, wird sie beim ersten {@link #flush()} angelegt. Eine
+     * unlesbare oder veränderte Datei wird verworfen und neu geschrieben.
+     *
+     * @param key      der Schlüssel für den HMAC der Blöcke.
+     * @param reverify falls true, werden alle LogMessages erneut geprüft. Erfolgreiche Prüfungen werden trotzdem in
+     *                 den Cache geschrieben.
+     */
+    public static VerificationCache open(File file, IntegrityKey key, boolean reverify) {
+        VerificationCache cache = new VerificationCache(file, key, reverify);
+        cache.load();
+        return cache;
+    }
+
+    void load() {
+        if (!file.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (file.length() < HEADER_LENGTH || in.readInt() != MAGIC || in.readInt() != VERSION) {
+                logger.warn(String.format(properties.getString("de.konfidas.ttc.messages.verificationCacheUnreadable"), file));
+                return;
+            }
+            long position = HEADER_LENGTH;
+            ArrayList<ByteBuffer> records = new ArrayList<>();
+            // Ein unvollständiger Block am Ende stammt von einem abgebrochenen Lauf und wird überschrieben.
+            while (position + BLOCK_OVERHEAD <= file.length()) {
+                int count = in.readInt();
+                if (count <= 0 || count > MAX_RECORDS_PER_BLOCK) {
+                    rejectModifiedFile();
+                    return;
+                }
+                long blockLength = BLOCK_OVERHEAD + (long) count * RECORD_LENGTH;
+                if (position + blockLength > file.length()) {
+                    break;
+                }
+                byte[] block = new byte[count * RECORD_LENGTH];
+                in.readFully(block);
+                byte[] expectedMac = new byte[IntegrityKey.MAC_LENGTH];
+                in.readFully(expectedMac);
+                if (!MessageDigest.isEqual(expectedMac, mac(count, block, block.length))) {
+                    rejectModifiedFile();
+                    return;
+                }
+                for (int i = 0; i < count; i++) {
+                    records.add(ByteBuffer.wrap(block, i * RECORD_LENGTH, RECORD_LENGTH).slice());
+                }
+                position += blockLength;
+            }
+            entries.addAll(records);
+            validLength = position;
+        } catch (IOException e) {
+            logger.warn(String.format(properties.getString("de.konfidas.ttc.messages.verificationCacheUnreadable"), file), e);
+            entries.clear();
+            validLength = 0;
+        }
+    }
+
+    void rejectModifiedFile() {
+        logger.warn(String.format(properties.getString("de.konfidas.ttc.messages.verificationCacheIntegrityViolated"), file));
+        entries.clear();
+        validLength = 0;
+    }
+
+    byte[] mac(int count, byte[] records, int length) {
+        Mac mac = key.newMac();
+        mac.update(ByteBuffer.allocate(Integer.BYTES).putInt(count).array());
+        mac.update(records, 0, length);
+        return mac.doFinal();
+    }
+
+    /**
+     * @return den Schlüssel für die kodierte LogMessage und den Fingerprint des Zertifikats.
+     */
+    public static ByteBuffer key(byte[] encodedMessage, byte[] certificateFingerprint) {
+        byte[] record = new byte[RECORD_LENGTH];
+        System.arraycopy(sha256().digest(encodedMessage), 0, record, 0, HASH_LENGTH);
+        System.arraycopy(certificateFingerprint, 0, record, HASH_LENGTH, HASH_LENGTH);
+        return ByteBuffer.wrap(record);
+    }
+
+    public static byte[] fingerprint(X509Certificate certificate) throws CertificateEncodingException {
+        return sha256().digest(certificate.getEncoded());
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");//NON-NLS
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return true, falls die Prüfung zu diesem Schlüssel bereits erfolgreich war und nicht erneut geprüft werden soll.
+     */
+    public boolean contains(ByteBuffer key) {
+        return !reverify && entries.contains(key);
+    }
+
+    /**
+     * Merkt eine erfolgreiche Prüfung vor. Sie wird mit dem nächsten {@link #flush()} in die Datei geschrieben.
+     */
+    public void add(ByteBuffer key) {
+        if (entries.add(key)) {
+            pending.add(key);
+        }
+    }
+
+    /**
+     * Hängt die neuen Einträge an die Datei an.
+     */
+    public synchronized void flush() throws IOException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            if (validLength == 0) {
+                channel.truncate(0);
+                ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH).putInt(MAGIC).putInt(VERSION);
+                header.flip();
+                writeFully(channel, header, 0);
+                validLength = HEADER_LENGTH;
+            } else {
+                channel.truncate(validLength);
+            }
+
+            byte[] records = new byte[RECORD_LENGTH * MAX_RECORDS_PER_BLOCK];
+            int count = 0;
+            ByteBuffer record;
+            while ((record = pending.poll()) != null) {
+                record.duplicate().get(records, count * RECORD_LENGTH, RECORD_LENGTH);
+                if (++count == MAX_RECORDS_PER_BLOCK) {
+                    validLength += writeBlock(channel, count, records);
+                    count = 0;
+                }
+            }
+            if (count > 0) {
+                validLength += writeBlock(channel, count, records);
+            }
+        }
+    }
+
+    int writeBlock(FileChannel channel, int count, byte[] records) throws IOException {
+        int length = count * RECORD_LENGTH;
+        ByteBuffer block = ByteBuffer.allocate(BLOCK_OVERHEAD + length);
+        block.putInt(count).put(records, 0, length).put(mac(count, records, length));
+        block.flip();
+        return writeFully(channel, block, validLength);
+    }
+
+    static int writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        int written = 0;
+        while (buffer.hasRemaining()) {
+            written += channel.write(buffer, position + written);
+        }
+        return written;
+    }
+
+    /**
+     * @return die Anzahl der Einträge, einschließlich der noch nicht geschriebenen.
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+}
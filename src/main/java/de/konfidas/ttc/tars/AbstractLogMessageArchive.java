@@ -0,0 +1,111 @@
+package de.konfidas.ttc.tars;
+
+import de.konfidas.ttc.errors.TtcError;
+import de.konfidas.ttc.exceptions.BadFormatForTARException;
+import de.konfidas.ttc.exceptions.CertificateLoadException;
+import de.konfidas.ttc.utilities.CertificateHelper;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.ResourceBundle;
+
+/**
+ * Gemeinsame Basis der LogMessageArchive Implementierungen. Sie verwaltet die Zertifikate, die info.csv und die Fehler
+ * eines TAR Archivs. Wie die LogMessages selbst gelesen und gehalten werden, entscheiden die Unterklassen.
+ */
+abstract class AbstractLogMessageArchive implements LogMessageArchive {
+    final static Logger logger = LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
+
+    static Locale locale = new Locale("de", "DE"); //NON-NLS
+    static ResourceBundle properties = ResourceBundle.getBundle("ttc",locale);//NON-NLS
+    final HashMap<String, X509Certificate> allClientCertificates = new HashMap<>();
+    final HashMap<String, X509Certificate> allIntermediateCertificates = new HashMap<>();
+    protected ArrayList<TtcError> all_errors = new ArrayList<TtcError>();
+
+    Boolean infoCSVPresent = false;
+    String filename;
+
+    @Override
+    public ArrayList<TtcError> getAllErrors() {
+        return all_errors;
+    }
+
+    public HashMap<String, X509Certificate> getIntermediateCertificates(){return allIntermediateCertificates;}
+    public HashMap<String, X509Certificate> getClientCertificates(){return allClientCertificates;}
+
+    @Override
+    public String getFileName() {
+        return filename;
+    }
+
+    /**
+     * Liest den Inhalt des aktuellen Eintrags vollständig. Ein einzelnes read() liefert bei größeren Einträgen
+     * nicht zwingend alle Bytes.
+     */
+    static byte[] readEntry(TarArchiveInputStream tarStream, TarArchiveEntry entry) throws IOException {
+        byte[] content = new byte[(int) entry.getSize()];
+        IOUtils.readFully(tarStream, content);
+        return content;
+    }
+
+    /**
+     * Verarbeitet alle Einträge des Archivs, die keine LogMessages sind, d.h. die info.csv und die Zertifikate.
+     */
+    void processNonLogMessageEntry(String individualFileName, byte[] content) {
+        /**************
+         ** info.csv *
+         *************/
+        if (individualFileName.matches("^info.csv")) {//NON-NLS
+            logger.debug("found info.csv. Start processing now.");//NON-NLS
+            infoCSVPresent = true;
+            String info_string = new String(content, StandardCharsets.UTF_8);
+            logger.debug("Description in info.csv: {}", StringUtils.substringsBetween(info_string, "description:\",", "," )[0]);//NON-NLS
+            logger.debug("Manufacturer in info.csv: {}", StringUtils.substringsBetween(info_string, "manufacturer:\",", "," )[0]);//NON-NLS
+            logger.debug("Version in info.csv: {}", StringUtils.substringAfter(info_string, "\"version:\"," ));//NON-NLS
+        }
+        /*********************
+         ** CVC Certificate *
+         ********************/
+        else if (individualFileName.contains("CVC")) {
+            logger.debug("{} seems to be a CVC certificate. Will process it now.", individualFileName);//NON-NLS
+            //FIXME: Not supported
+
+        }
+        /**********************
+         ** X.509 Certificate *
+         **********************/
+        else if (individualFileName.contains("X509")) {//NON-NLS
+            logger.debug("{} seems to be an X.509 certificate. Will process it now.", individualFileName);//NON-NLS
+            try {
+                X509Certificate cer = CertificateHelper.loadCertificate(content);
+                // Prüfe die Eigenschaften des Zertifikats gegen den Dateinamen
+                boolean[] keyUsage = cer.getKeyUsage();
+                if (keyUsage == null || !keyUsage[5]) {
+                    allClientCertificates.put(individualFileName.split("_")[0].toUpperCase(), cer);
+                } else {
+                    allIntermediateCertificates.put(individualFileName.split("_")[0].toUpperCase(), cer);
+                }
+            } catch (CertificateLoadException e) {
+                //TODO: Throw error
+                logger.error("Error loading certificate {}", individualFileName);//NON-NLS
+            }
+        } else {
+            //TODO:throw error
+            logger.error("{} should not be in the TAR file. Will be ignored.", individualFileName);//NON-NLS
+        }
+    }
+
+    void checkInfoCSVPresent() throws BadFormatForTARException {
+        if (!infoCSVPresent){throw new BadFormatForTARException(properties.getString("de.konfidas.ttc.tars.infoCSVNotFound"),null);}
+    }
+}
@@ -2,7 +2,6 @@ package de.konfidas.ttc.tars;
 
 import de.konfidas.ttc.errors.TtcError;
 import de.konfidas.ttc.messages.LogMessage;
-import de.konfidas.ttc.messages.LogMessageImplementation;
 
 import java.security.cert.X509Certificate;
 import java.util.*;
@@ -13,7 +12,7 @@ public class AggregatedLogMessageArchive implements LogMessageArchive {
     static Locale locale = new Locale("de", "DE");//NON-NLS
     static ResourceBundle properties = ResourceBundle.getBundle("ttc",locale);//NON-NLS
 
-    ArrayList<LogMessage> sortedLogMessages;
+    volatile ArrayList<LogMessage> sortedLogMessages;
     ArrayList<LogMessage> logMessages;
     HashMap<String, X509Certificate> clientCertificates;
     HashMap<String, X509Certificate> intermediateCertificates;
@@ -81,14 +80,23 @@ public class AggregatedLogMessageArchive implements LogMessageArchive {
         return this;
     }
 
+    /**
+     * Die sortierte Liste wird beim ersten Aufruf genau einmal aufgebaut, auch wenn mehrere Threads gleichzeitig lesen.
+     */
     @Override
     public ArrayList<LogMessage> getSortedLogMessages() {
-        if (null == sortedLogMessages) {
-            sortedLogMessages = new ArrayList<>(getLogMessages());
-            sortedLogMessages.sort(new LogMessageImplementation.SignatureCounterComparator());
+        ArrayList<LogMessage> result = sortedLogMessages;
+        if (null == result) {
+            synchronized (this) {
+                result = sortedLogMessages;
+                if (null == result) {
+                    result = LogMessageSorter.sort(getLogMessages());
+                    sortedLogMessages = result;
+                }
+            }
         }
 
-        return sortedLogMessages;
+        return result;
     }
 
     @Override
@@ -0,0 +1,405 @@
+package de.konfidas.ttc.tars;
+
+import de.konfidas.ttc.errors.BadFormatForLogMessageError;
+import de.konfidas.ttc.errors.TtcError;
+import de.konfidas.ttc.exceptions.BadFormatForLogMessageException;
+import de.konfidas.ttc.messages.LogMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Sortiert die LogMessages eines gemappten TAR Archivs, ohne sie gleichzeitig im Speicher zu halten.
+ *
+ * {@link #createRuns(Collection)} dekodiert das Archiv einmal und puffert für jede LogMessage einen Datensatz aus
+ * Signaturzähler, Nummer der Seriennummer und Index des Eintrags im Archiv. Ist das Speicherbudget erschöpft, wird der
+ * Puffer sortiert und als Lauf in eine temporäre Datei geschrieben. Ein Durchlauf über {@link #iterator()} mischt die
+ * Läufe und dekodiert die Einträge in sortierter Reihenfolge erneut aus der gemappten Datei. Die Reihenfolge entspricht
+ * der des {@link LogMessageSorter}: Signaturzähler, Seriennummer, Position im Archiv.
+ *
+ * Mehr als {@value #MAX_FAN_IN} Läufe werden vorab in mehreren Durchgängen zusammengefasst. Signaturzähler mit mehr
+ * als 63 Bit werden nicht unterstützt.
+ */
+public class ExternalLogMessageSorter implements Iterable<LogMessage>, Closeable {
+    final static Logger logger = LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
+    static Locale locale = new Locale("de", "DE");//NON-NLS
+    static ResourceBundle properties = ResourceBundle.getBundle("ttc",locale);//NON-NLS
+
+    final static int RECORD_LENGTH = Long.BYTES + 2 * Integer.BYTES;
+    // Puffer (Signaturzähler, Seriennummer, Eintrag) und beim Sortieren Schlüssel und Hilfsarray von sortKeys.
+    final static int BYTES_PER_BUFFERED_RECORD = RECORD_LENGTH + 2 * Long.BYTES;
+    final static int MIN_RECORDS_PER_RUN = 1024;
+    final static int MAX_FAN_IN = 64;
+    final static int STREAM_BUFFER_SIZE = 64 * 1024;
+
+    final List<MappedTarReader.Entry> entries;
+    final MappedTarReader reader;
+    final ExecutorService executor;
+    final int window;
+    final File tempDirectory;
+    final int recordsPerRun;
+    final LogMessageSorter.SerialIds serialIds = new LogMessageSorter.SerialIds();
+    final ArrayList<File> runs = new ArrayList<>();
+    // Durchläufe, deren Läufe noch geöffnet sind, weil sie nicht bis zum Ende gelesen wurden.
+    final Set<MergeIterator> openIterators = ConcurrentHashMap.newKeySet();
+    long size = 0;
+
+    /**
+     * @param executor      der Pool des Archivs zum Dekodieren oder null, um im aufrufenden Thread zu dekodieren.
+     * @param recordsPerRun Anzahl der Datensätze, die höchstens gepuffert und als ein Lauf geschrieben werden.
+     * @param tempDirectory Verzeichnis für die Läufe oder null für das temporäre Verzeichnis des Systems.
+     */
+    ExternalLogMessageSorter(MappedTarReader reader, List<MappedTarReader.Entry> entries, ExecutorService executor, int window, int recordsPerRun, File tempDirectory) {
+        this.reader = reader;
+        this.entries = entries;
+        this.executor = executor;
+        this.window = window;
+        this.tempDirectory = tempDirectory;
+        this.recordsPerRun = recordsPerRun;
+    }
+
+    /**
+     * @param memoryBudget Bytes, die für den Puffer eines Laufs verwendet werden dürfen.
+     * @return die Anzahl der Datensätze eines Laufs, mindestens {@value #MIN_RECORDS_PER_RUN}.
+     */
+    static int recordsPerRun(long memoryBudget) {
+        return (int) Math.max(MIN_RECORDS_PER_RUN, Math.min(Integer.MAX_VALUE - 8, memoryBudget / BYTES_PER_BUFFERED_RECORD));
+    }
+
+    /**
+     * Dekodiert das Archiv und schreibt die sortierten Läufe.
+     *
+     * @param errors nimmt die Fehler beim Dekodieren auf oder null, falls sie nicht gesammelt werden sollen.
+     */
+    void createRuns(Collection<TtcError> errors) throws IOException {
+        long[] counters = new long[recordsPerRun];
+        int[] ids = new int[recordsPerRun];
+        int[] indices = new int[recordsPerRun];
+        int buffered = 0;
+
+        ParallelLogMessageDecoder decoder = new ParallelLogMessageDecoder(executor);
+        try {
+            int submitted = 0;
+            for (int index = 0; index < entries.size(); index++) {
+                while (submitted < entries.size() && decoder.pending() < window) {
+                    MappedTarReader.Entry entry = entries.get(submitted++);
+                    decoder.submit(entry.getLogMessageFileName(), reader.readContent(entry));
+                }
+
+                LogMessage msg;
+                try {
+                    msg = decoder.take();
+                } catch (BadFormatForLogMessageException e) {
+                    if (errors != null) {
+                        errors.add(new BadFormatForLogMessageError("Fehler bei der Erstellung des TAR Archivs", e));
+                    }
+                    continue;
+                }
+
+                BigInteger counter = msg.getSignatureCounter();
+                if (counter.signum() < 0 || counter.bitLength() > 63) {
+                    throw new IOException(String.format(properties.getString("de.konfidas.ttc.tars.signatureCounterNotSortable"), msg.getFileName()));
+                }
+                counters[buffered] = counter.longValue();
+                ids[buffered] = serialIds.idOf(msg.getSerialNumber());
+                indices[buffered] = index;
+                buffered++;
+                size++;
+
+                if (buffered == recordsPerRun) {
+                    writeRun(counters, ids, indices, buffered);
+                    buffered = 0;
+                }
+            }
+            if (buffered > 0) {
+                writeRun(counters, ids, indices, buffered);
+            }
+        } finally {
+            decoder.close();
+        }
+
+        while (runs.size() > MAX_FAN_IN) {
+            mergePass();
+        }
+        logger.debug("Sorted {} log messages in {} runs", size, runs.size());//NON-NLS
+    }
+
+    /**
+     * Sortiert den Puffer wie der {@link LogMessageSorter} über long Schlüssel und schreibt ihn als neuen Lauf.
+     */
+    void writeRun(long[] counters, int[] ids, int[] indices, int count) throws IOException {
+        int[] rankOfId = serialIds.ranks();
+        int rankBits = LogMessageSorter.bitLength(rankOfId.length - 1);
+        int localBits = LogMessageSorter.bitLength(count - 1);
+        long maxCounter = 0;
+        for (int i = 0; i < count; i++) {
+            maxCounter = Math.max(maxCounter, counters[i]);
+        }
+
+        int[] order = new int[count];
+        if ((64 - Long.numberOfLeadingZeros(maxCounter)) + rankBits + localBits <= 63) {
+            long[] keys = new long[count];
+            for (int i = 0; i < count; i++) {
+                keys[i] = (counters[i] << (rankBits + localBits)) | ((long) rankOfId[ids[i]] << localBits) | i;
+            }
+            LogMessageSorter.sortKeys(keys);
+            long localMask = (1L << localBits) - 1;
+            for (int i = 0; i < count; i++) {
+                order[i] = (int) (keys[i] & localMask);
+            }
+        } else {
+            Integer[] boxed = new Integer[count];
+            for (int i = 0; i < count; i++) {
+                boxed[i] = i;
+            }
+            // Die Einträge eines Laufs sind nach Index aufsteigend gepuffert, ein stabiles Sortieren genügt.
+            Arrays.sort(boxed, Comparator.<Integer>comparingLong(i -> counters[i]).thenComparingInt(i -> rankOfId[ids[i]]));
+            for (int i = 0; i < count; i++) {
+                order[i] = boxed[i];
+            }
+        }
+
+        File run = createRunFile();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), STREAM_BUFFER_SIZE))) {
+            for (int i : order) {
+                writeRecord(out, counters[i], ids[i], indices[i]);
+            }
+        }
+        runs.add(run);
+    }
+
+    /**
+     * Fasst je {@value #MAX_FAN_IN} Läufe zu einem neuen Lauf zusammen.
+     */
+    void mergePass() throws IOException {
+        ArrayList<File> merged = new ArrayList<>();
+        for (int from = 0; from < runs.size(); from += MAX_FAN_IN) {
+            List<File> group = runs.subList(from, Math.min(from + MAX_FAN_IN, runs.size()));
+            File run = createRunFile();
+            try (RunMerger merger = new RunMerger(group);
+                 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run), STREAM_BUFFER_SIZE))) {
+                RunReader next;
+                while ((next = merger.poll()) != null) {
+                    writeRecord(out, next.counter, next.serialId, next.entry);
+                    merger.advance(next);
+                }
+            }
+            merged.add(run);
+        }
+        deleteRuns();
+        runs.addAll(merged);
+    }
+
+    File createRunFile() throws IOException {
+        File run = File.createTempFile("ttc-sort-", ".run", tempDirectory);//NON-NLS
+        run.deleteOnExit();
+        return run;
+    }
+
+    static void writeRecord(DataOutputStream out, long counter, int serialId, int entry) throws IOException {
+        out.writeLong(counter);
+        out.writeInt(serialId);
+        out.writeInt(entry);
+    }
+
+    /**
+     * @return die Anzahl der sortierten LogMessages.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return einen Durchlauf in sortierter Reihenfolge. Jeder Durchlauf mischt die Läufe erneut.
+     */
+    @Override
+    public synchronized Iterator<LogMessage> iterator() {
+        try {
+            MergeIterator iterator = new MergeIterator();
+            openIterators.add(iterator);
+            return iterator;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    void deleteRuns() {
+        for (File run : runs) {
+            if (!run.delete()) {
+                logger.debug("Could not delete {}", run);//NON-NLS
+            }
+        }
+        runs.clear();
+    }
+
+    /**
+     * Schließt die Dateien der noch offenen Durchläufe und löscht die Läufe. Diese Durchläufe liefern danach keine
+     * weiteren LogMessages.
+     */
+    @Override
+    public synchronized void close() {
+        for (MergeIterator iterator : openIterators) {
+            iterator.close();
+        }
+        deleteRuns();
+    }
+
+    static class RunReader implements Closeable {
+        final DataInputStream in;
+        long counter;
+        int serialId;
+        int entry;
+
+        RunReader(File run) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(run), STREAM_BUFFER_SIZE));
+        }
+
+        /**
+         * @return false, falls der Lauf zu Ende ist.
+         */
+        boolean next() throws IOException {
+            try {
+                counter = in.readLong();
+            } catch (EOFException e) {
+                return false;
+            }
+            serialId = in.readInt();
+            entry = in.readInt();
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /**
+     * Mischt mehrere Läufe über eine PriorityQueue.
+     */
+    class RunMerger implements Closeable {
+        final ArrayList<RunReader> readers = new ArrayList<>();
+        final PriorityQueue<RunReader> queue;
+
+        RunMerger(List<File> group) throws IOException {
+            int[] rankOfId = serialIds.ranks();
+            queue = new PriorityQueue<>(Math.max(1, group.size()), (a, b) -> {
+                int result = Long.compare(a.counter, b.counter);
+                if (result == 0) {
+                    result = Integer.compare(rankOfId[a.serialId], rankOfId[b.serialId]);
+                }
+                return result != 0 ? result : Integer.compare(a.entry, b.entry);
+            });
+            try {
+                for (File run : group) {
+                    RunReader reader = new RunReader(run);
+                    readers.add(reader);
+                    if (reader.next()) {
+                        queue.add(reader);
+                    }
+                }
+            } catch (IOException e) {
+                close();
+                throw e;
+            }
+        }
+
+        RunReader poll() {
+            return queue.poll();
+        }
+
+        /**
+         * Liest den nächsten Datensatz des Laufs, der zuletzt mit {@link #poll()} geliefert wurde.
+         */
+        void advance(RunReader reader) throws IOException {
+            if (reader.next()) {
+                queue.add(reader);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (RunReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * Übergibt die Einträge in sortierter Reihenfolge an einen {@link ParallelLogMessageDecoder}, so dass höchstens
+     * {@code window} LogMessages gleichzeitig dekodiert vorliegen. Einträge, die nicht dekodiert werden können, wurden
+     * bereits beim Erzeugen der Läufe übergangen.
+     */
+    class MergeIterator implements Iterator<LogMessage>, Closeable {
+        final RunMerger merger;
+        final ParallelLogMessageDecoder decoder;
+        boolean exhausted = false;
+        LogMessage next;
+
+        MergeIterator() throws IOException {
+            merger = new RunMerger(runs);
+            decoder = new ParallelLogMessageDecoder(executor);
+        }
+
+        void fill() throws IOException {
+            RunReader reader;
+            while (decoder.pending() < window && (reader = merger.poll()) != null) {
+                MappedTarReader.Entry entry = entries.get(reader.entry);
+                decoder.submit(entry.getLogMessageFileName(), ExternalLogMessageSorter.this.reader.readContent(entry));
+                merger.advance(reader);
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && !exhausted) {
+                try {
+                    fill();
+                } catch (IOException e) {
+                    close();
+                    throw new UncheckedIOException(e);
+                }
+                if (decoder.pending() == 0) {
+                    close();
+                    break;
+                }
+                try {
+                    next = decoder.take();
+                } catch (BadFormatForLogMessageException e) {
+                    logger.debug("Failed to decode log message", e);//NON-NLS
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public LogMessage next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            LogMessage result = next;
+            next = null;
+            return result;
+        }
+
+        @Override
+        public void close() {
+            if (exhausted) {
+                return;
+            }
+            exhausted = true;
+            openIterators.remove(this);
+            decoder.close();
+            try {
+                merger.close();
+            } catch (IOException e) {
+                logger.debug("Could not close runs", e);//NON-NLS
+            }
+        }
+    }
+}
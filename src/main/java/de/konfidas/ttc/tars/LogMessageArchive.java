@@ -19,9 +19,9 @@ public interface LogMessageArchive {
 
     /**
      * A lazy getter, returning the Collection of LogMessages in a sorted manner. The messages are sorted
-     * with increasing signature counter. Note that this is non-deterministic, because the order of log messages
-     * with the same signature counter is not prescribed. The same signature counter can occur in a valid LogMessageArchive multiple
-     * times for different serial numbers.
+     * with increasing signature counter. The same signature counter can occur in a valid LogMessageArchive multiple
+     * times for different serial numbers. The implementations in this package use the {@link LogMessageSorter}, which
+     * orders such messages by serial number and keeps the order of the archive for identical keys.
      * @return a collection of all Log Messages of the Archive, sorted by increasing Signature Counter.
      */
     Collection<? extends LogMessage> getSortedLogMessages();
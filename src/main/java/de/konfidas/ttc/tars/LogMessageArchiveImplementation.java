@@ -3,46 +3,38 @@ package de.konfidas.ttc.tars;
 import de.konfidas.ttc.errors.BadFormatForLogMessageError;
 import de.konfidas.ttc.errors.TtcError;
 import de.konfidas.ttc.exceptions.*;
-import de.konfidas.ttc.messages.LogMessageFactory;
 import de.konfidas.ttc.messages.LogMessage;
-import de.konfidas.ttc.messages.LogMessageImplementation;
-import de.konfidas.ttc.utilities.CertificateHelper;
+import de.konfidas.ttc.messages.LogMessageFileName;
 
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
-import org.apache.commons.lang3.StringUtils;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
-import java.security.cert.X509Certificate;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Locale;
-import java.util.ResourceBundle;
+import java.util.Arrays;
+import java.util.List;
 
 
-public class LogMessageArchiveImplementation implements LogMessageArchive {
-    final static Logger logger = LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
+public class LogMessageArchiveImplementation extends AbstractLogMessageArchive {
+    final static int PENDING_ENTRIES_PER_THREAD = 64;
 
-    static Locale locale = new Locale("de", "DE"); //NON-NLS
-    static ResourceBundle properties = ResourceBundle.getBundle("ttc",locale);//NON-NLS
     final ArrayList<LogMessage> all_log_messages = new ArrayList<>();
-    final HashMap<String, X509Certificate> allClientCertificates = new HashMap<>();
-    final HashMap<String, X509Certificate> allIntermediateCertificates = new HashMap<>();
-    protected ArrayList<TtcError> all_errors = new ArrayList<TtcError>();
-
-    Boolean infoCSVPresent = false;
-    String filename;
-
-    @Override
-    public ArrayList<TtcError> getAllErrors() {
-        return all_errors;
-    }
+    int threads = 1;
+    boolean useIndex = false;
+    TarIndex index;
+    TransactionIndex transactionIndex;
+    File indexedTarFile;
+    MappedTarReader reader;
+    /**
+     * Die Einträge der LogMessages, die bei vorhandenem Index noch nicht dekodiert wurden, oder null, sobald alle
+     * LogMessages dekodiert sind.
+     */
+    List<Integer> undecodedEntries;
 
     public LogMessageArchiveImplementation() throws IOException, BadFormatForTARException {
         this(null);
@@ -50,6 +42,27 @@ public class LogMessageArchiveImplementation implements LogMessageArchive {
     }
 
     public LogMessageArchiveImplementation(File tarFile) throws IOException, BadFormatForTARException {
+        this(tarFile, 1);
+    }
+
+    /**
+     * @param threads Anzahl der Threads, die die LogMessages dekodieren, während das Archiv gelesen wird. Bei einem
+     *                Thread wird wie bisher sequentiell dekodiert.
+     */
+    public LogMessageArchiveImplementation(File tarFile, int threads) throws IOException, BadFormatForTARException {
+        this(tarFile, threads, false);
+    }
+
+    /**
+     * @param useIndex falls true, wird ein {@link TarIndex} neben dem Archiv verwendet, sofern er zum Archiv passt, und
+     *                 andernfalls nach dem Lesen angelegt.
+     */
+    public LogMessageArchiveImplementation(File tarFile, int threads, boolean useIndex) throws IOException, BadFormatForTARException {
+        if (threads < 1) {
+            throw new IllegalArgumentException(String.format(properties.getString("de.konfidas.ttc.tars.invalidNumberOfThreads"), threads));
+        }
+        this.threads = threads;
+        this.useIndex = useIndex;
 
         if( null != tarFile){
             this.filename= tarFile.getName();
@@ -57,17 +70,20 @@ public class LogMessageArchiveImplementation implements LogMessageArchive {
         }
     }
 
-    public HashMap<String, X509Certificate> getIntermediateCertificates(){return allIntermediateCertificates;}
-    public HashMap<String, X509Certificate> getClientCertificates(){return allClientCertificates;}
-
     public void parse(File tarFile) throws IOException, BadFormatForTARException{
+        if (useIndex) {
+            parseWithIndex(tarFile);
+            checkInfoCSVPresent();
+            return;
+        }
+
         /********************************************************************
          ** Wir lesen nun einmal durch das TAR Archiv (ohne es zu entpacken)*
          ********************************************************************/
-        try(TarArchiveInputStream myTarFile = new TarArchiveInputStream(new FileInputStream(tarFile))) {
+        try(TarArchiveInputStream myTarFile = new TarArchiveInputStream(new FileInputStream(tarFile));
+            ParallelLogMessageDecoder decoder = new ParallelLogMessageDecoder(threads)) {
             TarArchiveEntry entry;
             String individualFileName;
-            int offset;
 
             while ((entry = myTarFile.getNextTarEntry()) != null) {
                 /* Get the name of the file */
@@ -75,90 +91,292 @@ public class LogMessageArchiveImplementation implements LogMessageArchive {
                 individualFileName = entry.getName();
 
                 /* Get Size of the file and create a byte array for the size */
-                byte[] content = new byte[(int) entry.getSize()];
-                offset = 0;
-
-                myTarFile.read(content, offset, content.length - offset);
+                byte[] content = readEntry(myTarFile, entry);
 
                 logger.debug("Will now process {}", individualFileName); //NON-NLS
 
-                if (individualFileName.matches("^(Gent_|Unixt_|Utc_).+_Sig-\\d+_Log-.+log") ) {//NON-NLS
-                    try {
-                        all_log_messages.add(LogMessageFactory.createLogMessage(individualFileName, content));
-                    }
-                    catch ( BadFormatForLogMessageException e) {
-                        this.all_errors.add(new BadFormatForLogMessageError("Fehler bei der Erstellung des TAR Archivs",e));
+                LogMessageFileName parsedFileName = LogMessageFileName.parse(individualFileName);
+                if (parsedFileName != null) {
+                    decoder.submit(parsedFileName, content);
+                    // Begrenzt die Anzahl der gelesenen, aber noch nicht übernommenen Einträge
+                    while (decoder.pending() > threads * PENDING_ENTRIES_PER_THREAD) {
+                        takeDecodedLogMessage(decoder);
                     }
                 }
-
-                /**************
-                 ** info.csv *
-                 *************/
-                else if (individualFileName.matches("^info.csv")) {//NON-NLS
-                    logger.debug("found info.csv. Start processing now.");//NON-NLS
-                    infoCSVPresent = true;
-                    String info_string = new String(content, StandardCharsets.UTF_8);
-                    logger.debug("Description in info.csv: {}", StringUtils.substringsBetween(info_string, "description:\",", "," )[0]);//NON-NLS
-                    logger.debug("Manufacturer in info.csv: {}", StringUtils.substringsBetween(info_string, "manufacturer:\",", "," )[0]);//NON-NLS
-                    logger.debug("Version in info.csv: {}", StringUtils.substringAfter(info_string, "\"version:\"," ));//NON-NLS
+                else {
+                    processNonLogMessageEntry(individualFileName, content);
                 }
-                /*********************
-                 ** CVC Certificate *
-                 ********************/
-                else if (individualFileName.contains("CVC")) {
-                    logger.debug("{} seems to be a CVC certificate. Will process it now.", individualFileName);//NON-NLS
-                    //FIXME: Not supported
+            }
+
+            while (decoder.pending() > 0) {
+                takeDecodedLogMessage(decoder);
+            }
+        }
+        catch (FileNotFoundException e) {
+            this.all_errors.add(new BadFormatForLogMessageError("Fehler bei der Erstellung des TAR Archivs",e));
+        }
 
+        checkInfoCSVPresent();
+    }
+
+    /**
+     * Liest das Archiv über einen {@link MappedTarReader}. Passt der Index neben dem Archiv und beschreibt er genau die
+     * Einträge aus den TAR Headern (siehe {@link TarIndex#matches(List)}), werden die LogMessages erst dekodiert,
+     * wenn sie abgefragt werden; {@link #getLogMessages(BigInteger)} und {@link #getLogMessage(String)} dekodieren
+     * anhand der Metadaten im Index nur die gesuchten Einträge.
+     * <p>
+     * Andernfalls wird das Archiv vollständig dekodiert, indiziert und der Index anschließend geschrieben. Die
+     * dekodierten TransactionLogMessages werden zugleich in einem {@link TransactionIndex} gesammelt, der neben den
+     * Index geschrieben wird, falls dort noch kein passender liegt.
+     */
+    void parseWithIndex(File tarFile) throws IOException, BadFormatForTARException {
+        if (!tarFile.isFile()) {
+            this.all_errors.add(new BadFormatForLogMessageError("Fehler bei der Erstellung des TAR Archivs", new FileNotFoundException(tarFile.getPath())));
+            return;
+        }
+
+        TarIndex existingIndex = TarIndex.load(tarFile);
+        MappedTarReader reader = new MappedTarReader(tarFile);
+        if (existingIndex != null && !existingIndex.matches(reader.getEntries())) {
+            logger.debug("Index for {} does not match the archive", tarFile.getName()); //NON-NLS
+            existingIndex = null;
+        }
+
+        if (existingIndex != null) {
+            logger.debug("Using index for {}", tarFile.getName()); //NON-NLS
+            List<MappedTarReader.Entry> entries = reader.getEntries();
+            List<Integer> logMessageEntries = new ArrayList<>();
+            for (int i = 0; i < entries.size(); i++) {
+                if (entries.get(i).getLogMessageFileName() != null) {
+                    logMessageEntries.add(i);
+                } else {
+                    processNonLogMessageEntry(entries.get(i).getName(), reader.readContent(entries.get(i)));
                 }
-                /**********************
-                 ** X.509 Certificate *
-                 **********************/
-                else if (individualFileName.contains("X509")) {//NON-NLS
-                    logger.debug("{} seems to be an X.509 certificate. Will process it now.", individualFileName);//NON-NLS
-                    try {
-                        X509Certificate cer = CertificateHelper.loadCertificate(content);
-                        // Prüfe die Eigenschaften des Zertifikats gegen den Dateinamen
-                        boolean[] keyUsage = cer.getKeyUsage();
-                        if (keyUsage == null || !keyUsage[5]) {
-                            allClientCertificates.put(individualFileName.split("_")[0].toUpperCase(), cer);
-                        } else {
-                            allIntermediateCertificates.put(individualFileName.split("_")[0].toUpperCase(), cer);
-                        }
-                    } catch (CertificateLoadException e) {
-                        //TODO: Throw error
-                        logger.error("Error loading certificate {}", individualFileName);//NON-NLS
+            }
+            this.index = existingIndex;
+            this.indexedTarFile = tarFile;
+            this.reader = reader;
+            this.undecodedEntries = logMessageEntries;
+            return;
+        }
+
+        List<MappedTarReader.Entry> entries = reader.getEntries();
+        TarIndex.Entry[] indexEntries = new TarIndex.Entry[entries.size()];
+        TransactionIndex.Builder transactions = new TransactionIndex.Builder();
+        ArrayDeque<Integer> submitted = new ArrayDeque<>();
+
+        try (ParallelLogMessageDecoder decoder = new ParallelLogMessageDecoder(threads)) {
+            for (int i = 0; i < entries.size(); i++) {
+                MappedTarReader.Entry entry = entries.get(i);
+
+                if (entry.getLogMessageFileName() != null) {
+                    decoder.submit(entry.getLogMessageFileName(), reader.readContent(entry));
+                    submitted.add(i);
+                    while (decoder.pending() > threads * PENDING_ENTRIES_PER_THREAD) {
+                        indexDecodedLogMessage(decoder, entries.get(submitted.peek()), indexEntries, transactions, submitted.poll());
                     }
                 } else {
-                    //TODO:throw error
-                    logger.error("{} should not be in the TAR file. Will be ignored.", individualFileName);//NON-NLS
+                    processNonLogMessageEntry(entry.getName(), reader.readContent(entry));
+                    indexEntries[i] = TarIndex.Entry.forFile(entry.getName(), entry.getOffset(), entry.getLength());
                 }
             }
+
+            while (decoder.pending() > 0) {
+                indexDecodedLogMessage(decoder, entries.get(submitted.peek()), indexEntries, transactions, submitted.poll());
+            }
         }
-        catch (FileNotFoundException e) {
+
+        index = TarIndex.create(tarFile, Arrays.asList(indexEntries));
+        try {
+            index.write(tarFile);
+        } catch (IOException e) {
+            logger.warn("Could not write index for {}: {}", tarFile.getName(), e.getMessage()); //NON-NLS
+        }
+
+        writeTransactionIndex(tarFile, transactions);
+    }
+
+    void writeTransactionIndex(File tarFile, TransactionIndex.Builder transactions) {
+        transactionIndex = transactions.build(index);
+        if (!TransactionIndex.isCurrent(tarFile, index)) {
+            try {
+                transactionIndex.write(tarFile);
+            } catch (IOException e) {
+                logger.warn("Could not write transaction index for {}: {}", tarFile.getName(), e.getMessage()); //NON-NLS
+            }
+        }
+    }
+
+    /**
+     * Dekodiert die LogMessages, deren Dekodierung bei vorhandenem Index aufgeschoben wurde. Fehler beim Dekodieren
+     * werden dabei wie beim ersten Lesen gesammelt.
+     */
+    synchronized void decodePendingLogMessages() {
+        if (undecodedEntries == null) {
+            return;
+        }
+
+        List<MappedTarReader.Entry> entries = reader.getEntries();
+        TransactionIndex.Builder transactions = new TransactionIndex.Builder();
+        ArrayDeque<MappedTarReader.Entry> submitted = new ArrayDeque<>();
+        try (ParallelLogMessageDecoder decoder = new ParallelLogMessageDecoder(threads)) {
+            for (int i : undecodedEntries) {
+                MappedTarReader.Entry entry = entries.get(i);
+                decoder.submit(entry.getLogMessageFileName(), reader.readContent(entry));
+                submitted.add(entry);
+                while (decoder.pending() > threads * PENDING_ENTRIES_PER_THREAD) {
+                    addToTransactionIndex(takeDecodedLogMessage(decoder), submitted.poll(), transactions);
+                }
+            }
+            while (decoder.pending() > 0) {
+                addToTransactionIndex(takeDecodedLogMessage(decoder), submitted.poll(), transactions);
+            }
+        }
+        undecodedEntries = null;
+        reader = null;
+
+        if (transactionIndex == null) {
+            writeTransactionIndex(indexedTarFile, transactions);
+        }
+    }
+
+    static void addToTransactionIndex(LogMessage message, MappedTarReader.Entry entry, TransactionIndex.Builder transactions) {
+        if (message != null) {
+            transactions.add(message, entry.getOffset(), entry.getLength());
+        }
+    }
+
+    void indexDecodedLogMessage(ParallelLogMessageDecoder decoder, MappedTarReader.Entry entry, TarIndex.Entry[] indexEntries, TransactionIndex.Builder transactions, int position) {
+        LogMessage message = takeDecodedLogMessage(decoder);
+        indexEntries[position] = message == null
+                ? TarIndex.Entry.forUndecodableLogMessage(entry.getName(), entry.getOffset(), entry.getLength())
+                : TarIndex.Entry.forLogMessage(entry.getOffset(), entry.getLength(), message);
+        addToTransactionIndex(message, entry, transactions);
+    }
+
+    /**
+     * @return die dekodierte LogMessage oder null, falls der Eintrag nicht dekodiert werden konnte.
+     */
+    LogMessage takeDecodedLogMessage(ParallelLogMessageDecoder decoder) {
+        try {
+            LogMessage message = decoder.take();
+            all_log_messages.add(message);
+            return message;
+        }
+        catch ( BadFormatForLogMessageException e) {
             this.all_errors.add(new BadFormatForLogMessageError("Fehler bei der Erstellung des TAR Archivs",e));
+            return null;
         }
+    }
+
+    /**
+     * @return den Index des Archivs, falls es mit useIndex gelesen wurde, sonst null.
+     */
+    public TarIndex getIndex() {
+        return index;
+    }
 
-        if (!infoCSVPresent){throw new BadFormatForTARException(properties.getString("de.konfidas.ttc.tars.infoCSVNotFound"),null);}
+    /**
+     * @return den Index der TransactionLogMessages, falls das Archiv mit useIndex gelesen wurde, sonst null.
+     */
+    public synchronized TransactionIndex getTransactionIndex() {
+        if (transactionIndex == null && undecodedEntries != null) {
+            transactionIndex = TransactionIndex.load(indexedTarFile);
+            if (transactionIndex == null) {
+                decodePendingLogMessages();
+            }
+        }
+        return transactionIndex;
     }
 
     public ArrayList<LogMessage> getLogMessages(){
+        decodePendingLogMessages();
         return this.all_log_messages;
     }
 
     @Override
-    public String getFileName() {
-        return filename;
+    public ArrayList<TtcError> getAllErrors() {
+        decodePendingLogMessages();
+        return super.getAllErrors();
+    }
+
+    /**
+     * Sucht die LogMessages mit dem gegebenen Signaturzähler. Wurde das Archiv über einen vorhandenen Index gelesen und
+     * sind die LogMessages noch nicht dekodiert, werden nur die Einträge dekodiert, die laut Index passen.
+     *
+     * @return die LogMessages mit diesem Signaturzähler, bei mehreren TSEs im Archiv gegebenenfalls mehrere.
+     */
+    public synchronized List<LogMessage> getLogMessages(BigInteger signatureCounter) {
+        ArrayList<LogMessage> result = new ArrayList<>(1);
+        if (undecodedEntries == null) {
+            for (LogMessage msg : all_log_messages) {
+                if (signatureCounter.equals(msg.getSignatureCounter())) {
+                    result.add(msg);
+                }
+            }
+            return result;
+        }
+
+        for (int i : undecodedEntries) {
+            if (signatureCounter.equals(index.getEntries().get(i).getSignatureCounter())) {
+                addIfDecodable(result, i);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sucht die LogMessage mit dem gegebenen Dateinamen, bei vorhandenem Index ohne die übrigen Einträge zu dekodieren.
+     *
+     * @return die LogMessage oder null, falls es sie nicht gibt oder sie nicht dekodiert werden kann.
+     */
+    public synchronized LogMessage getLogMessage(String fileName) {
+        if (undecodedEntries == null) {
+            for (LogMessage msg : all_log_messages) {
+                if (fileName.equals(msg.getFileName())) {
+                    return msg;
+                }
+            }
+            return null;
+        }
+
+        ArrayList<LogMessage> result = new ArrayList<>(1);
+        for (int i : undecodedEntries) {
+            if (fileName.equals(index.getEntries().get(i).getName())) {
+                addIfDecodable(result, i);
+                break;
+            }
+        }
+        return result.isEmpty() ? null : result.get(0);
     }
 
-    ArrayList<LogMessage> sortedLogMessages;
+    void addIfDecodable(List<LogMessage> result, int position) {
+        MappedTarReader.Entry entry = reader.getEntries().get(position);
+        try {
+            result.add(reader.readLogMessage(entry));
+        } catch (BadFormatForLogMessageException e) {
+            logger.debug("Failed to decode {}", entry.getName(), e);//NON-NLS
+        }
+    }
+
+    volatile ArrayList<LogMessage> sortedLogMessages;
 
+    /**
+     * Die sortierte Liste wird beim ersten Aufruf genau einmal aufgebaut, auch wenn mehrere Threads gleichzeitig lesen.
+     */
     public ArrayList<LogMessage> getSortedLogMessages(){
-        if(null == sortedLogMessages){
-            sortedLogMessages = new ArrayList<>(getLogMessages());
-            sortedLogMessages.sort(new LogMessageImplementation.SignatureCounterComparator());
+        ArrayList<LogMessage> result = sortedLogMessages;
+        if(null == result){
+            synchronized (this){
+                result = sortedLogMessages;
+                if(null == result){
+                    result = LogMessageSorter.sort(getLogMessages());
+                    sortedLogMessages = result;
+                }
+            }
         }
 
-        return sortedLogMessages;
+        return result;
     }
 
 }
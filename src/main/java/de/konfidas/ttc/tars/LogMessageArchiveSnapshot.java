@@ -0,0 +1,95 @@
+package de.konfidas.ttc.tars;
+
+import de.konfidas.ttc.errors.TtcError;
+import de.konfidas.ttc.messages.LogMessage;
+
+import java.security.cert.X509Certificate;
+import java.util.*;
+
+/**
+ * Eine unveränderliche Kopie eines LogMessageArchive, die von mehreren Threads gleichzeitig gelesen werden kann.
+ *
+ * Beim Erzeugen werden die LogMessages in der Reihenfolge des Archivs und sortiert, die Zertifikate und die Fehler des
+ * Archivs einmal im aufrufenden Thread abgefragt und in unveränderliche Collections übernommen. Lazy Getter des Archivs
+ * werden so nicht von mehreren Threads gleichzeitig aufgerufen. Beide Listen verweisen auf dieselben LogMessages, die
+ * dabei alle gleichzeitig im Speicher liegen. Für ein streamendes Archiv ist die Kopie daher nicht gedacht.
+ */
+public class LogMessageArchiveSnapshot implements LogMessageArchive {
+    final String fileName;
+    final Map<String, X509Certificate> intermediateCertificates;
+    final Map<String, X509Certificate> clientCertificates;
+    final List<LogMessage> logMessages;
+    final List<LogMessage> sortedLogMessages;
+    final List<TtcError> errors;
+
+    LogMessageArchiveSnapshot(LogMessageArchive tar) {
+        this.fileName = tar.getFileName();
+        this.intermediateCertificates = copyOf(tar.getIntermediateCertificates());
+        this.clientCertificates = copyOf(tar.getClientCertificates());
+        this.logMessages = viewOf(tar.getLogMessages());
+        this.sortedLogMessages = viewOf(tar.getSortedLogMessages());
+        // Ein streamendes Archiv sammelt Dekodierfehler erst beim Durchlauf.
+        this.errors = copyOf(tar.getAllErrors());
+    }
+
+    static Map<String, X509Certificate> copyOf(Map<? extends String, ? extends X509Certificate> map) {
+        return map == null ? Collections.emptyMap() : Collections.unmodifiableMap(new HashMap<>(map));
+    }
+
+    /**
+     * @return eine unveränderliche Sicht auf eine Liste, die das Archiv nicht mehr ändert, sonst eine Kopie.
+     */
+    static <T> List<T> viewOf(Collection<? extends T> collection) {
+        if (collection instanceof List) {
+            return Collections.unmodifiableList((List<? extends T>) collection);
+        }
+        return copyOf(collection);
+    }
+
+    static <T> List<T> copyOf(Collection<? extends T> collection) {
+        return collection == null ? Collections.emptyList() : Collections.unmodifiableList(new ArrayList<>(collection));
+    }
+
+    /**
+     * @return das Archiv selbst, falls es bereits eine Kopie ist, sonst eine neue Kopie.
+     */
+    public static LogMessageArchiveSnapshot of(LogMessageArchive tar) {
+        if (tar instanceof LogMessageArchiveSnapshot) {
+            return (LogMessageArchiveSnapshot) tar;
+        }
+        return new LogMessageArchiveSnapshot(tar);
+    }
+
+    @Override
+    public Map<String, X509Certificate> getIntermediateCertificates() {
+        return intermediateCertificates;
+    }
+
+    @Override
+    public Map<String, X509Certificate> getClientCertificates() {
+        return clientCertificates;
+    }
+
+    @Override
+    public Collection<LogMessage> getLogMessages() {
+        return logMessages;
+    }
+
+    @Override
+    public String getFileName() {
+        return fileName;
+    }
+
+    /**
+     * @return eine neue Liste mit den Fehlern des Archivs zum Zeitpunkt der Kopie.
+     */
+    @Override
+    public ArrayList<TtcError> getAllErrors() {
+        return new ArrayList<>(errors);
+    }
+
+    @Override
+    public Collection<LogMessage> getSortedLogMessages() {
+        return sortedLogMessages;
+    }
+}
@@ -0,0 +1,238 @@
+package de.konfidas.ttc.tars;
+
+import de.konfidas.ttc.messages.LogMessage;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Sortiert LogMessages aufsteigend nach Signaturzähler, bei gleichem Signaturzähler nach Seriennummer (vorzeichenlos
+ * byteweise verglichen) und danach in der Reihenfolge der Eingabe. Die Reihenfolge ist damit vollständig bestimmt.
+ *
+ * Signaturzähler und Seriennummer werden einmal je LogMessage gelesen. Passen Signaturzähler, der Rang der
+ * Seriennummer und die Position zusammen in 63 Bit, wird jede LogMessage auf einen long Schlüssel abgebildet und es
+ * werden nur noch diese Schlüssel sortiert. Da Exporte meist schon fast sortiert sind, werden zuerst die aufsteigenden
+ * Läufe gesucht: ein einzelner Lauf ist bereits sortiert, wenige Läufe werden paarweise an Ort und Stelle gemischt,
+ * erst bei vielen Läufen wird {@link Arrays#sort(long[])} verwendet. Signaturzähler mit mehr als 63 Bit oder negative
+ * Signaturzähler werden mit BigInteger verglichen.
+ */
+public final class LogMessageSorter {
+    final static int MAX_RUNS = 64;
+    final static int MAX_LINEAR_SERIALS = 8;
+
+    private LogMessageSorter() {
+    }
+
+    public static ArrayList<LogMessage> sort(Collection<? extends LogMessage> messages) {
+        LogMessage[] input = messages.toArray(new LogMessage[0]);
+        int n = input.length;
+        if (n < 2) {
+            return new ArrayList<>(Arrays.asList(input));
+        }
+
+        // Seriennummer und Signaturzähler werden in einem Durchlauf gelesen, jede LogMessage wird nur einmal besucht.
+        SerialIds serialIds = new SerialIds();
+        int[] ids = new int[n];
+        long[] counters = new long[n];
+        long maxCounter = 0;
+        boolean fitsInLong = true;
+        for (int i = 0; i < n; i++) {
+            LogMessage msg = input[i];
+            ids[i] = serialIds.idOf(msg.getSerialNumber());
+            if (fitsInLong) {
+                BigInteger counter = msg.getSignatureCounter();
+                if (counter.signum() < 0 || counter.bitLength() > 63) {
+                    fitsInLong = false;
+                } else {
+                    counters[i] = counter.longValue();
+                    maxCounter = Math.max(maxCounter, counters[i]);
+                }
+            }
+        }
+
+        int[] rankOfId = serialIds.ranks();
+        int rankBits = bitLength(rankOfId.length - 1);
+        int indexBits = bitLength(n - 1);
+        if (!fitsInLong || (64 - Long.numberOfLeadingZeros(maxCounter)) + rankBits + indexBits > 63) {
+            int[] serialRanks = new int[n];
+            for (int i = 0; i < n; i++) {
+                serialRanks[i] = rankOfId[ids[i]];
+            }
+            return sortWithBigIntegers(input, serialRanks);
+        }
+
+        long[] keys = new long[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = (counters[i] << (rankBits + indexBits)) | ((long) rankOfId[ids[i]] << indexBits) | i;
+        }
+        sortKeys(keys);
+
+        long indexMask = (1L << indexBits) - 1;
+        ArrayList<LogMessage> result = new ArrayList<>(n);
+        for (long key : keys) {
+            result.add(input[(int) (key & indexMask)]);
+        }
+        return result;
+    }
+
+    /**
+     * Vergibt fortlaufende Nummern an die Seriennummern in der Reihenfolge ihres ersten Auftretens.
+     */
+    static class SerialIds {
+        final HashMap<ByteBuffer, Integer> ids = new HashMap<>();
+        final ArrayList<byte[]> serials = new ArrayList<>();
+
+        int idOf(byte[] serial) {
+            if (serial == null) {
+                serial = new byte[0];
+            }
+            // Ein Archiv enthält meist nur wenige TSEs, dann ist die lineare Suche schneller als die HashMap.
+            if (serials.size() <= MAX_LINEAR_SERIALS) {
+                for (int j = 0; j < serials.size(); j++) {
+                    if (Arrays.equals(serials.get(j), serial)) {
+                        return j;
+                    }
+                }
+            } else {
+                Integer id = ids.get(ByteBuffer.wrap(serial));
+                if (id != null) {
+                    return id;
+                }
+            }
+            int id = serials.size();
+            serials.add(serial);
+            ids.put(ByteBuffer.wrap(serial), id);
+            return id;
+        }
+
+        /**
+         * @return für jede Nummer den Rang der Seriennummer unter allen Seriennummern, vorzeichenlos byteweise verglichen.
+         */
+        int[] ranks() {
+            Integer[] byRank = new Integer[serials.size()];
+            for (int id = 0; id < byRank.length; id++) {
+                byRank[id] = id;
+            }
+            Arrays.sort(byRank, (a, b) -> Arrays.compareUnsigned(serials.get(a), serials.get(b)));
+            int[] rankOfId = new int[byRank.length];
+            for (int rank = 0; rank < byRank.length; rank++) {
+                rankOfId[byRank[rank]] = rank;
+            }
+            return rankOfId;
+        }
+    }
+
+    static ArrayList<LogMessage> sortWithBigIntegers(LogMessage[] input, int[] serialRanks) {
+        Integer[] order = new Integer[input.length];
+        BigInteger[] counters = new BigInteger[input.length];
+        for (int i = 0; i < input.length; i++) {
+            order[i] = i;
+            counters[i] = input[i].getSignatureCounter();
+        }
+        // Arrays.sort ist für Objekte stabil, bei gleichen Schlüsseln bleibt die Reihenfolge der Eingabe erhalten.
+        Arrays.sort(order, Comparator.<Integer, BigInteger>comparing(i -> counters[i]).thenComparingInt(i -> serialRanks[i]));
+
+        ArrayList<LogMessage> result = new ArrayList<>(input.length);
+        for (int i : order) {
+            result.add(input[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Sortiert die Schlüssel aufsteigend. Die Schlüssel sind paarweise verschieden.
+     *
+     * Benachbarte Läufe werden wie bei TimSort an Ort und Stelle gemischt: per binärer Suche werden die Anfänge und
+     * Enden übersprungen, die bereits an der richtigen Stelle stehen, und nur der überlappende Rest wird über einen
+     * Puffer gemischt. Bei fast sortierten Exporten sind diese Reste kurz, die Schlüssel werden dann kaum kopiert.
+     */
+    static void sortKeys(long[] keys) {
+        int[] runs = findRuns(keys);
+        if (runs == null) {
+            Arrays.sort(keys);
+            return;
+        }
+
+        int runCount = runs.length - 1;
+        long[][] buffer = new long[1][];
+        while (runCount > 1) {
+            int merged = 0;
+            for (int r = 0; r < runCount; r += 2) {
+                if (r + 1 < runCount) {
+                    mergeInPlace(keys, runs[r], runs[r + 1], runs[r + 2], buffer);
+                }
+                runs[merged++] = runs[r];
+            }
+            runs[merged] = keys.length;
+            runCount = merged;
+        }
+    }
+
+    /**
+     * Mischt die aufsteigenden Läufe [from, middle) und [middle, to).
+     *
+     * @param buffer enthält den Puffer, der zwischen den Aufrufen wiederverwendet und bei Bedarf vergrößert wird.
+     */
+    static void mergeInPlace(long[] keys, int from, int middle, int to, long[][] buffer) {
+        if (keys[middle - 1] < keys[middle]) {
+            return;
+        }
+        // Die Schlüssel links vor dem ersten Schlüssel des rechten Laufs und rechts nach dem letzten Schlüssel des
+        // linken Laufs stehen bereits richtig. Da die Schlüssel verschieden sind, liefert binarySearch die Einfügestelle.
+        int start = -Arrays.binarySearch(keys, from, middle, keys[middle]) - 1;
+        int end = -Arrays.binarySearch(keys, middle, to, keys[middle - 1]) - 1;
+
+        int left = middle - start;
+        int right = end - middle;
+        int size = Math.min(left, right);
+        if (buffer[0] == null || buffer[0].length < size) {
+            buffer[0] = new long[Math.max(size, buffer[0] == null ? 0 : buffer[0].length * 2)];
+        }
+        long[] tmp = buffer[0];
+
+        if (left <= right) {
+            System.arraycopy(keys, start, tmp, 0, left);
+            int i = 0;
+            int j = middle;
+            int k = start;
+            while (i < left && j < end) {
+                keys[k++] = tmp[i] < keys[j] ? tmp[i++] : keys[j++];
+            }
+            System.arraycopy(tmp, i, keys, k, left - i);
+        } else {
+            System.arraycopy(keys, middle, tmp, 0, right);
+            int i = middle - 1;
+            int j = right - 1;
+            int k = end - 1;
+            while (i >= start && j >= 0) {
+                keys[k--] = keys[i] > tmp[j] ? keys[i--] : tmp[j--];
+            }
+            System.arraycopy(tmp, 0, keys, start, j + 1);
+        }
+    }
+
+    /**
+     * @return die Anfänge der aufsteigenden Läufe, gefolgt von der Länge des Arrays, oder null, falls es mehr als
+     * {@value #MAX_RUNS} Läufe sind.
+     */
+    static int[] findRuns(long[] keys) {
+        int[] runs = new int[MAX_RUNS + 1];
+        int count = 0;
+        runs[count++] = 0;
+        for (int i = 1; i < keys.length; i++) {
+            if (keys[i] < keys[i - 1]) {
+                if (count == MAX_RUNS) {
+                    return null;
+                }
+                runs[count++] = i;
+            }
+        }
+        runs[count] = keys.length;
+        return Arrays.copyOf(runs, count + 1);
+    }
+
+    static int bitLength(int value) {
+        return 32 - Integer.numberOfLeadingZeros(value);
+    }
+}
@@ -0,0 +1,357 @@
+package de.konfidas.ttc.tars;
+
+import de.konfidas.ttc.exceptions.BadFormatForLogMessageException;
+import de.konfidas.ttc.exceptions.BadFormatForTARException;
+import de.konfidas.ttc.messages.LogMessage;
+import de.konfidas.ttc.messages.LogMessageFactory;
+import de.konfidas.ttc.messages.LogMessageFileName;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Liest ein TAR Archiv über {@link FileChannel#map}, ohne die Einträge zu kopieren.
+ *
+ * Beim Erzeugen werden einmal alle Header gelesen und ein Index der Einträge (Name, Offset und Länge des Inhalts)
+ * aufgebaut. Danach liefert {@link #getContent(Entry)} den Inhalt eines Eintrags als schreibgeschützten
+ * {@link ByteBuffer}, der direkt auf die gemappte Datei zeigt. LogMessages können über ihren Signaturzähler
+ * (Sig-N im Dateinamen) ohne erneutes Lesen des Archivs gefunden werden.
+ *
+ * Unterstützt werden ustar Archive, GNU lange Dateinamen und pax Header mit path und size. Die Datei wird in Segmenten
+ * von höchstens 1 GiB gemappt. Einträge, die über eine Segmentgrenze reichen, werden einzeln gemappt.
+ */
+public class MappedTarReader {
+    final static int BLOCK_SIZE = 512;
+    final static long DEFAULT_SEGMENT_SIZE = 1L << 30;
+
+    final File tarFile;
+    final long segmentSize;
+    final MappedByteBuffer[] segments;
+    final ArrayList<Entry> entries = new ArrayList<>();
+    final HashMap<String, Entry> entriesByName = new HashMap<>();
+    final HashMap<BigInteger, List<Entry>> entriesBySignatureCounter = new HashMap<>();
+
+    public MappedTarReader(File tarFile) throws IOException, BadFormatForTARException {
+        this(tarFile, DEFAULT_SEGMENT_SIZE);
+    }
+
+    MappedTarReader(File tarFile, long segmentSize) throws IOException, BadFormatForTARException {
+        if (segmentSize < BLOCK_SIZE || segmentSize % BLOCK_SIZE != 0) {
+            throw new IllegalArgumentException("segment size must be a positive multiple of " + BLOCK_SIZE);//NON-NLS
+        }
+        this.tarFile = tarFile;
+        this.segmentSize = segmentSize;
+
+        // Die Mappings bleiben auch nach dem Schließen des Channels gültig.
+        try (FileChannel channel = FileChannel.open(tarFile.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            segments = new MappedByteBuffer[(int) ((size + segmentSize - 1) / segmentSize)];
+            for (int i = 0; i < segments.length; i++) {
+                long position = i * segmentSize;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(segmentSize, size - position));
+            }
+            index(channel, size);
+        }
+    }
+
+    void index(FileChannel channel, long size) throws IOException, BadFormatForTARException {
+        long position = 0;
+        String longName = null;
+        Map<String, String> paxHeaders = Collections.emptyMap();
+
+        while (position + BLOCK_SIZE <= size) {
+            byte[] header = new byte[BLOCK_SIZE];
+            read(position, header);
+            if (isZeroBlock(header)) {
+                break;
+            }
+            verifyChecksum(header, position);
+
+            long length = paxHeaders.containsKey("size") ? parsePaxSize(paxHeaders.get("size"), position) : parseNumber(header, 124, 12, position);//NON-NLS
+            long contentOffset = position + BLOCK_SIZE;
+            if (length < 0 || contentOffset + length > size) {
+                throw new BadFormatForTARException(String.format(AbstractLogMessageArchive.properties.getString("de.konfidas.ttc.tars.entryExceedsFile"), position, tarFile.getName()), null);
+            }
+            char type = (char) header[156];
+
+            if (type == 'L') {
+                longName = trimNul(new String(readContent(contentOffset, length), StandardCharsets.UTF_8));
+            } else if (type == 'x') {
+                paxHeaders = parsePaxHeaders(readContent(contentOffset, length), position);
+            } else {
+                if (type == '0' || type == '\0' || type == '7') {
+                    String name = longName != null ? longName : paxHeaders.getOrDefault("path", headerName(header));//NON-NLS
+                    addEntry(new Entry(name, position, contentOffset, length, mapIfStraddling(channel, contentOffset, length)));
+                }
+                // Verzeichnisse, Links und globale pax Header werden übersprungen. Ein langer Name oder ein pax Header
+                // gilt nur für den folgenden Eintrag.
+                longName = null;
+                paxHeaders = Collections.emptyMap();
+            }
+
+            position = contentOffset + (length + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE;
+        }
+    }
+
+    void addEntry(Entry entry) {
+        entries.add(entry);
+        entriesByName.put(entry.name, entry);
+
+        // Der Dateiname wird nur hier zerlegt, Leser und Decoder verwenden danach das Ergebnis am Eintrag.
+        entry.logMessageFileName = LogMessageFileName.parse(entry.name);
+        if (entry.logMessageFileName != null) {
+            entriesBySignatureCounter.computeIfAbsent(entry.logMessageFileName.getSignatureCounter(), k -> new ArrayList<>(1)).add(entry);
+        }
+    }
+
+    ByteBuffer mapIfStraddling(FileChannel channel, long offset, long length) throws IOException {
+        if (length == 0 || offset / segmentSize == (offset + length - 1) / segmentSize) {
+            return null;
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, offset, length);
+    }
+
+    /**
+     * @return alle regulären Dateien des Archivs in der Reihenfolge des Archivs.
+     */
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    /**
+     * @return den Eintrag mit dem gegebenen Namen oder null.
+     */
+    public Entry getEntry(String name) {
+        return entriesByName.get(name);
+    }
+
+    /**
+     * @return die LogMessage Einträge mit dem gegebenen Signaturzähler. Enthält das Archiv mehrere TSEs, können das
+     * mehrere Einträge sein.
+     */
+    public List<Entry> getLogMessageEntries(BigInteger signatureCounter) {
+        return entriesBySignatureCounter.getOrDefault(signatureCounter, Collections.emptyList());
+    }
+
+    /**
+     * @return den Inhalt des Eintrags als schreibgeschützte Sicht auf die gemappte Datei. Position 0 ist das erste Byte
+     * des Inhalts, limit() seine Länge.
+     */
+    public ByteBuffer getContent(Entry entry) {
+        if (entry.ownMapping != null) {
+            return entry.ownMapping.duplicate();
+        }
+        if (entry.length == 0) {
+            return ByteBuffer.allocate(0).asReadOnlyBuffer();
+        }
+        ByteBuffer segment = segments[(int) (entry.offset / segmentSize)].duplicate();
+        int start = (int) (entry.offset % segmentSize);
+        segment.position(start).limit(start + (int) entry.length);
+        return segment.slice();
+    }
+
+    /**
+     * Dekodiert den Eintrag als LogMessage. Der Inhalt wird dazu einmal kopiert, da der ASN.1 Parser ein byte[] benötigt.
+     */
+    public LogMessage readLogMessage(Entry entry) throws BadFormatForLogMessageException {
+        if (entry.logMessageFileName == null) {
+            return LogMessageFactory.createLogMessage(entry.name, readContent(entry));
+        }
+        return LogMessageFactory.createLogMessage(entry.logMessageFileName, readContent(entry));
+    }
+
+    byte[] readContent(Entry entry) {
+        ByteBuffer content = getContent(entry);
+        byte[] result = new byte[content.remaining()];
+        content.get(result);
+        return result;
+    }
+
+    byte[] readContent(long offset, long length) {
+        byte[] result = new byte[(int) length];
+        read(offset, result);
+        return result;
+    }
+
+    void read(long offset, byte[] target) {
+        int done = 0;
+        while (done < target.length) {
+            long position = offset + done;
+            ByteBuffer segment = segments[(int) (position / segmentSize)].duplicate();
+            segment.position((int) (position % segmentSize));
+            int n = Math.min(segment.remaining(), target.length - done);
+            segment.get(target, done, n);
+            done += n;
+        }
+    }
+
+    static boolean isZeroBlock(byte[] header) {
+        for (byte b : header) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    void verifyChecksum(byte[] header, long position) throws BadFormatForTARException {
+        long expected = parseNumber(header, 148, 8, position);
+        long unsigned = 0;
+        long signed = 0;
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            byte b = (i >= 148 && i < 156) ? (byte) ' ' : header[i];
+            unsigned += b & 0xff;
+            signed += b;
+        }
+        // Einige ältere Implementierungen berechnen die Prüfsumme über vorzeichenbehaftete Bytes.
+        if (expected != unsigned && expected != signed) {
+            throw new BadFormatForTARException(String.format(AbstractLogMessageArchive.properties.getString("de.konfidas.ttc.tars.badHeaderChecksum"), position, tarFile.getName()), null);
+        }
+    }
+
+    /**
+     * Liest ein oktales, mit NUL oder Leerzeichen abgeschlossenes Feld. Ist das höchste Bit des ersten Bytes gesetzt,
+     * ist der Wert nach GNU Konvention binär (base-256) kodiert.
+     */
+    long parseNumber(byte[] header, int offset, int length, long position) throws BadFormatForTARException {
+        if ((header[offset] & 0x80) != 0) {
+            long value = header[offset] & 0x7f;
+            for (int i = 1; i < length; i++) {
+                value = (value << 8) | (header[offset + i] & 0xff);
+            }
+            return value;
+        }
+        long value = 0;
+        int i = offset;
+        int end = offset + length;
+        while (i < end && header[i] == ' ') {
+            i++;
+        }
+        for (; i < end && header[i] != 0 && header[i] != ' '; i++) {
+            if (header[i] < '0' || header[i] > '7') {
+                throw new BadFormatForTARException(String.format(AbstractLogMessageArchive.properties.getString("de.konfidas.ttc.tars.badHeaderNumber"), position, tarFile.getName()), null);
+            }
+            value = (value << 3) + (header[i] - '0');
+        }
+        return value;
+    }
+
+    long parsePaxSize(String value, long position) throws BadFormatForTARException {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new BadFormatForTARException(String.format(AbstractLogMessageArchive.properties.getString("de.konfidas.ttc.tars.badHeaderNumber"), position, tarFile.getName()), e);
+        }
+    }
+
+    /**
+     * Liest pax Einträge der Form "länge schlüssel=wert\n".
+     */
+    Map<String, String> parsePaxHeaders(byte[] content, long position) throws BadFormatForTARException {
+        HashMap<String, String> result = new HashMap<>();
+        int i = 0;
+        while (i < content.length && content[i] != 0) {
+            int space = i;
+            while (space < content.length && content[space] != ' ') {
+                space++;
+            }
+            int recordLength;
+            try {
+                recordLength = Integer.parseInt(new String(content, i, space - i, StandardCharsets.US_ASCII));
+            } catch (NumberFormatException e) {
+                throw new BadFormatForTARException(String.format(AbstractLogMessageArchive.properties.getString("de.konfidas.ttc.tars.badHeaderNumber"), position, tarFile.getName()), e);
+            }
+            if (recordLength <= space - i || i + recordLength > content.length) {
+                throw new BadFormatForTARException(String.format(AbstractLogMessageArchive.properties.getString("de.konfidas.ttc.tars.badHeaderNumber"), position, tarFile.getName()), null);
+            }
+            // Ohne das abschließende '\n'
+            String record = new String(content, space + 1, i + recordLength - space - 2, StandardCharsets.UTF_8);
+            int equals = record.indexOf('=');
+            if (equals > 0) {
+                result.put(record.substring(0, equals), record.substring(equals + 1));
+            }
+            i += recordLength;
+        }
+        return result;
+    }
+
+    static String headerName(byte[] header) {
+        String name = field(header, 0, 100);
+        String magic = field(header, 257, 6);
+        if (magic.startsWith("ustar")) {//NON-NLS
+            String prefix = field(header, 345, 155);
+            if (!prefix.isEmpty()) {
+                return prefix + "/" + name;
+            }
+        }
+        return name;
+    }
+
+    static String field(byte[] header, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && header[end] != 0) {
+            end++;
+        }
+        return new String(header, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    static String trimNul(String s) {
+        int end = s.indexOf('\0');
+        return end < 0 ? s : s.substring(0, end);
+    }
+
+    /**
+     * Ein Eintrag des Index: Name, Position des Headers sowie Offset und Länge des Inhalts in der Datei.
+     */
+    public static final class Entry {
+        final String name;
+        final long headerOffset;
+        final long offset;
+        final long length;
+        final ByteBuffer ownMapping;
+        LogMessageFileName logMessageFileName;
+
+        Entry(String name, long headerOffset, long offset, long length, ByteBuffer ownMapping) {
+            this.name = name;
+            this.headerOffset = headerOffset;
+            this.offset = offset;
+            this.length = length;
+            this.ownMapping = ownMapping;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return den zerlegten Dateinamen oder null, falls der Eintrag keine LogMessage bezeichnet.
+         */
+        public LogMessageFileName getLogMessageFileName() {
+            return logMessageFileName;
+        }
+
+        public long getHeaderOffset() {
+            return headerOffset;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        @Override
+        public String toString() {
+            return name + "@" + offset + "+" + length;//NON-NLS
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package de.konfidas.ttc.tars;
+
+import de.konfidas.ttc.exceptions.BadFormatForLogMessageException;
+import de.konfidas.ttc.messages.LogMessage;
+import de.konfidas.ttc.messages.LogMessageFactory;
+import de.konfidas.ttc.messages.LogMessageFileName;
+import de.konfidas.ttc.utilities.ThreadPools;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.concurrent.*;
+
+/**
+ * Dekodiert die Inhalte von LogMessage Einträgen in einem Thread-Pool, während der aufrufende Thread weiter das TAR
+ * Archiv liest. Die dekodierten LogMessages werden mit {@link #take()} in genau der Reihenfolge geliefert, in der die
+ * Einträge mit {@link #submit(LogMessageFileName, byte[])} übergeben wurden.
+ *
+ * Mit einem Thread wird ohne Pool direkt im aufrufenden Thread dekodiert. Mehrere Durchläufe über dasselbe Archiv
+ * können sich über {@link #ParallelLogMessageDecoder(ExecutorService)} einen Pool teilen, den {@link #close()} dann
+ * nicht beendet.
+ */
+class ParallelLogMessageDecoder implements Closeable {
+    final ExecutorService executor;
+    final boolean ownsExecutor;
+    final ArrayDeque<Future<LogMessage>> pending = new ArrayDeque<>();
+
+    ParallelLogMessageDecoder(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException(String.format(AbstractLogMessageArchive.properties.getString("de.konfidas.ttc.tars.invalidNumberOfThreads"), threads));
+        }
+        executor = threads == 1 ? null : ThreadPools.newFixedDaemonPool("decoder", threads);//NON-NLS
+        ownsExecutor = true;
+    }
+
+    /**
+     * @param executor ein Pool, der von diesem Decoder nicht beendet wird, oder null, um im aufrufenden Thread zu
+     *                 dekodieren.
+     */
+    ParallelLogMessageDecoder(ExecutorService executor) {
+        this.executor = executor;
+        this.ownsExecutor = false;
+    }
+
+
+    /**
+     * Übergibt einen Eintrag, dessen Dateiname bereits beim Lesen des Archivs zerlegt wurde.
+     */
+    void submit(LogMessageFileName fileName, byte[] content) {
+        submit(() -> LogMessageFactory.createLogMessage(fileName, content));
+    }
+
+    void submit(String fileName, byte[] content) {
+        submit(() -> LogMessageFactory.createLogMessage(fileName, content));
+    }
+
+    void submit(Callable<LogMessage> task) {
+        if (executor == null) {
+            FutureTask<LogMessage> inline = new FutureTask<>(task);
+            inline.run();
+            pending.add(inline);
+        } else {
+            pending.add(executor.submit(task));
+        }
+    }
+
+    /**
+     * @return die Anzahl der übergebenen Einträge, die noch nicht mit take() abgeholt wurden.
+     */
+    int pending() {
+        return pending.size();
+    }
+
+    /**
+     * Liefert die LogMessage des ältesten übergebenen Eintrags und wartet dazu gegebenenfalls auf dessen Dekodierung.
+     *
+     * @throws BadFormatForLogMessageException falls der Eintrag nicht als LogMessage erkannt wurde.
+     */
+    LogMessage take() throws BadFormatForLogMessageException {
+        Future<LogMessage> next = pending.poll();
+        if (next == null) {
+            throw new IllegalStateException("No pending log message");//NON-NLS
+        }
+        try {
+            return next.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException(e.getMessage());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof BadFormatForLogMessageException) {
+                throw (BadFormatForLogMessageException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    @Override
+    public void close() {
+        pending.forEach(f -> f.cancel(true));
+        pending.clear();
+        if (executor != null && ownsExecutor) {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package de.konfidas.ttc.tars;
+
+import de.konfidas.ttc.messages.LogMessage;
+import org.apache.commons.codec.binary.Hex;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Eine Sicht auf ein LogMessageArchive, in der die LogMessages nach der Seriennummer der TSE gruppiert sind.
+ *
+ * Die LogMessages werden beim Erzeugen einmal durchlaufen und nach Seriennummer aufgeteilt, ohne das ganze Archiv zu
+ * sortieren. Jede {@link Partition} sortiert ihre LogMessages beim ersten Zugriff selbst nach Signaturzähler. Die
+ * Partitionen teilen keinen veränderlichen Zustand und können daher auf verschiedenen Threads verarbeitet werden, das
+ * Sortieren eingeschlossen. Die Partitionen sind nach Seriennummer geordnet, die Reihenfolge ist damit unabhängig von
+ * der Reihenfolge im Archiv. LogMessages ohne Seriennummer gehören zu keiner Partition, die fehlende Seriennummer wird
+ * bereits beim Parsen gemeldet.
+ */
+public class SerialPartitionedArchive {
+    final LogMessageArchive archive;
+    final List<Partition> partitions;
+    final Map<ByteBuffer, Partition> bySerial;
+
+    SerialPartitionedArchive(LogMessageArchive archive) {
+        this.archive = archive;
+
+        HashMap<ByteBuffer, ArrayList<LogMessage>> groups = new HashMap<>();
+        for (LogMessage msg : archive.getLogMessages()) {
+            byte[] serialNumber = msg.getSerialNumber();
+            if (serialNumber != null) {
+                groups.computeIfAbsent(ByteBuffer.wrap(serialNumber), k -> new ArrayList<>()).add(msg);
+            }
+        }
+
+        ArrayList<Partition> result = new ArrayList<>(groups.size());
+        HashMap<ByteBuffer, Partition> index = new HashMap<>();
+        for (Map.Entry<ByteBuffer, ArrayList<LogMessage>> group : groups.entrySet()) {
+            Partition partition = new Partition(group.getKey().array(), group.getValue());
+            result.add(partition);
+            index.put(group.getKey(), partition);
+        }
+        result.sort((a, b) -> Arrays.compareUnsigned(a.serialNumber, b.serialNumber));
+
+        this.partitions = Collections.unmodifiableList(result);
+        this.bySerial = index;
+    }
+
+    public static SerialPartitionedArchive of(LogMessageArchive archive) {
+        return new SerialPartitionedArchive(archive);
+    }
+
+    public LogMessageArchive getArchive() {
+        return archive;
+    }
+
+    /**
+     * @return die Partitionen, aufsteigend nach Seriennummer geordnet.
+     */
+    public List<Partition> getPartitions() {
+        return partitions;
+    }
+
+    /**
+     * @return die Partition zu der Seriennummer oder null, falls das Archiv keine LogMessage dieser TSE enthält.
+     */
+    public Partition getPartition(byte[] serialNumber) {
+        return bySerial.get(ByteBuffer.wrap(serialNumber));
+    }
+
+    /**
+     * Die LogMessages einer TSE.
+     */
+    public static class Partition {
+        final byte[] serialNumber;
+        final String serialNumberHex;
+        List<LogMessage> messages;
+        boolean sorted = false;
+
+        Partition(byte[] serialNumber, ArrayList<LogMessage> messages) {
+            this.serialNumber = serialNumber;
+            this.serialNumberHex = Hex.encodeHexString(serialNumber);
+            this.messages = messages;
+        }
+
+        public byte[] getSerialNumber() {
+            return serialNumber.clone();
+        }
+
+        /**
+         * @return die Seriennummer hexadezimal kodiert, sie wird nur einmal je Partition berechnet.
+         */
+        public String getSerialNumberHex() {
+            return serialNumberHex;
+        }
+
+        public int size() {
+            return messages.size();
+        }
+
+        /**
+         * @return die LogMessages dieser TSE aufsteigend nach Signaturzähler. Sie werden beim ersten Aufruf mit dem
+         * {@link LogMessageSorter} sortiert, LogMessages mit gleichem Signaturzähler behalten ihre Reihenfolge im Archiv.
+         */
+        public synchronized List<LogMessage> getSortedLogMessages() {
+            if (!sorted) {
+                messages = Collections.unmodifiableList(LogMessageSorter.sort(messages));
+                sorted = true;
+            }
+            return messages;
+        }
+    }
+}
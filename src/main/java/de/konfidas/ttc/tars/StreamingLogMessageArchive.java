@@ -0,0 +1,450 @@
+package de.konfidas.ttc.tars;
+
+import de.konfidas.ttc.errors.BadFormatForLogMessageError;
+import de.konfidas.ttc.errors.TtcError;
+import de.konfidas.ttc.exceptions.BadFormatForLogMessageException;
+import de.konfidas.ttc.exceptions.BadFormatForTARException;
+import de.konfidas.ttc.messages.LogMessage;
+import de.konfidas.ttc.utilities.ThreadPools;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.nio.file.NoSuchFileException;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Ein LogMessageArchive, das die LogMessages nicht beim Einlesen vollständig in den Speicher lädt, sondern sie erst
+ * beim Iterieren aus dem TAR Archiv dekodiert.
+ *
+ * Beim Erzeugen wird das Archiv mit einem {@link MappedTarReader} gemappt und indiziert, und info.csv und die
+ * Zertifikate werden verarbeitet. Die Inhalte der LogMessages werden dabei übersprungen. Jeder Durchlauf über
+ * {@link #iterator()}, {@link #stream()} oder {@link #getLogMessages()} dekodiert die LogMessages erneut aus der
+ * gemappten Datei und hält höchstens {@code window} dekodierte LogMessages gleichzeitig vor. Validatoren, die nur über getLogMessages() iterieren, kommen so mit einem Durchlauf und begrenztem Speicher aus.
+ *
+ * Die sortierte Sicht {@link #getSortedLogMessages()} benötigt dagegen alle LogMessages gleichzeitig und wird beim
+ * ersten Zugriff vollständig aufgebaut. Mit {@link #setExternalSort(long, File)} wird stattdessen ein
+ * {@link ExternalLogMessageSorter} verwendet, der sortierte Läufe in temporäre Dateien schreibt und sie bei jedem
+ * Durchlauf über die sortierte Sicht mischt.
+ *
+ * Mit mehr als einem Thread dekodiert ein Thread-Pool die gelesenen Einträge, während der Durchlauf das Archiv weiter
+ * liest. Die Reihenfolge des Archivs bleibt dabei erhalten. Alle Durchläufe teilen sich einen Pool, der beim ersten
+ * Durchlauf erzeugt und mit {@link #close()} beendet wird. Ein abgebrochener Durchlauf hinterlässt so keine Threads.
+ *
+ * Über die Namen der Einträge kann ein Durchlauf nach einem bestimmten Eintrag fortgesetzt werden, siehe
+ * {@link #getLogMessagesAfter(String)}.
+ */
+public class StreamingLogMessageArchive extends AbstractLogMessageArchive implements Iterable<LogMessage>, Closeable {
+    public final static int DEFAULT_WINDOW = 1024;
+
+    final File tarFile;
+    final int window;
+    final int threads;
+    final ArrayList<MappedTarReader.Entry> logMessageEntries = new ArrayList<>();
+    MappedTarReader reader;
+    int numberOfLogMessageEntries = 0;
+    // Die Anzahl der dekodierbaren LogMessages, sobald ein Durchlauf das gesamte Archiv gelesen hat, sonst -1.
+    volatile int numberOfLogMessages = -1;
+    // Wird gesetzt, sobald ein vollständiger Durchlauf seine Fehler beim Dekodieren in all_errors übernommen hat.
+    final AtomicBoolean decodingErrorsCollected = new AtomicBoolean();
+    volatile ArrayList<LogMessage> sortedLogMessages;
+    long sortMemoryBudget = 0;
+    File sortDirectory;
+    ExternalLogMessageSorter externalSorter;
+    HashMap<String, Integer> entryIndexByName;
+    ExecutorService decoderPool;
+
+    public StreamingLogMessageArchive(File tarFile) throws IOException, BadFormatForTARException {
+        this(tarFile, DEFAULT_WINDOW);
+    }
+
+    public StreamingLogMessageArchive(File tarFile, int window) throws IOException, BadFormatForTARException {
+        this(tarFile, window, 1);
+    }
+
+    /**
+     * @param window  Anzahl der LogMessages, die während eines Durchlaufs höchstens gelesen, aber noch nicht abgeholt sind.
+     * @param threads Anzahl der Threads, die die LogMessages dekodieren.
+     */
+    public StreamingLogMessageArchive(File tarFile, int window, int threads) throws IOException, BadFormatForTARException {
+        if (window < 1) {
+            throw new IllegalArgumentException(String.format(properties.getString("de.konfidas.ttc.tars.invalidStreamingWindow"), window));
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException(String.format(properties.getString("de.konfidas.ttc.tars.invalidNumberOfThreads"), threads));
+        }
+        this.tarFile = tarFile;
+        this.window = window;
+        this.threads = threads;
+        this.filename = tarFile.getName();
+        scan();
+    }
+
+    public int getWindow() {
+        return window;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Sortiert die LogMessages für {@link #getSortedLogMessages()} außerhalb des Speichers. Muss vor dem ersten Zugriff
+     * auf die sortierte Sicht aufgerufen werden.
+     *
+     * @param memoryBudget  Bytes, die für den Puffer eines sortierten Laufs verwendet werden dürfen.
+     * @param tempDirectory Verzeichnis für die Läufe oder null für das temporäre Verzeichnis des Systems.
+     */
+    public synchronized StreamingLogMessageArchive setExternalSort(long memoryBudget, File tempDirectory) {
+        if (memoryBudget < 1) {
+            throw new IllegalArgumentException(String.format(properties.getString("de.konfidas.ttc.tars.invalidSortMemory"), memoryBudget));
+        }
+        this.sortMemoryBudget = memoryBudget;
+        this.sortDirectory = tempDirectory;
+        return this;
+    }
+
+    public boolean isExternalSort() {
+        return sortMemoryBudget > 0;
+    }
+
+    /**
+     * @return den Pool, in dem alle Durchläufe dekodieren, oder null, falls im aufrufenden Thread dekodiert wird.
+     */
+    synchronized ExecutorService decoderPool() {
+        if (threads > 1 && decoderPool == null) {
+            decoderPool = ThreadPools.newFixedDaemonPool("decoder", threads);//NON-NLS
+        }
+        return decoderPool;
+    }
+
+    /**
+     * Beendet den Pool der Durchläufe und löscht die Läufe der externen Sortierung. Ein weiterer Durchlauf erzeugt bei
+     * Bedarf einen neuen Pool, ein weiterer Aufruf von {@link #getSortedLogMessages()} sortiert erneut. Zuvor
+     * gelieferte extern sortierte Collections können danach nicht mehr durchlaufen werden. Noch nicht beendete
+     * Durchläufe über sie werden abgebrochen und ihre Dateien geschlossen, bevor die Läufe gelöscht werden.
+     */
+    @Override
+    public synchronized void close() {
+        if (decoderPool != null) {
+            decoderPool.shutdownNow();
+            decoderPool = null;
+        }
+        if (externalSorter != null) {
+            externalSorter.close();
+            externalSorter = null;
+        }
+    }
+
+    void scan() throws IOException, BadFormatForTARException {
+        try {
+            reader = new MappedTarReader(tarFile);
+            for (MappedTarReader.Entry entry : reader.getEntries()) {
+                String individualFileName = entry.getName();
+                if (entry.getLogMessageFileName() != null) {
+                    // Der Inhalt wird erst beim Iterieren gelesen.
+                    logMessageEntries.add(entry);
+                } else {
+                    processNonLogMessageEntry(individualFileName, reader.readContent(entry));
+                }
+            }
+            numberOfLogMessageEntries = logMessageEntries.size();
+        } catch (FileNotFoundException | NoSuchFileException e) {
+            this.all_errors.add(new BadFormatForLogMessageError("Fehler bei der Erstellung des TAR Archivs", e));
+        }
+
+        checkInfoCSVPresent();
+    }
+
+    /**
+     * Dekodiert die LogMessages mit dem gegebenen Signaturzähler direkt über den Index des Archivs, ohne es erneut zu
+     * durchlaufen. Einträge, die nicht dekodiert werden können, werden übergangen.
+     *
+     * @return die LogMessages mit diesem Signaturzähler, bei mehreren TSEs im Archiv gegebenenfalls mehrere.
+     */
+    public List<LogMessage> getLogMessages(BigInteger signatureCounter) {
+        ArrayList<LogMessage> result = new ArrayList<>(1);
+        for (MappedTarReader.Entry entry : reader.getLogMessageEntries(signatureCounter)) {
+            try {
+                result.add(reader.readLogMessage(entry));
+            } catch (BadFormatForLogMessageException e) {
+                logger.debug("Failed to decode {}", entry.getName(), e);//NON-NLS
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return eine Kennung aus Pfad, Länge und Änderungszeit der Datei, um gespeicherten Fortschritt diesem Archiv
+     * zuzuordnen.
+     */
+    public String getIdentity() {
+        File file = tarFile.getAbsoluteFile();
+        return file.getPath() + ":" + file.length() + ":" + file.lastModified();//NON-NLS
+    }
+
+    synchronized int entryIndex(String fileName) {
+        if (entryIndexByName == null) {
+            entryIndexByName = new HashMap<>();
+            for (int i = 0; i < logMessageEntries.size(); i++) {
+                entryIndexByName.put(logMessageEntries.get(i).getName(), i);
+            }
+        }
+        Integer index = entryIndexByName.get(fileName);
+        return index == null ? -1 : index;
+    }
+
+    /**
+     * @return die Position des Eintrags im TAR Archiv oder -1, falls das Archiv keine LogMessage dieses Namens enthält.
+     */
+    public long getOffset(String fileName) {
+        int index = entryIndex(fileName);
+        return index < 0 ? -1 : logMessageEntries.get(index).getOffset();
+    }
+
+    /**
+     * @return die LogMessage des Eintrags oder null, falls es ihn nicht gibt oder er nicht dekodiert werden kann.
+     */
+    public LogMessage getLogMessage(String fileName) {
+        int index = entryIndex(fileName);
+        if (index < 0) {
+            return null;
+        }
+        try {
+            return reader.readLogMessage(logMessageEntries.get(index));
+        } catch (BadFormatForLogMessageException e) {
+            logger.debug("Failed to decode {}", fileName, e);//NON-NLS
+            return null;
+        }
+    }
+
+    /**
+     * @return eine Sicht auf die LogMessages, die im Archiv nach dem Eintrag folgen. Die Einträge davor werden weder
+     * gelesen noch dekodiert, Fehler beim Dekodieren werden in dieser Sicht nicht gesammelt.
+     * @throws IllegalArgumentException falls das Archiv keine LogMessage dieses Namens enthält.
+     */
+    public Collection<LogMessage> getLogMessagesAfter(String fileName) {
+        int index = entryIndex(fileName);
+        if (index < 0) {
+            throw new IllegalArgumentException(fileName);
+        }
+        return new AbstractCollection<>() {
+            int size = -1;
+
+            @Override
+            public Iterator<LogMessage> iterator() {
+                return new LogMessageIterator(index + 1, false);
+            }
+
+            /**
+             * Zählt die dekodierbaren LogMessages nach dem Eintrag, beim ersten Aufruf über einen eigenen Durchlauf.
+             */
+            @Override
+            public int size() {
+                if (size < 0) {
+                    int count = 0;
+                    for (Iterator<LogMessage> it = iterator(); it.hasNext(); it.next()) {
+                        count++;
+                    }
+                    size = count;
+                }
+                return size;
+            }
+        };
+    }
+
+    @Override
+    public Iterator<LogMessage> iterator() {
+        return new LogMessageIterator();
+    }
+
+    /**
+     * @return einen Stream über alle LogMessages in der Reihenfolge des Archivs. Der Stream sollte geschlossen werden,
+     * wenn er nicht vollständig konsumiert wird.
+     */
+    public Stream<LogMessage> stream() {
+        LogMessageIterator iterator = new LogMessageIterator();
+        // Einträge, die nicht dekodiert werden können, fehlen im Stream, die Größe ist daher vorab nicht bekannt.
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(iterator::close);
+    }
+
+    /**
+     * @return eine Sicht auf die LogMessages des Archivs. Jeder Durchlauf liest das Archiv erneut, es werden keine
+     * LogMessages zwischengespeichert. Einträge, die nicht dekodiert werden können, sind nicht enthalten.
+     */
+    @Override
+    public Collection<LogMessage> getLogMessages() {
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<LogMessage> iterator() {
+                return StreamingLogMessageArchive.this.iterator();
+            }
+
+            @Override
+            public int size() {
+                return getNumberOfLogMessages();
+            }
+        };
+    }
+
+    /**
+     * @return die Anzahl der LogMessages, die ein Durchlauf liefert. Sie ist erst nach einem vollständigen Durchlauf
+     * bekannt, bis dahin wird das Archiv dazu einmal gelesen.
+     */
+    public int getNumberOfLogMessages() {
+        if (numberOfLogMessages < 0) {
+            for (Iterator<LogMessage> it = iterator(); it.hasNext(); it.next()) {
+                // Der vollständige Durchlauf setzt numberOfLogMessages.
+            }
+        }
+        return numberOfLogMessages;
+    }
+
+    /**
+     * @return die LogMessages sortiert. Ohne externes Sortieren wird die Liste beim ersten Aufruf aufgebaut und
+     * zwischengespeichert, andernfalls ist das Ergebnis eine Sicht, deren Durchläufe die sortierten Läufe mischen.
+     */
+    @Override
+    public Collection<LogMessage> getSortedLogMessages() {
+        if (isExternalSort()) {
+            return getExternallySortedLogMessages();
+        }
+        ArrayList<LogMessage> result = sortedLogMessages;
+        if (null == result) {
+            synchronized (this) {
+                result = sortedLogMessages;
+                if (null == result) {
+                    ArrayList<LogMessage> messages = new ArrayList<>(numberOfLogMessageEntries);
+                    this.forEach(messages::add);
+                    result = LogMessageSorter.sort(messages);
+                    sortedLogMessages = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    Collection<LogMessage> getExternallySortedLogMessages() {
+        ExternalLogMessageSorter sorter;
+        synchronized (this) {
+            if (null == externalSorter) {
+                ExternalLogMessageSorter created = new ExternalLogMessageSorter(reader, logMessageEntries, decoderPool(), window,
+                        ExternalLogMessageSorter.recordsPerRun(sortMemoryBudget), sortDirectory);
+                ArrayList<TtcError> errors = decodingErrorsCollected.get() ? null : new ArrayList<>();
+                try {
+                    created.createRuns(errors);
+                } catch (IOException e) {
+                    created.close();
+                    throw new UncheckedIOException(e);
+                }
+                publishDecodingErrors(errors);
+                externalSorter = created;
+            }
+            sorter = externalSorter;
+        }
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<LogMessage> iterator() {
+                return sorter.iterator();
+            }
+
+            @Override
+            public int size() {
+                return (int) sorter.size();
+            }
+        };
+    }
+
+    /**
+     * Übernimmt die Fehler eines vollständigen Durchlaufs in all_errors, falls das noch kein anderer Durchlauf getan hat.
+     * Ein abgebrochener Durchlauf übernimmt nichts, so dass der nächste Durchlauf die Fehler erneut sammelt.
+     *
+     * @param errors die Fehler des Durchlaufs oder null, falls er keine Fehler gesammelt hat.
+     */
+    void publishDecodingErrors(Collection<TtcError> errors) {
+        if (errors != null && decodingErrorsCollected.compareAndSet(false, true)) {
+            all_errors.addAll(errors);
+        }
+    }
+
+    class LogMessageIterator implements Iterator<LogMessage>, Closeable {
+        final ParallelLogMessageDecoder decoder;
+        // Fehler beim Dekodieren werden gesammelt, bis die Fehler eines vollständigen Durchlaufs übernommen wurden,
+        // damit sie nicht mehrfach gemeldet werden. null, falls dieser Durchlauf keine Fehler sammelt.
+        final ArrayList<TtcError> errors;
+        final int firstEntry;
+        int nextEntry;
+        int decoded = 0;
+        boolean exhausted = false;
+        LogMessage next;
+
+        LogMessageIterator() {
+            this(0, !decodingErrorsCollected.get());
+        }
+
+        LogMessageIterator(int firstEntry, boolean collectErrors) {
+            decoder = new ParallelLogMessageDecoder(decoderPool());
+            this.errors = collectErrors ? new ArrayList<>() : null;
+            this.firstEntry = firstEntry;
+            this.nextEntry = firstEntry;
+        }
+
+        /**
+         * Übergibt so viele Einträge an den Decoder, bis {@code window} Einträge dekodiert werden oder auf ihre Abholung
+         * warten.
+         */
+        void fill() {
+            while (nextEntry < logMessageEntries.size() && decoder.pending() < window) {
+                MappedTarReader.Entry entry = logMessageEntries.get(nextEntry++);
+                decoder.submit(entry.getLogMessageFileName(), reader.readContent(entry));
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null && !exhausted) {
+                fill();
+                if (decoder.pending() == 0) {
+                    if (firstEntry == 0) {
+                        numberOfLogMessages = decoded;
+                        publishDecodingErrors(errors);
+                    }
+                    close();
+                    break;
+                }
+                try {
+                    next = decoder.take();
+                    decoded++;
+                } catch (BadFormatForLogMessageException e) {
+                    if (errors != null) {
+                        errors.add(new BadFormatForLogMessageError("Fehler bei der Erstellung des TAR Archivs", e));
+                    }
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public LogMessage next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            LogMessage result = next;
+            next = null;
+            return result;
+        }
+
+        @Override
+        public void close() {
+            if (exhausted) {
+                return;
+            }
+            exhausted = true;
+            decoder.close();
+        }
+    }
+}
@@ -0,0 +1,310 @@
+package de.konfidas.ttc.tars;
+
+import de.konfidas.ttc.messages.LogMessage;
+import de.konfidas.ttc.utilities.oid;
+import org.apache.commons.codec.binary.Hex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Ein persistenter Index eines TAR Archivs, der als Datei {@code <archiv>.ttcidx} neben dem Archiv abgelegt wird.
+ *
+ * Der Index enthält für jeden Eintrag Name, Offset und Länge des Inhalts und für LogMessages zusätzlich Seriennummer,
+ * Signaturzähler, LogTime und Typ. Wird ein unverändertes Archiv erneut gelesen, werden die LogMessages erst
+ * dekodiert, wenn sie benötigt werden, und Abfragen nach Signaturzähler oder Dateiname dekodieren anhand der
+ * Metadaten nur die passenden Einträge.
+ *
+ * Ob das Archiv unverändert ist, wird über Größe, Änderungszeit und einen SHA-256 Fingerprint über die Größe sowie
+ * die ersten und letzten {@value #FINGERPRINT_BLOCK} Bytes des Archivs geprüft. Ein vollständiger Hash würde das Lesen
+ * des gesamten Archivs erfordern, was der Index gerade vermeiden soll. Da der Index nicht gegen Veränderung geschützt
+ * ist und ein im Inneren verändertes Archiv den Fingerprint nicht ändert, muss er vor der Verwendung zusätzlich mit
+ * {@link #matches(List)} gegen die TAR Header des Archivs geprüft werden.
+ */
+public class TarIndex {
+    final static Logger logger = LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
+
+    public final static String SUFFIX = ".ttcidx";//NON-NLS
+    final static int MAGIC = 0x54544349; // "TTCI"
+    final static int VERSION = 1;
+    final static int FINGERPRINT_BLOCK = 1 << 20;
+
+    final long archiveSize;
+    final long archiveLastModified;
+    final byte[] fingerprint;
+    final ArrayList<Entry> entries;
+
+    TarIndex(long archiveSize, long archiveLastModified, byte[] fingerprint, List<Entry> entries) {
+        this.archiveSize = archiveSize;
+        this.archiveLastModified = archiveLastModified;
+        this.fingerprint = fingerprint;
+        this.entries = new ArrayList<>(entries);
+    }
+
+    /**
+     * Prüft, ob der Index genau die Einträge des Archivs beschreibt: dieselben Einträge in derselben Reihenfolge mit
+     * gleichem Namen, Offset und Länge, und als LogMessage genau die Einträge, deren Dateiname eine LogMessage
+     * bezeichnet. Ein Index, der LogMessages auslässt oder als andere Dateien ausgibt, wird so nicht verwendet.
+     *
+     * @param entries die Einträge, wie sie der {@link MappedTarReader} aus den TAR Headern gelesen hat.
+     */
+    public boolean matches(List<MappedTarReader.Entry> entries) {
+        if (entries.size() != this.entries.size()) {
+            return false;
+        }
+        for (int i = 0; i < entries.size(); i++) {
+            MappedTarReader.Entry actual = entries.get(i);
+            Entry indexed = this.entries.get(i);
+            if (!actual.getName().equals(indexed.getName()) || actual.getOffset() != indexed.getOffset()
+                    || actual.getLength() != indexed.getLength()
+                    || (actual.getLogMessageFileName() != null) != indexed.isLogMessage()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static File indexFileFor(File tarFile) {
+        return new File(tarFile.getPath() + SUFFIX);
+    }
+
+    /**
+     * Erzeugt einen Index für das Archiv. Die Einträge müssen in der Reihenfolge des Archivs übergeben werden.
+     */
+    public static TarIndex create(File tarFile, List<Entry> entries) throws IOException {
+        return new TarIndex(tarFile.length(), tarFile.lastModified(), fingerprint(tarFile), entries);
+    }
+
+    /**
+     * Lädt den Index des Archivs, falls er existiert und zum aktuellen Stand des Archivs passt.
+     *
+     * @return den Index oder null, falls es keinen passenden Index gibt.
+     */
+    public static TarIndex load(File tarFile) {
+        File indexFile = indexFileFor(tarFile);
+        if (!indexFile.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                logger.debug("Ignoring index {} with unknown format", indexFile);//NON-NLS
+                return null;
+            }
+            long size = in.readLong();
+            long lastModified = in.readLong();
+            byte[] fingerprint = new byte[in.readUnsignedByte()];
+            in.readFully(fingerprint);
+
+            if (size != tarFile.length() || lastModified != tarFile.lastModified() || !Arrays.equals(fingerprint, fingerprint(tarFile))) {
+                logger.debug("Ignoring outdated index {}", indexFile);//NON-NLS
+                return null;
+            }
+
+            int count = in.readInt();
+            ArrayList<Entry> entries = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                entries.add(Entry.read(in));
+            }
+            return new TarIndex(size, lastModified, fingerprint, entries);
+        } catch (IOException e) {
+            logger.debug("Ignoring unreadable index {}", indexFile, e);//NON-NLS
+            return null;
+        }
+    }
+
+    /**
+     * Schreibt den Index neben das Archiv. Die Datei wird zunächst unter einem temporären Namen geschrieben und dann
+     * umbenannt, damit parallele Läufe keinen halb geschriebenen Index lesen.
+     */
+    public void write(File tarFile) throws IOException {
+        File indexFile = indexFileFor(tarFile);
+        File tmp = new File(indexFile.getPath() + ".tmp");//NON-NLS
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(archiveSize);
+            out.writeLong(archiveLastModified);
+            out.writeByte(fingerprint.length);
+            out.write(fingerprint);
+            out.writeInt(entries.size());
+            for (Entry entry : entries) {
+                entry.write(out);
+            }
+        }
+        Files.move(tmp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public List<Entry> getEntries() {
+        return Collections.unmodifiableList(entries);
+    }
+
+    static byte[] fingerprint(File tarFile) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");//NON-NLS
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        try (FileChannel channel = FileChannel.open(tarFile.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            digest.update(ByteBuffer.allocate(Long.BYTES).putLong(0, size));
+            digestRange(channel, digest, 0, Math.min(size, FINGERPRINT_BLOCK));
+            if (size > FINGERPRINT_BLOCK) {
+                long tail = Math.max(FINGERPRINT_BLOCK, size - FINGERPRINT_BLOCK);
+                digestRange(channel, digest, tail, size - tail);
+            }
+        }
+        return digest.digest();
+    }
+
+    static void digestRange(FileChannel channel, MessageDigest digest, long position, long length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        buffer.flip();
+        digest.update(buffer);
+    }
+
+    /**
+     * Ein Eintrag des Index. Für Einträge, die keine LogMessages sind, ist nur Name, Offset und Länge gesetzt.
+     */
+    public static final class Entry {
+        final static byte KIND_FILE = 0;
+        final static byte KIND_LOG_MESSAGE = 1;
+        final static byte KIND_UNDECODABLE_LOG_MESSAGE = 2;
+
+        final String name;
+        final long offset;
+        final long length;
+        final boolean logMessage;
+        // null, falls die LogMessage nicht dekodiert werden konnte
+        final byte[] serialNumber;
+        final BigInteger signatureCounter;
+        final long logTime;
+        final String messageType;
+
+        Entry(String name, long offset, long length, boolean logMessage, byte[] serialNumber, BigInteger signatureCounter, long logTime, String messageType) {
+            this.name = name;
+            this.offset = offset;
+            this.length = length;
+            this.logMessage = logMessage;
+            this.serialNumber = serialNumber;
+            this.signatureCounter = signatureCounter;
+            this.logTime = logTime;
+            this.messageType = messageType;
+        }
+
+        public static Entry forFile(String name, long offset, long length) {
+            return new Entry(name, offset, length, false, null, null, 0, null);
+        }
+
+        /**
+         * Ein Eintrag, dessen Dateiname eine LogMessage bezeichnet, der aber nicht dekodiert werden konnte. Er wird beim
+         * nächsten Lesen erneut dekodiert, damit der Fehler wieder gemeldet wird.
+         */
+        public static Entry forUndecodableLogMessage(String name, long offset, long length) {
+            return new Entry(name, offset, length, true, null, null, 0, null);
+        }
+
+        public static Entry forLogMessage(long offset, long length, LogMessage message) {
+            oid type = message.getCertifiedDataType();
+            return new Entry(message.getFileName(), offset, length, true, message.getSerialNumber(), message.getSignatureCounter(),
+                    message.getLogTime() == null ? 0 : message.getLogTime().getTime(), type == null ? "" : type.name());
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        public boolean isLogMessage() {
+            return logMessage;
+        }
+
+        public byte[] getSerialNumber() {
+            return serialNumber;
+        }
+
+        public BigInteger getSignatureCounter() {
+            return signatureCounter;
+        }
+
+        /**
+         * @return die LogTime der LogMessage, wie sie {@link de.konfidas.ttc.messages.logtime.LogTime#getTime()} liefert.
+         */
+        public long getLogTime() {
+            return logTime;
+        }
+
+        /**
+         * @return den Namen des certifiedDataType der LogMessage, z.B. id_SE_API_transaction_log.
+         */
+        public String getMessageType() {
+            return messageType;
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeUTF(name);
+            out.writeLong(offset);
+            out.writeLong(length);
+            boolean decoded = serialNumber != null && signatureCounter != null;
+            out.writeByte(!logMessage ? KIND_FILE : !decoded ? KIND_UNDECODABLE_LOG_MESSAGE : KIND_LOG_MESSAGE);
+            if (logMessage && decoded) {
+                out.writeUTF(Hex.encodeHexString(serialNumber));
+                byte[] counter = signatureCounter.toByteArray();
+                out.writeShort(counter.length);
+                out.write(counter);
+                out.writeLong(logTime);
+                out.writeUTF(messageType);
+            }
+        }
+
+        static Entry read(DataInputStream in) throws IOException {
+            String name = in.readUTF();
+            long offset = in.readLong();
+            long length = in.readLong();
+            switch (in.readByte()) {
+                case KIND_FILE:
+                    return forFile(name, offset, length);
+                case KIND_UNDECODABLE_LOG_MESSAGE:
+                    return forUndecodableLogMessage(name, offset, length);
+                case KIND_LOG_MESSAGE:
+                    break;
+                default:
+                    throw new IOException("Unknown entry kind");//NON-NLS
+            }
+            byte[] serialNumber;
+            try {
+                serialNumber = Hex.decodeHex(in.readUTF());
+            } catch (org.apache.commons.codec.DecoderException e) {
+                throw new IOException(e);
+            }
+            byte[] counter = new byte[in.readUnsignedShort()];
+            in.readFully(counter);
+            return new Entry(name, offset, length, true, serialNumber, new BigInteger(counter), in.readLong(), in.readUTF());
+        }
+    }
+}
@@ -0,0 +1,391 @@
+package de.konfidas.ttc.tars;
+
+import de.konfidas.ttc.exceptions.BadFormatForLogMessageException;
+import de.konfidas.ttc.messages.LogMessage;
+import de.konfidas.ttc.messages.LogMessageFactory;
+import de.konfidas.ttc.messages.TransactionLogMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Ein Index der TransactionLogMessages eines Archivs, der zu einer Seriennummer und Transaktionsnummer die Einträge
+ * für Start, Aktualisierungen und Ende der Transaktion liefert. Er wird als Datei {@code <archiv>.ttctx} neben dem
+ * Archiv abgelegt.
+ *
+ * Die Einträge werden beim Lesen des Archivs mit einem {@link TarIndex} gesammelt und nach Seriennummer,
+ * Transaktionsnummer und Signaturzähler sortiert in parallelen Feldern gehalten. Gesucht wird binär. Mit
+ * {@link #readTransaction(File, byte[], long)} werden nur die LogMessages der gesuchten Transaktion gelesen und
+ * dekodiert, der Rest des Archivs wird nicht angefasst.
+ *
+ * Wie beim {@link TarIndex} wird ein Index nur verwendet, wenn Größe, Änderungszeit und Fingerprint des Archivs passen.
+ */
+public class TransactionIndex {
+    final static Logger logger = LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
+
+    public final static String SUFFIX = ".ttctx";//NON-NLS
+    final static int MAGIC = 0x54544358; // "TTCX"
+    final static int VERSION = 1;
+
+    // Der operationType wird als Index in OPERATION_TYPES gespeichert.
+    final static byte OPERATION_OTHER = 0;
+    final static String[] OPERATION_TYPES = {"", "StartTransaction", "UpdateTransaction", "FinishTransaction"};//NON-NLS
+
+    final long archiveSize;
+    final long archiveLastModified;
+    final byte[] fingerprint;
+
+    // Die Seriennummern aufsteigend sortiert, die Einträge verweisen auf ihre Position.
+    final byte[][] serialNumbers;
+    final int[] serials;
+    final long[] transactionNumbers;
+    final long[] signatureCounters;
+    final byte[] operations;
+    final long[] offsets;
+    final long[] lengths;
+    final String[] names;
+
+    TransactionIndex(long archiveSize, long archiveLastModified, byte[] fingerprint, byte[][] serialNumbers, int entries) {
+        this.archiveSize = archiveSize;
+        this.archiveLastModified = archiveLastModified;
+        this.fingerprint = fingerprint;
+        this.serialNumbers = serialNumbers;
+        this.serials = new int[entries];
+        this.transactionNumbers = new long[entries];
+        this.signatureCounters = new long[entries];
+        this.operations = new byte[entries];
+        this.offsets = new long[entries];
+        this.lengths = new long[entries];
+        this.names = new String[entries];
+    }
+
+    public static File indexFileFor(File tarFile) {
+        return new File(tarFile.getPath() + SUFFIX);
+    }
+
+    /**
+     * Lädt den Index des Archivs, falls er existiert und zum aktuellen Stand des Archivs passt.
+     *
+     * @return den Index oder null, falls es keinen passenden Index gibt.
+     */
+    public static TransactionIndex load(File tarFile) {
+        File indexFile = indexFileFor(tarFile);
+        if (!indexFile.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                logger.debug("Ignoring transaction index {} with unknown format", indexFile);//NON-NLS
+                return null;
+            }
+            long size = in.readLong();
+            long lastModified = in.readLong();
+            byte[] fingerprint = new byte[in.readUnsignedByte()];
+            in.readFully(fingerprint);
+            if (size != tarFile.length() || lastModified != tarFile.lastModified() || !Arrays.equals(fingerprint, TarIndex.fingerprint(tarFile))) {
+                logger.debug("Ignoring outdated transaction index {}", indexFile);//NON-NLS
+                return null;
+            }
+
+            byte[][] serialNumbers = new byte[in.readInt()][];
+            for (int i = 0; i < serialNumbers.length; i++) {
+                serialNumbers[i] = new byte[in.readUnsignedShort()];
+                in.readFully(serialNumbers[i]);
+            }
+            TransactionIndex index = new TransactionIndex(size, lastModified, fingerprint, serialNumbers, in.readInt());
+            for (int i = 0; i < index.names.length; i++) {
+                index.serials[i] = in.readInt();
+                index.transactionNumbers[i] = in.readLong();
+                index.signatureCounters[i] = in.readLong();
+                index.operations[i] = in.readByte();
+                index.offsets[i] = in.readLong();
+                index.lengths[i] = in.readLong();
+                index.names[i] = in.readUTF();
+                if (index.serials[i] < 0 || index.serials[i] >= serialNumbers.length) {
+                    throw new IOException("Unknown serial number");//NON-NLS
+                }
+            }
+            return index;
+        } catch (IOException e) {
+            logger.debug("Ignoring unreadable transaction index {}", indexFile, e);//NON-NLS
+            return null;
+        }
+    }
+
+    /**
+     * @return true, falls neben dem Archiv ein Index liegt, der zum Stand des {@link TarIndex} passt. Dazu wird nur der
+     * Kopf der Datei gelesen.
+     */
+    static boolean isCurrent(File tarFile, TarIndex tarIndex) {
+        File indexFile = indexFileFor(tarFile);
+        if (!indexFile.isFile()) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != tarIndex.archiveSize || in.readLong() != tarIndex.archiveLastModified) {
+                return false;
+            }
+            byte[] fingerprint = new byte[in.readUnsignedByte()];
+            in.readFully(fingerprint);
+            return Arrays.equals(fingerprint, tarIndex.fingerprint);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Schreibt den Index über eine temporäre Datei neben das Archiv.
+     */
+    public void write(File tarFile) throws IOException {
+        File indexFile = indexFileFor(tarFile);
+        File tmp = new File(indexFile.getPath() + ".tmp");//NON-NLS
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(archiveSize);
+            out.writeLong(archiveLastModified);
+            out.writeByte(fingerprint.length);
+            out.write(fingerprint);
+            out.writeInt(serialNumbers.length);
+            for (byte[] serialNumber : serialNumbers) {
+                out.writeShort(serialNumber.length);
+                out.write(serialNumber);
+            }
+            out.writeInt(names.length);
+            for (int i = 0; i < names.length; i++) {
+                out.writeInt(serials[i]);
+                out.writeLong(transactionNumbers[i]);
+                out.writeLong(signatureCounters[i]);
+                out.writeByte(operations[i]);
+                out.writeLong(offsets[i]);
+                out.writeLong(lengths[i]);
+                out.writeUTF(names[i]);
+            }
+        }
+        Files.move(tmp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * @return die Anzahl der indizierten TransactionLogMessages.
+     */
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * @return die Einträge der Transaktion aufsteigend nach Signaturzähler oder eine leere Liste.
+     */
+    public List<Entry> getTransaction(byte[] serialNumber, long transactionNumber) {
+        int serial = Arrays.binarySearch(serialNumbers, serialNumber, TransactionIndex::compareSerialNumbers);
+        if (serial < 0) {
+            return Collections.emptyList();
+        }
+        ArrayList<Entry> result = new ArrayList<>();
+        for (int i = lowerBound(serial, transactionNumber); i < names.length && serials[i] == serial && transactionNumbers[i] == transactionNumber; i++) {
+            result.add(new Entry(i));
+        }
+        return result;
+    }
+
+    /**
+     * Liest und dekodiert nur die LogMessages der Transaktion aus dem Archiv.
+     *
+     * @return die LogMessages aufsteigend nach Signaturzähler oder eine leere Liste, falls die Transaktion nicht im
+     * Index enthalten ist.
+     */
+    public List<LogMessage> readTransaction(File tarFile, byte[] serialNumber, long transactionNumber) throws IOException, BadFormatForLogMessageException {
+        List<Entry> entries = getTransaction(serialNumber, transactionNumber);
+        ArrayList<LogMessage> result = new ArrayList<>(entries.size());
+        if (entries.isEmpty()) {
+            return result;
+        }
+        try (FileChannel channel = FileChannel.open(tarFile.toPath(), StandardOpenOption.READ)) {
+            for (Entry entry : entries) {
+                ByteBuffer content = ByteBuffer.allocate((int) entry.getLength());
+                while (content.hasRemaining()) {
+                    if (channel.read(content, entry.getOffset() + content.position()) < 0) {
+                        throw new EOFException();
+                    }
+                }
+                result.add(LogMessageFactory.createLogMessage(entry.getName(), content.array()));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return die erste Position, deren Seriennummer und Transaktionsnummer nicht kleiner als die gesuchten sind.
+     */
+    int lowerBound(int serial, long transactionNumber) {
+        int low = 0;
+        int high = names.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (serials[mid] < serial || (serials[mid] == serial && transactionNumbers[mid] < transactionNumber)) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    static int compareSerialNumbers(byte[] a, byte[] b) {
+        return ByteBuffer.wrap(a).compareTo(ByteBuffer.wrap(b));
+    }
+
+    /**
+     * Ein Eintrag einer Transaktion. Er verweist auf die Position des Index und hält selbst keine Daten.
+     */
+    public final class Entry {
+        final int position;
+
+        Entry(int position) {
+            this.position = position;
+        }
+
+        public String getName() {
+            return names[position];
+        }
+
+        /**
+         * @return die Position des Inhalts im Archiv.
+         */
+        public long getOffset() {
+            return offsets[position];
+        }
+
+        public long getLength() {
+            return lengths[position];
+        }
+
+        public long getTransactionNumber() {
+            return transactionNumbers[position];
+        }
+
+        public long getSignatureCounter() {
+            return signatureCounters[position];
+        }
+
+        /**
+         * @return den operationType der LogMessage, z.B. StartTransaction, oder einen leeren String.
+         */
+        public String getOperationType() {
+            return OPERATION_TYPES[operations[position]];
+        }
+    }
+
+    /**
+     * Sammelt die TransactionLogMessages eines Archivs in der Reihenfolge, in der sie dekodiert werden.
+     */
+    public static class Builder {
+        // Die Seriennummern in der Reihenfolge ihres ersten Auftretens, die Einträge verweisen auf ihre Position.
+        final HashMap<ByteBuffer, Integer> serialIds = new HashMap<>();
+        final ArrayList<byte[]> serialNumbers = new ArrayList<>();
+        int[] serials = new int[64];
+        long[] transactionNumbers = new long[64];
+        long[] signatureCounters = new long[64];
+        byte[] operations = new byte[64];
+        long[] offsets = new long[64];
+        long[] lengths = new long[64];
+        final ArrayList<String> names = new ArrayList<>();
+
+        /**
+         * Nimmt die LogMessage auf, falls sie eine TransactionLogMessage mit einer Seriennummer, einer Transaktionsnummer
+         * und einem Signaturzähler von höchstens 63 Bit ist. Andere LogMessages werden übergangen.
+         */
+        public void add(LogMessage message, long offset, long length) {
+            if (!(message instanceof TransactionLogMessage)) {
+                return;
+            }
+            TransactionLogMessage transaction = (TransactionLogMessage) message;
+            BigInteger transactionNumber = transaction.getTransactionNumber();
+            BigInteger signatureCounter = transaction.getSignatureCounter();
+            byte[] serialNumber = message.getSerialNumber();
+            if (serialNumber == null || !fitsInLong(transactionNumber) || !fitsInLong(signatureCounter)) {
+                return;
+            }
+
+            int n = names.size();
+            if (n == transactionNumbers.length) {
+                int capacity = n + (n >> 1);
+                serials = Arrays.copyOf(serials, capacity);
+                transactionNumbers = Arrays.copyOf(transactionNumbers, capacity);
+                signatureCounters = Arrays.copyOf(signatureCounters, capacity);
+                operations = Arrays.copyOf(operations, capacity);
+                offsets = Arrays.copyOf(offsets, capacity);
+                lengths = Arrays.copyOf(lengths, capacity);
+            }
+            Integer serial = serialIds.get(ByteBuffer.wrap(serialNumber));
+            if (serial == null) {
+                serial = serialNumbers.size();
+                serialNumbers.add(serialNumber.clone());
+                serialIds.put(ByteBuffer.wrap(serialNumbers.get(serial)), serial);
+            }
+            serials[n] = serial;
+            transactionNumbers[n] = transactionNumber.longValue();
+            signatureCounters[n] = signatureCounter.longValue();
+            operations[n] = operation(transaction.getOperationType());
+            offsets[n] = offset;
+            lengths[n] = length;
+            names.add(message.getFileName());
+        }
+
+        static boolean fitsInLong(BigInteger value) {
+            return value != null && value.signum() >= 0 && value.bitLength() <= 63;
+        }
+
+        static byte operation(String operationType) {
+            for (byte i = 1; i < OPERATION_TYPES.length; i++) {
+                if (OPERATION_TYPES[i].equals(operationType)) {
+                    return i;
+                }
+            }
+            return OPERATION_OTHER;
+        }
+
+        /**
+         * Sortiert die gesammelten Einträge und erzeugt den Index für das Archiv, zu dem der {@link TarIndex} gehört.
+         */
+        public TransactionIndex build(TarIndex tarIndex) {
+            byte[][] sortedSerialNumbers = serialNumbers.toArray(new byte[0][]);
+            Arrays.sort(sortedSerialNumbers, TransactionIndex::compareSerialNumbers);
+            int[] ranks = new int[sortedSerialNumbers.length];
+            for (int i = 0; i < sortedSerialNumbers.length; i++) {
+                ranks[serialIds.get(ByteBuffer.wrap(sortedSerialNumbers[i]))] = i;
+            }
+
+            int n = names.size();
+            int[] ids = new int[n];
+            Integer[] order = new Integer[n];
+            for (int i = 0; i < n; i++) {
+                ids[i] = ranks[serials[i]];
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.<Integer>comparingInt(i -> ids[i])
+                    .thenComparingLong(i -> transactionNumbers[i])
+                    .thenComparingLong(i -> signatureCounters[i]));
+
+            TransactionIndex index = new TransactionIndex(tarIndex.archiveSize, tarIndex.archiveLastModified, tarIndex.fingerprint, sortedSerialNumbers, n);
+            for (int i = 0; i < n; i++) {
+                int from = order[i];
+                index.serials[i] = ids[from];
+                index.transactionNumbers[i] = transactionNumbers[from];
+                index.signatureCounters[i] = signatureCounters[from];
+                index.operations[i] = operations[from];
+                index.offsets[i] = offsets[from];
+                index.lengths[i] = lengths[from];
+                index.names[i] = names.get(from);
+            }
+            return index;
+        }
+    }
+}
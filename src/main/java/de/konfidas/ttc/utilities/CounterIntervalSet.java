@@ -0,0 +1,175 @@
+package de.konfidas.ttc.utilities;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Eine Menge nicht negativer Zähler, die als sortierte Folge disjunkter, nicht benachbarter Bereiche [start, end]
+ * gespeichert wird. Lückenlose Zählerfolgen belegen unabhängig von ihrer Länge nur einen Bereich.
+ *
+ * Zu jedem Bereich wird das Element gespeichert, mit dem sein kleinster Zähler hinzugefügt wurde, etwa der Dateiname
+ * der LogMessage hinter einer Lücke. Die Zähler dürfen in beliebiger Reihenfolge hinzugefügt werden. Der zuletzt
+ * geänderte Bereich wird gemerkt, so dass fast sortierte Eingaben in konstanter Zeit hinzugefügt werden. Andernfalls
+ * wird der Bereich binär gesucht, und ein neuer Bereich zwischen zwei anderen verschiebt die folgenden Bereiche.
+ */
+public class CounterIntervalSet<T> {
+    final static int INITIAL_CAPACITY = 4;
+
+    long[] starts = new long[INITIAL_CAPACITY];
+    long[] ends = new long[INITIAL_CAPACITY];
+    Object[] elements = new Object[INITIAL_CAPACITY];
+    int ranges = 0;
+    long size = 0;
+    int cursor = 0;
+
+    /**
+     * Fügt den Zähler hinzu.
+     *
+     * @param element wird gespeichert, falls der Zähler einen neuen Bereich beginnt oder einen Bereich nach unten verlängert.
+     * @return false, falls der Zähler bereits enthalten war.
+     */
+    public boolean add(long counter, T element) {
+        if (counter < 0) {
+            throw new IllegalArgumentException(Long.toString(counter));
+        }
+        int i = floor(counter);
+        if (i >= 0 && counter <= ends[i]) {
+            return false;
+        }
+
+        boolean joinsLower = i >= 0 && ends[i] == counter - 1;
+        boolean joinsUpper = i + 1 < ranges && starts[i + 1] == counter + 1;
+        if (joinsLower && joinsUpper) {
+            ends[i] = ends[i + 1];
+            remove(i + 1);
+            cursor = i;
+        } else if (joinsLower) {
+            ends[i] = counter;
+            cursor = i;
+        } else if (joinsUpper) {
+            starts[i + 1] = counter;
+            elements[i + 1] = element;
+            cursor = i + 1;
+        } else {
+            insert(i + 1, counter, element);
+            cursor = i + 1;
+        }
+        size++;
+        return true;
+    }
+
+    /**
+     * Hängt einen Bereich oberhalb aller enthaltenen Zähler an, etwa beim Wiederherstellen gespeicherter Bereiche.
+     *
+     * @throws IllegalArgumentException falls der Bereich leer ist, nicht oberhalb liegt oder an den letzten Bereich
+     *                                  angrenzt.
+     */
+    public void appendRange(long start, long end, T element) {
+        if (start < 0 || end < start || (ranges > 0 && start <= ends[ranges - 1] + 1)) {
+            throw new IllegalArgumentException(start + ".." + end);//NON-NLS
+        }
+        insert(ranges, start, element);
+        ends[ranges - 1] = end;
+        size += end - start + 1;
+    }
+
+    public boolean contains(long counter) {
+        int i = floor(counter);
+        return i >= 0 && counter <= ends[i];
+    }
+
+    /**
+     * @return den Index des letzten Bereichs, der nicht nach dem Zähler beginnt, oder -1.
+     */
+    int floor(long counter) {
+        // Der zuletzt geänderte Bereich und sein Nachfolger werden zuerst geprüft.
+        for (int i = cursor; i <= cursor + 1 && i < ranges; i++) {
+            if (starts[i] <= counter && (i + 1 == ranges || starts[i + 1] > counter)) {
+                return i;
+            }
+        }
+        int index = Arrays.binarySearch(starts, 0, ranges, counter);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    void insert(int index, long counter, T element) {
+        if (ranges == starts.length) {
+            int capacity = ranges + (ranges >> 1) + 1;
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            elements = Arrays.copyOf(elements, capacity);
+        }
+        System.arraycopy(starts, index, starts, index + 1, ranges - index);
+        System.arraycopy(ends, index, ends, index + 1, ranges - index);
+        System.arraycopy(elements, index, elements, index + 1, ranges - index);
+        starts[index] = counter;
+        ends[index] = counter;
+        elements[index] = element;
+        ranges++;
+    }
+
+    void remove(int index) {
+        System.arraycopy(starts, index + 1, starts, index, ranges - index - 1);
+        System.arraycopy(ends, index + 1, ends, index, ranges - index - 1);
+        System.arraycopy(elements, index + 1, elements, index, ranges - index - 1);
+        ranges--;
+        elements[ranges] = null;
+    }
+
+    public boolean isEmpty() {
+        return ranges == 0;
+    }
+
+    /**
+     * @return die Anzahl der enthaltenen Zähler.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * @return die Anzahl der Bereiche, also die Anzahl der Lücken plus eins.
+     */
+    public int getRangeCount() {
+        return ranges;
+    }
+
+    public long getStart(int range) {
+        checkRange(range);
+        return starts[range];
+    }
+
+    public long getEnd(int range) {
+        checkRange(range);
+        return ends[range];
+    }
+
+    /**
+     * @return das Element, mit dem der kleinste Zähler des Bereichs hinzugefügt wurde.
+     */
+    @SuppressWarnings("unchecked")
+    public T getElement(int range) {
+        checkRange(range);
+        return (T) elements[range];
+    }
+
+    public long first() {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        return starts[0];
+    }
+
+    public long last() {
+        if (isEmpty()) {
+            throw new NoSuchElementException();
+        }
+        return ends[ranges - 1];
+    }
+
+    void checkRange(int range) {
+        if (range < 0 || range >= ranges) {
+            throw new IndexOutOfBoundsException(range);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package de.konfidas.ttc.utilities;
+
+import java.io.IOException;
+import java.util.NoSuchElementException;
+
+/**
+ * Liest ASN.1 Elemente nacheinander aus einem Bereich eines byte[], ohne sie zu kopieren oder BouncyCastle Objekte zu
+ * erzeugen. Jedes Element wird als {@link DerElement} mit den Positionen von Tag, Länge und Wert geliefert.
+ *
+ * Neben DER werden auch Elemente mit unbestimmter Länge (BER) gelesen, ihr Ende wird dann über die End-of-Contents
+ * Markierung bestimmt. Dazu müssen verschachtelte Elemente unbestimmter Länge rekursiv gelesen werden; die Tiefe ist
+ * auf {@value #MAX_INDEFINITE_LENGTH_DEPTH} begrenzt, damit präparierte Daten keinen StackOverflowError auslösen.
+ */
+public final class DerCursor {
+    final static int MAX_INDEFINITE_LENGTH_DEPTH = 64;
+
+    final byte[] data;
+    final int end;
+    int position;
+
+    public DerCursor(byte[] data) {
+        this(data, 0, data.length);
+    }
+
+    public DerCursor(byte[] data, int offset, int end) {
+        this.data = data;
+        this.position = offset;
+        this.end = end;
+    }
+
+    public boolean hasNext() {
+        return position < end;
+    }
+
+    /**
+     * @return das nächste Element.
+     * @throws IOException falls das Element nicht vollständig im Bereich liegt oder Tag bzw. Länge ungültig sind.
+     */
+    public DerElement next() throws IOException {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        DerElement element = read(data, position, end, 0);
+        position = element.end;
+        return element;
+    }
+
+    /**
+     * @param depth die Anzahl der umschließenden Elemente unbestimmter Länge, in denen das Element gelesen wird.
+     */
+    static DerElement read(byte[] data, int offset, int limit, int depth) throws IOException {
+        int p = offset;
+        int tag = data[p++] & 0xff;
+        int tagNumber = tag & 0x1f;
+        if (tagNumber == 0x1f) {
+            tagNumber = 0;
+            int b;
+            do {
+                if (p >= limit) {
+                    throw new IOException("truncated tag");//NON-NLS
+                }
+                b = data[p++] & 0xff;
+                if (tagNumber > (Integer.MAX_VALUE >> 7)) {
+                    throw new IOException("tag number too large");//NON-NLS
+                }
+                tagNumber = (tagNumber << 7) | (b & 0x7f);
+            } while ((b & 0x80) != 0);
+        }
+
+        if (p >= limit) {
+            throw new IOException("truncated length");//NON-NLS
+        }
+        int lengthByte = data[p++] & 0xff;
+
+        if (lengthByte == 0x80) {
+            if ((tag & DerElement.CONSTRUCTED) == 0) {
+                throw new IOException("indefinite length for primitive element");//NON-NLS
+            }
+            if (depth >= MAX_INDEFINITE_LENGTH_DEPTH) {
+                throw new IOException("indefinite length elements nested too deeply");//NON-NLS
+            }
+            int valueOffset = p;
+            while (true) {
+                if (p + 1 < limit && data[p] == 0 && data[p + 1] == 0) {
+                    return new DerElement(data, offset, tag, tagNumber, valueOffset, p - valueOffset, p + 2);
+                }
+                if (p >= limit) {
+                    throw new IOException("missing end-of-contents");//NON-NLS
+                }
+                p = read(data, p, limit, depth + 1).end;
+            }
+        }
+
+        int length;
+        if ((lengthByte & 0x80) == 0) {
+            length = lengthByte;
+        } else {
+            int numberOfLengthBytes = lengthByte & 0x7f;
+            if (numberOfLengthBytes > 4) {
+                throw new IOException("length exceeds integer");//NON-NLS
+            }
+            if (p + numberOfLengthBytes > limit) {
+                throw new IOException("truncated length");//NON-NLS
+            }
+            long l = 0;
+            for (int i = 0; i < numberOfLengthBytes; i++) {
+                l = (l << 8) | (data[p++] & 0xff);
+            }
+            if (l > Integer.MAX_VALUE) {
+                throw new IOException("length exceeds integer");//NON-NLS
+            }
+            length = (int) l;
+        }
+
+        if (length > limit - p) {
+            throw new IOException("element exceeds enclosing data");//NON-NLS
+        }
+        return new DerElement(data, offset, tag, tagNumber, p, length, p + length);
+    }
+}
@@ -0,0 +1,241 @@
+package de.konfidas.ttc.utilities;
+
+import org.bouncycastle.asn1.ASN1Primitive;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Ein ASN.1 Element innerhalb eines DER kodierten byte[]. Es werden nur die Positionen von Tag, Länge und Wert
+ * gespeichert, die Daten selbst werden nicht kopiert. BouncyCastle Objekte werden erst mit {@link #toASN1Primitive()}
+ * erzeugt.
+ */
+public final class DerElement {
+    public final static int INTEGER = 0x02;
+    public final static int OCTET_STRING = 0x04;
+    public final static int OBJECT_IDENTIFIER = 0x06;
+    public final static int UTC_TIME = 0x17;
+    public final static int GENERALIZED_TIME = 0x18;
+    public final static int SEQUENCE = 0x30;
+
+    final static int CONSTRUCTED = 0x20;
+    final static int CLASS_MASK = 0xC0;
+    final static int CONTEXT_SPECIFIC = 0x80;
+
+    final byte[] data;
+    final int offset;
+    final int tag;
+    final int tagNumber;
+    final int valueOffset;
+    final int valueLength;
+    final int end;
+
+    DerElement(byte[] data, int offset, int tag, int tagNumber, int valueOffset, int valueLength, int end) {
+        this.data = data;
+        this.offset = offset;
+        this.tag = tag;
+        this.tagNumber = tagNumber;
+        this.valueOffset = valueOffset;
+        this.valueLength = valueLength;
+        this.end = end;
+    }
+
+    /**
+     * @return das erste Byte des Tags (Klasse, constructed Bit und Tag-Nummer bzw. 0x1F für lange Tag-Nummern).
+     */
+    public int getTag() {
+        return tag;
+    }
+
+    public int getTagNumber() {
+        return tagNumber;
+    }
+
+    public boolean isConstructed() {
+        return (tag & CONSTRUCTED) != 0;
+    }
+
+    public boolean isContextSpecific() {
+        return (tag & CLASS_MASK) == CONTEXT_SPECIFIC;
+    }
+
+    /**
+     * @return true für einen OCTET STRING, auch in der constructed Form.
+     */
+    public boolean isOctetString() {
+        return (tag & ~CONSTRUCTED) == OCTET_STRING;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * @return die Position des Tags in {@link #getData()}.
+     */
+    public int getOffset() {
+        return offset;
+    }
+
+    /**
+     * @return die Position hinter dem Element in {@link #getData()}.
+     */
+    public int getEnd() {
+        return end;
+    }
+
+    public int getValueOffset() {
+        return valueOffset;
+    }
+
+    public int getValueLength() {
+        return valueLength;
+    }
+
+    /**
+     * @return eine Kopie der vollständigen Kodierung (Tag, Länge und Wert).
+     */
+    public byte[] getEncoded() {
+        return Arrays.copyOfRange(data, offset, end);
+    }
+
+    /**
+     * @return eine Kopie des Werts.
+     */
+    public byte[] getValue() {
+        return Arrays.copyOfRange(data, valueOffset, valueOffset + valueLength);
+    }
+
+    /**
+     * @return den Wert als Sicht auf {@link #getData()}, ohne ihn zu kopieren.
+     */
+    public ByteBuffer getValueBuffer() {
+        return ByteBuffer.wrap(data, valueOffset, valueLength).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * @return ein Element, dessen Wert der Inhalt dieses OCTET STRING ist. In der primitiven Form ist das dieses
+     * Element selbst, die constructed Form wird neu kodiert.
+     */
+    public DerElement toPrimitiveOctetString() throws IOException {
+        if (!isConstructed()) {
+            return this;
+        }
+        return octetString(getOctets());
+    }
+
+    /**
+     * Erzeugt einen OCTET STRING mit den übergebenen Daten in DER Kodierung.
+     */
+    public static DerElement octetString(byte[] octets) {
+        int length = octets.length;
+        int numberOfLengthBytes = 0;
+        if (length > 127) {
+            for (int l = length; l > 0; l >>>= 8) {
+                numberOfLengthBytes++;
+            }
+        }
+        byte[] encoded = new byte[2 + numberOfLengthBytes + length];
+        encoded[0] = OCTET_STRING;
+        if (numberOfLengthBytes == 0) {
+            encoded[1] = (byte) length;
+        } else {
+            encoded[1] = (byte) (0x80 | numberOfLengthBytes);
+            for (int i = 0; i < numberOfLengthBytes; i++) {
+                encoded[1 + numberOfLengthBytes - i] = (byte) (length >>> (8 * i));
+            }
+        }
+        System.arraycopy(octets, 0, encoded, 2 + numberOfLengthBytes, length);
+        return new DerElement(encoded, 0, OCTET_STRING, OCTET_STRING, 2 + numberOfLengthBytes, length, encoded.length);
+    }
+
+    /**
+     * @return den Inhalt eines OCTET STRING. Die constructed Form wird über BouncyCastle zusammengesetzt.
+     */
+    public byte[] getOctets() throws IOException {
+        if (!isConstructed()) {
+            return getValue();
+        }
+        return org.bouncycastle.asn1.ASN1OctetString.getInstance(toASN1Primitive()).getOctets();
+    }
+
+    public BigInteger getValueAsBigInteger() throws IOException {
+        if (valueLength == 0) {
+            throw new IOException("empty INTEGER");//NON-NLS
+        }
+        return new BigInteger(getValue());
+    }
+
+    /**
+     * @return den Wert als Zeichenkette, ein Zeichen pro Byte, wie es BouncyCastle für PrintableString liefert.
+     */
+    public String getValueAsString() {
+        return new String(data, valueOffset, valueLength, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * @return den Wert eines OBJECT IDENTIFIER in Punktnotation.
+     */
+    public String getValueAsObjectIdentifier() throws IOException {
+        if (valueLength == 0) {
+            throw new IOException("empty OBJECT IDENTIFIER");//NON-NLS
+        }
+        StringBuilder sb = new StringBuilder();
+        BigInteger value = BigInteger.ZERO;
+        boolean first = true;
+        for (int i = valueOffset; i < valueOffset + valueLength; i++) {
+            int b = data[i] & 0xff;
+            value = value.shiftLeft(7).or(BigInteger.valueOf(b & 0x7f));
+            if ((b & 0x80) != 0) {
+                continue;
+            }
+            if (first) {
+                // Die ersten beiden Bögen sind in einem Wert kodiert: 40 * X + Y
+                int firstArc = value.compareTo(BigInteger.valueOf(80)) >= 0 ? 2 : value.intValue() / 40;
+                sb.append(firstArc).append('.').append(value.subtract(BigInteger.valueOf(40L * firstArc)));
+                first = false;
+            } else {
+                sb.append('.').append(value);
+            }
+            value = BigInteger.ZERO;
+        }
+        if ((data[valueOffset + valueLength - 1] & 0x80) != 0) {
+            throw new IOException("truncated OBJECT IDENTIFIER");//NON-NLS
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return einen Cursor über die Elemente im Wert dieses Elements.
+     */
+    public DerCursor children() {
+        return new DerCursor(data, valueOffset, valueOffset + valueLength);
+    }
+
+    public List<DerElement> getChildren() throws IOException {
+        ArrayList<DerElement> result = new ArrayList<>();
+        DerCursor cursor = children();
+        while (cursor.hasNext()) {
+            result.add(cursor.next());
+        }
+        return result;
+    }
+
+    /**
+     * Erzeugt das BouncyCastle Objekt für dieses Element. Dazu wird die Kodierung gelesen, das ist deutlich teurer als
+     * die übrigen Zugriffe.
+     */
+    public ASN1Primitive toASN1Primitive() throws IOException {
+        return ASN1Primitive.fromByteArray(getEncoded());
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ASN.1 tag 0x%02X (length %d)", tag, valueLength);//NON-NLS
+    }
+}
@@ -0,0 +1,94 @@
+package de.konfidas.ttc.utilities;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.ResourceBundle;
+
+/**
+ * Ein geheimer Schlüssel für HMAC-SHA256, mit dem die Dateien, die TTC zwischen zwei Läufen aufhebt (Caches und
+ * Checkpoints), gegen Veränderung geschützt werden. Wer diese Dateien schreiben kann, könnte sonst Prüfungen
+ * überspringen lassen.
+ *
+ * Der Schlüssel liegt in einer eigenen Datei, die nur für den Eigentümer lesbar angelegt wird. Sie sollte nicht neben
+ * den geschützten Dateien liegen, da er sonst mit ihnen ausgetauscht werden kann.
+ */
+public final class IntegrityKey {
+    final static Logger logger = LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
+    static Locale locale = new Locale("de", "DE");//NON-NLS
+    static ResourceBundle properties = ResourceBundle.getBundle("ttc",locale);//NON-NLS
+
+    public final static String MAC_ALGORITHM = "HmacSHA256";//NON-NLS
+    public final static int KEY_LENGTH = 32;
+    public final static int MAC_LENGTH = 32;
+
+    final SecretKeySpec key;
+
+    public IntegrityKey(byte[] key) {
+        this.key = new SecretKeySpec(key, MAC_ALGORITHM);
+    }
+
+    /**
+     * Lädt den Schlüssel aus der Datei. Existiert sie nicht, wird ein neuer Schlüssel erzeugt und in eine neue Datei
+     * geschrieben, die von Anfang an nur für den Eigentümer lesbar ist.
+     */
+    public static IntegrityKey loadOrCreate(File keyFile) throws IOException {
+        if (keyFile.isFile()) {
+            byte[] key = Files.readAllBytes(keyFile.toPath());
+            if (key.length < KEY_LENGTH) {
+                throw new IOException(String.format(properties.getString("de.konfidas.ttc.utilities.integrityKeyTooShort"), keyFile, KEY_LENGTH));
+            }
+            return new IntegrityKey(key);
+        }
+
+        byte[] key = new byte[KEY_LENGTH];
+        new SecureRandom().nextBytes(key);
+        EnumSet<StandardOpenOption> options = EnumSet.of(StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        SeekableByteChannel channel;
+        try {
+            channel = Files.newByteChannel(keyFile.toPath(), options, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------")));//NON-NLS
+        } catch (UnsupportedOperationException e) {
+            logger.debug("Could not restrict permissions of {}", keyFile);//NON-NLS
+            channel = Files.newByteChannel(keyFile.toPath(), options);
+        }
+        try (SeekableByteChannel out = channel) {
+            ByteBuffer buffer = ByteBuffer.wrap(key);
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+        }
+        return new IntegrityKey(key);
+    }
+
+    /**
+     * @return einen mit dem Schlüssel initialisierten Mac.
+     */
+    public Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public byte[] mac(byte[] content, int offset, int length) {
+        Mac mac = newMac();
+        mac.update(content, offset, length);
+        return mac.doFinal();
+    }
+}
@@ -0,0 +1,31 @@
+package de.konfidas.ttc.utilities;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Erzeugt die Thread-Pools, mit denen TTC Archive dekodiert und validiert.
+ */
+public final class ThreadPools {
+    final static AtomicInteger poolNumber = new AtomicInteger();
+
+    private ThreadPools() {
+    }
+
+    /**
+     * Erzeugt einen Pool mit fester Größe aus Daemon-Threads, die einen offenen Pool nicht am Beenden der JVM hindern.
+     * Die Threads heißen {@code ttc-<name>-<Pool>-<Thread>}.
+     *
+     * @param name Verwendung des Pools, z.B. "decoder".
+     */
+    public static ExecutorService newFixedDaemonPool(String name, int threads) {
+        String prefix = "ttc-" + name + "-" + poolNumber.incrementAndGet() + "-";//NON-NLS
+        AtomicInteger threadNumber = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, prefix + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+}
@@ -1,8 +1,8 @@
 package de.konfidas.ttc.validation;
 
+import de.konfidas.ttc.messages.LogMessage;
 import de.konfidas.ttc.tars.LogMessageArchive;
-import java.util.Collection;
-import java.util.LinkedList;
+import java.util.*;
 
 public class AggregatedValidator implements Validator{
     final Collection<Validator> validators;
@@ -28,13 +28,54 @@ public class AggregatedValidator implements Validator{
         }
     }
 
+    /**
+     * Alle {@link LogMessageValidator} werden in einem gemeinsamen Durchlauf über die sortierten LogMessages
+     * aufgerufen, alle anderen Validatoren über {@link Validator#validate(LogMessageArchive)}. Die Ergebnisse werden
+     * in der Reihenfolge angehängt, in der die Validatoren hinzugefügt wurden.
+     */
     @Override
     public ValidationResult validate(LogMessageArchive tar) {
-                ValidationResultImpl result = new ValidationResultImpl();
+        Map<Validator, ValidationResult> results = validateMessages(getMessageValidators(), tar);
+
+        ValidationResultImpl result = new ValidationResultImpl();
         for(Validator v : validators){
-            result.append(v.validate(tar));
+            result.append(v instanceof LogMessageValidator ? results.get(v) : v.validate(tar));
         }
 
         return result;
     }
+
+    List<LogMessageValidator> getMessageValidators() {
+        ArrayList<LogMessageValidator> messageValidators = new ArrayList<>();
+        for(Validator v : validators){
+            if(v instanceof LogMessageValidator){
+                messageValidators.add((LogMessageValidator) v);
+            }
+        }
+        return messageValidators;
+    }
+
+    /**
+     * Ruft die Validatoren in einem gemeinsamen Durchlauf über die sortierten LogMessages auf.
+     *
+     * @return die Ergebnisse je Validator.
+     */
+    static Map<Validator, ValidationResult> validateMessages(List<LogMessageValidator> messageValidators, LogMessageArchive tar) {
+        Map<Validator, ValidationResult> results = new IdentityHashMap<>();
+        if(messageValidators.isEmpty()){
+            return results;
+        }
+        for(LogMessageValidator v : messageValidators){
+            v.begin(tar);
+        }
+        for(LogMessage msg : tar.getSortedLogMessages()){
+            for(LogMessageValidator v : messageValidators){
+                v.onMessage(msg);
+            }
+        }
+        for(LogMessageValidator v : messageValidators){
+            results.put(v, v.end(tar));
+        }
+        return results;
+    }
 }
@@ -0,0 +1,301 @@
+package de.konfidas.ttc.validation;
+
+import de.konfidas.ttc.utilities.IntegrityKey;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.x509.Extension;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Ein Cache erfolgreich geprüfter Zertifikatspfade, der von mehreren {@link CertificateValidator} Instanzen geteilt
+ * und zwischen Aufrufen in einer Datei gespeichert werden kann.
+ *
+ * Der Schlüssel eines Eintrags ist ein SHA-256 Hashwert über die Fingerprints des geprüften Zertifikats, der
+ * Zwischenzertifikate und der Vertrauensanker sowie, falls Sperrinformationen geprüft werden, über Aussteller und
+ * Version (CRL Number bzw. thisUpdate) aller CRLs. Ein neuer Anker, ein anderes Zwischenzertifikat oder eine neue CRL
+ * führen damit zu einem neuen Schlüssel. Jeder Eintrag gilt höchstens bis zum frühesten notAfter der Zertifikate im
+ * Pfad und, bei Prüfung der Sperrinformationen, bis zum frühesten nextUpdate der CRLs. Der Anteil von Ankern und CRLs
+ * hängt nicht vom Zertifikat ab und wird mit {@link #context(Set, Collection, boolean)} einmal je Validierung
+ * berechnet.
+ *
+ * Ein Eintrag erspart die Prüfung des Pfads, die Datei endet daher mit einem HMAC-SHA256 über ihren Inhalt. Stimmt er
+ * nicht, wird die gesamte Datei verworfen.
+ */
+public class CertPathValidationCache implements Closeable {
+    final static Logger logger = LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
+    static Locale locale = new Locale("de", "DE");//NON-NLS
+    static ResourceBundle properties = ResourceBundle.getBundle("ttc",locale);//NON-NLS
+
+    final static int MAGIC = 0x54544350; // "TTCP"
+    final static int VERSION = 2;
+    final static int KEY_LENGTH = 32;
+
+    final File file;
+    final IntegrityKey integrityKey;
+    final ConcurrentHashMap<ByteBuffer, Long> entries = new ConcurrentHashMap<>();
+    volatile boolean modified;
+
+    /**
+     * Erzeugt einen Cache, der nur im Speicher gehalten wird.
+     */
+    public CertPathValidationCache() {
+        this(null, null);
+    }
+
+    CertPathValidationCache(File file, IntegrityKey integrityKey) {
+        this.file = file;
+        this.integrityKey = integrityKey;
+    }
+
+    /**
+     * Lädt den Cache aus der Datei. Existiert sie nicht, wird sie beim ersten {@link #save()} angelegt. Abgelaufene
+     * Einträge werden nicht übernommen, eine unlesbare oder veränderte Datei wird verworfen.
+     *
+     * @param integrityKey der Schlüssel für den HMAC über die Datei.
+     */
+    public static CertPathValidationCache open(File file, IntegrityKey integrityKey) {
+        CertPathValidationCache cache = new CertPathValidationCache(file, Objects.requireNonNull(integrityKey));
+        cache.load();
+        return cache;
+    }
+
+    void load() {
+        if (!file.isFile()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        try {
+            byte[] content = Files.readAllBytes(file.toPath());
+            int length = content.length - IntegrityKey.MAC_LENGTH;
+            if (length < 0 || !MessageDigest.isEqual(integrityKey.mac(content, 0, length), Arrays.copyOfRange(content, length, content.length))) {
+                logger.warn(String.format(properties.getString("de.konfidas.ttc.validation.certPathCacheIntegrityViolated"), file));
+                return;
+            }
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(content, 0, length));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                logger.warn(String.format(properties.getString("de.konfidas.ttc.validation.certPathCacheUnreadable"), file));
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                byte[] key = new byte[KEY_LENGTH];
+                in.readFully(key);
+                long validUntil = in.readLong();
+                if (validUntil > now) {
+                    entries.put(ByteBuffer.wrap(key), validUntil);
+                }
+            }
+        } catch (IOException e) {
+            logger.warn(String.format(properties.getString("de.konfidas.ttc.validation.certPathCacheUnreadable"), file), e);
+            entries.clear();
+        }
+    }
+
+    /**
+     * Berechnet den Schlüssel für die Prüfung eines Zertifikats.
+     *
+     * @param revocationChecking true, falls die Sperrinformationen Teil der Prüfung sind.
+     */
+    public static ByteBuffer key(X509Certificate cert, Collection<X509Certificate> intermediateCerts, Set<TrustAnchor> trustAnchors, Collection<CRL> crls, boolean revocationChecking) throws CertificateEncodingException {
+        return key(context(trustAnchors, crls, revocationChecking), cert, intermediateCerts);
+    }
+
+    /**
+     * Berechnet den Schlüssel für die Prüfung eines Zertifikats aus dem mit {@link #context(Set, Collection, boolean)}
+     * berechneten Anteil der Anker und CRLs.
+     */
+    public static ByteBuffer key(byte[] context, X509Certificate cert, Collection<X509Certificate> intermediateCerts) throws CertificateEncodingException {
+        MessageDigest digest = sha256();
+        digest.update(fingerprint(cert));
+        updateSorted(digest, (byte) 'I', fingerprints(intermediateCerts));
+        digest.update(context);
+        return ByteBuffer.wrap(digest.digest());
+    }
+
+    /**
+     * @return einen Hashwert über die Vertrauensanker und, falls die Sperrinformationen Teil der Prüfung sind, über
+     * Aussteller und Version der CRLs.
+     */
+    public static byte[] context(Set<TrustAnchor> trustAnchors, Collection<CRL> crls, boolean revocationChecking) throws CertificateEncodingException {
+        MessageDigest digest = sha256();
+        ArrayList<byte[]> anchors = new ArrayList<>();
+        for (TrustAnchor anchor : trustAnchors) {
+            if (anchor.getTrustedCert() != null) {
+                anchors.add(fingerprint(anchor.getTrustedCert()));
+            } else {
+                MessageDigest anchorDigest = sha256();
+                anchorDigest.update(anchor.getCAName().getBytes(StandardCharsets.UTF_8));
+                anchorDigest.update(anchor.getCAPublicKey().getEncoded());
+                anchors.add(anchorDigest.digest());
+            }
+        }
+        updateSorted(digest, (byte) 'A', anchors);
+
+        if (revocationChecking) {
+            ArrayList<byte[]> versions = new ArrayList<>();
+            for (CRL crl : crls) {
+                versions.add(crlVersion(crl));
+            }
+            updateSorted(digest, (byte) 'R', versions);
+        } else {
+            digest.update((byte) 'N');
+        }
+        return digest.digest();
+    }
+
+    /**
+     * @return einen Hashwert über Aussteller und Version einer CRL. Als Version dient die CRL Number, falls
+     * vorhanden, sonst thisUpdate.
+     */
+    static byte[] crlVersion(CRL crl) {
+        MessageDigest digest = sha256();
+        if (crl instanceof X509CRL) {
+            X509CRL x509Crl = (X509CRL) crl;
+            digest.update(x509Crl.getIssuerX500Principal().getEncoded());
+            BigInteger crlNumber = getCrlNumber(x509Crl);
+            if (crlNumber != null) {
+                digest.update(crlNumber.toByteArray());
+            } else {
+                digest.update(ByteBuffer.allocate(Long.BYTES).putLong(0, x509Crl.getThisUpdate().getTime()));
+            }
+        } else {
+            digest.update(crl.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        return digest.digest();
+    }
+
+    static BigInteger getCrlNumber(X509CRL crl) {
+        byte[] extension = crl.getExtensionValue(Extension.cRLNumber.getId());
+        if (extension == null) {
+            return null;
+        }
+        try {
+            return ASN1Integer.getInstance(ASN1OctetString.getInstance(extension).getOctets()).getValue();
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return den Zeitpunkt, bis zu dem das Ergebnis einer erfolgreichen Prüfung des Pfads gilt.
+     */
+    public static long validUntil(List<? extends Certificate> path, TrustAnchor anchor, Collection<CRL> crls, boolean revocationChecking) {
+        long result = Long.MAX_VALUE;
+        for (Certificate cert : path) {
+            if (cert instanceof X509Certificate) {
+                result = Math.min(result, ((X509Certificate) cert).getNotAfter().getTime());
+            }
+        }
+        if (anchor != null && anchor.getTrustedCert() != null) {
+            result = Math.min(result, anchor.getTrustedCert().getNotAfter().getTime());
+        }
+        if (revocationChecking) {
+            for (CRL crl : crls) {
+                if (crl instanceof X509CRL && ((X509CRL) crl).getNextUpdate() != null) {
+                    result = Math.min(result, ((X509CRL) crl).getNextUpdate().getTime());
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return true, falls zu diesem Schlüssel eine erfolgreiche Prüfung vorliegt, die zum Zeitpunkt now noch gilt.
+     */
+    public boolean isValid(ByteBuffer key, long now) {
+        Long validUntil = entries.get(key);
+        return validUntil != null && now < validUntil;
+    }
+
+    public void put(ByteBuffer key, long validUntil) {
+        entries.put(key, validUntil);
+        modified = true;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Schreibt die noch gültigen Einträge in die Datei. Ohne Datei oder ohne Änderungen passiert nichts.
+     */
+    public synchronized void save() throws IOException {
+        if (file == null || !modified) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        ArrayList<Map.Entry<ByteBuffer, Long>> valid = new ArrayList<>();
+        for (Map.Entry<ByteBuffer, Long> entry : entries.entrySet()) {
+            if (entry.getValue() > now) {
+                valid.add(entry);
+            }
+        }
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(valid.size());
+        for (Map.Entry<ByteBuffer, Long> entry : valid) {
+            out.write(entry.getKey().array());
+            out.writeLong(entry.getValue());
+        }
+        out.flush();
+        byte[] content = buffer.toByteArray();
+
+        File tmp = new File(file.getPath() + ".tmp");//NON-NLS
+        try (OutputStream fileOut = new FileOutputStream(tmp)) {
+            fileOut.write(content);
+            fileOut.write(integrityKey.mac(content, 0, content.length));
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        modified = false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        save();
+    }
+
+    static byte[] fingerprint(X509Certificate cert) throws CertificateEncodingException {
+        return sha256().digest(cert.getEncoded());
+    }
+
+    static List<byte[]> fingerprints(Collection<X509Certificate> certs) throws CertificateEncodingException {
+        ArrayList<byte[]> result = new ArrayList<>();
+        for (X509Certificate cert : certs) {
+            result.add(fingerprint(cert));
+        }
+        return result;
+    }
+
+    static void updateSorted(MessageDigest digest, byte marker, List<byte[]> values) {
+        values.sort(Arrays::compare);
+        digest.update(marker);
+        digest.update(ByteBuffer.allocate(Integer.BYTES).putInt(0, values.size()));
+        for (byte[] value : values) {
+            digest.update(value);
+        }
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");//NON-NLS
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -6,10 +6,10 @@ import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.nio.ByteBuffer;
 import java.security.*;
 import java.security.cert.*;
 import java.util.*;
-import java.util.stream.Collectors;
 
 public class CertificateValidator implements Validator {
 
@@ -18,9 +18,11 @@ public class CertificateValidator implements Validator {
 
 
     final static Logger logger = LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
+    final TrustStore trustStore;
     final Set<TrustAnchor> trustedCerts;
-    final  Collection<CRL> crls;
+    final CrlStore crlStore;
     boolean enableRevocationChecking;
+    CertPathValidationCache cache = new CertPathValidationCache();
 
 
     public CertificateValidator(Collection<X509Certificate> trustedCerts){
@@ -32,20 +34,81 @@ public class CertificateValidator implements Validator {
         return this;
     }
 
+    /**
+     * Setzt den Cache für erfolgreich geprüfte Zertifikatspfade. Ohne Aufruf verwendet jede Instanz einen eigenen
+     * Cache im Speicher, so dass ein Zertifikat, das in mehreren Archiven enthalten ist, nur einmal geprüft wird.
+     */
+    public CertificateValidator setCache(CertPathValidationCache cache){
+        this.cache = Objects.requireNonNull(cache);
+        return this;
+    }
+
     public CertificateValidator(Collection<X509Certificate> trustedCerts,  Collection<CRL> crls){
-        this.trustedCerts =  trustedCerts.stream().map(c -> new TrustAnchor(c,null)).collect(Collectors.toSet());
-        this.crls = crls;
+        this(TrustStore.of(trustedCerts), crls);
+    }
+
+    public CertificateValidator(TrustStore trustStore){
+        this(trustStore, new LinkedList<>());
+    }
+
+    /**
+     * @param trustStore Vertrauensanker und Zwischenzertifikate. Der Pfad jedes Client-Zertifikats wird über die
+     *                   Key Identifier aus dem TrustStore und den Zwischenzertifikaten des Archivs aufgebaut.
+     */
+    public CertificateValidator(TrustStore trustStore, Collection<CRL> crls){
+        this(trustStore, CrlStore.of(crls));
+    }
+
+    /**
+     * @param crlStore die Sperrlisten. Sie werden nicht an PKIX übergeben, sondern nach der Prüfung des Pfads für
+     *                 jedes Zertifikat im Pfad direkt nach Aussteller und Seriennummer nachgeschlagen.
+     */
+    public CertificateValidator(TrustStore trustStore, CrlStore crlStore){
+        this.trustStore = trustStore;
+        this.trustedCerts = trustStore.getTrustAnchors();
+        this.crlStore = crlStore;
         enableRevocationChecking = true;
     }
 
     @Override
     public ValidationResult validate(LogMessageArchive tar) {
         LinkedList<ValidationException> errors = new LinkedList<>();
+        ArrayList<X509Certificate> archiveIntermediates = new ArrayList<>(tar.getIntermediateCertificates().values());
+        TrustStore.CertificateIndex archiveIndex = new TrustStore.CertificateIndex(archiveIntermediates);
+
+        // Die PKIX Objekte hängen nur vom Archiv ab und werden für alle Zertifikate des Archivs verwendet.
+        CertificateFactory cf = null;
+        CertPathValidator pathValidator = null;
+        PKIXParameters params = null;
+        Collection<CRL> crls = crlStore.getCrls();
+        byte[] cacheContext = null;
 
         for (X509Certificate cert : tar.getClientCertificates().values()) {
             try {
                 logger.debug(properties.getString("de.konfidas.ttc.validation.checkingCert"), cert.getSerialNumber());
-                checkCert(cert, trustedCerts, new ArrayList<>(tar.getIntermediateCertificates().values()), crls);
+                List<X509Certificate> intermediateCerts = trustStore.buildPath(cert, archiveIndex);
+                if (intermediateCerts == null) {
+                    // Ohne Pfad zu einem Anker liefert PKIX mit allen Zwischenzertifikaten des Archivs die Fehlermeldung.
+                    logger.debug("No path to a trust anchor found for {}", cert.getSerialNumber());//NON-NLS
+                    intermediateCerts = archiveIntermediates;
+                }
+                if (cacheContext == null) {
+                    // Anker und CRLs sind für alle Zertifikate des Archivs gleich.
+                    cacheContext = CertPathValidationCache.context(trustedCerts, crls, enableRevocationChecking);
+                }
+                ByteBuffer key = CertPathValidationCache.key(cacheContext, cert, intermediateCerts);
+                if (cache.isValid(key, System.currentTimeMillis())) {
+                    logger.debug("Certificate path of {} has already been validated", cert.getSerialNumber());//NON-NLS
+                    continue;
+                }
+
+                if (params == null) {
+                    cf = CertificateFactory.getInstance("X.509", BouncyCastleProvider.PROVIDER_NAME);//NON-NLS
+                    pathValidator = CertPathValidator.getInstance("PKIX", BouncyCastleProvider.PROVIDER_NAME);//NON-NLS
+                    params = createParameters(trustedCerts);
+                }
+                PKIXCertPathValidatorResult r = checkCert(cert, intermediateCerts, cf, pathValidator, params, crlStore);
+                cache.put(key, CertPathValidationCache.validUntil(pathOf(cert, intermediateCerts), r.getTrustAnchor(), crls, enableRevocationChecking));
             }catch (Exception e) {
                 errors.add(new CertificateValidationException(cert, e));
             }
@@ -58,25 +121,59 @@ public class CertificateValidator implements Validator {
             NoSuchAlgorithmException, InvalidAlgorithmParameterException, NoSuchProviderException, CertPathValidatorException, CertificateException {
 
         CertificateFactory cf = CertificateFactory.getInstance("X.509", BouncyCastleProvider.PROVIDER_NAME);//NON-NLS
+        CertPathValidator validator = CertPathValidator.getInstance("PKIX", BouncyCastleProvider.PROVIDER_NAME);//NON-NLS
+        checkCert(certToCheck, intermediateCerts, cf, validator, createParameters(trustedCerts), CrlStore.of(crls));
+    }
 
-        ArrayList<X509Certificate> certs = new ArrayList<>();
-        certs.add(certToCheck);
-        certs.addAll(intermediateCerts);
+    PKIXCertPathValidatorResult checkCert(X509Certificate certToCheck, List<X509Certificate> intermediateCerts, CertificateFactory cf, CertPathValidator validator, PKIXParameters params, CrlStore crlStore) throws
+            InvalidAlgorithmParameterException, CertPathValidatorException, CertificateException {
+        CertPath path = cf.generateCertPath(pathOf(certToCheck, intermediateCerts));
 
-        CertPath path = cf.generateCertPath(certs);
-        CertPathValidator validator = CertPathValidator.getInstance("PKIX", BouncyCastleProvider.PROVIDER_NAME);//NON-NLS
+        PKIXCertPathValidatorResult r = (PKIXCertPathValidatorResult) validator.validate(path, params);
+        logger.debug(r.toString());
 
-        CertStore crlStore = CertStore.getInstance("Collection", new CollectionCertStoreParameters(crls));//NON-NLS
+        if (enableRevocationChecking) {
+            checkRevocation(path, r.getTrustAnchor(), crlStore);
+        }
+        return r;
+    }
 
-        PKIXParameters params = new PKIXParameters(trustedCerts);
-        //CertStore store = CertStore.getInstance("Collection",new CollectionCertStoreParameters(), BouncyCastleProvider.PROVIDER_NAME);
+    /**
+     * Prüft die Sperrinformationen aller Zertifikate im Pfad. Der Aussteller eines Zertifikats ist das nächste
+     * Zertifikat im Pfad bzw. für das letzte der Vertrauensanker.
+     */
+    static void checkRevocation(CertPath path, TrustAnchor anchor, CrlStore crlStore) throws CertPathValidatorException {
+        List<? extends java.security.cert.Certificate> certs = path.getCertificates();
+        Date now = new Date();
+        for (int i = 0; i < certs.size(); i++) {
+            PublicKey issuerKey;
+            if (i + 1 < certs.size()) {
+                issuerKey = certs.get(i + 1).getPublicKey();
+            } else {
+                issuerKey = anchor.getTrustedCert() != null ? anchor.getTrustedCert().getPublicKey() : anchor.getCAPublicKey();
+            }
+            try {
+                crlStore.check((X509Certificate) certs.get(i), issuerKey, now);
+            } catch (CertPathValidatorException e) {
+                throw new CertPathValidatorException(e.getMessage(), e.getCause(), path, i, e.getReason());
+            }
+        }
+    }
 
-        //params.addCertStore(store);
-        params.setRevocationEnabled(enableRevocationChecking);
-        params.addCertStore(crlStore);
+    /**
+     * Die Sperrlisten werden nicht über PKIX geprüft, siehe {@link #checkRevocation(CertPath, TrustAnchor, CrlStore)}.
+     */
+    PKIXParameters createParameters(Set<TrustAnchor> trustedCerts) throws InvalidAlgorithmParameterException {
+        PKIXParameters params = new PKIXParameters(trustedCerts);
+        params.setRevocationEnabled(false);
+        return params;
+    }
 
-        PKIXCertPathValidatorResult r = (PKIXCertPathValidatorResult) validator.validate(path, params);
-        logger.debug(r.toString());
+    static List<X509Certificate> pathOf(X509Certificate certToCheck, List<X509Certificate> intermediateCerts) {
+        ArrayList<X509Certificate> certs = new ArrayList<>();
+        certs.add(certToCheck);
+        certs.addAll(intermediateCerts);
+        return certs;
     }
 
 
@@ -0,0 +1,292 @@
+package de.konfidas.ttc.validation;
+
+import de.konfidas.ttc.utilities.IntegrityKey;
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Hex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.*;
+
+/**
+ * Speichert den Zustand von {@link CheckpointableValidator}s je TSE in einem Verzeichnis, eine Datei je Seriennummer.
+ *
+ * Vor der Validierung eines neuen Exports wird der Zustand mit {@link #restore(Collection)} geladen, danach mit
+ * {@link #save(Collection)} aktualisiert. Jede Datei enthält je Validator einen Abschnitt, der über
+ * {@link CheckpointableValidator#getCheckpointId()} zugeordnet wird, und endet mit einem HMAC-SHA256 über den
+ * gesamten Inhalt. Der Schlüssel ist ein {@link IntegrityKey}, dessen Datei nicht im Verzeichnis liegen darf. Eine
+ * Datei, deren HMAC nicht stimmt, wird nicht verwendet, sondern führt zu einer {@link CheckpointIntegrityException}.
+ *
+ * Jedes {@link #save(Collection)} erhöht eine Generation, die in jedem Checkpoint steht. Zuletzt wird die Datei
+ * {@value #GENERATION_FILE_NAME} geschrieben, die ebenfalls mit dem HMAC geschützt ist und die Generation und die
+ * Seriennummern aller Checkpoints enthält. Ein einzeln gegen eine ältere Fassung ausgetauschter oder gelöschter
+ * Checkpoint wird damit erkannt. Checkpoints der nächsten Generation werden akzeptiert, sie stammen von einem
+ * abgebrochenen {@link #save(Collection)}.
+ */
+public class CheckpointStore {
+    final static Logger logger = LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
+    static Locale locale = new Locale("de", "DE");//NON-NLS
+    static ResourceBundle properties = ResourceBundle.getBundle("ttc",locale);//NON-NLS
+
+    final static int MAGIC = 0x5454434B; // "TTCK"
+    final static int VERSION = 2;
+    final static String SUFFIX = ".checkpoint";//NON-NLS
+    final static String GENERATION_FILE_NAME = "checkpoints.generation";//NON-NLS
+    final static int MAC_LENGTH = IntegrityKey.MAC_LENGTH;
+
+    final File directory;
+    final IntegrityKey key;
+    // Die Generation des letzten vollständigen save() und die Seriennummern seiner Checkpoints.
+    long generation;
+    final TreeSet<ByteBuffer> serialNumbers = new TreeSet<>();
+
+    CheckpointStore(File directory, IntegrityKey key) {
+        this.directory = directory;
+        this.key = key;
+    }
+
+    /**
+     * Öffnet das Verzeichnis der Checkpoints und legt es gegebenenfalls an.
+     *
+     * @param keyFile Datei mit dem Schlüssel für den HMAC. Sie darf nicht im Verzeichnis liegen, da sie sonst mit den
+     *                Checkpoints ausgetauscht werden kann. Existiert sie nicht, wird ein neuer Schlüssel erzeugt.
+     * @throws CheckpointIntegrityException falls {@value #GENERATION_FILE_NAME} verändert wurde.
+     */
+    public static CheckpointStore open(File directory, File keyFile) throws IOException {
+        Objects.requireNonNull(keyFile);
+        if (keyFile.getCanonicalFile().toPath().startsWith(directory.getCanonicalFile().toPath())) {
+            throw new IOException(String.format(properties.getString("de.konfidas.ttc.validation.checkpointKeyInsideDirectory"), keyFile, directory));
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException(String.format(properties.getString("de.konfidas.ttc.validation.checkpointDirectoryNotCreated"), directory));
+        }
+        CheckpointStore store = new CheckpointStore(directory, IntegrityKey.loadOrCreate(keyFile));
+        store.readGeneration();
+        return store;
+    }
+
+    void readGeneration() throws IOException {
+        File file = new File(directory, GENERATION_FILE_NAME);
+        if (!file.isFile()) {
+            return;
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(readAuthenticated(file)));
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new CheckpointIntegrityException(file, null);
+            }
+            generation = in.readLong();
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                byte[] serialNumber = new byte[in.readUnsignedShort()];
+                in.readFully(serialNumber);
+                serialNumbers.add(ByteBuffer.wrap(serialNumber));
+            }
+        } catch (EOFException e) {
+            throw new CheckpointIntegrityException(file, e);
+        }
+    }
+
+    /**
+     * @return den Inhalt der Datei ohne den HMAC.
+     * @throws CheckpointIntegrityException falls der HMAC nicht stimmt.
+     */
+    byte[] readAuthenticated(File file) throws IOException {
+        byte[] content = Files.readAllBytes(file.toPath());
+        if (content.length < MAC_LENGTH || !MessageDigest.isEqual(key.mac(content, 0, content.length - MAC_LENGTH), Arrays.copyOfRange(content, content.length - MAC_LENGTH, content.length))) {
+            throw new CheckpointIntegrityException(file, null);
+        }
+        return Arrays.copyOf(content, content.length - MAC_LENGTH);
+    }
+
+    void writeAuthenticated(File file, byte[] content) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");//NON-NLS
+        try (OutputStream fileOut = new FileOutputStream(tmp)) {
+            fileOut.write(content);
+            fileOut.write(key.mac(content, 0, content.length));
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    File fileFor(byte[] serialNumber) {
+        return new File(directory, Hex.encodeHexString(serialNumber) + SUFFIX);
+    }
+
+    /**
+     * Stellt den Zustand der Validatoren aus allen Checkpoints im Verzeichnis wieder her. Abschnitte, zu denen es
+     * keinen Validator gibt, werden übergangen. Mehrere Validatoren mit gleicher Kennung erhalten die Abschnitte in
+     * ihrer Reihenfolge.
+     *
+     * @return die Anzahl der gelesenen Checkpoints.
+     * @throws CheckpointIntegrityException falls ein Checkpoint verändert wurde, zu einer älteren Generation gehört,
+     *                                      fehlt oder nicht gelesen werden kann.
+     */
+    public int restore(Collection<? extends Validator> validators) throws IOException {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (files == null) {
+            throw new IOException(String.format(properties.getString("de.konfidas.ttc.validation.checkpointDirectoryNotCreated"), directory));
+        }
+        Arrays.sort(files);
+        HashSet<ByteBuffer> missing = new HashSet<>(serialNumbers);
+        for (File file : files) {
+            missing.remove(ByteBuffer.wrap(restore(file, validators)));
+        }
+        if (!missing.isEmpty()) {
+            throw new CheckpointIntegrityException(fileFor(missing.iterator().next().array()), null);
+        }
+        return files.length;
+    }
+
+    /**
+     * @return die Seriennummer des Checkpoints.
+     */
+    byte[] restore(File file, Collection<? extends Validator> validators) throws IOException {
+        byte[] content = readAuthenticated(file);
+
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(content));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new CheckpointIntegrityException(file, null);
+            }
+            long fileGeneration = in.readLong();
+            if (fileGeneration < generation || fileGeneration > generation + 1) {
+                throw new CheckpointIntegrityException(file, null);
+            }
+            byte[] serialNumber = new byte[in.readUnsignedShort()];
+            in.readFully(serialNumber);
+            if (!Arrays.equals(serialNumber, Hex.decodeHex(file.getName().substring(0, file.getName().length() - SUFFIX.length())))) {
+                throw new CheckpointIntegrityException(file, null);
+            }
+
+            // Abschnitte mit gleicher Kennung werden den Validatoren dieser Kennung der Reihe nach zugeordnet.
+            HashMap<String, Deque<CheckpointableValidator>> byId = new HashMap<>();
+            for (Validator validator : validators) {
+                if (validator instanceof CheckpointableValidator) {
+                    CheckpointableValidator checkpointable = (CheckpointableValidator) validator;
+                    byId.computeIfAbsent(checkpointable.getCheckpointId(), k -> new ArrayDeque<>()).add(checkpointable);
+                }
+            }
+
+            int sections = in.readInt();
+            for (int i = 0; i < sections; i++) {
+                String id = in.readUTF();
+                byte[] section = new byte[in.readInt()];
+                in.readFully(section);
+                Deque<CheckpointableValidator> candidates = byId.get(id);
+                if (candidates == null || candidates.isEmpty()) {
+                    logger.debug("No validator for checkpoint section {} in {}", id, file);//NON-NLS
+                    continue;
+                }
+                CheckpointableValidator validator = candidates.poll();
+                if (section.length > 0) {
+                    validator.readCheckpoint(serialNumber, new DataInputStream(new ByteArrayInputStream(section)));
+                }
+            }
+            return serialNumber;
+        } catch (EOFException | DecoderException | IllegalArgumentException e) {
+            throw new CheckpointIntegrityException(file, e);
+        }
+    }
+
+    /**
+     * Schreibt für jede TSE, für die einer der Validatoren einen Zustand hält, einen neuen Checkpoint der nächsten
+     * Generation und danach {@value #GENERATION_FILE_NAME}.
+     *
+     * @return die Anzahl der geschriebenen Checkpoints.
+     */
+    public int save(Collection<? extends Validator> validators) throws IOException {
+        ArrayList<CheckpointableValidator> checkpointables = new ArrayList<>();
+        TreeMap<ByteBuffer, byte[]> serialNumbers = new TreeMap<>();
+        for (Validator validator : validators) {
+            if (validator instanceof CheckpointableValidator) {
+                CheckpointableValidator checkpointable = (CheckpointableValidator) validator;
+                checkpointables.add(checkpointable);
+                for (byte[] serialNumber : checkpointable.getCheckpointSerialNumbers()) {
+                    serialNumbers.put(ByteBuffer.wrap(serialNumber), serialNumber);
+                }
+            }
+        }
+
+        long nextGeneration = generation + 1;
+        for (byte[] serialNumber : serialNumbers.values()) {
+            save(serialNumber, nextGeneration, checkpointables);
+        }
+
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(nextGeneration);
+        out.writeInt(serialNumbers.size());
+        for (byte[] serialNumber : serialNumbers.values()) {
+            out.writeShort(serialNumber.length);
+            out.write(serialNumber);
+        }
+        out.flush();
+        writeAuthenticated(new File(directory, GENERATION_FILE_NAME), buffer.toByteArray());
+
+        generation = nextGeneration;
+        this.serialNumbers.clear();
+        this.serialNumbers.addAll(serialNumbers.keySet());
+        return serialNumbers.size();
+    }
+
+    void save(byte[] serialNumber, long generation, List<CheckpointableValidator> validators) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(generation);
+        out.writeShort(serialNumber.length);
+        out.write(serialNumber);
+
+        ArrayList<String> ids = new ArrayList<>();
+        ArrayList<byte[]> sections = new ArrayList<>();
+        for (CheckpointableValidator validator : validators) {
+            // Jeder Validator erhält einen Abschnitt, ohne Zustand für diese TSE einen leeren, damit die Zuordnung
+            // gleicher Kennungen über die Reihenfolge erhalten bleibt.
+            ByteArrayOutputStream section = new ByteArrayOutputStream();
+            validator.writeCheckpoint(serialNumber, new DataOutputStream(section));
+            ids.add(validator.getCheckpointId());
+            sections.add(section.toByteArray());
+        }
+        out.writeInt(sections.size());
+        for (int i = 0; i < sections.size(); i++) {
+            out.writeUTF(ids.get(i));
+            out.writeInt(sections.get(i).length);
+            out.write(sections.get(i));
+        }
+        out.flush();
+        writeAuthenticated(fileFor(serialNumber), buffer.toByteArray());
+    }
+
+    /**
+     * Ein Checkpoint wurde verändert, mit einem anderen Schlüssel geschrieben, gegen eine ältere Fassung ausgetauscht,
+     * gelöscht oder ist unvollständig.
+     */
+    public static class CheckpointIntegrityException extends IOException {
+        final File file;
+
+        public CheckpointIntegrityException(File file, Throwable cause) {
+            super(String.format(properties.getString("de.konfidas.ttc.validation.checkpointIntegrityViolated"), file), cause);
+            this.file = file;
+        }
+
+        public File getFile() {
+            return file;
+        }
+    }
+}
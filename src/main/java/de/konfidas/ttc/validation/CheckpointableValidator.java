@@ -0,0 +1,36 @@
+package de.konfidas.ttc.validation;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * Ein Validator, dessen Zustand je TSE in einem Checkpoint gespeichert und bei einem späteren Aufruf wiederhergestellt
+ * werden kann. So muss bei einem neuen Export einer TSE nicht ihre gesamte Historie erneut validiert werden, siehe
+ * {@link CheckpointStore}.
+ */
+public interface CheckpointableValidator extends Validator {
+
+    /**
+     * @return der Name, unter dem der Zustand im Checkpoint abgelegt wird.
+     */
+    default String getCheckpointId() {
+        return getClass().getName();
+    }
+
+    /**
+     * @return die Seriennummern der TSEs, für die der Validator einen Zustand hält.
+     */
+    Collection<byte[]> getCheckpointSerialNumbers();
+
+    /**
+     * Schreibt den Zustand für die TSE. Hält der Validator keinen Zustand für sie, schreibt er nichts.
+     */
+    void writeCheckpoint(byte[] serialNumber, DataOutput out) throws IOException;
+
+    /**
+     * Stellt den Zustand für die TSE wieder her, wie er mit {@link #writeCheckpoint(byte[], DataOutput)} geschrieben wurde.
+     */
+    void readCheckpoint(byte[] serialNumber, DataInput in) throws IOException;
+}
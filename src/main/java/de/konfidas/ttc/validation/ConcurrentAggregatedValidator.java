@@ -0,0 +1,116 @@
+package de.konfidas.ttc.validation;
+
+import de.konfidas.ttc.tars.LogMessageArchive;
+import de.konfidas.ttc.tars.LogMessageArchiveSnapshot;
+import de.konfidas.ttc.tars.StreamingLogMessageArchive;
+import de.konfidas.ttc.utilities.ThreadPools;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Ein {@link AggregatedValidator}, der die Validatoren gleichzeitig ausführt.
+ *
+ * Die Validatoren hängen nicht von den Ergebnissen der anderen ab. Alle {@link LogMessageValidator}s laufen wie im
+ * {@link AggregatedValidator} in einem gemeinsamen Durchlauf als eine Aufgabe, jeder andere Validator als eigene
+ * Aufgabe auf einem Thread-Pool. Alle lesen dieselbe unveränderliche {@link LogMessageArchiveSnapshot Kopie} des
+ * Archivs. Ein Validator läuft dabei immer nur in einem Thread, und validate() kehrt erst zurück, wenn alle
+ * Validatoren fertig sind. Sein Zustand wird so wie bisher von Archiv zu Archiv weitergegeben. Die Ergebnisse werden
+ * unabhängig von der Ausführungsreihenfolge in der Reihenfolge angehängt, in der die Validatoren hinzugefügt wurden.
+ *
+ * Ein {@link StreamingLogMessageArchive} wird wie im {@link AggregatedValidator} sequentiell validiert, da eine Kopie
+ * alle LogMessages gleichzeitig im Speicher halten würde.
+ */
+public class ConcurrentAggregatedValidator extends AggregatedValidator {
+    static Locale locale = new Locale("de", "DE");//NON-NLS
+    static ResourceBundle properties = ResourceBundle.getBundle("ttc", locale);//NON-NLS
+
+    final int threads;
+    final ExecutorService executor;
+
+    /**
+     * @param threads Anzahl der Threads, die für jeden Aufruf von {@link #validate(LogMessageArchive)} gestartet werden.
+     */
+    public ConcurrentAggregatedValidator(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException(String.format(properties.getString("de.konfidas.ttc.tars.invalidNumberOfThreads"), threads));
+        }
+        this.threads = threads;
+        this.executor = null;
+    }
+
+    /**
+     * @param executor ein vom Aufrufer verwalteter Executor. Er wird von diesem Validator nicht beendet.
+     */
+    public ConcurrentAggregatedValidator(ExecutorService executor) {
+        this.threads = 0;
+        this.executor = Objects.requireNonNull(executor);
+    }
+
+    @Override
+    public ValidationResult validate(LogMessageArchive tar) {
+        if (tar instanceof StreamingLogMessageArchive) {
+            return super.validate(tar);
+        }
+        LogMessageArchiveSnapshot snapshot = LogMessageArchiveSnapshot.of(tar);
+
+        if (executor != null) {
+            return validate(snapshot, executor);
+        }
+        ExecutorService pool = ThreadPools.newFixedDaemonPool("validator", Math.min(threads, Math.max(1, validators.size())));//NON-NLS
+        try {
+            return validate(snapshot, pool);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    ValidationResult validate(LogMessageArchiveSnapshot snapshot, ExecutorService pool) {
+        List<LogMessageValidator> messageValidators = getMessageValidators();
+        Future<Map<Validator, ValidationResult>> messageResults = null;
+        IdentityHashMap<Validator, Future<ValidationResult>> futures = new IdentityHashMap<>();
+        try {
+            if (!messageValidators.isEmpty()) {
+                messageResults = pool.submit(() -> validateMessages(messageValidators, snapshot));
+            }
+            for (Validator v : validators) {
+                if (!(v instanceof LogMessageValidator)) {
+                    futures.put(v, pool.submit(() -> v.validate(snapshot)));
+                }
+            }
+
+            Map<Validator, ValidationResult> results = messageResults == null ? Collections.emptyMap() : get(messageResults);
+            ValidationResultImpl result = new ValidationResultImpl();
+            for (Validator v : validators) {
+                result.append(v instanceof LogMessageValidator ? results.get(v) : get(futures.get(v)));
+            }
+            return result;
+        } finally {
+            if (messageResults != null) {
+                messageResults.cancel(true);
+            }
+            for (Future<ValidationResult> future : futures.values()) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    static <T> T get(Future<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException(e.getMessage());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+}
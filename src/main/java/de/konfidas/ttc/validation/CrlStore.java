@@ -0,0 +1,262 @@
+package de.konfidas.ttc.validation;
+
+import de.konfidas.ttc.exceptions.CertificateLoadException;
+import org.bouncycastle.asn1.ASN1Enumerated;
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.security.auth.x500.X500Principal;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.cert.*;
+import java.util.*;
+
+/**
+ * Sperrlisten (CRLs) für die Prüfung der Zertifikate, indiziert nach Aussteller und Seriennummer.
+ *
+ * Je Aussteller wird die aktuellste vollständige CRL (höchste CRL Number) und die aktuellste dazu passende Delta-CRL
+ * verwendet. Die gesperrten Seriennummern beider Listen werden beim Laden zu einer HashMap zusammengeführt, Einträge
+ * der Delta-CRL mit dem Grund removeFromCRL heben eine Sperrung auf. Die Prüfung eines Zertifikats ist damit ein
+ * einzelner Zugriff auf diese HashMap. Die Signaturen der CRLs werden beim ersten Zugriff mit dem Schlüssel des
+ * Ausstellers geprüft.
+ *
+ * Indirekte CRLs (Einträge mit abweichendem certificateIssuer) werden nicht unterstützt.
+ */
+public class CrlStore {
+    final static Logger logger = LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
+    static Locale locale = new Locale("de", "DE");//NON-NLS
+    static ResourceBundle properties = ResourceBundle.getBundle("ttc",locale);//NON-NLS
+
+    final static List<String> CRL_SUFFIXES = Arrays.asList(".crl", ".der", ".pem");//NON-NLS
+
+    final ArrayList<X509CRL> baseCrls = new ArrayList<>();
+    final ArrayList<X509CRL> deltaCrls = new ArrayList<>();
+    HashMap<X500Principal, IssuerEntry> byIssuer;
+
+    public CrlStore() {
+    }
+
+    /**
+     * @return einen CrlStore mit den X.509 CRLs aus der Collection. Andere CRL Typen werden ignoriert.
+     */
+    public static CrlStore of(Collection<? extends CRL> crls) {
+        CrlStore store = new CrlStore();
+        for (CRL crl : crls) {
+            if (crl instanceof X509CRL) {
+                store.add((X509CRL) crl);
+            }
+        }
+        return store;
+    }
+
+    /**
+     * Lädt alle CRLs (DER oder PEM) aus einem Verzeichnis oder einer einzelnen Datei.
+     */
+    public static CrlStore load(File file) throws CertificateLoadException {
+        CrlStore store = new CrlStore();
+        if (file.isDirectory()) {
+            File[] files = file.listFiles();
+            if (files == null) {
+                throw new CertificateLoadException(String.format(properties.getString("de.konfidas.ttc.validation.crlCouldNotBeLoaded"), file), null);
+            }
+            Arrays.sort(files);
+            for (File child : files) {
+                if (child.isFile() && TrustStore.hasSuffix(child, CRL_SUFFIXES)) {
+                    store.addCrls(child);
+                }
+            }
+        } else {
+            store.addCrls(file);
+        }
+        return store;
+    }
+
+    void addCrls(File file) throws CertificateLoadException {
+        try (InputStream in = new FileInputStream(file)) {
+            CertificateFactory cf = CertificateFactory.getInstance("X.509", BouncyCastleProvider.PROVIDER_NAME);//NON-NLS
+            for (CRL crl : cf.generateCRLs(in)) {
+                add((X509CRL) crl);
+            }
+        } catch (IOException | GeneralSecurityException e) {
+            throw new CertificateLoadException(String.format(properties.getString("de.konfidas.ttc.validation.crlCouldNotBeLoaded"), file), e);
+        }
+    }
+
+    public synchronized void add(X509CRL crl) {
+        if (crl.getExtensionValue(Extension.deltaCRLIndicator.getId()) != null) {
+            deltaCrls.add(crl);
+        } else {
+            baseCrls.add(crl);
+        }
+        byIssuer = null;
+    }
+
+    synchronized Map<X500Principal, IssuerEntry> index() {
+        if (byIssuer == null) {
+            HashMap<X500Principal, IssuerEntry> result = new HashMap<>();
+            for (X509CRL crl : baseCrls) {
+                IssuerEntry entry = result.get(crl.getIssuerX500Principal());
+                if (entry == null || compareVersion(crl, entry.base) > 0) {
+                    result.put(crl.getIssuerX500Principal(), new IssuerEntry(crl));
+                }
+            }
+            for (X509CRL delta : deltaCrls) {
+                IssuerEntry entry = result.get(delta.getIssuerX500Principal());
+                BigInteger baseNumber = getExtensionInteger(delta, Extension.deltaCRLIndicator);
+                BigInteger entryNumber = entry == null ? null : getExtensionInteger(entry.base, Extension.cRLNumber);
+                if (entryNumber == null || baseNumber == null || baseNumber.compareTo(entryNumber) > 0) {
+                    logger.debug("Ignoring delta CRL of {} without matching base CRL", delta.getIssuerX500Principal());//NON-NLS
+                    continue;
+                }
+                if (entry.delta == null || compareVersion(delta, entry.delta) > 0) {
+                    entry.delta = delta;
+                }
+            }
+            for (IssuerEntry entry : result.values()) {
+                entry.merge();
+            }
+            byIssuer = result;
+        }
+        return byIssuer;
+    }
+
+    /**
+     * @return die CRLs, die für die Prüfung verwendet werden (je Aussteller die vollständige und ggf. die Delta-CRL).
+     */
+    public Collection<CRL> getCrls() {
+        ArrayList<CRL> result = new ArrayList<>();
+        for (IssuerEntry entry : index().values()) {
+            result.add(entry.base);
+            if (entry.delta != null) {
+                result.add(entry.delta);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Prüft, ob das Zertifikat gesperrt ist.
+     *
+     * @param cert      das zu prüfende Zertifikat
+     * @param issuerKey der Schlüssel des Ausstellers, mit ihm werden die CRLs geprüft.
+     * @param date      der Zeitpunkt der Prüfung
+     * @throws CertPathValidatorException falls das Zertifikat gesperrt ist oder keine gültige CRL vorliegt.
+     */
+    public void check(X509Certificate cert, PublicKey issuerKey, Date date) throws CertPathValidatorException {
+        IssuerEntry entry = index().get(cert.getIssuerX500Principal());
+        if (entry == null) {
+            throw new CertPathValidatorException(String.format(properties.getString("de.konfidas.ttc.validation.noCrlForIssuer"), cert.getIssuerX500Principal()), null, null, -1, CertPathValidatorException.BasicReason.UNDETERMINED_REVOCATION_STATUS);
+        }
+        entry.verify(issuerKey);
+        if (entry.isExpired(date)) {
+            throw new CertPathValidatorException(String.format(properties.getString("de.konfidas.ttc.validation.crlExpired"), cert.getIssuerX500Principal()), null, null, -1, CertPathValidatorException.BasicReason.UNDETERMINED_REVOCATION_STATUS);
+        }
+
+        X509CRLEntry revoked = entry.revoked.get(cert.getSerialNumber());
+        if (revoked != null && !revoked.getRevocationDate().after(date)) {
+            throw new CertPathValidatorException(String.format(properties.getString("de.konfidas.ttc.validation.certificateRevoked"), cert.getSerialNumber(), revoked.getRevocationDate()), null, null, -1, CertPathValidatorException.BasicReason.REVOKED);
+        }
+    }
+
+    /**
+     * @return positiv, falls a neuer als b ist. Verglichen wird die CRL Number, falls vorhanden, sonst thisUpdate.
+     */
+    static int compareVersion(X509CRL a, X509CRL b) {
+        BigInteger numberA = getExtensionInteger(a, Extension.cRLNumber);
+        BigInteger numberB = getExtensionInteger(b, Extension.cRLNumber);
+        if (numberA != null && numberB != null) {
+            return numberA.compareTo(numberB);
+        }
+        return a.getThisUpdate().compareTo(b.getThisUpdate());
+    }
+
+    static BigInteger getExtensionInteger(X509CRL crl, ASN1ObjectIdentifier oid) {
+        byte[] extension = crl.getExtensionValue(oid.getId());
+        if (extension == null) {
+            return null;
+        }
+        try {
+            return ASN1Integer.getInstance(ASN1OctetString.getInstance(extension).getOctets()).getValue();
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    static int getReasonCode(X509CRLEntry entry) {
+        byte[] extension = entry.getExtensionValue(Extension.reasonCode.getId());
+        if (extension == null) {
+            return CRLReason.unspecified;
+        }
+        try {
+            return ASN1Enumerated.getInstance(ASN1OctetString.getInstance(extension).getOctets()).getValue().intValue();
+        } catch (IllegalArgumentException e) {
+            return CRLReason.unspecified;
+        }
+    }
+
+    /**
+     * Die CRLs eines Ausstellers mit den zusammengeführten gesperrten Seriennummern.
+     */
+    static class IssuerEntry {
+        final X509CRL base;
+        X509CRL delta;
+        final HashMap<BigInteger, X509CRLEntry> revoked = new HashMap<>();
+        volatile PublicKey verifiedWith;
+
+        IssuerEntry(X509CRL base) {
+            this.base = base;
+        }
+
+        void merge() {
+            addEntries(base, false);
+            if (delta != null) {
+                addEntries(delta, true);
+            }
+        }
+
+        void addEntries(X509CRL crl, boolean isDelta) {
+            Set<? extends X509CRLEntry> entries = crl.getRevokedCertificates();
+            if (entries == null) {
+                return;
+            }
+            for (X509CRLEntry entry : entries) {
+                if (isDelta && getReasonCode(entry) == CRLReason.removeFromCRL) {
+                    revoked.remove(entry.getSerialNumber());
+                } else {
+                    revoked.put(entry.getSerialNumber(), entry);
+                }
+            }
+        }
+
+        boolean isExpired(Date date) {
+            return (base.getNextUpdate() != null && base.getNextUpdate().before(date))
+                    || (delta != null && delta.getNextUpdate() != null && delta.getNextUpdate().before(date));
+        }
+
+        void verify(PublicKey key) throws CertPathValidatorException {
+            if (key.equals(verifiedWith)) {
+                return;
+            }
+            try {
+                base.verify(key, BouncyCastleProvider.PROVIDER_NAME);
+                if (delta != null) {
+                    delta.verify(key, BouncyCastleProvider.PROVIDER_NAME);
+                }
+            } catch (GeneralSecurityException e) {
+                throw new CertPathValidatorException(String.format(properties.getString("de.konfidas.ttc.validation.crlSignatureInvalid"), base.getIssuerX500Principal()), e, null, -1, CertPathValidatorException.BasicReason.UNDETERMINED_REVOCATION_STATUS);
+            }
+            verifiedWith = key;
+        }
+    }
+}
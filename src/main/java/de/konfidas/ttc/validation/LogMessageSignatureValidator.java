@@ -5,22 +5,309 @@ import de.konfidas.ttc.exceptions.LogMessageVerificationException;
 import de.konfidas.ttc.exceptions.ValidationException;
 import de.konfidas.ttc.messages.LogMessage;
 import de.konfidas.ttc.messages.LogMessageSignatureVerifier;
+import de.konfidas.ttc.messages.VerificationCache;
 import de.konfidas.ttc.tars.LogMessageArchive;
+import de.konfidas.ttc.tars.StreamingLogMessageArchive;
+import de.konfidas.ttc.utilities.IntegrityKey;
+import de.konfidas.ttc.utilities.ThreadPools;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Collections;
-import java.util.LinkedList;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
 
+/**
+ * Prüft die Signaturen aller LogMessages eines Archivs.
+ *
+ * Ohne Angabe von Threads wird sequentiell im aufrufenden Thread geprüft. Andernfalls werden die LogMessages in Blöcken
+ * von {@link #CHUNK_SIZE} Nachrichten auf einen Thread-Pool verteilt. Alle Threads nutzen denselben
+ * {@link LogMessageSignatureVerifier}, der initialisierte Signature Instanzen je Thread wiederverwendet. Die Fehler
+ * werden unabhängig von der Anzahl der Threads in der Reihenfolge der LogMessages im Archiv geliefert.
+ *
+ * Mit {@link #setProgress(File, IntegrityKey, boolean)} wird der Fortschritt für jedes {@link StreamingLogMessageArchive} nach
+ * fertig geprüften Blöcken in einer {@link ValidationProgress} Datei vermerkt. Ein fortgesetzter Lauf prüft dann nur
+ * die zuvor fehlgeschlagenen Einträge erneut und liest das Archiv erst ab dem letzten geprüften Eintrag.
+ */
 public class LogMessageSignatureValidator implements Validator {
     final static Logger logger = LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
+    static Locale locale = new Locale("de", "DE");//NON-NLS
+    static ResourceBundle properties = ResourceBundle.getBundle("ttc", locale);//NON-NLS
+
+    final static int CHUNK_SIZE = 1024;
+    final static int PROGRESS_INTERVAL = 16 * CHUNK_SIZE;
+    final int threads;
+    final ExecutorService executor;
+    final VerificationCache cache;
+    File progressDirectory;
+    IntegrityKey progressKey;
+    boolean resume;
+    final ArrayList<ValidationProgress> progresses = new ArrayList<>();
+
+    public LogMessageSignatureValidator() {
+        this.threads = 1;
+        this.executor = null;
+        this.cache = null;
+    }
+
+    /**
+     * @param threads Anzahl der Threads, die für jeden Aufruf von {@link #validate(LogMessageArchive)} gestartet
+     *                werden. Mit einem Thread wird sequentiell geprüft.
+     */
+    public LogMessageSignatureValidator(int threads) {
+        this(threads, null);
+    }
+
+    /**
+     * @param threads Anzahl der Threads, die für jeden Aufruf von {@link #validate(LogMessageArchive)} gestartet
+     *                werden. Mit einem Thread wird sequentiell geprüft.
+     * @param cache   Cache erfolgreicher Prüfungen oder null. Der Cache wird von diesem Validator nicht geschlossen.
+     */
+    public LogMessageSignatureValidator(int threads, VerificationCache cache) {
+        if (threads < 1) {
+            throw new IllegalArgumentException(String.format(properties.getString("de.konfidas.ttc.tars.invalidNumberOfThreads"), threads));
+        }
+        this.threads = threads;
+        this.executor = null;
+        this.cache = cache;
+    }
+
+    /**
+     * @param executor ein vom Aufrufer verwalteter Executor. Er wird von diesem Validator nicht beendet.
+     * @param threads  Anzahl der Threads des Executors, sie bestimmt, wie viele Blöcke gleichzeitig in Arbeit sind.
+     */
+    public LogMessageSignatureValidator(ExecutorService executor, int threads) {
+        this(executor, threads, null);
+    }
+
+    /**
+     * @param executor ein vom Aufrufer verwalteter Executor. Er wird von diesem Validator nicht beendet.
+     * @param threads  Anzahl der Threads des Executors, sie bestimmt, wie viele Blöcke gleichzeitig in Arbeit sind.
+     * @param cache    Cache erfolgreicher Prüfungen oder null. Der Cache wird von diesem Validator nicht geschlossen.
+     */
+    public LogMessageSignatureValidator(ExecutorService executor, int threads, VerificationCache cache) {
+        if (threads < 1) {
+            throw new IllegalArgumentException(String.format(properties.getString("de.konfidas.ttc.tars.invalidNumberOfThreads"), threads));
+        }
+        this.threads = threads;
+        this.executor = Objects.requireNonNull(executor);
+        this.cache = cache;
+    }
+
+    /**
+     * Vermerkt den Fortschritt der Prüfung von {@link StreamingLogMessageArchive}s in dem Verzeichnis.
+     *
+     * @param key    schützt die Dateien mit dem Fortschritt gegen Veränderung.
+     * @param resume falls true, wird ein dort gespeicherter Fortschritt zum jeweiligen Archiv fortgesetzt.
+     */
+    public LogMessageSignatureValidator setProgress(File directory, IntegrityKey key, boolean resume) {
+        this.progressDirectory = directory;
+        this.progressKey = Objects.requireNonNull(key);
+        this.resume = resume;
+        return this;
+    }
+
+    /**
+     * Löscht die Dateien mit dem Fortschritt der bisher geprüften Archive, nachdem der Lauf vollständig abgeschlossen ist.
+     */
+    public void discardProgress() {
+        for (ValidationProgress progress : progresses) {
+            progress.delete();
+        }
+        progresses.clear();
+    }
 
     @Override
     public ValidationResult validate(LogMessageArchive tar) {
+        LogMessageSignatureVerifier verifier = new LogMessageSignatureVerifier(tar.getClientCertificates(), cache);
+
         LinkedList<ValidationException> errors = new LinkedList<>();
+        Collection<? extends LogMessage> messages = tar.getLogMessages();
+        ProgressRecorder recorder = null;
+        if (progressDirectory != null && tar instanceof StreamingLogMessageArchive) {
+            StreamingLogMessageArchive streamingTar = (StreamingLogMessageArchive) tar;
+            ValidationProgress progress = ValidationProgress.open(progressDirectory, streamingTar, progressKey, resume, PROGRESS_INTERVAL);
+            progresses.add(progress);
+            messages = resume(streamingTar, progress, verifier, errors);
+            recorder = new ProgressRecorder(streamingTar, progress);
+        }
 
-        LogMessageSignatureVerifier verifier = new LogMessageSignatureVerifier(tar.getClientCertificates());
-        for (LogMessage msg : tar.getLogMessages()) {
+        if (executor != null) {
+            errors.addAll(validateParallel(messages, verifier, executor, recorder));
+        } else if (threads > 1) {
+            ExecutorService pool = ThreadPools.newFixedDaemonPool("signature", threads);//NON-NLS
+            try {
+                errors.addAll(validateParallel(messages, verifier, pool, recorder));
+            } finally {
+                pool.shutdownNow();
+            }
+        } else if (recorder != null) {
+            errors.addAll(validateInChunks(messages, verifier, recorder));
+        } else {
+            errors.addAll(verify(verifier, messages));
+        }
+
+        if (recorder != null) {
+            recorder.save();
+        }
+        return new ValidationResultImpl().append(Collections.singleton(this), errors);
+    }
+
+    /**
+     * Prüft die zuvor fehlgeschlagenen Einträge erneut, damit ihre Fehler wieder gemeldet werden.
+     *
+     * @return die noch zu prüfenden LogMessages.
+     */
+    static Collection<? extends LogMessage> resume(StreamingLogMessageArchive tar, ValidationProgress progress, LogMessageSignatureVerifier verifier, Collection<ValidationException> errors) {
+        if (!progress.isResumed()) {
+            return tar.getLogMessages();
+        }
+        if (tar.getOffset(progress.getLastFileName()) != progress.getLastOffset()) {
+            logger.warn(String.format(properties.getString("de.konfidas.ttc.validation.progressUnusable"), progress.getFile()));
+            progress.reset();
+            return tar.getLogMessages();
+        }
+
+        logger.info(String.format(properties.getString("de.konfidas.ttc.validation.progressResumed"), tar.getFileName(), progress.getProcessed(), progress.getLastFileName()));
+        for (String fileName : progress.getFailedFileNames()) {
+            LogMessage msg = tar.getLogMessage(fileName);
+            if (msg != null) {
+                errors.addAll(verify(verifier, Collections.singletonList(msg)));
+            }
+        }
+        return tar.getLogMessagesAfter(progress.getLastFileName());
+    }
+
+    /**
+     * Vermerkt fertig geprüfte Blöcke in der {@link ValidationProgress}. Fehler beim Schreiben brechen die Prüfung
+     * nicht ab, der Lauf kann dann nur nicht fortgesetzt werden.
+     */
+    static class ProgressRecorder {
+        final StreamingLogMessageArchive tar;
+        final ValidationProgress progress;
+
+        ProgressRecorder(StreamingLogMessageArchive tar, ValidationProgress progress) {
+            this.tar = tar;
+            this.progress = progress;
+        }
+
+        void chunkVerified(List<? extends LogMessage> chunk, Collection<ValidationException> errors) {
+            if (chunk.isEmpty()) {
+                return;
+            }
+            ArrayList<String> failures = new ArrayList<>(errors.size());
+            for (ValidationException error : errors) {
+                failures.add(((LogMessageValidationException) error).getLogMessage().getFileName());
+            }
+            String last = chunk.get(chunk.size() - 1).getFileName();
+            try {
+                progress.advance(last, tar.getOffset(last), chunk.size(), failures);
+            } catch (IOException e) {
+                logger.warn(String.format(properties.getString("de.konfidas.ttc.validation.progressNotWritten"), progress.getFile()), e);
+            }
+        }
+
+        void save() {
+            try {
+                progress.save();
+            } catch (IOException e) {
+                logger.warn(String.format(properties.getString("de.konfidas.ttc.validation.progressNotWritten"), progress.getFile()), e);
+            }
+        }
+    }
+
+    static Collection<ValidationException> validateInChunks(Iterable<? extends LogMessage> messages, LogMessageSignatureVerifier verifier, ProgressRecorder recorder) {
+        LinkedList<ValidationException> errors = new LinkedList<>();
+        ArrayList<LogMessage> chunk = new ArrayList<>(CHUNK_SIZE);
+        for (LogMessage msg : messages) {
+            chunk.add(msg);
+            if (chunk.size() == CHUNK_SIZE) {
+                List<ValidationException> chunkErrors = verify(verifier, chunk);
+                errors.addAll(chunkErrors);
+                recorder.chunkVerified(chunk, chunkErrors);
+                chunk = new ArrayList<>(CHUNK_SIZE);
+            }
+        }
+        List<ValidationException> chunkErrors = verify(verifier, chunk);
+        errors.addAll(chunkErrors);
+        recorder.chunkVerified(chunk, chunkErrors);
+        return errors;
+    }
+
+    /**
+     * Verteilt die LogMessages blockweise auf den Executor. Es sind höchstens doppelt so viele Blöcke in Arbeit wie
+     * Threads vorhanden sind, damit bei einem streamenden Archiv nicht alle LogMessages gleichzeitig im Speicher liegen.
+     */
+    Collection<ValidationException> validateParallel(Iterable<? extends LogMessage> messages, LogMessageSignatureVerifier verifier, ExecutorService pool, ProgressRecorder recorder) {
+        LinkedList<ValidationException> errors = new LinkedList<>();
+        ArrayDeque<Future<List<ValidationException>>> pending = new ArrayDeque<>();
+        // Die Blöcke in Arbeit, in derselben Reihenfolge wie pending, um den Fortschritt zu vermerken.
+        ArrayDeque<List<LogMessage>> pendingChunks = new ArrayDeque<>();
+        int maxPending = 2 * threads;
+
+        try {
+            ArrayList<LogMessage> chunk = new ArrayList<>(CHUNK_SIZE);
+            for (LogMessage msg : messages) {
+                chunk.add(msg);
+                if (chunk.size() == CHUNK_SIZE) {
+                    submit(pool, verifier, chunk, pending);
+                    pendingChunks.add(chunk);
+                    chunk = new ArrayList<>(CHUNK_SIZE);
+                    while (pending.size() >= maxPending) {
+                        takeChunk(pending, pendingChunks, recorder, errors);
+                    }
+                }
+            }
+            if (!chunk.isEmpty()) {
+                submit(pool, verifier, chunk, pending);
+                pendingChunks.add(chunk);
+            }
+            while (!pending.isEmpty()) {
+                takeChunk(pending, pendingChunks, recorder, errors);
+            }
+        } finally {
+            for (Future<List<ValidationException>> future : pending) {
+                future.cancel(true);
+            }
+        }
+        return errors;
+    }
+
+    static void takeChunk(Queue<Future<List<ValidationException>>> pending, Queue<List<LogMessage>> pendingChunks, ProgressRecorder recorder, Collection<ValidationException> errors) {
+        List<ValidationException> chunkErrors = take(pending);
+        List<LogMessage> chunk = pendingChunks.remove();
+        errors.addAll(chunkErrors);
+        if (recorder != null) {
+            recorder.chunkVerified(chunk, chunkErrors);
+        }
+    }
+
+    static void submit(ExecutorService pool, LogMessageSignatureVerifier verifier, List<LogMessage> chunk, Queue<Future<List<ValidationException>>> pending) {
+        pending.add(pool.submit(() -> verify(verifier, chunk)));
+    }
+
+    static List<ValidationException> take(Queue<Future<List<ValidationException>>> pending) {
+        try {
+            return pending.remove().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException(e.getMessage());
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    static List<ValidationException> verify(LogMessageSignatureVerifier verifier, Iterable<? extends LogMessage> messages) {
+        LinkedList<ValidationException> errors = new LinkedList<>();
+        for (LogMessage msg : messages) {
             try {
                 logger.debug("Checking signature of LogMessage {}", msg.getFileName());//NON-NLS
                 verifier.verify(msg);
@@ -28,10 +315,10 @@ public class LogMessageSignatureValidator implements Validator {
                 errors.add(new LogMessageSignatureValidationException(msg,e));
             }
         }
-
-        return new ValidationResultImpl().append(Collections.singleton(this), errors);
+        return errors;
     }
 
+
     public static class LogMessageSignatureValidationException extends LogMessageValidationException{
         public LogMessageSignatureValidationException(LogMessage msg, Throwable t) {
             super(msg,t);
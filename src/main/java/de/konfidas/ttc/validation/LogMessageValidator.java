@@ -0,0 +1,50 @@
+package de.konfidas.ttc.validation;
+
+import de.konfidas.ttc.messages.LogMessage;
+import de.konfidas.ttc.tars.LogMessageArchive;
+import de.konfidas.ttc.tars.SerialPartitionedArchive;
+
+/**
+ * Ein Validator, der die LogMessages eines Archivs einzeln und in der Reihenfolge von
+ * {@link LogMessageArchive#getSortedLogMessages()} prüft.
+ *
+ * Für jedes Archiv wird zuerst {@link #begin(LogMessageArchive)} aufgerufen, dann {@link #onMessage(LogMessage)} für
+ * jede LogMessage und zuletzt {@link #end(LogMessageArchive)}, das die in diesem Archiv gefundenen Fehler liefert.
+ * Der {@link AggregatedValidator} ruft alle registrierten LogMessageValidator in einem gemeinsamen Durchlauf über die
+ * sortierten LogMessages auf, statt jeden Validator das Archiv einzeln durchlaufen zu lassen. Einzeln aufgerufen
+ * verhält sich ein LogMessageValidator über {@link #validate(LogMessageArchive)} wie jeder andere Validator.
+ */
+public interface LogMessageValidator extends Validator {
+
+    /**
+     * Wird vor der ersten LogMessage eines Archivs aufgerufen.
+     */
+    default void begin(LogMessageArchive tar) {
+    }
+
+    /**
+     * Wird vom {@link PerSerialValidator} statt {@link #begin(LogMessageArchive)} aufgerufen. Alle folgenden
+     * LogMessages bis zum Aufruf von {@link #end(LogMessageArchive)} gehören zu der TSE der Partition.
+     */
+    default void begin(LogMessageArchive tar, SerialPartitionedArchive.Partition partition) {
+        begin(tar);
+    }
+
+    void onMessage(LogMessage msg);
+
+    /**
+     * Wird nach der letzten LogMessage eines Archivs aufgerufen.
+     *
+     * @return die Fehler, die seit dem Aufruf von {@link #begin(LogMessageArchive)} gefunden wurden.
+     */
+    ValidationResult end(LogMessageArchive tar);
+
+    @Override
+    default ValidationResult validate(LogMessageArchive tar) {
+        begin(tar);
+        for (LogMessage msg : tar.getSortedLogMessages()) {
+            onMessage(msg);
+        }
+        return end(tar);
+    }
+}
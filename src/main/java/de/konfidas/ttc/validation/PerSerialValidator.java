@@ -0,0 +1,164 @@
+package de.konfidas.ttc.validation;
+
+import de.konfidas.ttc.exceptions.ValidationException;
+import de.konfidas.ttc.messages.LogMessage;
+import de.konfidas.ttc.tars.LogMessageArchive;
+import de.konfidas.ttc.tars.SerialPartitionedArchive;
+import de.konfidas.ttc.utilities.ThreadPools;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * Führt einen {@link LogMessageValidator} getrennt für jede TSE eines Archivs aus.
+ *
+ * Für jede Seriennummer wird eine eigene Instanz des Validators erzeugt und über alle Archive hinweg behalten. Jede
+ * Instanz sieht nur die LogMessages ihrer TSE, sortiert nach Signaturzähler, und hält damit keinen Zustand, den sie
+ * mit anderen Instanzen teilt. Mit mehreren Threads werden die TSEs eines Archivs gleichzeitig geprüft. Die Fehler
+ * werden unabhängig von der Anzahl der Threads aufsteigend nach Seriennummer geliefert.
+ *
+ * Ist der Validator ein {@link CheckpointableValidator}, wird der Zustand jeder Instanz unter der Kennung des Validators
+ * gespeichert. Ein Checkpoint kann damit sowohl von einem PerSerialValidator als auch vom Validator selbst gelesen werden.
+ * Im Ergebnis wird wie bei einer sequentiellen Prüfung der Validator selbst als verwendeter Validator angegeben.
+ */
+public class PerSerialValidator implements CheckpointableValidator {
+    static Locale locale = new Locale("de", "DE");//NON-NLS
+    static ResourceBundle properties = ResourceBundle.getBundle("ttc", locale);//NON-NLS
+
+    final Supplier<? extends LogMessageValidator> factory;
+    // Die Instanz, die im Ergebnis als verwendeter Validator angegeben wird.
+    final LogMessageValidator reported;
+    final HashMap<ByteBuffer, LogMessageValidator> validators = new HashMap<>();
+    final int threads;
+    final ExecutorService executor;
+    final String checkpointId;
+
+    /**
+     * @param factory erzeugt den Validator für eine neue Seriennummer, z.B. {@code TimeStampValidator::new}.
+     * @param threads Anzahl der Threads, die für jeden Aufruf von {@link #validate(LogMessageArchive)} gestartet
+     *                werden. Mit einem Thread wird sequentiell geprüft.
+     */
+    public PerSerialValidator(Supplier<? extends LogMessageValidator> factory, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException(String.format(properties.getString("de.konfidas.ttc.tars.invalidNumberOfThreads"), threads));
+        }
+        this.factory = Objects.requireNonNull(factory);
+        this.threads = threads;
+        this.executor = null;
+        this.reported = factory.get();
+        this.checkpointId = checkpointId(reported);
+    }
+
+    /**
+     * @param executor ein vom Aufrufer verwalteter Executor. Er wird von diesem Validator nicht beendet.
+     */
+    public PerSerialValidator(Supplier<? extends LogMessageValidator> factory, ExecutorService executor) {
+        this.factory = Objects.requireNonNull(factory);
+        this.threads = 0;
+        this.executor = Objects.requireNonNull(executor);
+        this.reported = factory.get();
+        this.checkpointId = checkpointId(reported);
+    }
+
+    static String checkpointId(LogMessageValidator validator) {
+        return validator instanceof CheckpointableValidator ? ((CheckpointableValidator) validator).getCheckpointId() : validator.getClass().getName();
+    }
+
+    @Override
+    public String getCheckpointId() {
+        return checkpointId;
+    }
+
+    @Override
+    public Collection<byte[]> getCheckpointSerialNumbers() {
+        ArrayList<byte[]> serialNumbers = new ArrayList<>();
+        for (Map.Entry<ByteBuffer, LogMessageValidator> entry : validators.entrySet()) {
+            if (entry.getValue() instanceof CheckpointableValidator) {
+                serialNumbers.add(entry.getKey().array().clone());
+            }
+        }
+        return serialNumbers;
+    }
+
+    @Override
+    public void writeCheckpoint(byte[] serialNumber, DataOutput out) throws IOException {
+        LogMessageValidator validator = validators.get(ByteBuffer.wrap(serialNumber));
+        if (validator instanceof CheckpointableValidator) {
+            ((CheckpointableValidator) validator).writeCheckpoint(serialNumber, out);
+        }
+    }
+
+    @Override
+    public void readCheckpoint(byte[] serialNumber, DataInput in) throws IOException {
+        LogMessageValidator validator = factory.get();
+        if (validator instanceof CheckpointableValidator) {
+            ((CheckpointableValidator) validator).readCheckpoint(serialNumber, in);
+            validators.put(ByteBuffer.wrap(serialNumber.clone()), validator);
+        }
+    }
+
+    @Override
+    public ValidationResult validate(LogMessageArchive tar) {
+        SerialPartitionedArchive partitioned = SerialPartitionedArchive.of(tar);
+
+        ArrayList<Callable<ValidationResult>> tasks = new ArrayList<>();
+        for (SerialPartitionedArchive.Partition partition : partitioned.getPartitions()) {
+            LogMessageValidator validator = validators.computeIfAbsent(ByteBuffer.wrap(partition.getSerialNumber()), k -> factory.get());
+            tasks.add(() -> validate(validator, tar, partition));
+        }
+
+        LinkedList<ValidationException> errors = new LinkedList<>();
+        if (executor != null) {
+            invokeAll(executor, tasks, errors);
+        } else if (threads > 1 && tasks.size() > 1) {
+            ExecutorService pool = ThreadPools.newFixedDaemonPool("serial", Math.min(threads, tasks.size()));//NON-NLS
+            try {
+                invokeAll(pool, tasks, errors);
+            } finally {
+                pool.shutdownNow();
+            }
+        } else {
+            for (Callable<ValidationResult> task : tasks) {
+                try {
+                    errors.addAll(task.call().getValidationErrors());
+                } catch (RuntimeException e) {
+                    throw e;
+                } catch (Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+
+        return new ValidationResultImpl().append(Collections.singleton(reported), errors);
+    }
+
+    static ValidationResult validate(LogMessageValidator validator, LogMessageArchive tar, SerialPartitionedArchive.Partition partition) {
+        validator.begin(tar, partition);
+        for (LogMessage msg : partition.getSortedLogMessages()) {
+            validator.onMessage(msg);
+        }
+        return validator.end(tar);
+    }
+
+    static void invokeAll(ExecutorService pool, List<Callable<ValidationResult>> tasks, Collection<ValidationException> errors) {
+        ArrayList<Future<ValidationResult>> futures = new ArrayList<>(tasks.size());
+        try {
+            for (Callable<ValidationResult> task : tasks) {
+                futures.add(pool.submit(task));
+            }
+            for (Future<ValidationResult> future : futures) {
+                errors.addAll(ConcurrentAggregatedValidator.get(future).getValidationErrors());
+            }
+        } finally {
+            for (Future<ValidationResult> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+
+}
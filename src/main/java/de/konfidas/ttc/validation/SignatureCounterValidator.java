@@ -6,88 +6,210 @@ import de.konfidas.ttc.messages.LogMessage;
 import de.konfidas.ttc.tars.LogMessageArchive;
 import org.apache.commons.codec.binary.Hex;
 
+import de.konfidas.ttc.utilities.CounterIntervalSet;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.*;
 
 
-public class SignatureCounterValidator implements Validator{
-    final HashMap<String, BigInteger> nextSignatureCounters;
+/**
+ * Prüft, dass die Signaturzähler jeder TSE lückenlos und eindeutig sind.
+ *
+ * Für jede Seriennummer werden die gefundenen Signaturzähler in einem {@link CounterIntervalSet} gesammelt, eine
+ * lückenlose Folge belegt dabei nur einen Bereich. Die LogMessages dürfen daher in beliebiger Reihenfolge und auf
+ * mehrere Archive verteilt vorliegen. Doppelte Signaturzähler werden sofort gemeldet, Lücken am Ende jedes Archivs.
+ * Eine Lücke wird nur einmal gemeldet, auch wenn sie später von einem weiteren Archiv teilweise gefüllt wird.
+ *
+ * Über die Archive hinweg werden keine LogMessages gehalten, zu jedem Bereich und zur zuletzt verarbeiteten LogMessage
+ * wird nur der Dateiname gespeichert. Eine Lücke wird daher mit dem Dateinamen der LogMessage hinter der Lücke
+ * gemeldet, die in einem früheren Archiv liegen kann.
+ *
+ * Im Checkpoint werden je TSE nur die Bereiche gespeichert. Nach dem Wiederherstellen wird der Beginn bei 1 nicht
+ * erneut geprüft, er wurde bereits mit dem ersten Export der TSE geprüft.
+ */
+public class SignatureCounterValidator implements LogMessageValidator, CheckpointableValidator{
+    final LinkedHashMap<ByteBuffer, SerialState> serialStates;
+    final ArrayList<SerialState> touchedSerials = new ArrayList<>();
     boolean forceSignatureCounterToStartWith1;
+    LinkedList<ValidationException> result = new LinkedList<>();
 
 
     static Locale locale = new Locale("de", "DE"); //NON-NLS
     static ResourceBundle properties = ResourceBundle.getBundle("ttc",locale);//NON-NLS
 
-    // we operate on sorted log messages, so if we are in the case, that multiple log messages have the
-    // same signature counters, we process them one after another. To create meaningful exceptions, we track
-    // the previously processed Log Message:
-    LogMessage previousMessage = null;
-    // Note: This fails, if multiple tar-archives are presented to one validator in the wrong order, i.e.
-    // not starting with the smallest signature counters!
-
 
     public SignatureCounterValidator(){
-        nextSignatureCounters = new HashMap<>();
-        forceSignatureCounterToStartWith1 = false;
+        this(false);
     }
 
     public SignatureCounterValidator(boolean _forceSignatureCounterToStartWith1){
-        nextSignatureCounters = new HashMap<>();
+        serialStates = new LinkedHashMap<>();
         forceSignatureCounterToStartWith1 =_forceSignatureCounterToStartWith1;
     }
 
+    /**
+     * Die Signaturzähler einer TSE und die Grenzen, bis zu denen ihre Lücken bereits gemeldet wurden.
+     */
+    static class SerialState {
+        final String serial;
+        // Zu jedem Bereich der Dateiname der LogMessage mit seinem kleinsten Signaturzähler.
+        final CounterIntervalSet<String> counters = new CounterIntervalSet<>();
+        // Signaturzähler und Dateiname der zuletzt verarbeiteten LogMessage, um bei einem doppelten Signaturzähler
+        // beide LogMessages zu nennen.
+        long previousCounter = -1;
+        String previousFileName;
+        boolean touched = false;
+        boolean reported = false;
+        boolean startReported = false;
+        long reportedFirst;
+        long reportedLast;
+
+        SerialState(String serial) {
+            this.serial = serial;
+        }
+
+        /**
+         * Meldet die Lücken, die seit dem letzten Aufruf entstanden sind. Da Zähler nur hinzukommen, liegt eine Lücke
+         * entweder vollständig zwischen den damaligen Grenzen, dann wurde sie schon gemeldet, oder vollständig außerhalb.
+         */
+        void reportGaps(boolean forceStartWith1, Collection<ValidationException> result) {
+            if (counters.isEmpty()) {
+                return;
+            }
+            if (forceStartWith1 && !startReported && counters.first() > 1) {
+                result.add(new SignatureCounterMissingException(counters.getElement(0), serial, BigInteger.ONE, BigInteger.valueOf(counters.first())));
+            }
+            startReported |= forceStartWith1;
+
+            for (int i = 1; i < counters.getRangeCount(); i++) {
+                long missingFrom = counters.getEnd(i - 1) + 1;
+                long missingTo = counters.getStart(i) - 1;
+                if (!reported || missingTo < reportedFirst || missingFrom > reportedLast) {
+                    // Aus einem Checkpoint gelesene Bereiche haben keinen Dateinamen, eine neue Lücke grenzt aber immer
+                    // an mindestens einen neuen Bereich.
+                    String fileName = counters.getElement(i) != null ? counters.getElement(i) : counters.getElement(i - 1);
+                    result.add(new SignatureCounterMissingException(fileName, serial, BigInteger.valueOf(missingFrom), BigInteger.valueOf(counters.getStart(i))));
+                }
+            }
+            reported = true;
+            reportedFirst = counters.first();
+            reportedLast = counters.last();
+        }
+    }
+
     @Override
-    public ValidationResult validate(LogMessageArchive tar) {
-        LinkedList<ValidationException> result = new LinkedList<>();
+    public void begin(LogMessageArchive tar) {
+        result = new LinkedList<>();
+    }
 
-        Collection<? extends LogMessage> messages =tar.getSortedLogMessages();
+    @Override
+    public void onMessage(LogMessage msg) {
+        byte[] serialNumber = msg.getSerialNumber();
+        if (serialNumber == null) {
+            // Eine fehlende Seriennummer wurde bereits beim Parsen gemeldet.
+            return;
+        }
+        SerialState state = serialStates.get(ByteBuffer.wrap(serialNumber));
+        if (state == null) {
+            state = new SerialState(Hex.encodeHexString(serialNumber));
+            serialStates.put(ByteBuffer.wrap(serialNumber.clone()), state);
+        }
+        if (!state.touched) {
+            state.touched = true;
+            touchedSerials.add(state);
+        }
 
-        BigInteger expectedSignatureCounter;
-        String serial;
+        BigInteger foundSignatureCounter = msg.getSignatureCounter();
+        long counter = -1;
+        if (foundSignatureCounter.signum() < 0 || foundSignatureCounter.bitLength() > 63) {
+            result.add(new SignatureCounterOutOfRangeException(msg, state.serial, foundSignatureCounter));
+        } else {
+            counter = foundSignatureCounter.longValue();
+            if (!state.counters.add(counter, msg.getFileName())) {
+                String previousFileName = state.previousCounter == counter ? state.previousFileName : null;
+                result.add(new SignatureCounterDuplicateException(foundSignatureCounter, msg, previousFileName));
+            }
+        }
 
-        for(LogMessage msg : messages){
-            serial = Hex.encodeHexString(msg.getSerialNumber());
+        state.previousCounter = counter;
+        state.previousFileName = msg.getFileName();
+    }
 
-            BigInteger foundSignatureCounter = msg.getSignatureCounter();
-            if(!nextSignatureCounters.containsKey(serial)){
-                if (forceSignatureCounterToStartWith1){
-                nextSignatureCounters.put(serial, BigInteger.ONE);
-                expectedSignatureCounter = BigInteger.ONE;}
-                else{
-                    nextSignatureCounters.put(serial, foundSignatureCounter);
-                    expectedSignatureCounter = foundSignatureCounter;
-                }
+    @Override
+    public Collection<byte[]> getCheckpointSerialNumbers() {
+        ArrayList<byte[]> serialNumbers = new ArrayList<>(serialStates.size());
+        for (ByteBuffer serialNumber : serialStates.keySet()) {
+            serialNumbers.add(serialNumber.array().clone());
+        }
+        return serialNumbers;
+    }
 
-            }else{
-                expectedSignatureCounter = nextSignatureCounters.get(serial);
-            }
+    @Override
+    public void writeCheckpoint(byte[] serialNumber, DataOutput out) throws IOException {
+        SerialState state = serialStates.get(ByteBuffer.wrap(serialNumber));
+        if (state == null || state.counters.isEmpty()) {
+            return;
+        }
+        out.writeInt(state.counters.getRangeCount());
+        for (int i = 0; i < state.counters.getRangeCount(); i++) {
+            out.writeLong(state.counters.getStart(i));
+            out.writeLong(state.counters.getEnd(i));
+        }
+    }
 
-            switch(expectedSignatureCounter.compareTo(foundSignatureCounter)){
-                case -1: result.add(new SignatureCounterMissingException(msg, serial, expectedSignatureCounter, foundSignatureCounter));
-                         nextSignatureCounters.replace(serial, foundSignatureCounter.add(BigInteger.ONE));
-                         break;
-                case 0:  nextSignatureCounters.replace(serial, foundSignatureCounter.add(BigInteger.ONE));
-                         break;
-                case 1:  result.add( new SignatureCounterDuplicateException(foundSignatureCounter,msg,previousMessage));
-            }
+    @Override
+    public void readCheckpoint(byte[] serialNumber, DataInput in) throws IOException {
+        SerialState state = new SerialState(Hex.encodeHexString(serialNumber));
+        int ranges = in.readInt();
+        for (int i = 0; i < ranges; i++) {
+            state.counters.appendRange(in.readLong(), in.readLong(), null);
+        }
+        // Die Lücken der gespeicherten Bereiche wurden bereits gemeldet.
+        if (!state.counters.isEmpty()) {
+            state.reported = true;
+            state.reportedFirst = state.counters.first();
+            state.reportedLast = state.counters.last();
+        }
+        state.startReported = true;
+        serialStates.put(ByteBuffer.wrap(serialNumber.clone()), state);
+    }
 
-            previousMessage = msg;
+    @Override
+    public ValidationResult end(LogMessageArchive tar) {
+        for (SerialState state : touchedSerials) {
+            state.touched = false;
+            state.reportGaps(forceSignatureCounterToStartWith1, result);
         }
+        touchedSerials.clear();
         return new ValidationResultImpl().append(Collections.singleton(this), result);
     }
 
-    public static class SignatureCounterMissingException extends LogMessageValidationException {
+    /**
+     * Eine Lücke in den Signaturzählern. Die LogMessage hinter der Lücke kann in einem früheren Archiv liegen, daher
+     * wird nur ihr Dateiname gemeldet.
+     */
+    public static class SignatureCounterMissingException extends ValidationException {
+        final String fileName;
         final String serial;
         final BigInteger expected;
         final BigInteger foundNext;
 
-        public SignatureCounterMissingException(LogMessage msg, String serial, BigInteger expected, BigInteger foundNext) {
-            super(msg);
+        public SignatureCounterMissingException(String fileName, String serial, BigInteger expected, BigInteger foundNext) {
+            super(String.format(properties.getString("de.konfidas.ttc.exceptions.validationOfLogMessageFailed"), fileName), null);
+            this.fileName = fileName;
             this.expected = expected;
             this.foundNext = foundNext;
             this.serial = serial;
         }
 
+        public String getFileName() {
+            return fileName;
+        }
+
         @Override
         public String toString(){
             return String.format(properties.getString("de.konfidas.ttc.validation.errorSignatureCounterIsMissing"),serial,expected,foundNext);
@@ -96,12 +218,32 @@ public class SignatureCounterValidator implements Validator{
 
     public static class SignatureCounterDuplicateException extends LogMessageValidationException{
         final BigInteger expected;
-        final LogMessage msg1;
+        final String previousFileName;
 
-        public SignatureCounterDuplicateException(BigInteger expected, LogMessage msg, LogMessage msg1) {
+        /**
+         * @param previousFileName Dateiname der LogMessage mit demselben Signaturzähler, falls sie unmittelbar vorher
+         *                         verarbeitet wurde, sonst null.
+         */
+        public SignatureCounterDuplicateException(BigInteger expected, LogMessage msg, String previousFileName) {
             super(msg);
             this.expected = expected;
-            this.msg1 = msg1;
+            this.previousFileName = previousFileName;
+        }
+    }
+
+    public static class SignatureCounterOutOfRangeException extends LogMessageValidationException {
+        final String serial;
+        final BigInteger found;
+
+        public SignatureCounterOutOfRangeException(LogMessage msg, String serial, BigInteger found) {
+            super(msg);
+            this.serial = serial;
+            this.found = found;
+        }
+
+        @Override
+        public String toString(){
+            return String.format(properties.getString("de.konfidas.ttc.validation.errorSignatureCounterOutOfRange"),serial,found);
         }
     }
 }
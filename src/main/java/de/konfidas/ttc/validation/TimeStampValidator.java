@@ -6,49 +6,132 @@ import de.konfidas.ttc.messages.LogMessage;
 import de.konfidas.ttc.messages.SystemLogMessage;
 import de.konfidas.ttc.messages.logtime.LogTime;
 import de.konfidas.ttc.tars.LogMessageArchive;
+import de.konfidas.ttc.tars.SerialPartitionedArchive;
+import org.apache.commons.codec.DecoderException;
 import org.apache.commons.codec.binary.Hex;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.*;
 
-public class TimeStampValidator implements Validator{
+public class TimeStampValidator implements LogMessageValidator, CheckpointableValidator{
     final HashMap<String, LogTime> lastLogTime;
+    LinkedList<ValidationException> result = new LinkedList<>();
+
+    // Seriennummer der vorherigen LogMessage und ihre Hex-Kodierung. Die LogMessages einer TSE folgen aufeinander,
+    // die Seriennummer wird so nur beim Wechsel der TSE kodiert.
+    byte[] currentSerialNumber;
+    String currentSerial;
 
     public TimeStampValidator(){
         lastLogTime = new HashMap<>();
     }
 
     @Override
-    public ValidationResult validate(LogMessageArchive tar) {
-        LinkedList<ValidationException> result = new LinkedList<>();
+    public void begin(LogMessageArchive tar) {
+        result = new LinkedList<>();
+        currentSerialNumber = null;
+        currentSerial = null;
+    }
 
-        Collection<? extends LogMessage> messages = tar.getSortedLogMessages();
+    @Override
+    public void begin(LogMessageArchive tar, SerialPartitionedArchive.Partition partition) {
+        begin(tar);
+        currentSerialNumber = partition.getSerialNumber();
+        currentSerial = partition.getSerialNumberHex();
+    }
 
-        String serial;
+    @Override
+    public void onMessage(LogMessage msg) {
+        byte[] serialNumber = msg.getSerialNumber();
+        if (serialNumber == null) {
+            // Eine fehlende Seriennummer wurde bereits beim Parsen gemeldet.
+            return;
+        }
+        if(currentSerial == null || !Arrays.equals(serialNumber, currentSerialNumber)){
+            currentSerialNumber = serialNumber;
+            currentSerial = Hex.encodeHexString(serialNumber);
+        }
 
-        for(LogMessage msg : messages) {
-            serial = Hex.encodeHexString(msg.getSerialNumber());
+        LogTime last = lastLogTime.put(currentSerial, msg.getLogTime());
+        if(last != null && !last.wasNotAfter(msg.getLogTime())){
+            result.add(new LogTimeMissMatchException(msg, last));
+        }
 
-            if(lastLogTime.containsKey(serial)){
-                if(!lastLogTime.get(serial).wasNotAfter(msg.getLogTime())){
-                    result.add(new LogTimeMissMatchException(msg, lastLogTime.get(serial)));
-                }
-                lastLogTime.replace(serial, msg.getLogTime());
 
-            }else{
-                lastLogTime.put(serial, msg.getLogTime());
-            }
+        if(msg instanceof SystemLogMessage){
+            SystemLogMessage sysLog = (SystemLogMessage) msg;
 
+            // FIXME: check for updateTime event and update
+            // lastLogTime(serial) accordingly!
+        }
+    }
 
-            if(msg instanceof SystemLogMessage){
-                SystemLogMessage sysLog = (SystemLogMessage) msg;
+    @Override
+    public ValidationResult end(LogMessageArchive tar) {
+        return new ValidationResultImpl().append(Collections.singleton(this), result);
+    }
 
-                // FIXME: check for updateTime event and update
-                // lastLogTime(serial) accordingly!
+    @Override
+    public Collection<byte[]> getCheckpointSerialNumbers() {
+        ArrayList<byte[]> serialNumbers = new ArrayList<>(lastLogTime.size());
+        for (String serial : lastLogTime.keySet()) {
+            try {
+                serialNumbers.add(Hex.decodeHex(serial));
+            } catch (DecoderException e) {
+                throw new IllegalStateException(e);
             }
+        }
+        return serialNumbers;
+    }
 
+    @Override
+    public void writeCheckpoint(byte[] serialNumber, DataOutput out) throws IOException {
+        LogTime logTime = lastLogTime.get(Hex.encodeHexString(serialNumber));
+        if (logTime == null) {
+            return;
+        }
+        out.writeByte(logTime.getType().ordinal());
+        out.writeLong(logTime.getTime());
+    }
 
+    @Override
+    public void readCheckpoint(byte[] serialNumber, DataInput in) throws IOException {
+        LogTime.Type[] types = LogTime.Type.values();
+        int type = in.readUnsignedByte();
+        if (type >= types.length) {
+            throw new IOException(String.valueOf(type));
+        }
+        lastLogTime.put(Hex.encodeHexString(serialNumber), new CheckpointLogTime(types[type], in.readLong()));
+    }
+
+    /**
+     * Die Zeit der letzten LogMessage einer TSE, wie sie aus einem Checkpoint gelesen wurde.
+     */
+    static class CheckpointLogTime extends LogTime {
+        final Type type;
+        final long time;
+
+        CheckpointLogTime(Type type, long time) {
+            this.type = type;
+            this.time = time;
+        }
+
+        @Override
+        public long getTime() {
+            return time;
+        }
+
+        @Override
+        public Type getType() {
+            return type;
+        }
+
+        @Override
+        public String toString() {
+            return new Date(time).toString();
         }
-        return new ValidationResultImpl().append(Collections.singleton(this), result);
     }
 
     static class LogTimeMissMatchException extends LogMessageValidationException {
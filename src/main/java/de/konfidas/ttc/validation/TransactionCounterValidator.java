@@ -5,110 +5,436 @@ import de.konfidas.ttc.exceptions.ValidationException;
 import de.konfidas.ttc.messages.LogMessage;
 import de.konfidas.ttc.messages.TransactionLogMessage;
 import de.konfidas.ttc.tars.LogMessageArchive;
+import de.konfidas.ttc.utilities.CounterIntervalSet;
+import org.apache.commons.codec.binary.Hex;
 
 import java.math.BigInteger;
+import java.nio.ByteBuffer;
 import java.util.*;
 
-// FIXME: this is incomplete and does not work fully.
-public class TransactionCounterValidator implements Validator {
-    final HashMap<BigInteger,OpenTransaction> openTransactions;
-    BigInteger transactionCounter;
+/**
+ * Prüft den Ablauf der Transaktionen jeder TSE: Eine Transaktion wird genau einmal gestartet, die Transaktionsnummern
+ * werden beim Start lückenlos vergeben, Aktualisierungen und das Beenden betreffen nur offene Transaktionen desselben
+ * Clients, und am Ende eines Archivs ist keine Transaktion mehr offen.
+ *
+ * Je Seriennummer werden die gestarteten Transaktionsnummern in einem {@link CounterIntervalSet} gesammelt. Für jede
+ * offene Transaktion werden nur der Client und die Signaturzähler des Starts und der letzten LogMessage gehalten,
+ * in einer Tabelle aus primitiven Feldern mit der Transaktionsnummer als Schlüssel. Beendete Transaktionen belegen
+ * damit keinen eigenen Speicher.
+ *
+ * Transaktionen, die am Ende eines Archivs noch offen sind, werden einmal gemeldet und bleiben offen, so dass sie in
+ * einem folgenden Archiv noch beendet werden können. Wird nicht geprüft, dass die Transaktionsnummern bei 1 beginnen,
+ * werden Aktualisierungen und das Beenden von Transaktionen unterhalb der ersten gestarteten Transaktion übergangen,
+ * da ihr Start vor dem Beginn des Exports liegt.
+ */
+public class TransactionCounterValidator implements LogMessageValidator {
+    final static String START_TRANSACTION = "StartTransaction";//NON-NLS
+    final static String UPDATE_TRANSACTION = "UpdateTransaction";//NON-NLS
+    final static String FINISH_TRANSACTION = "FinishTransaction";//NON-NLS
 
-    TransactionCounterValidator(){
-        openTransactions = new HashMap<>();
-        transactionCounter = BigInteger.ONE;
+    static Locale locale = new Locale("de", "DE"); //NON-NLS
+    static ResourceBundle properties = ResourceBundle.getBundle("ttc",locale);//NON-NLS
+
+    final LinkedHashMap<ByteBuffer, SerialState> serialStates = new LinkedHashMap<>();
+    final ArrayList<SerialState> touchedSerials = new ArrayList<>();
+    // Die Clients werden einmal gespeichert, die offenen Transaktionen halten nur ihren Index.
+    final HashMap<String, Integer> clientIndices = new HashMap<>();
+    final ArrayList<String> clientIds = new ArrayList<>();
+    final boolean forceTransactionCounterToStartWith1;
+    LinkedList<ValidationException> result = new LinkedList<>();
+
+    public TransactionCounterValidator(){
+        this(false);
     }
 
-    public ValidationResult validate(LogMessageArchive tar){
-        ArrayList<ValidationException> result = new ArrayList<>();
+    public TransactionCounterValidator(boolean _forceTransactionCounterToStartWith1){
+        forceTransactionCounterToStartWith1 = _forceTransactionCounterToStartWith1;
+    }
 
-        Collection<? extends LogMessage> msgs = tar.getSortedLogMessages();
+    /**
+     * Die gestarteten und die offenen Transaktionen einer TSE.
+     */
+    static class SerialState {
+        final String serial;
+        final CounterIntervalSet<Void> started = new CounterIntervalSet<>();
+        final OpenTransactions open = new OpenTransactions();
+        long lastStarted = -1;
+        boolean touched = false;
 
-        for(LogMessage msg : msgs){
-            if(msg instanceof TransactionLogMessage){
-                result.addAll(updateState((TransactionLogMessage) msg));
-            }
+        SerialState(String serial) {
+            this.serial = serial;
         }
 
-        return new ValidationResultImpl().append(Collections.singleton(this), result);
+        /**
+         * @return true, falls der Start der Transaktion vor dem Beginn des Exports liegen kann.
+         */
+        boolean startedBeforeExport(long transactionNumber, boolean forceStartWith1) {
+            return !forceStartWith1 && (started.isEmpty() || transactionNumber < started.first());
+        }
     }
 
+    /**
+     * Die offenen Transaktionen einer TSE als Hashtabelle mit offener Adressierung. Je Transaktion werden die
+     * Transaktionsnummer, der Index des Clients, die Signaturzähler des Starts und der letzten LogMessage sowie ein
+     * Merker gespeichert, ob die Transaktion bereits als nicht beendet gemeldet wurde.
+     */
+    static class OpenTransactions {
+        final static long EMPTY = -1;
+        final static int INITIAL_CAPACITY = 16;
+
+        long[] numbers;
+        int[] clients;
+        long[] startCounters;
+        long[] lastCounters;
+        boolean[] reported;
+        int size = 0;
+
+        OpenTransactions() {
+            allocate(INITIAL_CAPACITY);
+        }
+
+        void allocate(int capacity) {
+            numbers = new long[capacity];
+            Arrays.fill(numbers, EMPTY);
+            clients = new int[capacity];
+            startCounters = new long[capacity];
+            lastCounters = new long[capacity];
+            reported = new boolean[capacity];
+        }
+
+        int slot(long number) {
+            long hash = number * 0x9E3779B97F4A7C15L;
+            return (int) (hash ^ (hash >>> 32)) & (numbers.length - 1);
+        }
+
+        /**
+         * @return die Position der Transaktion in der Tabelle oder -1, falls sie nicht offen ist.
+         */
+        int find(long number) {
+            for (int i = slot(number); numbers[i] != EMPTY; i = (i + 1) & (numbers.length - 1)) {
+                if (numbers[i] == number) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Fügt eine Transaktion hinzu, die nicht offen ist.
+         */
+        void add(long number, int client, long signatureCounter) {
+            if (2 * (size + 1) > numbers.length) {
+                grow();
+            }
+            put(number, client, signatureCounter, signatureCounter, false);
+            size++;
+        }
 
+        void put(long number, int client, long startCounter, long lastCounter, boolean wasReported) {
+            int i = slot(number);
+            while (numbers[i] != EMPTY) {
+                i = (i + 1) & (numbers.length - 1);
+            }
+            numbers[i] = number;
+            clients[i] = client;
+            startCounters[i] = startCounter;
+            lastCounters[i] = lastCounter;
+            reported[i] = wasReported;
+        }
 
-    Collection<ValidationException> updateState(TransactionLogMessage msg) {
-        LinkedList <ValidationException> result = new LinkedList<>();
+        void grow() {
+            long[] oldNumbers = numbers;
+            int[] oldClients = clients;
+            long[] oldStartCounters = startCounters;
+            long[] oldLastCounters = lastCounters;
+            boolean[] oldReported = reported;
+            allocate(oldNumbers.length * 2);
+            for (int i = 0; i < oldNumbers.length; i++) {
+                if (oldNumbers[i] != EMPTY) {
+                    put(oldNumbers[i], oldClients[i], oldStartCounters[i], oldLastCounters[i], oldReported[i]);
+                }
+            }
+        }
 
-        if("START".equals(msg.getProcessType())){
-            if(!transactionCounter.equals(msg.getTransactionNumber())){
-                result.add(new WrongTransactionCounterException(transactionCounter, msg));
+        /**
+         * Entfernt die Transaktion an der Position. Die folgenden Einträge derselben Kette werden nachgerückt, so dass
+         * keine Grabsteine entstehen.
+         */
+        void remove(int position) {
+            int mask = numbers.length - 1;
+            int gap = position;
+            for (int i = (gap + 1) & mask; numbers[i] != EMPTY; i = (i + 1) & mask) {
+                int home = slot(numbers[i]);
+                // Der Eintrag darf nur nachrücken, wenn seine Ausgangsposition nicht zwischen der Lücke und ihm liegt.
+                if (((i - home) & mask) >= ((i - gap) & mask)) {
+                    numbers[gap] = numbers[i];
+                    clients[gap] = clients[i];
+                    startCounters[gap] = startCounters[i];
+                    lastCounters[gap] = lastCounters[i];
+                    reported[gap] = reported[i];
+                    gap = i;
+                }
             }
+            numbers[gap] = EMPTY;
+            size--;
+        }
 
-            if(openTransactions.containsKey(msg.getTransactionNumber())){
-                OpenTransaction duplicate = openTransactions.get(msg.getTransactionNumber());
-                result.add(new DuplicateTransactionCounterFoundException(duplicate.msgs.get(0), msg));
-                duplicate.msgs.add(msg);
-                duplicate.signatureCounterLastUpdate = msg.getSignatureCounter();
-            }else{
-                openTransactions.put(msg.getTransactionNumber(), new OpenTransaction(msg));
+        /**
+         * @return die Positionen der offenen, noch nicht gemeldeten Transaktionen, aufsteigend nach Transaktionsnummer.
+         */
+        int[] unreported() {
+            int count = 0;
+            for (int i = 0; i < numbers.length; i++) {
+                if (numbers[i] != EMPTY && !reported[i]) {
+                    count++;
+                }
+            }
+            Integer[] positions = new Integer[count];
+            count = 0;
+            for (int i = 0; i < numbers.length; i++) {
+                if (numbers[i] != EMPTY && !reported[i]) {
+                    positions[count++] = i;
+                }
             }
+            Arrays.sort(positions, Comparator.comparingLong(i -> numbers[i]));
+            int[] result = new int[positions.length];
+            for (int i = 0; i < positions.length; i++) {
+                result[i] = positions[i];
+            }
+            return result;
+        }
+    }
+
+    @Override
+    public void begin(LogMessageArchive tar){
+        result = new LinkedList<>();
+    }
 
-            // TODO: what is the next expected transaction number?
-            // transactionCounter +1 or msg.getTransactionNumber +1?
-            transactionCounter = transactionCounter.add(BigInteger.ONE);
+    @Override
+    public void onMessage(LogMessage msg){
+        if(msg instanceof TransactionLogMessage){
+            updateState((TransactionLogMessage) msg);
         }
+    }
 
-        if("UPDATE".equals(msg.getProcessType())){
-            if(!openTransactions.containsKey(msg.getTransactionNumber())){
-                result.add(new UpdateForNotOpenTransactionException(transactionCounter, msg));
-            }else{
-                // TODO
+    @Override
+    public ValidationResult end(LogMessageArchive tar){
+        for (SerialState state : touchedSerials) {
+            state.touched = false;
+            for (int position : state.open.unreported()) {
+                state.open.reported[position] = true;
+                result.add(new TransactionNotFinishedException(state.serial, state.open.numbers[position],
+                        clientIds.get(state.open.clients[position]), state.open.startCounters[position],
+                        state.open.lastCounters[position], tar.getFileName()));
             }
         }
+        touchedSerials.clear();
+        return new ValidationResultImpl().append(Collections.singleton(this), result);
+    }
+
+    SerialState stateFor(LogMessage msg) {
+        byte[] serialNumber = msg.getSerialNumber();
+        SerialState state = serialStates.get(ByteBuffer.wrap(serialNumber));
+        if (state == null) {
+            state = new SerialState(Hex.encodeHexString(serialNumber));
+            serialStates.put(ByteBuffer.wrap(serialNumber.clone()), state);
+        }
+        if (!state.touched) {
+            state.touched = true;
+            touchedSerials.add(state);
+        }
+        return state;
+    }
+
+    int clientIndex(String clientId) {
+        String key = clientId == null ? "" : clientId;
+        Integer index = clientIndices.get(key);
+        if (index == null) {
+            index = clientIds.size();
+            clientIds.add(key);
+            clientIndices.put(key, index);
+        }
+        return index;
+    }
+
+    /**
+     * @return den Signaturzähler als long oder -1, falls er fehlt oder nicht in 63 Bit passt. Solche Signaturzähler
+     * meldet der {@link SignatureCounterValidator}.
+     */
+    static long signatureCounter(LogMessage msg) {
+        BigInteger signatureCounter = msg.getSignatureCounter();
+        return signatureCounter == null || signatureCounter.signum() < 0 || signatureCounter.bitLength() > 63 ? -1 : signatureCounter.longValue();
+    }
+
+    void updateState(TransactionLogMessage msg) {
+        String operationType = msg.getOperationType();
+        BigInteger foundTransactionNumber = msg.getTransactionNumber();
+        if (operationType == null || foundTransactionNumber == null || msg.getSerialNumber() == null) {
+            // Fehlende Felder wurden bereits beim Parsen gemeldet.
+            return;
+        }
+
+        SerialState state = stateFor(msg);
+        if (foundTransactionNumber.signum() < 0 || foundTransactionNumber.bitLength() > 63) {
+            result.add(new TransactionNumberOutOfRangeException(msg, state.serial, foundTransactionNumber));
+            return;
+        }
+        long transactionNumber = foundTransactionNumber.longValue();
+        int client = clientIndex(msg.getClientID());
+
+        switch (operationType) {
+            case START_TRANSACTION:
+                onStart(state, msg, transactionNumber, client);
+                break;
+            case UPDATE_TRANSACTION:
+            case FINISH_TRANSACTION:
+                int position = state.open.find(transactionNumber);
+                if (position < 0) {
+                    if (!state.startedBeforeExport(transactionNumber, forceTransactionCounterToStartWith1)) {
+                        result.add(new TransactionNotOpenException(msg, state.serial, transactionNumber, FINISH_TRANSACTION.equals(operationType)));
+                    }
+                    return;
+                }
+                if (state.open.clients[position] != client) {
+                    result.add(new TransactionClientMismatchException(msg, state.serial, transactionNumber, clientIds.get(state.open.clients[position]), clientIds.get(client)));
+                }
+                if (FINISH_TRANSACTION.equals(operationType)) {
+                    state.open.remove(position);
+                } else {
+                    state.open.lastCounters[position] = signatureCounter(msg);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    void onStart(SerialState state, TransactionLogMessage msg, long transactionNumber, int client) {
+        if (!state.started.add(transactionNumber, null)) {
+            result.add(new DuplicateTransactionCounterFoundException(msg, state.serial, transactionNumber));
+            return;
+        }
+
+        long expected = state.lastStarted >= 0 ? state.lastStarted + 1 : (forceTransactionCounterToStartWith1 ? 1 : transactionNumber);
+        if (transactionNumber != expected) {
+            result.add(new WrongTransactionCounterException(msg, state.serial, expected, transactionNumber));
+        }
+        // Nach einem Sprung wird ab der gefundenen Transaktionsnummer weiter geprüft, damit er nur einmal gemeldet wird.
+        state.lastStarted = Math.max(state.lastStarted, transactionNumber);
+        state.open.add(transactionNumber, client, signatureCounter(msg));
+    }
 
-        if("FINISH".equals(msg.getProcessType())){
-            // TODO
+
+    public static class DuplicateTransactionCounterFoundException extends LogMessageValidationException {
+        final String serial;
+        final long transactionNumber;
+
+        public DuplicateTransactionCounterFoundException(TransactionLogMessage msg, String serial, long transactionNumber) {
+            super(msg);
+            this.serial = serial;
+            this.transactionNumber = transactionNumber;
         }
 
-        return result;
+        @Override
+        public String toString(){
+            return String.format(properties.getString("de.konfidas.ttc.validation.errorTransactionNumberDuplicate"), serial, transactionNumber);
+        }
     }
 
+    public static class TransactionNotOpenException extends LogMessageValidationException{
+        final String serial;
+        final long transactionNumber;
+        final boolean finish;
 
-    static class OpenTransaction{
-        BigInteger signatureCounterLastUpdate;
-        final LinkedList<TransactionLogMessage> msgs;
+        public TransactionNotOpenException(TransactionLogMessage msg, String serial, long transactionNumber, boolean finish) {
+            super(msg);
+            this.serial = serial;
+            this.transactionNumber = transactionNumber;
+            this.finish = finish;
+        }
 
-        public OpenTransaction(TransactionLogMessage msg) {
-            this.signatureCounterLastUpdate = msg.getSignatureCounter();
-            msgs = new LinkedList<>();
-            msgs.add(msg);
+        @Override
+        public String toString(){
+            return String.format(properties.getString(finish ? "de.konfidas.ttc.validation.errorFinishForNotOpenTransaction" : "de.konfidas.ttc.validation.errorUpdateForNotOpenTransaction"), serial, transactionNumber);
         }
     }
 
+    public static class WrongTransactionCounterException extends LogMessageValidationException{
+        final String serial;
+        final long expectedTransactionCounter;
+        final long foundTransactionCounter;
 
-    static class DuplicateTransactionCounterFoundException extends LogMessageValidationException {
-        final TransactionLogMessage msg2;
+        public WrongTransactionCounterException(TransactionLogMessage msg, String serial, long expectedTransactionCounter, long foundTransactionCounter) {
+            super(msg);
+            this.serial = serial;
+            this.expectedTransactionCounter = expectedTransactionCounter;
+            this.foundTransactionCounter = foundTransactionCounter;
+        }
 
-        public DuplicateTransactionCounterFoundException(TransactionLogMessage msg1, TransactionLogMessage msg2) {
-            super(msg1);
-            this.msg2 = msg2;
+        @Override
+        public String toString(){
+            return String.format(properties.getString("de.konfidas.ttc.validation.errorTransactionNumberUnexpected"), serial, expectedTransactionCounter, foundTransactionCounter);
         }
     }
 
-    static class UpdateForNotOpenTransactionException extends LogMessageValidationException{
-        final BigInteger expectedTransactionCounter;
+    public static class TransactionClientMismatchException extends LogMessageValidationException{
+        final String serial;
+        final long transactionNumber;
+        final String startClient;
+        final String foundClient;
 
-        public UpdateForNotOpenTransactionException(BigInteger transactionCounter, TransactionLogMessage msg) {
+        public TransactionClientMismatchException(TransactionLogMessage msg, String serial, long transactionNumber, String startClient, String foundClient) {
             super(msg);
-            this.expectedTransactionCounter = transactionCounter;
+            this.serial = serial;
+            this.transactionNumber = transactionNumber;
+            this.startClient = startClient;
+            this.foundClient = foundClient;
+        }
+
+        @Override
+        public String toString(){
+            return String.format(properties.getString("de.konfidas.ttc.validation.errorTransactionClientMismatch"), transactionNumber, serial, startClient, foundClient);
         }
     }
 
-    static class WrongTransactionCounterException extends LogMessageValidationException{
-        final BigInteger expectedTransactionCounter;
+    public static class TransactionNumberOutOfRangeException extends LogMessageValidationException {
+        final String serial;
+        final BigInteger found;
 
-        public WrongTransactionCounterException(BigInteger transactionCounter, TransactionLogMessage msg) {
+        public TransactionNumberOutOfRangeException(TransactionLogMessage msg, String serial, BigInteger found) {
             super(msg);
-            this.expectedTransactionCounter = transactionCounter;
+            this.serial = serial;
+            this.found = found;
+        }
+
+        @Override
+        public String toString(){
+            return String.format(properties.getString("de.konfidas.ttc.validation.errorTransactionNumberOutOfRange"), serial, found);
+        }
+    }
+
+    /**
+     * Eine Transaktion ist am Ende eines Archivs noch offen. Da von ihr keine LogMessage gehalten wird, nennt die
+     * Meldung die Signaturzähler ihres Starts und ihrer letzten LogMessage.
+     */
+    public static class TransactionNotFinishedException extends ValidationException {
+        final String serial;
+        final long transactionNumber;
+        final String client;
+        final long startSignatureCounter;
+        final long lastSignatureCounter;
+
+        public TransactionNotFinishedException(String serial, long transactionNumber, String client, long startSignatureCounter, long lastSignatureCounter, String archive) {
+            super(String.format(properties.getString("de.konfidas.ttc.validation.errorTransactionNotFinished"), transactionNumber, serial, client, startSignatureCounter, archive, lastSignatureCounter), null);
+            this.serial = serial;
+            this.transactionNumber = transactionNumber;
+            this.client = client;
+            this.startSignatureCounter = startSignatureCounter;
+            this.lastSignatureCounter = lastSignatureCounter;
+        }
+
+        public long getTransactionNumber() {
+            return transactionNumber;
         }
     }
 }
@@ -0,0 +1,299 @@
+package de.konfidas.ttc.validation;
+
+import de.konfidas.ttc.exceptions.CertificateLoadException;
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.x509.AuthorityKeyIdentifier;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.SubjectKeyIdentifier;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.security.auth.x500.X500Principal;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.Security;
+import java.security.cert.Certificate;
+import java.security.cert.CertificateFactory;
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509Certificate;
+import java.util.*;
+
+/**
+ * Vertrauensanker und Zwischenzertifikate für die Prüfung der Zertifikate in den Archiven.
+ *
+ * Der TrustStore wird aus einem Verzeichnis mit Zertifikatsdateien (DER oder PEM), aus einem PKCS#12 Keystore oder
+ * aus einer einzelnen Zertifikatsdatei geladen. Selbst ausgestellte Zertifikate werden zu Vertrauensankern, alle
+ * anderen zu Zwischenzertifikaten. Beide sind nach Subject Key Identifier und Subject DN indiziert, so dass der Pfad
+ * eines Client-Zertifikats über den Authority Key Identifier aufgebaut werden kann, statt PKIX alle
+ * Zwischenzertifikate eines Archivs zu übergeben.
+ */
+public class TrustStore {
+    final static Logger logger = LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
+    static Locale locale = new Locale("de", "DE");//NON-NLS
+    static ResourceBundle properties = ResourceBundle.getBundle("ttc",locale);//NON-NLS
+
+    final static int MAX_PATH_LENGTH = 8;
+    final static List<String> CERTIFICATE_SUFFIXES = Arrays.asList(".cer", ".crt", ".der", ".pem");//NON-NLS
+    final static List<String> KEYSTORE_SUFFIXES = Arrays.asList(".p12", ".pfx");//NON-NLS
+
+    final LinkedHashSet<TrustAnchor> trustAnchors = new LinkedHashSet<>();
+    final CertificateIndex anchors = new CertificateIndex();
+    final CertificateIndex intermediates = new CertificateIndex();
+
+    public TrustStore() {
+    }
+
+    /**
+     * @return einen TrustStore, in dem alle übergebenen Zertifikate Vertrauensanker sind.
+     */
+    public static TrustStore of(Collection<X509Certificate> trustedCerts) {
+        TrustStore store = new TrustStore();
+        for (X509Certificate cert : trustedCerts) {
+            store.addAnchor(cert);
+        }
+        return store;
+    }
+
+    /**
+     * Lädt einen TrustStore aus einem Verzeichnis, einem PKCS#12 Keystore (.p12, .pfx) oder einer Zertifikatsdatei.
+     *
+     * @param password das Passwort des Keystores oder null.
+     */
+    public static TrustStore load(File file, char[] password) throws CertificateLoadException {
+        TrustStore store = new TrustStore();
+        store.add(file, password);
+        return store;
+    }
+
+    void add(File file, char[] password) throws CertificateLoadException {
+        if (file.isDirectory()) {
+            File[] files = file.listFiles();
+            if (files == null) {
+                throw new CertificateLoadException(String.format(properties.getString("de.konfidas.ttc.validation.trustStoreCouldNotBeLoaded"), file), null);
+            }
+            Arrays.sort(files);
+            for (File child : files) {
+                if (child.isFile() && hasSuffix(child, CERTIFICATE_SUFFIXES)) {
+                    addCertificates(child);
+                }
+            }
+        } else if (hasSuffix(file, KEYSTORE_SUFFIXES)) {
+            addKeyStore(file, password);
+        } else {
+            addCertificates(file);
+        }
+    }
+
+    static boolean hasSuffix(File file, List<String> suffixes) {
+        String name = file.getName().toLowerCase(Locale.ROOT);
+        for (String suffix : suffixes) {
+            if (name.endsWith(suffix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void addCertificates(File file) throws CertificateLoadException {
+        try (InputStream in = new FileInputStream(file)) {
+            CertificateFactory cf = CertificateFactory.getInstance("X.509", BouncyCastleProvider.PROVIDER_NAME);//NON-NLS
+            for (Certificate cert : cf.generateCertificates(in)) {
+                add((X509Certificate) cert);
+            }
+        } catch (IOException | GeneralSecurityException e) {
+            throw new CertificateLoadException(String.format(properties.getString("de.konfidas.ttc.validation.trustStoreCouldNotBeLoaded"), file), e);
+        }
+    }
+
+    void addKeyStore(File file, char[] password) throws CertificateLoadException {
+        try (InputStream in = new FileInputStream(file)) {
+            KeyStore keyStore = KeyStore.getInstance("PKCS12");//NON-NLS
+            keyStore.load(in, password);
+            for (String alias : Collections.list(keyStore.aliases())) {
+                Certificate[] chain = keyStore.getCertificateChain(alias);
+                if (chain != null) {
+                    for (Certificate cert : chain) {
+                        add((X509Certificate) cert);
+                    }
+                } else if (keyStore.getCertificate(alias) != null) {
+                    add((X509Certificate) keyStore.getCertificate(alias));
+                }
+            }
+        } catch (IOException | GeneralSecurityException e) {
+            throw new CertificateLoadException(String.format(properties.getString("de.konfidas.ttc.validation.trustStoreCouldNotBeLoaded"), file), e);
+        }
+    }
+
+    /**
+     * Fügt ein Zertifikat hinzu. Selbst signierte Zertifikate werden zu Vertrauensankern. Selbst ausgestellte
+     * Zertifikate, deren Signatur nicht mit dem eigenen Schlüssel geprüft werden kann (z.B. Link-Zertifikate beim
+     * Schlüsselwechsel einer Root-CA), werden wie alle übrigen Zertifikate Zwischenzertifikate.
+     */
+    public void add(X509Certificate cert) {
+        if (isSelfSigned(cert)) {
+            addAnchor(cert);
+        } else {
+            addIntermediate(cert);
+        }
+    }
+
+    static boolean isSelfSigned(X509Certificate cert) {
+        if (!cert.getSubjectX500Principal().equals(cert.getIssuerX500Principal())) {
+            return false;
+        }
+        try {
+            if (Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) != null) {
+                cert.verify(cert.getPublicKey(), BouncyCastleProvider.PROVIDER_NAME);
+            } else {
+                cert.verify(cert.getPublicKey());
+            }
+            return true;
+        } catch (GeneralSecurityException e) {
+            logger.debug("Self-issued certificate {} is not self-signed: {}", cert.getSubjectX500Principal(), e.getMessage());//NON-NLS
+            return false;
+        }
+    }
+
+    public void addAnchor(X509Certificate cert) {
+        if (anchors.add(cert)) {
+            trustAnchors.add(new TrustAnchor(cert, null));
+        }
+    }
+
+    public void addIntermediate(X509Certificate cert) {
+        intermediates.add(cert);
+    }
+
+    public Set<TrustAnchor> getTrustAnchors() {
+        return Collections.unmodifiableSet(trustAnchors);
+    }
+
+    public Collection<X509Certificate> getIntermediateCertificates() {
+        return intermediates.getCertificates();
+    }
+
+    /**
+     * Baut den Pfad vom Zertifikat zu einem Vertrauensanker auf. Aussteller werden über den Authority Key Identifier
+     * gesucht, fehlt er, über den Issuer DN. Zwischenzertifikate werden im TrustStore und in archiveIntermediates
+     * gesucht.
+     *
+     * @return die Zwischenzertifikate in der Reihenfolge vom Aussteller des Zertifikats zum Anker (ohne das Zertifikat
+     * selbst und ohne den Anker) oder null, falls kein Pfad zu einem Anker gefunden wurde.
+     */
+    public List<X509Certificate> buildPath(X509Certificate cert, CertificateIndex archiveIntermediates) {
+        ArrayList<X509Certificate> path = new ArrayList<>();
+        return buildPath(cert, archiveIntermediates, path) ? path : null;
+    }
+
+    boolean buildPath(X509Certificate cert, CertificateIndex archiveIntermediates, ArrayList<X509Certificate> path) {
+        if (!anchors.findIssuers(cert).isEmpty()) {
+            return true;
+        }
+        if (path.size() >= MAX_PATH_LENGTH) {
+            return false;
+        }
+        LinkedHashSet<X509Certificate> candidates = new LinkedHashSet<>(intermediates.findIssuers(cert));
+        if (archiveIntermediates != null) {
+            candidates.addAll(archiveIntermediates.findIssuers(cert));
+        }
+        for (X509Certificate issuer : candidates) {
+            if (issuer.equals(cert) || path.contains(issuer)) {
+                continue;
+            }
+            path.add(issuer);
+            if (buildPath(issuer, archiveIntermediates, path)) {
+                return true;
+            }
+            path.remove(path.size() - 1);
+        }
+        return false;
+    }
+
+    /**
+     * Zertifikate, indiziert nach Subject Key Identifier und Subject DN.
+     */
+    public static class CertificateIndex {
+        final LinkedHashSet<X509Certificate> certificates = new LinkedHashSet<>();
+        final HashMap<ByteBuffer, List<X509Certificate>> bySubjectKeyIdentifier = new HashMap<>();
+        final HashMap<X500Principal, List<X509Certificate>> bySubject = new HashMap<>();
+
+        public CertificateIndex() {
+        }
+
+        public CertificateIndex(Collection<? extends X509Certificate> certs) {
+            for (X509Certificate cert : certs) {
+                add(cert);
+            }
+        }
+
+        /**
+         * @return false, falls das Zertifikat bereits enthalten war.
+         */
+        public boolean add(X509Certificate cert) {
+            if (!certificates.add(cert)) {
+                return false;
+            }
+            byte[] ski = getSubjectKeyIdentifier(cert);
+            if (ski != null) {
+                bySubjectKeyIdentifier.computeIfAbsent(ByteBuffer.wrap(ski), k -> new ArrayList<>()).add(cert);
+            }
+            bySubject.computeIfAbsent(cert.getSubjectX500Principal(), k -> new ArrayList<>()).add(cert);
+            return true;
+        }
+
+        public Collection<X509Certificate> getCertificates() {
+            return Collections.unmodifiableSet(certificates);
+        }
+
+        /**
+         * @return die möglichen Aussteller des Zertifikats. Passt der Authority Key Identifier zu keinem Zertifikat,
+         * wird über den Issuer DN gesucht.
+         */
+        public List<X509Certificate> findIssuers(X509Certificate cert) {
+            X500Principal issuer = cert.getIssuerX500Principal();
+            ArrayList<X509Certificate> result = new ArrayList<>();
+            byte[] aki = getAuthorityKeyIdentifier(cert);
+            if (aki != null) {
+                for (X509Certificate candidate : bySubjectKeyIdentifier.getOrDefault(ByteBuffer.wrap(aki), Collections.emptyList())) {
+                    if (candidate.getSubjectX500Principal().equals(issuer)) {
+                        result.add(candidate);
+                    }
+                }
+            }
+            if (result.isEmpty()) {
+                result.addAll(bySubject.getOrDefault(issuer, Collections.emptyList()));
+            }
+            return result;
+        }
+    }
+
+    static byte[] getSubjectKeyIdentifier(X509Certificate cert) {
+        byte[] extension = cert.getExtensionValue(Extension.subjectKeyIdentifier.getId());
+        if (extension == null) {
+            return null;
+        }
+        try {
+            return SubjectKeyIdentifier.getInstance(ASN1OctetString.getInstance(extension).getOctets()).getKeyIdentifier();
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    static byte[] getAuthorityKeyIdentifier(X509Certificate cert) {
+        byte[] extension = cert.getExtensionValue(Extension.authorityKeyIdentifier.getId());
+        if (extension == null) {
+            return null;
+        }
+        try {
+            return AuthorityKeyIdentifier.getInstance(ASN1OctetString.getInstance(extension).getOctets()).getKeyIdentifier();
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package de.konfidas.ttc.validation;
+
+import de.konfidas.ttc.tars.StreamingLogMessageArchive;
+import de.konfidas.ttc.utilities.IntegrityKey;
+import org.apache.commons.codec.binary.Hex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Der Fortschritt der Signaturprüfung eines Archivs, damit ein abgebrochener Lauf fortgesetzt werden kann.
+ *
+ * Gespeichert werden der Name und die Position im TAR Archiv des letzten geprüften Eintrags, die Anzahl der geprüften
+ * LogMessages und die Namen der Einträge, deren Prüfung fehlgeschlagen ist. Die Datei wird spätestens nach je
+ * {@code interval} geprüften LogMessages neu geschrieben. Beim Fortsetzen werden nur die fehlgeschlagenen Einträge
+ * erneut geprüft, um ihre Fehler wieder zu melden, die übrigen bereits geprüften Einträge werden nicht gelesen.
+ *
+ * Die Datei liegt im angegebenen Verzeichnis, ihr Name wird aus der Kennung des Archivs (Pfad, Länge und
+ * Änderungszeit) abgeleitet. Ein verändertes Archiv wird damit nicht fortgesetzt, sondern neu geprüft.
+ *
+ * Da beim Fortsetzen alle Einträge bis zum gespeicherten Namen ungeprüft bleiben, endet die Datei mit einem
+ * HMAC-SHA256 mit dem {@link IntegrityKey}. Eine Datei, deren HMAC nicht stimmt, wird nicht verwendet.
+ */
+public class ValidationProgress {
+    final static Logger logger = LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME);
+    static Locale locale = new Locale("de", "DE");//NON-NLS
+    static ResourceBundle properties = ResourceBundle.getBundle("ttc",locale);//NON-NLS
+
+    final static int MAGIC = 0x54544352; // "TTCR"
+    final static int VERSION = 2;
+    final static String SUFFIX = ".progress";//NON-NLS
+
+    final File file;
+    final String identity;
+    final IntegrityKey key;
+    final int interval;
+    String lastFileName;
+    long lastOffset = -1;
+    long processed = 0;
+    long savedProcessed = 0;
+    final ArrayList<String> failedFileNames = new ArrayList<>();
+
+    ValidationProgress(File file, String identity, IntegrityKey key, int interval) {
+        this.file = file;
+        this.identity = identity;
+        this.key = Objects.requireNonNull(key);
+        this.interval = interval;
+    }
+
+    /**
+     * @param key    schützt die Datei gegen Veränderung.
+     * @param resume falls true, wird ein gespeicherter Fortschritt zu diesem Archiv geladen. Andernfalls beginnt die
+     *               Prüfung von vorn und ein alter Fortschritt wird überschrieben.
+     */
+    public static ValidationProgress open(File directory, StreamingLogMessageArchive tar, IntegrityKey key, boolean resume, int interval) {
+        String identity = tar.getIdentity();
+        ValidationProgress progress = new ValidationProgress(new File(directory, fileName(identity)), identity, key, interval);
+        if (resume) {
+            progress.load();
+        }
+        return progress;
+    }
+
+    static String fileName(String identity) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(identity.getBytes(StandardCharsets.UTF_8));//NON-NLS
+            return "ttc-" + Hex.encodeHexString(Arrays.copyOf(digest, 16)) + SUFFIX;//NON-NLS
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    void load() {
+        if (!file.isFile()) {
+            return;
+        }
+        try {
+            byte[] content = Files.readAllBytes(file.toPath());
+            int length = content.length - IntegrityKey.MAC_LENGTH;
+            if (length < 0 || !MessageDigest.isEqual(key.mac(content, 0, length), Arrays.copyOfRange(content, length, content.length))) {
+                logger.warn(String.format(properties.getString("de.konfidas.ttc.validation.progressIntegrityViolated"), file));
+                return;
+            }
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(content, 0, length));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || !identity.equals(in.readUTF())) {
+                logger.warn(String.format(properties.getString("de.konfidas.ttc.validation.progressUnusable"), file));
+                return;
+            }
+            String name = in.readBoolean() ? in.readUTF() : null;
+            long offset = in.readLong();
+            long count = in.readLong();
+            int failures = in.readInt();
+            ArrayList<String> failed = new ArrayList<>(failures);
+            for (int i = 0; i < failures; i++) {
+                failed.add(in.readUTF());
+            }
+            lastFileName = name;
+            lastOffset = offset;
+            processed = count;
+            savedProcessed = count;
+            failedFileNames.addAll(failed);
+        } catch (IOException e) {
+            logger.warn(String.format(properties.getString("de.konfidas.ttc.validation.progressUnusable"), file), e);
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return true, falls ein gespeicherter Fortschritt geladen wurde.
+     */
+    public boolean isResumed() {
+        return lastFileName != null;
+    }
+
+    public String getLastFileName() {
+        return lastFileName;
+    }
+
+    public long getLastOffset() {
+        return lastOffset;
+    }
+
+    public long getProcessed() {
+        return processed;
+    }
+
+    public List<String> getFailedFileNames() {
+        return Collections.unmodifiableList(failedFileNames);
+    }
+
+    /**
+     * Verwirft den geladenen Fortschritt, etwa wenn der letzte Eintrag nicht mehr an seiner Position liegt.
+     */
+    public void reset() {
+        lastFileName = null;
+        lastOffset = -1;
+        processed = 0;
+        savedProcessed = 0;
+        failedFileNames.clear();
+    }
+
+    /**
+     * Vermerkt, dass alle LogMessages bis einschließlich des Eintrags geprüft sind, und schreibt den Fortschritt, falls
+     * seit dem letzten Schreiben mindestens {@code interval} LogMessages geprüft wurden.
+     *
+     * @param count    Anzahl der seit dem letzten Aufruf geprüften LogMessages.
+     * @param failures Namen der Einträge darunter, deren Prüfung fehlgeschlagen ist.
+     */
+    public synchronized void advance(String fileName, long offset, int count, Collection<String> failures) throws IOException {
+        lastFileName = fileName;
+        lastOffset = offset;
+        processed += count;
+        failedFileNames.addAll(failures);
+        if (processed - savedProcessed >= interval) {
+            save();
+        }
+    }
+
+    /**
+     * Schreibt den Fortschritt mit seinem HMAC über eine temporäre Datei, so dass ein Abbruch während des Schreibens
+     * den vorherigen Stand nicht zerstört.
+     */
+    public synchronized void save() throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(identity);
+        out.writeBoolean(lastFileName != null);
+        if (lastFileName != null) {
+            out.writeUTF(lastFileName);
+        }
+        out.writeLong(lastOffset);
+        out.writeLong(processed);
+        out.writeInt(failedFileNames.size());
+        for (String name : failedFileNames) {
+            out.writeUTF(name);
+        }
+        out.flush();
+        byte[] content = buffer.toByteArray();
+
+        File tmp = new File(file.getPath() + ".tmp");//NON-NLS
+        try (OutputStream fileOut = new FileOutputStream(tmp)) {
+            fileOut.write(content);
+            fileOut.write(key.mac(content, 0, content.length));
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        savedProcessed = processed;
+    }
+
+    /**
+     * Löscht die Datei, etwa nachdem der Lauf vollständig abgeschlossen ist.
+     */
+    public void delete() {
+        if (file.isFile() && !file.delete()) {
+            logger.debug("Could not delete {}", file);//NON-NLS
+        }
+    }
+}
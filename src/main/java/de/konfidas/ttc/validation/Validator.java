@@ -12,6 +12,9 @@ import de.konfidas.ttc.tars.LogMessageArchive;
  *  It is meant to be called multiple times with different TAR-files, i.e. first with the first exported TAR, than with the second exported
  *  and so on. This way the plausibility of the validated aspects can be checked over a sequence of TAR-Files, which together form the
  *  complete log message history of a TSE.
+ *
+ *  Validators implementing {@link CheckpointableValidator} can persist this state per TSE in a {@link CheckpointStore},
+ *  so a later call only has to be presented with the exports that were added since.
  */
 public interface Validator {
     ValidationResult validate(LogMessageArchive tar);
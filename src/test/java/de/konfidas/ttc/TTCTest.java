@@ -0,0 +1,28 @@
+package de.konfidas.ttc;
+
+import de.konfidas.ttc.validation.AggregatedValidator;
+import de.konfidas.ttc.validation.ConcurrentAggregatedValidator;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class TTCTest {
+
+    @TempDir
+    File progressDirectory;
+
+    @Test
+    public void progressShouldUseTheSequentialValidator() {
+        // -p 2
+        assertTrue(TTC.newAggregatedValidator(2, 0, null) instanceof ConcurrentAggregatedValidator);
+        // -p 2 --resume
+        AggregatedValidator validator = TTC.newAggregatedValidator(2, 0, progressDirectory);
+        assertEquals(AggregatedValidator.class, validator.getClass());
+        // -p 2 -m 64
+        assertEquals(AggregatedValidator.class, TTC.newAggregatedValidator(2, 64, null).getClass());
+    }
+}
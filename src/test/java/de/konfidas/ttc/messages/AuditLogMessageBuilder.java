@@ -1,13 +1,11 @@
 package de.konfidas.ttc.messages;
 
-import de.konfidas.ttc.setup.Utilities;
 import de.konfidas.ttc.utilities.oid;
 import org.bouncycastle.asn1.ASN1ObjectIdentifier;
 import org.bouncycastle.asn1.DEROctetString;
 
 import java.io.IOException;
 import java.util.Random;
-import static de.konfidas.ttc.setup.Utilities.getEncodedValue;
 public class AuditLogMessageBuilder extends LogMessageBuilder {
 
 
@@ -18,7 +16,7 @@ public class AuditLogMessageBuilder extends LogMessageBuilder {
         certifiedDataType = oid.id_SE_API_SE_audit_log;
         certifiedDataTypeAsASN1 = new ASN1ObjectIdentifier(certifiedDataType.getReadable());
 
-        certifiedDataTypeEndcoded = getEncodedValue(certifiedDataTypeAsASN1);
+        certifiedDataTypeEndcoded = certifiedDataTypeAsASN1.getEncoded();
 
         //FIXME: Sinnhafte Auditdaten wären schön
         byte[] b = new byte[20];
@@ -26,9 +24,9 @@ public class AuditLogMessageBuilder extends LogMessageBuilder {
 
         seAuditData = b;
         seAuditDataAsASN1 = new DEROctetString(seAuditData);
-        seAuditDataEncoded = getEncodedValue(seAuditDataAsASN1);
+        seAuditDataEncoded = seAuditDataAsASN1.getEncoded();
         }
-        catch (IOException| Utilities.ExtendLengthValueExceedsInteger e) {
+        catch (IOException e) {
             throw new TestLogMessageCreationError("Fehler in der prepare Methode des AuditLogMessageBuilders",e);
         }
         return this;
@@ -0,0 +1,109 @@
+package de.konfidas.ttc.messages;
+
+import org.bouncycastle.asn1.x9.ECNamedCurveTable;
+import org.bouncycastle.asn1.x9.X9ECParameters;
+import org.bouncycastle.crypto.AsymmetricCipherKeyPair;
+import org.bouncycastle.crypto.ec.CustomNamedCurves;
+import org.bouncycastle.crypto.generators.ECKeyPairGenerator;
+import org.bouncycastle.crypto.params.ECDomainParameters;
+import org.bouncycastle.crypto.params.ECKeyGenerationParameters;
+import org.bouncycastle.crypto.params.ECPublicKeyParameters;
+import org.bouncycastle.crypto.signers.ECDSASigner;
+import org.bouncycastle.util.BigIntegers;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ECDSAPlainVerifierTest {
+    final SecureRandom random = new SecureRandom();
+
+    byte[] sign(AsymmetricCipherKeyPair keyPair, byte[] digest, int length) {
+        ECDSASigner signer = new ECDSASigner();
+        signer.init(true, keyPair.getPrivate());
+        BigInteger[] rs = signer.generateSignature(digest);
+        byte[] signature = new byte[2 * length];
+        BigIntegers.asUnsignedByteArray(rs[0], signature, 0, length);
+        BigIntegers.asUnsignedByteArray(rs[1], signature, length, length);
+        return signature;
+    }
+
+    void checkCurve(X9ECParameters curve, int digestLength) throws Exception {
+        ECDomainParameters domain = new ECDomainParameters(curve);
+        ECKeyPairGenerator generator = new ECKeyPairGenerator();
+        generator.init(new ECKeyGenerationParameters(domain, random));
+        AsymmetricCipherKeyPair keyPair = generator.generateKeyPair();
+        int length = BigIntegers.getUnsignedByteLength(domain.getN());
+
+        ECDSAPlainVerifier verifier = new ECDSAPlainVerifier(keyPair.getPublic());
+        ECDSASigner reference = new ECDSASigner();
+        reference.init(false, keyPair.getPublic());
+
+        for (int i = 0; i < 20; i++) {
+            byte[] digest = new byte[digestLength];
+            random.nextBytes(digest);
+            byte[] signature = sign(keyPair, digest, length);
+            assertTrue(verifier.verify(digest, signature));
+
+            byte[] otherDigest = digest.clone();
+            otherDigest[i % digestLength] ^= 0x01;
+            assertFalse(verifier.verify(otherDigest, signature));
+
+            byte[] otherSignature = signature.clone();
+            otherSignature[signature.length - 1 - i] ^= 0x01;
+            BigInteger r = BigIntegers.fromUnsignedByteArray(otherSignature, 0, length);
+            BigInteger s = BigIntegers.fromUnsignedByteArray(otherSignature, length, length);
+            assertEquals(reference.verifySignature(digest, r, s), verifier.verify(digest, otherSignature));
+
+            // r und s mit führenden Nullbytes haben nicht die Länge der Ordnung
+            byte[] padded = new byte[signature.length + 2];
+            System.arraycopy(signature, 0, padded, 1, length);
+            System.arraycopy(signature, length, padded, length + 2, length);
+            assertFalse(verifier.verify(digest, padded));
+        }
+    }
+
+    @Test
+    public void signaturesShouldMatchECDSASigner() throws Exception {
+        checkCurve(ECNamedCurveTable.getByName("brainpoolP256r1"), 32);//NON-NLS
+        checkCurve(ECNamedCurveTable.getByName("brainpoolP384r1"), 48);//NON-NLS
+        // Ein Hashwert, der länger als die Ordnung ist, wird gekürzt
+        checkCurve(CustomNamedCurves.getByName("secp256r1"), 64);//NON-NLS
+    }
+
+    @Test
+    public void malformedSignaturesShouldBeRejected() throws Exception {
+        ECDomainParameters domain = new ECDomainParameters(ECNamedCurveTable.getByName("brainpoolP256r1"));//NON-NLS
+        ECKeyPairGenerator generator = new ECKeyPairGenerator();
+        generator.init(new ECKeyGenerationParameters(domain, random));
+        ECPublicKeyParameters publicKey = (ECPublicKeyParameters) generator.generateKeyPair().getPublic();
+        ECDSAPlainVerifier verifier = new ECDSAPlainVerifier(publicKey);
+
+        byte[] digest = new byte[32];
+        assertFalse(verifier.verify(digest, new byte[0]));
+        assertFalse(verifier.verify(digest, new byte[63]));
+        assertFalse(verifier.verify(digest, new byte[64]));
+
+        byte[] tooLarge = new byte[64];
+        BigIntegers.asUnsignedByteArray(domain.getN(), tooLarge, 0, 32);
+        tooLarge[63] = 1;
+        assertFalse(verifier.verify(digest, tooLarge));
+    }
+
+    @Test
+    public void generatorTableShouldBeSharedPerCurve() throws Exception {
+        ECKeyPairGenerator generator = new ECKeyPairGenerator();
+        generator.init(new ECKeyGenerationParameters(new ECDomainParameters(ECNamedCurveTable.getByName("brainpoolP256r1")), random));//NON-NLS
+        ECDSAPlainVerifier first = new ECDSAPlainVerifier(generator.generateKeyPair().getPublic());
+        generator.init(new ECKeyGenerationParameters(new ECDomainParameters(ECNamedCurveTable.getByName("brainpoolP256r1")), random));//NON-NLS
+        ECDSAPlainVerifier second = new ECDSAPlainVerifier(generator.generateKeyPair().getPublic());
+        generator.init(new ECKeyGenerationParameters(new ECDomainParameters(ECNamedCurveTable.getByName("brainpoolP384r1")), random));//NON-NLS
+        ECDSAPlainVerifier other = new ECDSAPlainVerifier(generator.generateKeyPair().getPublic());
+
+        assertSame(first.gTable, second.gTable);
+        assertNotSame(first.gTable, other.gTable);
+        assertNotSame(first.qTable, second.qTable);
+    }
+}
@@ -0,0 +1,71 @@
+package de.konfidas.ttc.messages;
+
+import de.konfidas.ttc.messages.logtime.LogTime;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.math.BigInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LogMessageFileNameTest {
+
+    @Test
+    public void transactionLogShouldBeTokenized() {
+        LogMessageFileName name = LogMessageFileName.parse("Unixt_1614596427_Sig-17_Log-Tra_No-8_Start_Client-1-2 Hioneu.log");
+
+        assertNotNull(name);
+        assertEquals(LogTime.Type.UNIX, name.getTimeFormat());
+        assertEquals("1614596427", name.getTimestamp());
+        assertEquals(BigInteger.valueOf(17), name.getSignatureCounter());
+        assertEquals(LogMessageFileName.Kind.TRANSACTION, name.getKind());
+        assertEquals("Start", name.getOperation());
+        assertEquals(BigInteger.valueOf(8), name.getTransactionNumber());
+        assertEquals("1-2 Hioneu", name.getClientId());
+    }
+
+    @Test
+    public void systemLogShouldBeTokenized() {
+        LogMessageFileName name = LogMessageFileName.parse("Gent_20210301113027.123Z_Sig-3_Log-Sys_unlockTransactionLogging.log");
+
+        assertNotNull(name);
+        assertEquals(LogTime.Type.GENERALIZED, name.getTimeFormat());
+        assertEquals("20210301113027.123Z", name.getTimestamp());
+        assertEquals(BigInteger.valueOf(3), name.getSignatureCounter());
+        assertEquals(LogMessageFileName.Kind.SYSTEM, name.getKind());
+        assertEquals("unlockTransactionLogging", name.getOperation());
+        assertNull(name.getClientId());
+    }
+
+    @Test
+    public void auditLogShouldBeTokenized() {
+        LogMessageFileName name = LogMessageFileName.parse("Utc_210301113027Z_Sig-99_Log-Aud.log");
+
+        assertNotNull(name);
+        assertEquals(LogTime.Type.UTC, name.getTimeFormat());
+        assertEquals(LogMessageFileName.Kind.AUDIT, name.getKind());
+        assertEquals(BigInteger.valueOf(99), name.getSignatureCounter());
+    }
+
+    @Test
+    public void unknownKindShouldStillBeALogMessage() {
+        LogMessageFileName name = LogMessageFileName.parse("Unixt_1_Sig-1_Log-Foo.log");
+
+        assertNotNull(name);
+        assertEquals(LogMessageFileName.Kind.UNKNOWN, name.getKind());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"info.csv", "Unixt_Sig-1_Log-Aud.log", "Unixt_1_Sig-_Log-Aud.log",
+            "Unixt_1_Sig-1_Log-Aud.txt", "Foo_1_Sig-1_Log-Aud.log", "aa8a589e_X509.der"})
+    public void otherFilesShouldBeRejected(String fileName) {
+        assertNull(LogMessageFileName.parse(fileName));
+    }
+
+    @Test
+    public void unknownSystemOperationShouldBeRejectedByFactory() {
+        assertThrows(de.konfidas.ttc.exceptions.BadFormatForLogMessageException.class,
+                () -> LogMessageFactory.createLogMessage("Unixt_1_Sig-1_Log-Sys_doesNotExist.log", new byte[0]));
+    }
+}
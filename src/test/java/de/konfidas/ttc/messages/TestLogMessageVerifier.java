@@ -1,55 +1,134 @@
 package de.konfidas.ttc.messages;
 
-import de.konfidas.ttc.exceptions.BadFormatForLogMessageException;
 import de.konfidas.ttc.exceptions.LogMessageVerificationException;
 import de.konfidas.ttc.setup.TestCaseBasisWithCA;
+import de.konfidas.ttc.tars.LogMessageArchiveImplementation;
+import org.apache.commons.codec.binary.Hex;
 import org.bouncycastle.asn1.ASN1Integer;
 
 import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
 import static org.junit.jupiter.api.Assertions.*;
 
 
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
 import java.security.cert.X509Certificate;
 import java.util.HashMap;
 
 
 public class TestLogMessageVerifier extends TestCaseBasisWithCA {
-    @Test
-    public void versionElementIsMissingInDTBS() throws LogMessageBuilder.TestLogMessageCreationError, BadFormatForLogMessageException {
-
-        try{
-            AuditLogMessageBuilder auditLogMessageBuilder = new AuditLogMessageBuilder();
-
-            auditLogMessageBuilder.prepare();
-            ASN1Integer tmpVersion = auditLogMessageBuilder.getVersionAsASN1();
-            // Das Versionselement wird zwischengespeichert und dann entfernt
-            auditLogMessageBuilder.setVersionEncoded(new byte[0])
-                    .calculateDTBS()
-                    //Das Element wird wieder ergänzt so dass es in der LogMessage vorhanden ist. Die LogMessag hat also eine gütlige Struktur aber ein falsches DTBS.
-                    .setVersionAsASN1(tmpVersion)
-                    .sign(getClientCertKeyPair().getPrivate())
-                    .build();
-
-            byte[] auditMessage = auditLogMessageBuilder.finalizeMessage();
+    /**
+     * Ein Verifier, der das Client-Zertifikat unter der Seriennummer der erzeugten LogMessages kennt.
+     */
+    static LogMessageSignatureVerifier verifierFor(LogMessageBuilder builder) {
+        HashMap<String, X509Certificate> certificates = new HashMap<>();
+        certificates.put(Hex.encodeHexString(builder.getSerialNumber()).toUpperCase(), getClientCertificate());
+        return new LogMessageSignatureVerifier(certificates);
+    }
 
-            String filename = auditLogMessageBuilder.getFilename();
+    @Test
+    public void builderSignedMessageShouldBeVerified() throws Exception {
+        AuditLogMessageBuilder auditLogMessageBuilder = new AuditLogMessageBuilder();
+        byte[] auditMessage = auditLogMessageBuilder.prepare()
+                .calculateDTBS()
+                .sign(getClientCertKeyPair().getPrivate())
+                .build()
+                .finalizeMessage();
+        AuditLogMessage auditLogMessage = new AuditLogMessage(auditMessage, auditLogMessageBuilder.getFilename());
+
+        assertArrayEquals(auditLogMessageBuilder.getDtbs(), auditLogMessage.getDTBS());
+        verifierFor(auditLogMessageBuilder).verify(auditLogMessage);
+    }
 
-            AuditLogMessage auditLogMessage = new AuditLogMessage(auditMessage, filename);
+    @Test
+    public void versionElementIsMissingInDTBS() throws Exception {
+        AuditLogMessageBuilder auditLogMessageBuilder = new AuditLogMessageBuilder();
+
+        auditLogMessageBuilder.prepare();
+        ASN1Integer tmpVersion = auditLogMessageBuilder.getVersionAsASN1();
+        // Das Versionselement wird zwischengespeichert und dann entfernt
+        auditLogMessageBuilder.setVersionEncoded(new byte[0])
+                .calculateDTBS()
+                //Das Element wird wieder ergänzt so dass es in der LogMessage vorhanden ist. Die LogMessag hat also eine gütlige Struktur aber ein falsches DTBS.
+                .setVersionAsASN1(tmpVersion)
+                .sign(getClientCertKeyPair().getPrivate())
+                .build();
+
+        byte[] auditMessage = auditLogMessageBuilder.finalizeMessage();
+        AuditLogMessage auditLogMessage = new AuditLogMessage(auditMessage, auditLogMessageBuilder.getFilename());
+
+        LogMessageSignatureVerifier verifier = verifierFor(auditLogMessageBuilder);
+        LogMessageVerificationException e = assertThrows(LogMessageVerificationException.class, () -> verifier.verify(auditLogMessage));
+        assertFalse(e instanceof LogMessageSignatureVerifier.CertificateNotFoundException);
+    }
 
-            //Jetzt brauhen wir einen Verifier
-            HashMap<String, X509Certificate> certiicates = new HashMap<>();
-            certiicates.put(getClientCertificate().getSerialNumber().toString().toUpperCase(),getClientCertificate());
+    @Test
+    public void modifiedDTBSShouldBeRejected() throws Exception {
+        LogMessageArchiveImplementation tar = new LogMessageArchiveImplementation(new File("testdata" + File.separator + "positive" + File.separator + "can_validate" + File.separator + "6e6c6a42-5c8d-4a9c-9572-26c10619d020.tar"));
+        LogMessageSignatureVerifier verifier = new LogMessageSignatureVerifier(tar.getClientCertificates());
+        LogMessage message = tar.getLogMessages().iterator().next();
+
+        verifier.verify(message);
+        ByteBuffer dtbs = message.getDTBSBuffer();
+        byte[] dtbsFromBuffer = new byte[dtbs.remaining()];
+        dtbs.get(dtbsFromBuffer);
+        assertArrayEquals(message.getDTBS(), dtbsFromBuffer);
+
+        // Das letzte Byte von logTime liegt im DTBS direkt vor dem signatureValue
+        byte[] modified = message.getEncoded().clone();
+        int lastByteOfDTBS = modified.length - message.getSignatureValue().length - 3;
+        modified[lastByteOfDTBS] ^= 0x01;
+        LogMessage modifiedMessage = LogMessageFactory.createLogMessage(message.getFileName(), modified);
+
+        assertThrows(LogMessageVerificationException.class, () -> verifier.verify(modifiedMessage));
+    }
 
+    @Test
+    public void digestShouldBeCalculatedWhileParsing() throws Exception {
+        LogMessageArchiveImplementation tar = new LogMessageArchiveImplementation(new File("testdata" + File.separator + "positive" + File.separator + "can_validate" + File.separator + "6e6c6a42-5c8d-4a9c-9572-26c10619d020.tar"));
+
+        for (LogMessage message : tar.getLogMessages()) {
+            SignatureAlgorithm algorithm = SignatureAlgorithm.fromOid(message.getSignatureAlgorithm());
+            assertNotNull(algorithm);
+            assertTrue(algorithm.isPreHashed());
+            assertArrayEquals(MessageDigest.getInstance(algorithm.getDigestAlgorithm()).digest(message.getDTBS()), message.getDTBSDigest());
+        }
+    }
 
-            LogMessageSignatureVerifier verifier = new LogMessageSignatureVerifier(certiicates);
-            verifier.verify(auditLogMessage);
+    @Test
+    public void cachedSignatureShouldBeReusedAcrossMessages() throws Exception {
+        LogMessageArchiveImplementation tar = new LogMessageArchiveImplementation(new File("testdata" + File.separator + "positive" + File.separator + "can_validate" + File.separator + "6e6c6a42-5c8d-4a9c-9572-26c10619d020.tar"));
+        LogMessageSignatureVerifier verifier = new LogMessageSignatureVerifier(tar.getClientCertificates());
+        LogMessage message = tar.getLogMessages().iterator().next();
+
+        // Ohne Hashwert wird über den vollständigen DTBS mit einem JCA Signature Objekt geprüft
+        LogMessage withoutDigest = Mockito.spy(message);
+        Mockito.doReturn(null).when(withoutDigest).getDTBSDigest();
+        verifier.verify(withoutDigest);
+        verifier.verify(withoutDigest);
+
+        byte[] modifiedSignature = message.getSignatureValue();
+        modifiedSignature[0] ^= 0x01;
+        LogMessage modified = Mockito.spy(withoutDigest);
+        Mockito.doReturn(modifiedSignature).when(modified).getSignatureValue();
+        assertThrows(LogMessageVerificationException.class, () -> verifier.verify(modified));
+
+        verifier.verify(withoutDigest);
+        assertSame(LogMessageSignatureVerifier.getAlgorithmName(message.getSignatureAlgorithm()), LogMessageSignatureVerifier.getAlgorithmName(message.getSignatureAlgorithm()));
+    }
 
+    @Test
+    public void ecdsaTablesShouldBeSharedAcrossVerifiers() throws Exception {
+        LogMessageArchiveImplementation tar = new LogMessageArchiveImplementation(new File("testdata" + File.separator + "positive" + File.separator + "can_validate" + File.separator + "6e6c6a42-5c8d-4a9c-9572-26c10619d020.tar"));
+        LogMessageSignatureVerifier first = new LogMessageSignatureVerifier(tar.getClientCertificates());
+        LogMessageSignatureVerifier second = new LogMessageSignatureVerifier(tar.getClientCertificates());
+
+        assertFalse(first.keys.isEmpty());
+        for (ByteBuffer serial : first.keys.keySet()) {
+            assertSame(first.keys.get(serial).getECDSAVerifier(), second.keys.get(serial).getECDSAVerifier());
         }
-        catch (LogMessageImplementation.LogMessageParsingException| LogMessageVerificationException e){
-            //expected
-            return;
-        }
-        fail();
     }
 
 //    @Test
@@ -1,13 +1,11 @@
 package de.konfidas.ttc.messages;
 
-import de.konfidas.ttc.setup.Utilities;
 import de.konfidas.ttc.utilities.oid;
 import org.bouncycastle.asn1.*;
 
 import java.io.IOException;
 import java.math.BigInteger;
 
-import static de.konfidas.ttc.setup.Utilities.getEncodedValue;
 
 
 public abstract class TransactionLogMessageBuilder extends LogMessageBuilder{
@@ -169,7 +167,7 @@ public abstract class TransactionLogMessageBuilder extends LogMessageBuilder{
 
             certifiedDataType = oid.id_SE_API_transaction_log;
             certifiedDataTypeAsASN1 = new ASN1ObjectIdentifier(certifiedDataType.getReadable());
-            certifiedDataTypeEndcoded = getEncodedValue(certifiedDataTypeAsASN1);
+            certifiedDataTypeEndcoded = certifiedDataTypeAsASN1.getEncoded();
 
 
             if (operationType != null) {operationTypeAsASN1 = new DLTaggedObject(false,0,new DERPrintableString(operationType));
@@ -195,7 +193,7 @@ public abstract class TransactionLogMessageBuilder extends LogMessageBuilder{
 
 
         }
-        catch (IOException| Utilities.ExtendLengthValueExceedsInteger e) {
+        catch (IOException e) {
             throw new TestLogMessageCreationError("Fehler in der prepare Methode des TransactionLogMessageBuilders",e);
         }
         return this;
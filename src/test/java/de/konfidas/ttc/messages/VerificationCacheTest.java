@@ -0,0 +1,166 @@
+package de.konfidas.ttc.messages;
+
+import de.konfidas.ttc.exceptions.LogMessageVerificationException;
+import de.konfidas.ttc.tars.LogMessageArchiveImplementation;
+import de.konfidas.ttc.utilities.IntegrityKey;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VerificationCacheTest {
+    final static IntegrityKey KEY = new IntegrityKey(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16,
+            17, 18, 19, 20, 21, 22, 23, 24, 25, 26, 27, 28, 29, 30, 31, 32});
+
+    /**
+     * @return die Länge der Datei mit so vielen Einträgen in so vielen Blöcken.
+     */
+    static long length(int records, int blocks) {
+        return VerificationCache.HEADER_LENGTH + (long) blocks * VerificationCache.BLOCK_OVERHEAD + (long) records * VerificationCache.RECORD_LENGTH;
+    }
+
+    static LogMessageArchiveImplementation loadTar() throws Exception {
+        return new LogMessageArchiveImplementation(new File("testdata" + File.separator + "positive" + File.separator + "can_validate" + File.separator + "6e6c6a42-5c8d-4a9c-9572-26c10619d020.tar"));
+    }
+
+    /**
+     * Liefert die LogMessage mit einem falschen Hashwert des DTBS, eine tatsächliche Prüfung muss also fehlschlagen.
+     */
+    static LogMessage withWrongDigest(LogMessage message) {
+        byte[] digest = message.getDTBSDigest();
+        digest[0] ^= 0x01;
+        LogMessage spy = Mockito.spy(message);
+        Mockito.doReturn(digest).when(spy).getDTBSDigest();
+        return spy;
+    }
+
+    @Test
+    public void cachedMessagesShouldNotBeVerifiedAgain(@TempDir Path tmp) throws Exception {
+        File file = tmp.resolve("verification.cache").toFile();
+        LogMessageArchiveImplementation tar = loadTar();
+
+        try (VerificationCache cache = VerificationCache.open(file, KEY, false)) {
+            LogMessageSignatureVerifier verifier = new LogMessageSignatureVerifier(tar.getClientCertificates(), cache);
+            for (LogMessage message : tar.getLogMessages()) {
+                verifier.verify(message);
+            }
+            assertEquals(tar.getLogMessages().size(), cache.size());
+        }
+        assertEquals(length(tar.getLogMessages().size(), 1), file.length());
+
+        LogMessage message = withWrongDigest(tar.getLogMessages().iterator().next());
+        try (VerificationCache cache = VerificationCache.open(file, KEY, false)) {
+            assertEquals(tar.getLogMessages().size(), cache.size());
+            new LogMessageSignatureVerifier(tar.getClientCertificates(), cache).verify(message);
+        }
+
+        try (VerificationCache cache = VerificationCache.open(file, KEY, true)) {
+            LogMessageSignatureVerifier verifier = new LogMessageSignatureVerifier(tar.getClientCertificates(), cache);
+            assertThrows(LogMessageVerificationException.class, () -> verifier.verify(message));
+        }
+        assertEquals(length(tar.getLogMessages().size(), 1), file.length());
+    }
+
+    @Test
+    public void failedVerificationsShouldNotBeCached(@TempDir Path tmp) throws Exception {
+        File file = tmp.resolve("verification.cache").toFile();
+        LogMessageArchiveImplementation tar = loadTar();
+        LogMessage message = withWrongDigest(tar.getLogMessages().iterator().next());
+
+        try (VerificationCache cache = VerificationCache.open(file, KEY, false)) {
+            LogMessageSignatureVerifier verifier = new LogMessageSignatureVerifier(tar.getClientCertificates(), cache);
+            assertThrows(LogMessageVerificationException.class, () -> verifier.verify(message));
+            assertEquals(0, cache.size());
+        }
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void incompleteRecordShouldBeOverwritten(@TempDir Path tmp) throws Exception {
+        File file = tmp.resolve("verification.cache").toFile();
+        LogMessageArchiveImplementation tar = loadTar();
+        LogMessage first = tar.getLogMessages().iterator().next();
+
+        try (VerificationCache cache = VerificationCache.open(file, KEY, false)) {
+            new LogMessageSignatureVerifier(tar.getClientCertificates(), cache).verify(first);
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(file.length() + 10);
+        }
+
+        try (VerificationCache cache = VerificationCache.open(file, KEY, false)) {
+            assertEquals(1, cache.size());
+            LogMessageSignatureVerifier verifier = new LogMessageSignatureVerifier(tar.getClientCertificates(), cache);
+            for (LogMessage message : tar.getLogMessages()) {
+                verifier.verify(message);
+            }
+        }
+        assertEquals(length(tar.getLogMessages().size(), 2), file.length());
+        try (VerificationCache cache = VerificationCache.open(file, KEY, false)) {
+            assertEquals(tar.getLogMessages().size(), cache.size());
+        }
+    }
+
+    @Test
+    public void unreadableFileShouldBeReplaced(@TempDir Path tmp) throws Exception {
+        File file = tmp.resolve("verification.cache").toFile();
+        Files.write(file.toPath(), new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9});
+        LogMessageArchiveImplementation tar = loadTar();
+
+        try (VerificationCache cache = VerificationCache.open(file, KEY, false)) {
+            assertEquals(0, cache.size());
+            new LogMessageSignatureVerifier(tar.getClientCertificates(), cache).verify(tar.getLogMessages().iterator().next());
+        }
+        assertEquals(length(1, 1), file.length());
+        try (VerificationCache cache = VerificationCache.open(file, KEY, false)) {
+            assertEquals(1, cache.size());
+        }
+    }
+
+    @Test
+    public void forgedEntriesShouldBeRejected(@TempDir Path tmp) throws Exception {
+        File file = tmp.resolve("verification.cache").toFile();
+        LogMessageArchiveImplementation tar = loadTar();
+        LogMessage first = tar.getLogMessages().iterator().next();
+        LogMessage forged = withWrongDigest(first);
+
+        // Ein Eintrag für die LogMessage, der ohne den Schlüssel geschrieben wurde. Da die Signatur nicht geprüft
+        // wird, belegt er auch die LogMessage mit dem falschen Hashwert.
+        LogMessageSignatureVerifier plain = new LogMessageSignatureVerifier(tar.getClientCertificates());
+        ByteBuffer record = VerificationCache.key(first.getEncoded(), plain.keys.get(first.getSerialNumberBuffer()).getFingerprint());
+        ByteBuffer content = ByteBuffer.allocate((int) length(1, 1));
+        content.putInt(VerificationCache.MAGIC).putInt(VerificationCache.VERSION).putInt(1).put(record);
+        Files.write(file.toPath(), content.array());
+
+        try (VerificationCache cache = VerificationCache.open(file, KEY, false)) {
+            assertEquals(0, cache.size());
+            LogMessageSignatureVerifier verifier = new LogMessageSignatureVerifier(tar.getClientCertificates(), cache);
+            assertThrows(LogMessageVerificationException.class, () -> verifier.verify(forged));
+            verifier.verify(first);
+        }
+        try (VerificationCache cache = VerificationCache.open(file, KEY, false)) {
+            assertEquals(1, cache.size());
+        }
+
+        byte[] modified = Files.readAllBytes(file.toPath());
+        modified[VerificationCache.HEADER_LENGTH + Integer.BYTES] ^= 0x01;
+        Files.write(file.toPath(), modified);
+        try (VerificationCache cache = VerificationCache.open(file, KEY, false)) {
+            assertEquals(0, cache.size());
+        }
+
+        try (VerificationCache cache = VerificationCache.open(file, KEY, false)) {
+            new LogMessageSignatureVerifier(tar.getClientCertificates(), cache).verify(first);
+        }
+        try (VerificationCache cache = VerificationCache.open(file, new IntegrityKey(new byte[IntegrityKey.KEY_LENGTH]), false)) {
+            assertEquals(0, cache.size());
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package de.konfidas.ttc.tars;
+
+import de.konfidas.ttc.messages.LogMessage;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class ExternalLogMessageSorterTest {
+    final static File correctLogs = new File("testdata" + File.separator + "positive" + File.separator + "can_parse");
+
+    @TempDir
+    File tempDirectory;
+
+    @BeforeEach
+    public void initialize() {
+        Security.addProvider(new BouncyCastleProvider());
+    }
+
+    static Stream<File> filesToTest() {
+        return Stream.of(Objects.requireNonNull(correctLogs.listFiles((dir, name) -> name.toLowerCase().endsWith(".tar"))));//NON-NLS
+    }
+
+    @ParameterizedTest
+    @MethodSource("filesToTest")
+    public void mergedRunsShouldEqualSortedMessages(File tarFile) throws Exception {
+        LogMessageArchiveImplementation parsed = new LogMessageArchiveImplementation(tarFile);
+        ArrayList<LogMessage> expected = LogMessageSorter.sort(parsed.getLogMessages());
+
+        // Ein Datensatz je Lauf erzwingt bei größeren Archiven mehrere Durchgänge beim Mischen.
+        for (int recordsPerRun : new int[]{1, 7, ExternalLogMessageSorter.MIN_RECORDS_PER_RUN}) {
+            StreamingLogMessageArchive streamed = new StreamingLogMessageArchive(tarFile, 5);
+            try (ExternalLogMessageSorter sorter = new ExternalLogMessageSorter(streamed.reader, streamed.logMessageEntries, null, 5, recordsPerRun, tempDirectory)) {
+                sorter.createRuns(null);
+                assertTrue(sorter.runs.size() <= ExternalLogMessageSorter.MAX_FAN_IN);
+                assertEquals(expected.size(), sorter.size());
+
+                ArrayList<LogMessage> merged = new ArrayList<>();
+                sorter.forEach(merged::add);
+                assertEquals(expected, merged);
+            }
+            assertArrayEquals(new String[0], tempDirectory.list());
+        }
+    }
+
+    @Test
+    public void streamingArchiveShouldSortExternally() throws Exception {
+        File tarFile = new File(correctLogs, "6f4217a1-f8d2-4613-a5d6-171c62560ebe.tar");
+        LogMessageArchiveImplementation parsed = new LogMessageArchiveImplementation(tarFile);
+
+        StreamingLogMessageArchive streamed = new StreamingLogMessageArchive(tarFile, 16, 2).setExternalSort(1, tempDirectory);
+        assertTrue(streamed.isExternalSort());
+
+        ArrayList<LogMessage> first = new ArrayList<>(streamed.getSortedLogMessages());
+        ArrayList<LogMessage> second = new ArrayList<>(streamed.getSortedLogMessages());
+
+        assertEquals(parsed.getSortedLogMessages(), first);
+        assertEquals(first, second);
+        assertEquals(parsed.getLogMessages().size(), streamed.getSortedLogMessages().size());
+
+        assertNotEquals(0, tempDirectory.list().length);
+        streamed.close();
+        assertArrayEquals(new String[0], tempDirectory.list());
+
+        assertEquals(first, new ArrayList<>(streamed.getSortedLogMessages()));
+        streamed.close();
+        assertArrayEquals(new String[0], tempDirectory.list());
+    }
+
+    @Test
+    public void abandonedIterationShouldBeClosedWithTheArchive() throws Exception {
+        File tarFile = new File(correctLogs, "6f4217a1-f8d2-4613-a5d6-171c62560ebe.tar");
+        StreamingLogMessageArchive streamed = new StreamingLogMessageArchive(tarFile, 16, 2).setExternalSort(1, tempDirectory);
+
+        Iterator<LogMessage> iterator = streamed.getSortedLogMessages().iterator();
+        iterator.next();
+        ExternalLogMessageSorter sorter = streamed.externalSorter;
+        ExternalLogMessageSorter.MergeIterator merging = (ExternalLogMessageSorter.MergeIterator) iterator;
+        assertEquals(1, sorter.openIterators.size());
+        assertFalse(merging.merger.readers.isEmpty());
+
+        streamed.close();
+        assertTrue(sorter.openIterators.isEmpty());
+        assertFalse(iterator.hasNext());
+        for (ExternalLogMessageSorter.RunReader reader : merging.merger.readers) {
+            assertThrows(IOException.class, () -> reader.in.read());
+        }
+        assertArrayEquals(new String[0], tempDirectory.list());
+    }
+
+    @Test
+    public void invalidMemoryBudgetShouldBeRejected() throws Exception {
+        StreamingLogMessageArchive streamed = new StreamingLogMessageArchive(new File(correctLogs, "6e6c6a42-5c8d-4a9c-9572-26c10619d020.tar"));
+        assertThrows(IllegalArgumentException.class, () -> streamed.setExternalSort(0, tempDirectory));
+        assertFalse(streamed.isExternalSort());
+    }
+}
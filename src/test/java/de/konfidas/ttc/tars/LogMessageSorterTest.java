@@ -0,0 +1,194 @@
+package de.konfidas.ttc.tars;
+
+import de.konfidas.ttc.errors.TtcError;
+import de.konfidas.ttc.messages.LogMessage;
+import de.konfidas.ttc.messages.logtime.LogTime;
+import de.konfidas.ttc.utilities.oid;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class LogMessageSorterTest {
+
+    static class LogMessageMock implements LogMessage {
+        final BigInteger signatureCounter;
+        final byte[] serial;
+
+        LogMessageMock(BigInteger signatureCounter, byte[] serial) {
+            this.signatureCounter = signatureCounter;
+            this.serial = serial;
+        }
+
+        LogMessageMock(long signatureCounter, int serial) {
+            this(BigInteger.valueOf(signatureCounter), new byte[]{(byte) serial});
+        }
+
+        @Override
+        public ArrayList<TtcError> getAllErrors() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public LogTime getLogTime() {
+            return null;
+        }
+
+        @Override
+        public BigInteger getSignatureCounter() {
+            return signatureCounter;
+        }
+
+        @Override
+        public byte[] getSerialNumber() {
+            return serial;
+        }
+
+        @Override
+        public String getFileName() {
+            return null;
+        }
+
+        @Override
+        public String getSignatureAlgorithm() {
+            return null;
+        }
+
+        @Override
+        public byte[] getDTBS() {
+            return new byte[0];
+        }
+
+        @Override
+        public byte[] getSignatureValue() {
+            return new byte[0];
+        }
+
+        @Override
+        public int getVersion() {
+            return 0;
+        }
+
+        @Override
+        public oid getCertifiedDataType() {
+            return null;
+        }
+
+        @Override
+        public Collection<ASN1Primitive> getSignatureAlgorithmParameters() {
+            return null;
+        }
+
+        @Override
+        public byte[] getSeAuditData() {
+            return new byte[0];
+        }
+
+        @Override
+        public byte[] getEncoded() {
+            return new byte[0];
+        }
+    }
+
+    /**
+     * Die erwartete Reihenfolge: Signaturzähler, Seriennummer, Position in der Eingabe.
+     */
+    static List<LogMessage> reference(List<LogMessage> messages) {
+        ArrayList<LogMessage> result = new ArrayList<>(messages);
+        result.sort(Comparator.comparing(LogMessage::getSignatureCounter)
+                .thenComparing(LogMessage::getSerialNumber, Arrays::compareUnsigned));
+        return result;
+    }
+
+    static void assertSameOrder(List<LogMessage> expected, List<LogMessage> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertSame(expected.get(i), actual.get(i), "Position " + i);
+        }
+    }
+
+    @Test
+    public void emptyAndSingleMessageShouldBeSorted() {
+        assertTrue(LogMessageSorter.sort(Collections.emptyList()).isEmpty());
+        LogMessage msg = new LogMessageMock(1, 1);
+        assertSameOrder(Collections.singletonList(msg), LogMessageSorter.sort(Collections.singletonList(msg)));
+    }
+
+    @Test
+    public void sortedInputShouldBeKept() {
+        ArrayList<LogMessage> messages = new ArrayList<>();
+        for (int i = 1; i <= 1000; i++) {
+            messages.add(new LogMessageMock(i, 1));
+        }
+        assertSameOrder(messages, LogMessageSorter.sort(messages));
+    }
+
+    @Test
+    public void nearlySortedInputShouldBeSorted() {
+        Random random = new Random(42);
+        ArrayList<LogMessage> messages = new ArrayList<>();
+        for (int i = 1; i <= 5000; i++) {
+            messages.add(new LogMessageMock(i, 1 + random.nextInt(3)));
+        }
+        for (int i = 0; i < 20; i++) {
+            Collections.swap(messages, random.nextInt(messages.size()), random.nextInt(messages.size()));
+        }
+        assertSameOrder(reference(messages), LogMessageSorter.sort(messages));
+    }
+
+    @Test
+    public void randomInputWithDuplicatesShouldBeSorted() {
+        Random random = new Random(7);
+        ArrayList<LogMessage> messages = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            messages.add(new LogMessageMock(random.nextInt(500), random.nextInt(4) - 2));
+        }
+        assertSameOrder(reference(messages), LogMessageSorter.sort(messages));
+    }
+
+    @Test
+    public void largeCountersShouldFallBackToBigInteger() {
+        BigInteger large = BigInteger.ONE.shiftLeft(70);
+        ArrayList<LogMessage> messages = new ArrayList<>();
+        messages.add(new LogMessageMock(large.add(BigInteger.TWO), new byte[]{1}));
+        messages.add(new LogMessageMock(BigInteger.valueOf(Long.MAX_VALUE), new byte[]{1}));
+        messages.add(new LogMessageMock(large, new byte[]{2}));
+        messages.add(new LogMessageMock(large, new byte[]{1}));
+        messages.add(new LogMessageMock(BigInteger.ONE, new byte[]{1}));
+        assertSameOrder(reference(messages), LogMessageSorter.sort(messages));
+    }
+
+    @Test
+    public void keysShouldBeMergedFromRuns() {
+        long[] keys = {5, 6, 7, 1, 2, 3, 9, 4, 8, 10};
+        LogMessageSorter.sortKeys(keys);
+        assertArrayEquals(new long[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10}, keys);
+        assertEquals(3, LogMessageSorter.findRuns(new long[]{5, 6, 7, 1, 2, 3, 9, 4, 8, 10}).length - 1);
+    }
+
+    @Test
+    public void nearlySortedKeysShouldBeMergedInPlace() {
+        Random random = new Random(7);
+        for (int swaps : new int[]{1, 5, 30, 200}) {
+            long[] keys = new long[10000];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = 3L * i;
+            }
+            for (int s = 0; s < swaps; s++) {
+                int i = random.nextInt(keys.length);
+                int j = Math.min(keys.length - 1, i + 1 + random.nextInt(keys.length / 10));
+                long tmp = keys[i];
+                keys[i] = keys[j];
+                keys[j] = tmp;
+            }
+            long[] expected = keys.clone();
+            Arrays.sort(expected);
+            LogMessageSorter.sortKeys(keys);
+            assertArrayEquals(expected, keys);
+        }
+    }
+}
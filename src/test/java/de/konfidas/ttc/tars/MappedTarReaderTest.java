@@ -0,0 +1,101 @@
+package de.konfidas.ttc.tars;
+
+import de.konfidas.ttc.exceptions.BadFormatForTARException;
+import de.konfidas.ttc.messages.LogMessage;
+import de.konfidas.ttc.messages.LogMessageFileName;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.io.IOUtils;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.Security;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class MappedTarReaderTest {
+    final static File correctLogs = new File("testdata" + File.separator + "positive" + File.separator + "can_parse");
+
+    @BeforeEach
+    public void initialize() {
+        Security.addProvider(new BouncyCastleProvider());
+    }
+
+    @ParameterizedTest
+    @MethodSource("filesToTest")
+    public void indexShouldMatchTarArchiveInputStream(File tarFile) throws Exception {
+        // Ein kleines Segment erzwingt Einträge, die über Segmentgrenzen reichen.
+        for (long segmentSize : new long[]{MappedTarReader.DEFAULT_SEGMENT_SIZE, 4096}) {
+            MappedTarReader reader = new MappedTarReader(tarFile, segmentSize);
+            List<MappedTarReader.Entry> entries = reader.getEntries();
+
+            int i = 0;
+            try (TarArchiveInputStream tar = new TarArchiveInputStream(new FileInputStream(tarFile))) {
+                TarArchiveEntry expected;
+                while ((expected = tar.getNextTarEntry()) != null) {
+                    if (!expected.isFile()) {
+                        continue;
+                    }
+                    MappedTarReader.Entry entry = entries.get(i++);
+                    assertEquals(expected.getName(), entry.getName());
+                    assertEquals(expected.getSize(), entry.getLength());
+
+                    ByteBuffer content = reader.getContent(entry);
+                    assertTrue(content.isReadOnly());
+                    byte[] actual = new byte[content.remaining()];
+                    content.get(actual);
+                    assertArrayEquals(IOUtils.toByteArray(tar), actual);
+
+                    // Der beim Lesen zerlegte Dateiname wird für die LogMessage übernommen und nicht erneut zerlegt.
+                    LogMessageFileName parsedFileName = LogMessageFileName.parse(expected.getName());
+                    assertEquals(parsedFileName == null, entry.getLogMessageFileName() == null);
+                    if (parsedFileName != null) {
+                        assertSame(entry.getLogMessageFileName(), reader.readLogMessage(entry).getParsedFileName());
+                    }
+                }
+            }
+            assertEquals(i, entries.size());
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("filesToTest")
+    public void logMessagesShouldBeFoundBySignatureCounter(File tarFile) throws Exception {
+        LogMessageArchiveImplementation parsed = new LogMessageArchiveImplementation(tarFile);
+        StreamingLogMessageArchive streamed = new StreamingLogMessageArchive(tarFile);
+
+        for (LogMessage message : parsed.getLogMessages()) {
+            assertTrue(streamed.getLogMessages(message.getSignatureCounter()).contains(message));
+        }
+    }
+
+    @Test
+    public void corruptedHeaderShouldBeRejected(@TempDir Path tempDir) throws Exception {
+        File tarFile = new File(correctLogs, "6e6c6a42-5c8d-4a9c-9572-26c10619d020.tar");
+        byte[] content = Files.readAllBytes(tarFile.toPath());
+        content[0] ^= 0x01;
+        Path corrupted = tempDir.resolve("corrupted.tar");
+        Files.write(corrupted, content);
+
+        assertThrows(BadFormatForTARException.class, () -> new MappedTarReader(corrupted.toFile()));
+    }
+
+    static Stream<File> filesToTest() {
+        if (!correctLogs.isDirectory()) {
+            fail(correctLogs.getAbsolutePath() + " is not a directory.");
+        }
+        return Stream.of(correctLogs.listFiles());
+    }
+}
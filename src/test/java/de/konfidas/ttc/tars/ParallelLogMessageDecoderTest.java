@@ -0,0 +1,74 @@
+package de.konfidas.ttc.tars;
+
+import de.konfidas.ttc.exceptions.BadFormatForLogMessageException;
+import de.konfidas.ttc.messages.LogMessage;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.File;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class ParallelLogMessageDecoderTest {
+    final static File correctLogs = new File("testdata" + File.separator + "positive" + File.separator + "can_parse");
+
+    @BeforeEach
+    public void initialize() {
+        Security.addProvider(new BouncyCastleProvider());
+    }
+
+    @ParameterizedTest
+    @MethodSource("filesToTest")
+    public void parallelDecodingShouldKeepArchiveOrder(File tarFile) throws Exception {
+        LogMessageArchiveImplementation sequential = new LogMessageArchiveImplementation(tarFile);
+        LogMessageArchiveImplementation parallel = new LogMessageArchiveImplementation(tarFile, 4);
+
+        assertEquals(sequential.getLogMessages(), parallel.getLogMessages());
+        assertEquals(sequential.getAllErrors().size(), parallel.getAllErrors().size());
+
+        for (int window : new int[]{1, 7, StreamingLogMessageArchive.DEFAULT_WINDOW}) {
+            StreamingLogMessageArchive streamed = new StreamingLogMessageArchive(tarFile, window, 4);
+
+            ArrayList<LogMessage> messages = new ArrayList<>();
+            streamed.forEach(messages::add);
+
+            assertEquals(sequential.getLogMessages(), messages);
+        }
+    }
+
+    @Test
+    public void decodingErrorsShouldBeReportedInOrder() throws Exception {
+        try (ParallelLogMessageDecoder decoder = new ParallelLogMessageDecoder(3)) {
+            decoder.submit("first unknown entry", new byte[0]);//NON-NLS
+            decoder.submit("second unknown entry", new byte[0]);//NON-NLS
+
+            assertEquals(2, decoder.pending());
+            BadFormatForLogMessageException first = assertThrows(BadFormatForLogMessageException.class, decoder::take);
+            assertTrue(first.getMessage().contains("first unknown entry"));//NON-NLS
+            BadFormatForLogMessageException second = assertThrows(BadFormatForLogMessageException.class, decoder::take);
+            assertTrue(second.getMessage().contains("second unknown entry"));//NON-NLS
+            assertEquals(0, decoder.pending());
+        }
+    }
+
+    @Test
+    public void invalidNumberOfThreadsShouldBeRejected() {
+        File tarFile = new File(correctLogs, "6e6c6a42-5c8d-4a9c-9572-26c10619d020.tar");
+        assertThrows(IllegalArgumentException.class, () -> new LogMessageArchiveImplementation(tarFile, 0));
+        assertThrows(IllegalArgumentException.class, () -> new StreamingLogMessageArchive(tarFile, 1, 0));
+    }
+
+    static Stream<File> filesToTest() {
+        if (!correctLogs.isDirectory()) {
+            fail(correctLogs.getAbsolutePath() + " is not a directory.");
+        }
+        return Stream.of(correctLogs.listFiles());
+    }
+}
@@ -0,0 +1,134 @@
+package de.konfidas.ttc.tars;
+
+import de.konfidas.ttc.messages.LogMessage;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.File;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class StreamingLogMessageArchiveTest {
+    final static File correctLogs = new File("testdata" + File.separator + "positive" + File.separator + "can_parse");
+
+    @BeforeEach
+    public void initialize() {
+        Security.addProvider(new BouncyCastleProvider());
+    }
+
+    @ParameterizedTest
+    @MethodSource("filesToTest")
+    public void streamedMessagesShouldEqualParsedMessages(File tarFile) throws Exception {
+        LogMessageArchiveImplementation parsed = new LogMessageArchiveImplementation(tarFile);
+
+        for (int window : new int[]{1, 7, StreamingLogMessageArchive.DEFAULT_WINDOW}) {
+            StreamingLogMessageArchive streamed = new StreamingLogMessageArchive(tarFile, window);
+
+            ArrayList<LogMessage> messages = new ArrayList<>();
+            streamed.forEach(messages::add);
+
+            assertEquals(parsed.getLogMessages(), messages);
+            assertEquals(parsed.getLogMessages().size(), streamed.getLogMessages().size());
+            assertEquals(parsed.getClientCertificates().keySet(), streamed.getClientCertificates().keySet());
+            assertEquals(parsed.getIntermediateCertificates().keySet(), streamed.getIntermediateCertificates().keySet());
+            assertEquals(parsed.getSortedLogMessages(), streamed.getSortedLogMessages());
+        }
+    }
+
+    @Test
+    public void streamCanBeConsumedTwice() throws Exception {
+        File tarFile = new File(correctLogs, "6e6c6a42-5c8d-4a9c-9572-26c10619d020.tar");
+        StreamingLogMessageArchive streamed = new StreamingLogMessageArchive(tarFile, 3);
+
+        ArrayList<LogMessage> first;
+        try (Stream<LogMessage> s = streamed.stream()) {
+            first = s.collect(Collectors.toCollection(ArrayList::new));
+        }
+        ArrayList<LogMessage> second = new ArrayList<>(streamed.getLogMessages());
+
+        assertFalse(first.isEmpty());
+        assertEquals(first, second);
+    }
+
+    @Test
+    public void sizeShouldCountOnlyDecodableMessages() throws Exception {
+        File tarFile = new File("testdata" + File.separator + "positive" + File.separator + "softwareUpdate.tar");
+        StreamingLogMessageArchive streamed = new StreamingLogMessageArchive(tarFile, 3);
+        ArrayList<LogMessage> messages = new ArrayList<>();
+        streamed.forEach(messages::add);
+
+        assertTrue(messages.size() < streamed.numberOfLogMessageEntries);
+        assertEquals(messages.size(), streamed.getLogMessages().size());
+        assertEquals(messages.size(), new StreamingLogMessageArchive(tarFile).getLogMessages().size());
+        assertEquals(messages.size(), streamed.stream().count());
+        assertEquals(messages.subList(5, messages.size()).size(), streamed.getLogMessagesAfter(messages.get(4).getFileName()).size());
+    }
+
+    @Test
+    public void decodingErrorsShouldBeCollectedByTheFirstCompletePass() throws Exception {
+        File tarFile = new File("testdata" + File.separator + "positive" + File.separator + "softwareUpdate.tar");
+        StreamingLogMessageArchive complete = new StreamingLogMessageArchive(tarFile, 3);
+        complete.forEach(msg -> { });
+        int expected = complete.getAllErrors().size();
+        assertTrue(expected > 0);
+
+        StreamingLogMessageArchive streamed = new StreamingLogMessageArchive(tarFile, 3);
+        int before = streamed.getAllErrors().size();
+        // Der erste Durchlauf wird nach dem ersten Fehler abgebrochen
+        StreamingLogMessageArchive.LogMessageIterator abandoned = (StreamingLogMessageArchive.LogMessageIterator) streamed.iterator();
+        while (abandoned.errors.isEmpty() && abandoned.hasNext()) {
+            abandoned.next();
+        }
+        assertFalse(abandoned.errors.isEmpty());
+        abandoned.close();
+        assertFalse(streamed.decodingErrorsCollected.get());
+        assertEquals(before, streamed.getAllErrors().size());
+
+        streamed.forEach(msg -> { });
+        assertTrue(streamed.decodingErrorsCollected.get());
+        assertEquals(expected, streamed.getAllErrors().size());
+        streamed.forEach(msg -> { });
+        assertEquals(expected, streamed.getAllErrors().size());
+    }
+
+    @Test
+    public void abandonedPassesShouldShareOnePool() throws Exception {
+        File tarFile = new File(correctLogs, "6e6c6a42-5c8d-4a9c-9572-26c10619d020.tar");
+        StreamingLogMessageArchive streamed = new StreamingLogMessageArchive(tarFile, 3, 2);
+
+        streamed.iterator().next();
+        ExecutorService pool = streamed.decoderPool;
+        assertNotNull(pool);
+        for (int i = 0; i < 5; i++) {
+            streamed.iterator().next();
+        }
+        assertSame(pool, streamed.decoderPool);
+
+        streamed.close();
+        assertTrue(pool.isShutdown());
+        assertFalse(new ArrayList<>(streamed.getLogMessages()).isEmpty());
+        streamed.close();
+    }
+
+    @Test
+    public void invalidWindowShouldBeRejected() {
+        File tarFile = new File(correctLogs, "6e6c6a42-5c8d-4a9c-9572-26c10619d020.tar");
+        assertThrows(IllegalArgumentException.class, () -> new StreamingLogMessageArchive(tarFile, 0));
+    }
+
+    static Stream<File> filesToTest() {
+        if (!correctLogs.isDirectory()) {
+            fail(correctLogs.getAbsolutePath() + " is not a directory.");
+        }
+        return Stream.of(correctLogs.listFiles());
+    }
+}
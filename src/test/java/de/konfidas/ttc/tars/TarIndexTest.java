@@ -0,0 +1,114 @@
+package de.konfidas.ttc.tars;
+
+import de.konfidas.ttc.messages.LogMessage;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.Security;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class TarIndexTest {
+    final static File tarFile = new File("testdata" + File.separator + "positive" + File.separator + "can_parse" + File.separator + "6e6c6a42-5c8d-4a9c-9572-26c10619d020.tar");
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    public void initialize() {
+        Security.addProvider(new BouncyCastleProvider());
+    }
+
+    File copyOfArchive() throws Exception {
+        Path copy = tempDir.resolve(tarFile.getName());
+        Files.copy(tarFile.toPath(), copy);
+        return copy.toFile();
+    }
+
+    @Test
+    public void indexShouldBeWrittenAndReused() throws Exception {
+        File archive = copyOfArchive();
+        LogMessageArchiveImplementation plain = new LogMessageArchiveImplementation(archive);
+
+        LogMessageArchiveImplementation first = new LogMessageArchiveImplementation(archive, 1, true);
+        assertTrue(TarIndex.indexFileFor(archive).isFile());
+        assertEquals(plain.getLogMessages(), first.getLogMessages());
+
+        TarIndex loaded = TarIndex.load(archive);
+        assertNotNull(loaded);
+
+        LogMessageArchiveImplementation second = new LogMessageArchiveImplementation(archive, 2, true);
+        assertEquals(plain.getLogMessages(), second.getLogMessages());
+        assertEquals(plain.getClientCertificates().keySet(), second.getClientCertificates().keySet());
+        assertEquals(plain.getIntermediateCertificates().keySet(), second.getIntermediateCertificates().keySet());
+
+        List<TarIndex.Entry> logEntries = loaded.getEntries().stream().filter(TarIndex.Entry::isLogMessage).collect(Collectors.toList());
+        assertEquals(plain.getLogMessages().size(), logEntries.size());
+        for (int i = 0; i < logEntries.size(); i++) {
+            LogMessage message = plain.getLogMessages().get(i);
+            TarIndex.Entry entry = logEntries.get(i);
+            assertEquals(message.getFileName(), entry.getName());
+            assertArrayEquals(message.getSerialNumber(), entry.getSerialNumber());
+            assertEquals(message.getSignatureCounter(), entry.getSignatureCounter());
+            assertEquals(message.getLogTime().getTime(), entry.getLogTime());
+            assertEquals(message.getCertifiedDataType().name(), entry.getMessageType());
+        }
+    }
+
+    @Test
+    public void lookupsShouldOnlyDecodeMatchingEntries() throws Exception {
+        File archive = copyOfArchive();
+        LogMessageArchiveImplementation plain = new LogMessageArchiveImplementation(archive, 1, true);
+        LogMessage last = plain.getLogMessages().get(plain.getLogMessages().size() - 1);
+
+        LogMessageArchiveImplementation indexed = new LogMessageArchiveImplementation(archive, 1, true);
+        assertNotNull(indexed.undecodedEntries);
+        assertTrue(indexed.all_log_messages.isEmpty());
+
+        assertEquals(Collections.singletonList(last), indexed.getLogMessages(last.getSignatureCounter()));
+        assertEquals(last, indexed.getLogMessage(last.getFileName()));
+        assertNull(indexed.getLogMessage("unknown.log"));//NON-NLS
+        assertNotNull(indexed.getTransactionIndex());
+        assertTrue(indexed.all_log_messages.isEmpty());
+
+        assertEquals(plain.getLogMessages(), indexed.getLogMessages());
+        assertNull(indexed.undecodedEntries);
+        assertEquals(last, indexed.getLogMessage(last.getFileName()));
+    }
+
+    @Test
+    public void modifiedArchiveShouldInvalidateIndex() throws Exception {
+        File archive = copyOfArchive();
+        new LogMessageArchiveImplementation(archive, 1, true);
+        assertNotNull(TarIndex.load(archive));
+
+        assertTrue(archive.setLastModified(archive.lastModified() - 10_000));
+        assertNull(TarIndex.load(archive));
+    }
+
+    @Test
+    public void tamperedIndexShouldBeIgnored() throws Exception {
+        File archive = copyOfArchive();
+        LogMessageArchiveImplementation plain = new LogMessageArchiveImplementation(archive, 1, true);
+
+        // eine LogMessage als gewöhnliche Datei ausgeben, ohne den Fingerprint des Archivs zu ändern
+        List<TarIndex.Entry> entries = TarIndex.load(archive).getEntries().stream()
+                .map(e -> e.isLogMessage() && e.getName().equals(plain.getLogMessages().get(0).getFileName()) ? TarIndex.Entry.forFile(e.getName(), e.getOffset(), e.getLength()) : e)
+                .collect(Collectors.toList());
+        TarIndex.create(archive, entries).write(archive);
+        assertNotNull(TarIndex.load(archive));
+
+        LogMessageArchiveImplementation indexed = new LogMessageArchiveImplementation(archive, 1, true);
+        assertEquals(plain.getLogMessages(), indexed.getLogMessages());
+        assertEquals(plain.getLogMessages().size(), TarIndex.load(archive).getEntries().stream().filter(TarIndex.Entry::isLogMessage).count());
+    }
+}
@@ -0,0 +1,135 @@
+package de.konfidas.ttc.tars;
+
+import de.konfidas.ttc.messages.LogMessage;
+import de.konfidas.ttc.messages.TransactionLogMessage;
+import org.apache.commons.codec.binary.Hex;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.Security;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+
+public class TransactionIndexTest {
+    final static File tarFile = new File("testdata" + File.separator + "positive" + File.separator + "can_parse" + File.separator + "6e6c6a42-5c8d-4a9c-9572-26c10619d020.tar");
+    final static File multiExport = new File("testdata" + File.separator + "positive" + File.separator + "multiExport.tar");
+
+    @TempDir
+    Path tempDir;
+
+    @BeforeEach
+    public void initialize() {
+        Security.addProvider(new BouncyCastleProvider());
+    }
+
+    File copyOfArchive() throws Exception {
+        return copyOf(tarFile);
+    }
+
+    File copyOf(File file) throws Exception {
+        Path copy = tempDir.resolve(file.getName());
+        Files.copy(file.toPath(), copy);
+        return copy.toFile();
+    }
+
+    /**
+     * @return die TransactionLogMessages des Archivs je Seriennummer und Transaktionsnummer, wie sie eine lineare Suche
+     * findet.
+     */
+    static Map<String, List<TransactionLogMessage>> scan(LogMessageArchive archive) {
+        TreeMap<String, List<TransactionLogMessage>> result = new TreeMap<>();
+        for (LogMessage msg : archive.getLogMessages()) {
+            if (msg instanceof TransactionLogMessage && msg.getSerialNumber() != null) {
+                TransactionLogMessage transaction = (TransactionLogMessage) msg;
+                if (transaction.getTransactionNumber() == null) {
+                    continue;
+                }
+                String key = Hex.encodeHexString(msg.getSerialNumber()) + ":" + transaction.getTransactionNumber();//NON-NLS
+                result.computeIfAbsent(key, k -> new ArrayList<>()).add(transaction);
+            }
+        }
+        for (List<TransactionLogMessage> messages : result.values()) {
+            messages.sort(Comparator.comparing(LogMessage::getSignatureCounter));
+        }
+        return result;
+    }
+
+    @Test
+    public void transactionsShouldBeFoundWithoutScanningTheArchive() throws Exception {
+        File archive = copyOfArchive();
+        Map<String, List<TransactionLogMessage>> expected = scan(new LogMessageArchiveImplementation(archive));
+        assertFalse(expected.isEmpty());
+
+        LogMessageArchiveImplementation indexed = new LogMessageArchiveImplementation(archive, 2, true);
+        assertTrue(TransactionIndex.indexFileFor(archive).isFile());
+        TransactionIndex loaded = TransactionIndex.load(archive);
+        assertNotNull(loaded);
+
+        for (TransactionIndex index : Arrays.asList(indexed.getTransactionIndex(), loaded)) {
+            assertEquals(expected.values().stream().mapToInt(List::size).sum(), index.size());
+            for (List<TransactionLogMessage> messages : expected.values()) {
+                byte[] serialNumber = messages.get(0).getSerialNumber();
+                long transactionNumber = messages.get(0).getTransactionNumber().longValue();
+
+                List<TransactionIndex.Entry> entries = index.getTransaction(serialNumber, transactionNumber);
+                assertEquals(messages.stream().map(LogMessage::getFileName).collect(Collectors.toList()),
+                        entries.stream().map(TransactionIndex.Entry::getName).collect(Collectors.toList()));
+                assertEquals(messages.get(0).getOperationType(), entries.get(0).getOperationType());
+                assertEquals(messages, index.readTransaction(archive, serialNumber, transactionNumber));
+            }
+        }
+
+        byte[] serialNumber = expected.values().iterator().next().get(0).getSerialNumber();
+        assertTrue(loaded.getTransaction(serialNumber, Long.MAX_VALUE).isEmpty());
+        assertTrue(loaded.getTransaction(new byte[]{1, 2, 3}, 1).isEmpty());
+        assertTrue(loaded.readTransaction(archive, new byte[]{1, 2, 3}, 1).isEmpty());
+    }
+
+    @Test
+    public void outdatedIndexShouldBeIgnoredAndRewritten() throws Exception {
+        File archive = copyOfArchive();
+        new LogMessageArchiveImplementation(archive, 1, true);
+        assertNotNull(TransactionIndex.load(archive));
+
+        assertTrue(archive.setLastModified(archive.lastModified() - 10000));
+        assertNull(TransactionIndex.load(archive));
+
+        new LogMessageArchiveImplementation(archive, 1, true);
+        assertNotNull(TransactionIndex.load(archive));
+    }
+
+    @Test
+    public void messagesWithoutSerialNumberShouldBeSkipped() throws Exception {
+        TransactionLogMessage withoutSerial = mock(TransactionLogMessage.class);
+        when(withoutSerial.getTransactionNumber()).thenReturn(BigInteger.ONE);
+        when(withoutSerial.getSignatureCounter()).thenReturn(BigInteger.TWO);
+        when(withoutSerial.getSerialNumber()).thenReturn(null);
+        TransactionLogMessage withSerial = mock(TransactionLogMessage.class);
+        when(withSerial.getTransactionNumber()).thenReturn(BigInteger.ONE);
+        when(withSerial.getSignatureCounter()).thenReturn(BigInteger.TEN);
+        when(withSerial.getSerialNumber()).thenReturn(new byte[]{1});
+        when(withSerial.getFileName()).thenReturn("Start_Sig-10.log");//NON-NLS
+
+        TransactionIndex.Builder builder = new TransactionIndex.Builder();
+        builder.add(withoutSerial, 0, 512);
+        builder.add(withSerial, 512, 512);
+        assertEquals(Collections.singletonList("Start_Sig-10.log"), builder.names);//NON-NLS
+
+        // Etwa die Hälfte der TransactionLogMessages dieses Archivs hat keine lesbare Seriennummer.
+        File archive = copyOf(multiExport);
+        Map<String, List<TransactionLogMessage>> expected = scan(new LogMessageArchiveImplementation(archive));
+        TransactionIndex index = new LogMessageArchiveImplementation(archive, 1, true).getTransactionIndex();
+        assertEquals(expected.values().stream().mapToInt(List::size).sum(), index.size());
+    }
+}
@@ -0,0 +1,94 @@
+package de.konfidas.ttc.utilities;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class CounterIntervalSetTest {
+
+    @Test
+    public void sequentialCountersShouldShareOneRange() {
+        CounterIntervalSet<String> set = new CounterIntervalSet<>();
+        for (long i = 1; i <= 100_000; i++) {
+            assertTrue(set.add(i, "m" + i));
+        }
+        assertEquals(1, set.getRangeCount());
+        assertEquals(100_000, set.size());
+        assertEquals(1, set.first());
+        assertEquals(100_000, set.last());
+        assertEquals("m1", set.getElement(0));
+    }
+
+    @Test
+    public void duplicatesShouldBeDetected() {
+        CounterIntervalSet<String> set = new CounterIntervalSet<>();
+        assertTrue(set.add(5, "a"));
+        assertTrue(set.add(7, "b"));
+        assertFalse(set.add(5, "c"));
+        assertTrue(set.add(6, "d"));
+        assertFalse(set.add(6, "e"));
+        assertEquals(3, set.size());
+        assertEquals(1, set.getRangeCount());
+        assertEquals("a", set.getElement(0));
+    }
+
+    @Test
+    public void rangesShouldBeMergedAndExtendedDownwards() {
+        CounterIntervalSet<String> set = new CounterIntervalSet<>();
+        set.add(10, "ten");
+        set.add(1, "one");
+        set.add(5, "five");
+        assertEquals(3, set.getRangeCount());
+
+        set.add(9, "nine");
+        assertEquals(9, set.getStart(2));
+        assertEquals("nine", set.getElement(2));
+
+        set.add(2, "two");
+        set.add(4, "four");
+        set.add(3, "three");
+        assertEquals(2, set.getRangeCount());
+        assertEquals(1, set.getStart(0));
+        assertEquals(5, set.getEnd(0));
+        assertEquals("one", set.getElement(0));
+        assertTrue(set.contains(3));
+        assertFalse(set.contains(6));
+        assertFalse(set.contains(0));
+        assertFalse(set.contains(11));
+    }
+
+    @Test
+    public void shuffledCountersShouldEndInOneRange() {
+        ArrayList<Long> counters = new ArrayList<>();
+        for (long i = 0; i < 10_000; i++) {
+            counters.add(i);
+        }
+        Collections.shuffle(counters, new Random(3));
+
+        CounterIntervalSet<Object> set = new CounterIntervalSet<>();
+        for (long counter : counters) {
+            assertTrue(set.add(counter, null));
+        }
+        for (long counter : counters.subList(0, 100)) {
+            assertFalse(set.add(counter, null));
+        }
+        assertEquals(1, set.getRangeCount());
+        assertEquals(0, set.first());
+        assertEquals(9_999, set.last());
+    }
+
+    @Test
+    public void negativeCountersShouldBeRejected() {
+        CounterIntervalSet<Object> set = new CounterIntervalSet<>();
+        assertThrows(IllegalArgumentException.class, () -> set.add(-1, null));
+        assertThrows(IndexOutOfBoundsException.class, () -> set.getStart(0));
+        assertTrue(set.add(Long.MAX_VALUE, null));
+        assertTrue(set.add(Long.MAX_VALUE - 1, null));
+        assertEquals(1, set.getRangeCount());
+    }
+}
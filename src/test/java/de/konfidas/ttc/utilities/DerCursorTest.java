@@ -0,0 +1,97 @@
+package de.konfidas.ttc.utilities;
+
+import org.bouncycastle.asn1.*;
+import org.bouncycastle.util.encoders.Hex;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DerCursorTest {
+
+    @Test
+    public void sequenceShouldBeSplitIntoElements() throws IOException {
+        byte[] processData = new byte[300];
+        ASN1EncodableVector vector = new ASN1EncodableVector();
+        vector.add(new ASN1Integer(2));
+        vector.add(new ASN1ObjectIdentifier("0.4.0.127.0.7.3.7.1.1"));
+        vector.add(new DLTaggedObject(false, 2, new DEROctetString(processData)));
+        vector.add(new DEROctetString(Hex.decode("0102")));
+        byte[] encoded = new DERSequence(vector).getEncoded();
+
+        DerCursor cursor = new DerCursor(encoded);
+        DerElement sequence = cursor.next();
+        assertFalse(cursor.hasNext());
+        assertEquals(DerElement.SEQUENCE, sequence.getTag());
+        assertEquals(encoded.length, sequence.getEnd());
+
+        List<DerElement> elements = sequence.getChildren();
+        assertEquals(4, elements.size());
+        assertEquals(BigInteger.valueOf(2), elements.get(0).getValueAsBigInteger());
+        assertEquals("0.4.0.127.0.7.3.7.1.1", elements.get(1).getValueAsObjectIdentifier());
+
+        DerElement tagged = elements.get(2);
+        assertTrue(tagged.isContextSpecific());
+        assertFalse(tagged.isConstructed());
+        assertEquals(2, tagged.getTagNumber());
+        assertEquals(300, tagged.getValueLength());
+
+        assertTrue(elements.get(3).isOctetString());
+        assertArrayEquals(Hex.decode("0102"), elements.get(3).getOctets());
+        assertArrayEquals(new DEROctetString(Hex.decode("0102")).getEncoded(), elements.get(3).getEncoded());
+    }
+
+    @Test
+    public void indefiniteLengthShouldBeRead() throws IOException {
+        byte[] encoded = Hex.decode("a280040301020300000500");
+
+        DerCursor cursor = new DerCursor(encoded);
+        DerElement tagged = cursor.next();
+        assertTrue(tagged.isConstructed());
+        assertEquals(9, tagged.getEnd());
+        assertEquals(5, tagged.getValueLength());
+        assertEquals(DerElement.OCTET_STRING, tagged.getChildren().get(0).getTag());
+
+        assertEquals(0x05, cursor.next().getTag());
+        assertFalse(cursor.hasNext());
+    }
+
+    @Test
+    public void octetStringShouldBeEncodedAsDer() throws IOException {
+        for (int length : new int[]{0, 127, 128, 300, 70000}) {
+            byte[] octets = new byte[length];
+            DerElement element = DerElement.octetString(octets);
+            assertArrayEquals(new DEROctetString(octets).getEncoded(), element.getEncoded());
+            assertEquals(length, element.getValueBuffer().remaining());
+        }
+    }
+
+    @Test
+    public void deeplyNestedIndefiniteLengthShouldBeRejected() throws IOException {
+        int depth = 100_000;
+        byte[] encoded = new byte[depth * 4];
+        for (int i = 0; i < depth; i++) {
+            encoded[2 * i] = 0x30;
+            encoded[2 * i + 1] = (byte) 0x80;
+        }
+        // Die End-of-Contents Markierungen sind bereits 0x00 0x00.
+        assertThrows(IOException.class, () -> new DerCursor(encoded).next());
+
+        byte[] allowed = new byte[DerCursor.MAX_INDEFINITE_LENGTH_DEPTH * 4];
+        for (int i = 0; i < DerCursor.MAX_INDEFINITE_LENGTH_DEPTH; i++) {
+            allowed[2 * i] = 0x30;
+            allowed[2 * i + 1] = (byte) 0x80;
+        }
+        assertEquals(allowed.length, new DerCursor(allowed).next().getEnd());
+    }
+
+    @Test
+    public void truncatedElementShouldBeRejected() {
+        assertThrows(IOException.class, () -> new DerCursor(Hex.decode("0405010203")).next());
+        assertThrows(IOException.class, () -> new DerCursor(Hex.decode("0482")).next());
+        assertThrows(IOException.class, () -> new DerCursor(Hex.decode("30800201")).next());
+    }
+}
@@ -0,0 +1,115 @@
+package de.konfidas.ttc.validation;
+
+import de.konfidas.ttc.errors.TtcError;
+import de.konfidas.ttc.messages.LogMessage;
+import de.konfidas.ttc.messages.logtime.UnixLogTime;
+import de.konfidas.ttc.tars.LogMessageArchive;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.security.cert.X509Certificate;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+
+public class AggregatedValidatorTest {
+
+    static class CountingTar implements LogMessageArchive {
+        final ArrayList<LogMessage> messages;
+        int sortedCalls = 0;
+
+        CountingTar(ArrayList<LogMessage> messages) {
+            this.messages = messages;
+        }
+
+        @Override
+        public Map<String, X509Certificate> getIntermediateCertificates() {
+            return new HashMap<>();
+        }
+
+        @Override
+        public Map<String, X509Certificate> getClientCertificates() {
+            return new HashMap<>();
+        }
+
+        @Override
+        public Collection<LogMessage> getLogMessages() {
+            return messages;
+        }
+
+        @Override
+        public Collection<? extends LogMessage> getSortedLogMessages() {
+            sortedCalls++;
+            return messages;
+        }
+
+        @Override
+        public ArrayList<TtcError> getAllErrors() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public String getFileName() {
+            return "";
+        }
+    }
+
+    static ArrayList<LogMessage> createMessages() {
+        ArrayList<LogMessage> messages = new ArrayList<>();
+        messages.add(new TimeStampValidatorMockedTest.LogMessageMock(new UnixLogTime(2), BigInteger.ONE));
+        messages.add(new TimeStampValidatorMockedTest.LogMessageMock(new UnixLogTime(1), BigInteger.TWO));
+        messages.add(new TimeStampValidatorMockedTest.LogMessageMock(new UnixLogTime(3), BigInteger.valueOf(4)));
+        return messages;
+    }
+
+    @Test
+    public void messageValidatorsShouldShareOnePass() {
+        CountingTar tar = new CountingTar(createMessages());
+        TimeStampValidator timeStampValidator = new TimeStampValidator();
+        SignatureCounterValidator signatureCounterValidator = new SignatureCounterValidator();
+        CertificateFileNameValidator fileNameValidator = new CertificateFileNameValidator();
+
+        ValidationResult result = new AggregatedValidator()
+                .add(timeStampValidator)
+                .add(fileNameValidator)
+                .add(signatureCounterValidator)
+                .validate(tar);
+
+        assertEquals(1, tar.sortedCalls);
+        assertEquals(Arrays.asList(timeStampValidator, fileNameValidator, signatureCounterValidator), new ArrayList<>(result.getValidators()));
+        assertEquals(2, result.getValidationErrors().size());
+    }
+
+    @Test
+    public void resultShouldMatchSeparateValidation() {
+        ValidationResult fused = new AggregatedValidator()
+                .add(new TimeStampValidator())
+                .add(new SignatureCounterValidator())
+                .validate(new CountingTar(createMessages()));
+
+        CountingTar tar = new CountingTar(createMessages());
+        ValidationResultImpl separate = new ValidationResultImpl()
+                .append(new TimeStampValidator().validate(tar))
+                .append(new SignatureCounterValidator().validate(tar));
+
+        assertEquals(2, tar.sortedCalls);
+        assertEquals(separate.getValidationErrors().size(), fused.getValidationErrors().size());
+        Iterator<?> expected = separate.getValidationErrors().iterator();
+        for (Object error : fused.getValidationErrors()) {
+            assertEquals(expected.next().getClass(), error.getClass());
+        }
+    }
+
+    @Test
+    public void stateShouldBeKeptAcrossArchives() {
+        SignatureCounterValidator signatureCounterValidator = new SignatureCounterValidator();
+        AggregatedValidator validator = new AggregatedValidator().add(signatureCounterValidator);
+
+        ArrayList<LogMessage> first = new ArrayList<>(createMessages().subList(0, 2));
+        ArrayList<LogMessage> second = new ArrayList<>(createMessages().subList(2, 3));
+
+        assertEquals(0, validator.validate(new CountingTar(first)).getValidationErrors().size());
+        assertEquals(1, validator.validate(new CountingTar(second)).getValidationErrors().size());
+    }
+}
@@ -0,0 +1,163 @@
+package de.konfidas.ttc.validation;
+
+import de.konfidas.ttc.errors.TtcError;
+import de.konfidas.ttc.messages.LogMessage;
+import de.konfidas.ttc.setup.TestCaseBasisWithCA;
+import de.konfidas.ttc.tars.LogMessageArchive;
+import de.konfidas.ttc.utilities.IntegrityKey;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mockito;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.Security;
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509Certificate;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+
+public class CertPathValidationCacheTest extends TestCaseBasisWithCA {
+    final static IntegrityKey KEY = new IntegrityKey(new byte[IntegrityKey.KEY_LENGTH]);
+
+    @BeforeEach
+    public void initialize() {
+        Security.addProvider(new BouncyCastleProvider());
+    }
+
+    static class CertificateTar implements LogMessageArchive {
+        final HashMap<String, X509Certificate> clientCertificates = new HashMap<>();
+        final HashMap<String, X509Certificate> intermediateCertificates = new HashMap<>();
+
+        CertificateTar() {
+            clientCertificates.put("client", getClientCertificate());//NON-NLS
+            intermediateCertificates.put("subca", getSubCACertificate());//NON-NLS
+        }
+
+        @Override
+        public Map<String, X509Certificate> getIntermediateCertificates() {
+            return intermediateCertificates;
+        }
+
+        @Override
+        public Map<String, X509Certificate> getClientCertificates() {
+            return clientCertificates;
+        }
+
+        @Override
+        public Collection<LogMessage> getLogMessages() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public String getFileName() {
+            return "";
+        }
+
+        @Override
+        public ArrayList<TtcError> getAllErrors() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public Collection<? extends LogMessage> getSortedLogMessages() {
+            return new ArrayList<>();
+        }
+    }
+
+    CertificateValidator createValidator(CertPathValidationCache cache) {
+        return new CertificateValidator(Collections.singleton(getRootCACertificate()))
+                .setEnableRevocationChecking(false)
+                .setCache(cache);
+    }
+
+    @Test
+    public void validatedPathShouldNotBeCheckedAgain() throws Exception {
+        CertPathValidationCache cache = new CertPathValidationCache();
+        CertificateTar tar = new CertificateTar();
+
+        assertEquals(0, createValidator(cache).validate(tar).getValidationErrors().size());
+        assertEquals(1, cache.size());
+
+        CertificateValidator validator = Mockito.spy(createValidator(cache));
+        assertEquals(0, validator.validate(tar).getValidationErrors().size());
+        Mockito.verify(validator, Mockito.never()).checkCert(any(), any(), any(), any(), any(), any());
+    }
+
+    @Test
+    public void keyShouldDependOnAnchorsIntermediatesAndRevocation() throws Exception {
+        X509Certificate client = getClientCertificate();
+        List<X509Certificate> intermediates = Collections.singletonList(getSubCACertificate());
+        Set<TrustAnchor> anchors = Collections.singleton(new TrustAnchor(getRootCACertificate(), null));
+        Set<TrustAnchor> otherAnchors = Collections.singleton(new TrustAnchor(getSubCACertificate(), null));
+
+        ByteBuffer key = CertPathValidationCache.key(client, intermediates, anchors, new ArrayList<>(), false);
+        assertEquals(key, CertPathValidationCache.key(client, intermediates, anchors, new ArrayList<>(), false));
+        assertNotEquals(key, CertPathValidationCache.key(client, intermediates, otherAnchors, new ArrayList<>(), false));
+        assertNotEquals(key, CertPathValidationCache.key(client, new ArrayList<>(), anchors, new ArrayList<>(), false));
+        assertNotEquals(key, CertPathValidationCache.key(client, intermediates, anchors, new ArrayList<>(), true));
+
+        byte[] context = CertPathValidationCache.context(anchors, new ArrayList<>(), false);
+        assertEquals(key, CertPathValidationCache.key(context, client, intermediates));
+    }
+
+    @Test
+    public void expiredEntriesShouldBeIgnored(@TempDir Path tmp) throws Exception {
+        File file = tmp.resolve("certpath.cache").toFile();
+        long now = System.currentTimeMillis();
+        ByteBuffer valid = ByteBuffer.wrap(new byte[CertPathValidationCache.KEY_LENGTH]);
+        byte[] expiredKey = new byte[CertPathValidationCache.KEY_LENGTH];
+        expiredKey[0] = 1;
+        ByteBuffer expired = ByteBuffer.wrap(expiredKey);
+
+        try (CertPathValidationCache cache = CertPathValidationCache.open(file, KEY)) {
+            cache.put(valid, now + 60_000);
+            cache.put(expired, now - 1);
+            assertTrue(cache.isValid(valid, now));
+            assertFalse(cache.isValid(expired, now));
+            assertFalse(cache.isValid(valid, now + 60_000));
+        }
+
+        CertPathValidationCache cache = CertPathValidationCache.open(file, KEY);
+        assertEquals(1, cache.size());
+        assertTrue(cache.isValid(valid, now));
+    }
+
+    @Test
+    public void modifiedFileShouldBeRejected(@TempDir Path tmp) throws Exception {
+        File file = tmp.resolve("certpath.cache").toFile();
+        ByteBuffer key = ByteBuffer.wrap(new byte[CertPathValidationCache.KEY_LENGTH]);
+        try (CertPathValidationCache cache = CertPathValidationCache.open(file, KEY)) {
+            cache.put(key, System.currentTimeMillis() + 60_000);
+        }
+        assertEquals(1, CertPathValidationCache.open(file, KEY).size());
+
+        // Ein Eintrag, der ohne den Schlüssel in die Datei geschrieben wird, würde die Prüfung eines Pfads ersparen.
+        byte[] content = Files.readAllBytes(file.toPath());
+        content[3 * Integer.BYTES] ^= 0x01;
+        Files.write(file.toPath(), content);
+        assertEquals(0, CertPathValidationCache.open(file, KEY).size());
+
+        try (CertPathValidationCache cache = CertPathValidationCache.open(file, KEY)) {
+            cache.put(key, System.currentTimeMillis() + 60_000);
+        }
+        assertEquals(0, CertPathValidationCache.open(file, new IntegrityKey(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16,
+                17, 18, 19, 20, 21, 22, 23, 24, 25, 26, 27, 28, 29, 30, 31, 32})).size());
+    }
+
+    @Test
+    public void validUntilShouldBeEarliestExpiry() {
+        X509Certificate client = getClientCertificate();
+        X509Certificate subCa = getSubCACertificate();
+        TrustAnchor anchor = new TrustAnchor(getRootCACertificate(), null);
+        long expected = Math.min(Math.min(client.getNotAfter().getTime(), subCa.getNotAfter().getTime()), getRootCACertificate().getNotAfter().getTime());
+
+        assertEquals(expected, CertPathValidationCache.validUntil(Arrays.asList(client, subCa), anchor, new ArrayList<>(), false));
+    }
+}
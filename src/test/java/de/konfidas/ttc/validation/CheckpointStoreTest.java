@@ -0,0 +1,157 @@
+package de.konfidas.ttc.validation;
+
+import de.konfidas.ttc.messages.LogMessage;
+import de.konfidas.ttc.messages.logtime.UnixLogTime;
+import de.konfidas.ttc.utilities.IntegrityKey;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class CheckpointStoreTest {
+
+    @TempDir
+    File directory;
+
+    @TempDir
+    File keyDirectory;
+
+    File keyFile() {
+        return new File(keyDirectory, "checkpoint.key");//NON-NLS
+    }
+
+    static AggregatedValidatorTest.CountingTar tar(LogMessage... messages) {
+        ArrayList<LogMessage> list = new ArrayList<>();
+        Collections.addAll(list, messages);
+        return new AggregatedValidatorTest.CountingTar(list);
+    }
+
+    static LogMessage counter(long signatureCounter, int serial) {
+        return new SignatureCounterValidatorMockedTest.LogMessageMock(BigInteger.valueOf(signatureCounter), new byte[]{(byte) serial});
+    }
+
+    static LogMessage time(long time, long signatureCounter) {
+        return new TimeStampValidatorMockedTest.LogMessageMock(new UnixLogTime(time), BigInteger.valueOf(signatureCounter));
+    }
+
+    @Test
+    public void signatureCountersShouldBeContinuedFromCheckpoint() throws IOException {
+        SignatureCounterValidator validator = new SignatureCounterValidator();
+        assertEquals(1, validator.validate(tar(counter(1, 1), counter(2, 1), counter(4, 1), counter(1, 2))).getValidationErrors().size());
+
+        CheckpointStore store = CheckpointStore.open(directory, keyFile());
+        assertEquals(2, store.save(Collections.singletonList(validator)));
+        assertTrue(new File(directory, "01" + CheckpointStore.SUFFIX).isFile());//NON-NLS
+        assertTrue(keyFile().isFile());
+        assertTrue(new File(directory, CheckpointStore.GENERATION_FILE_NAME).isFile());
+
+        SignatureCounterValidator restored = new SignatureCounterValidator(true);
+        assertEquals(2, CheckpointStore.open(directory, keyFile()).restore(Collections.singletonList(restored)));
+
+        // Die bekannte Lücke (3) und der Beginn werden nicht erneut gemeldet, die neue Lücke (6) und das Duplikat schon.
+        List<?> errors = new ArrayList<>(restored.validate(tar(counter(5, 1), counter(7, 1), counter(2, 2), counter(2, 1))).getValidationErrors());
+        assertEquals(2, errors.size());
+        assertTrue(errors.get(0) instanceof SignatureCounterValidator.SignatureCounterDuplicateException);
+        assertTrue(errors.get(1) instanceof SignatureCounterValidator.SignatureCounterMissingException);
+    }
+
+    @Test
+    public void gapBelowRestoredRangeShouldBeReported() throws IOException {
+        SignatureCounterValidator validator = new SignatureCounterValidator();
+        validator.validate(tar(counter(10, 1), counter(11, 1)));
+        CheckpointStore store = CheckpointStore.open(directory, keyFile());
+        store.save(Collections.singletonList(validator));
+
+        SignatureCounterValidator restored = new SignatureCounterValidator();
+        store.restore(Collections.singletonList(restored));
+        assertEquals(1, restored.validate(tar(counter(5, 1))).getValidationErrors().size());
+    }
+
+    @Test
+    public void timeStampsShouldBeContinuedFromCheckpoint() throws IOException {
+        PerSerialValidator validator = new PerSerialValidator(TimeStampValidator::new, 1);
+        assertTrue(validator.validate(tar(time(100, 1), time(200, 2))).getValidationErrors().isEmpty());
+        CheckpointStore store = CheckpointStore.open(directory, keyFile());
+        assertEquals(1, store.save(Collections.singletonList(validator)));
+
+        // Ein Checkpoint des PerSerialValidator kann auch vom Validator selbst gelesen werden.
+        TimeStampValidator restored = new TimeStampValidator();
+        store.restore(Collections.singletonList(restored));
+        assertEquals(1, restored.validate(tar(time(150, 3))).getValidationErrors().size());
+    }
+
+    @Test
+    public void modifiedCheckpointShouldBeRejected() throws IOException {
+        SignatureCounterValidator validator = new SignatureCounterValidator();
+        validator.validate(tar(counter(1, 1), counter(2, 1)));
+        CheckpointStore.open(directory, keyFile()).save(Collections.singletonList(validator));
+
+        File checkpoint = new File(directory, "01" + CheckpointStore.SUFFIX);//NON-NLS
+        try (RandomAccessFile file = new RandomAccessFile(checkpoint, "rw")) {//NON-NLS
+            file.seek(file.length() - CheckpointStore.MAC_LENGTH - 1);
+            int last = file.read();
+            file.seek(file.length() - CheckpointStore.MAC_LENGTH - 1);
+            file.write(last + 1);
+        }
+
+        assertThrows(CheckpointStore.CheckpointIntegrityException.class,
+                () -> CheckpointStore.open(directory, keyFile()).restore(Collections.singletonList(new SignatureCounterValidator())));
+    }
+
+    @Test
+    public void checkpointWithOtherKeyShouldBeRejected() throws IOException {
+        SignatureCounterValidator validator = new SignatureCounterValidator();
+        validator.validate(tar(counter(1, 1)));
+        CheckpointStore.open(directory, keyFile()).save(Collections.singletonList(validator));
+
+        File otherKey = new File(keyDirectory, "other.key");//NON-NLS
+        Files.write(otherKey.toPath(), new byte[IntegrityKey.KEY_LENGTH]);
+        assertThrows(CheckpointStore.CheckpointIntegrityException.class,
+                () -> CheckpointStore.open(directory, otherKey).restore(Collections.singletonList(new SignatureCounterValidator())));
+
+        Files.write(otherKey.toPath(), new byte[1]);
+        assertThrows(IOException.class, () -> CheckpointStore.open(directory, otherKey));
+    }
+
+    @Test
+    public void keyInsideDirectoryShouldBeRejected() {
+        assertThrows(IOException.class, () -> CheckpointStore.open(directory, new File(directory, "checkpoint.key")));//NON-NLS
+        assertThrows(IOException.class, () -> CheckpointStore.open(directory, new File(new File(directory, "sub"), "checkpoint.key")));//NON-NLS
+        assertFalse(new File(directory, "checkpoint.key").exists());//NON-NLS
+    }
+
+    @Test
+    public void rolledBackCheckpointShouldBeRejected() throws IOException {
+        SignatureCounterValidator validator = new SignatureCounterValidator();
+        validator.validate(tar(counter(1, 1), counter(1, 2)));
+        CheckpointStore store = CheckpointStore.open(directory, keyFile());
+        store.save(Collections.singletonList(validator));
+        assertEquals(1, store.getGeneration());
+
+        File checkpoint = new File(directory, "01" + CheckpointStore.SUFFIX);//NON-NLS
+        byte[] old = Files.readAllBytes(checkpoint.toPath());
+
+        validator.validate(tar(counter(2, 1), counter(2, 2)));
+        store.save(Collections.singletonList(validator));
+        assertEquals(2, store.getGeneration());
+        assertEquals(2, CheckpointStore.open(directory, keyFile()).restore(Collections.singletonList(new SignatureCounterValidator())));
+
+        Files.write(checkpoint.toPath(), old);
+        assertThrows(CheckpointStore.CheckpointIntegrityException.class,
+                () -> CheckpointStore.open(directory, keyFile()).restore(Collections.singletonList(new SignatureCounterValidator())));
+
+        Files.delete(checkpoint.toPath());
+        assertThrows(CheckpointStore.CheckpointIntegrityException.class,
+                () -> CheckpointStore.open(directory, keyFile()).restore(Collections.singletonList(new SignatureCounterValidator())));
+    }
+}
@@ -0,0 +1,135 @@
+package de.konfidas.ttc.validation;
+
+import de.konfidas.ttc.tars.LogMessageArchive;
+import de.konfidas.ttc.tars.LogMessageArchiveImplementation;
+import de.konfidas.ttc.tars.LogMessageArchiveSnapshot;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.security.Security;
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class ConcurrentAggregatedValidatorTest {
+    final static File tarFile = new File("testdata" + File.separator + "positive" + File.separator + "softwareUpdate.tar");
+
+    @BeforeEach
+    public void initialize() {
+        Security.addProvider(new BouncyCastleProvider());
+    }
+
+    /**
+     * Wartet, bis alle Validatoren gestartet sind. Das gelingt nur, wenn sie gleichzeitig laufen.
+     */
+    static class BarrierValidator implements Validator {
+        final CyclicBarrier barrier;
+        LogMessageArchive validated;
+
+        BarrierValidator(CyclicBarrier barrier) {
+            this.barrier = barrier;
+        }
+
+        @Override
+        public ValidationResult validate(LogMessageArchive tar) {
+            try {
+                barrier.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException | BrokenBarrierException | TimeoutException e) {
+                throw new IllegalStateException(e);
+            }
+            validated = tar;
+            return new ValidationResultImpl().append(Collections.singleton(this), Collections.emptyList());
+        }
+    }
+
+    @Test
+    public void validatorsShouldRunConcurrently() {
+        CyclicBarrier barrier = new CyclicBarrier(3);
+        BarrierValidator v1 = new BarrierValidator(barrier);
+        BarrierValidator v2 = new BarrierValidator(barrier);
+        BarrierValidator v3 = new BarrierValidator(barrier);
+
+        ConcurrentAggregatedValidator validator = new ConcurrentAggregatedValidator(3);
+        validator.add(v1).add(v2).add(v3);
+
+        AggregatedValidatorTest.CountingTar tar = new AggregatedValidatorTest.CountingTar(AggregatedValidatorTest.createMessages());
+        ValidationResult result = validator.validate(tar);
+
+        assertEquals(Arrays.asList(v1, v2, v3), new ArrayList<>(result.getValidators()));
+        assertTrue(v1.validated instanceof LogMessageArchiveSnapshot);
+        assertSame(v1.validated, v2.validated);
+        assertEquals(1, tar.sortedCalls);
+    }
+
+    @Test
+    public void snapshotShouldKeepTheArchiveOrder() throws Exception {
+        LogMessageArchiveImplementation tar = new LogMessageArchiveImplementation(tarFile);
+        LogMessageArchiveSnapshot snapshot = LogMessageArchiveSnapshot.of(tar);
+
+        assertEquals(new ArrayList<>(tar.getLogMessages()), new ArrayList<>(snapshot.getLogMessages()));
+        assertEquals(new ArrayList<>(tar.getSortedLogMessages()), new ArrayList<>(snapshot.getSortedLogMessages()));
+        assertNotEquals(new ArrayList<>(snapshot.getLogMessages()), new ArrayList<>(snapshot.getSortedLogMessages()));
+    }
+
+    @Test
+    public void resultShouldMatchSequentialValidation() throws Exception {
+        LogMessageArchiveImplementation tar = new LogMessageArchiveImplementation(tarFile);
+
+        ValidationResult sequential = new AggregatedValidator()
+                .add(new CertificateFileNameValidator())
+                .add(new TimeStampValidator())
+                .add(new LogMessageSignatureValidator())
+                .add(new SignatureCounterValidator())
+                .validate(tar);
+
+        ValidationResult concurrent = new ConcurrentAggregatedValidator(4)
+                .add(new CertificateFileNameValidator())
+                .add(new TimeStampValidator())
+                .add(new LogMessageSignatureValidator())
+                .add(new SignatureCounterValidator())
+                .validate(tar);
+
+        assertEquals(sequential.getValidationErrors().size(), concurrent.getValidationErrors().size());
+        Iterator<?> expected = sequential.getValidationErrors().iterator();
+        for (Object error : concurrent.getValidationErrors()) {
+            assertEquals(expected.next().getClass(), error.getClass());
+        }
+    }
+
+    @Test
+    public void exceptionOfValidatorShouldBePropagated() {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            ConcurrentAggregatedValidator validator = new ConcurrentAggregatedValidator(executor);
+            validator.add(tar -> {
+                throw new IllegalStateException("kaputt");
+            });
+            AggregatedValidatorTest.CountingTar tar = new AggregatedValidatorTest.CountingTar(AggregatedValidatorTest.createMessages());
+            assertThrows(IllegalStateException.class, () -> validator.validate(tar));
+            assertFalse(executor.isShutdown());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void sortedLogMessagesShouldBeBuiltOnce() throws Exception {
+        LogMessageArchiveImplementation tar = new LogMessageArchiveImplementation(tarFile);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<List<?>>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                futures.add(executor.submit(tar::getSortedLogMessages));
+            }
+            for (Future<List<?>> future : futures) {
+                assertSame(futures.get(0).get(), future.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
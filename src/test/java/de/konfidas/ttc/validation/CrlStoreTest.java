@@ -0,0 +1,153 @@
+package de.konfidas.ttc.validation;
+
+import de.konfidas.ttc.exceptions.CertificateLoadException;
+import de.konfidas.ttc.setup.TestCaseBasisWithCA;
+import org.bouncycastle.asn1.x509.CRLNumber;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.cert.X509v2CRLBuilder;
+import org.bouncycastle.cert.jcajce.JcaX509CRLConverter;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.Security;
+import java.security.cert.CertPathValidatorException;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CrlStoreTest extends TestCaseBasisWithCA {
+    final static long DAY = 24L * 60 * 60 * 1000;
+
+    @BeforeEach
+    public void initialize() {
+        Security.addProvider(new BouncyCastleProvider());
+    }
+
+    /**
+     * Erzeugt eine CRL des Ausstellers. Ist baseNumber gesetzt, wird eine Delta-CRL zu dieser CRL Number erzeugt.
+     */
+    static X509CRL createCrl(X509Certificate issuer, KeyPair issuerKeyPair, long number, Long baseNumber, Date nextUpdate, BigInteger serial, int reason) throws Exception {
+        Date now = new Date();
+        X509v2CRLBuilder builder = new X509v2CRLBuilder(new JcaX509CertificateHolder(issuer).getSubject(), new Date(now.getTime() - DAY));
+        builder.setNextUpdate(nextUpdate);
+        builder.addExtension(Extension.cRLNumber, false, new CRLNumber(BigInteger.valueOf(number)));
+        if (baseNumber != null) {
+            builder.addExtension(Extension.deltaCRLIndicator, true, new CRLNumber(BigInteger.valueOf(baseNumber)));
+        }
+        if (serial != null) {
+            builder.addCRLEntry(serial, new Date(now.getTime() - DAY), reason);
+        }
+        return new JcaX509CRLConverter().setProvider(BouncyCastleProvider.PROVIDER_NAME).getCRL(
+                builder.build(new JcaContentSignerBuilder("SHA256withECDSA").setProvider(BouncyCastleProvider.PROVIDER_NAME).build(issuerKeyPair.getPrivate())));
+    }
+
+    static X509CRL createSubCACrl(long number, Long baseNumber, BigInteger serial, int reason) throws Exception {
+        return createCrl(getSubCACertificate(), getSubCAKeyPair(), number, baseNumber, new Date(System.currentTimeMillis() + DAY), serial, reason);
+    }
+
+    static X509CRL createRootCrl() throws Exception {
+        return createCrl(getRootCACertificate(), getRootCAKeyPair(), 1, null, new Date(System.currentTimeMillis() + DAY), null, 0);
+    }
+
+    static void checkClient(CrlStore store) throws CertPathValidatorException {
+        store.check(getClientCertificate(), getSubCACertificate().getPublicKey(), new Date());
+    }
+
+    static void assertRevoked(CrlStore store) {
+        CertPathValidatorException e = assertThrows(CertPathValidatorException.class, () -> checkClient(store));
+        assertEquals(CertPathValidatorException.BasicReason.REVOKED, e.getReason());
+    }
+
+    @Test
+    public void revokedCertificateShouldBeRejected() throws Exception {
+        BigInteger serial = getClientCertificate().getSerialNumber();
+        assertRevoked(CrlStore.of(List.of(createSubCACrl(1, null, serial, CRLReason.keyCompromise))));
+        checkClient(CrlStore.of(List.of(createSubCACrl(1, null, serial.add(BigInteger.ONE), CRLReason.keyCompromise))));
+    }
+
+    @Test
+    public void newestBaseCrlShouldBeUsed() throws Exception {
+        BigInteger serial = getClientCertificate().getSerialNumber();
+        checkClient(CrlStore.of(List.of(createSubCACrl(2, null, null, 0), createSubCACrl(1, null, serial, CRLReason.keyCompromise))));
+        assertRevoked(CrlStore.of(List.of(createSubCACrl(1, null, null, 0), createSubCACrl(2, null, serial, CRLReason.keyCompromise))));
+    }
+
+    @Test
+    public void deltaCrlShouldBeMerged() throws Exception {
+        BigInteger serial = getClientCertificate().getSerialNumber();
+
+        CrlStore revokedByDelta = CrlStore.of(List.of(createSubCACrl(1, null, null, 0), createSubCACrl(2, 1L, serial, CRLReason.keyCompromise)));
+        assertRevoked(revokedByDelta);
+        assertEquals(2, revokedByDelta.getCrls().size());
+
+        CrlStore removedByDelta = CrlStore.of(List.of(createSubCACrl(1, null, serial, CRLReason.certificateHold), createSubCACrl(2, 1L, serial, CRLReason.removeFromCRL)));
+        checkClient(removedByDelta);
+    }
+
+    @Test
+    public void deltaCrlForNewerBaseShouldBeIgnored() throws Exception {
+        BigInteger serial = getClientCertificate().getSerialNumber();
+        CrlStore store = CrlStore.of(List.of(createSubCACrl(1, null, null, 0), createSubCACrl(3, 2L, serial, CRLReason.keyCompromise)));
+        checkClient(store);
+        assertEquals(1, store.getCrls().size());
+    }
+
+    @Test
+    public void missingOrExpiredCrlShouldBeUndetermined() throws Exception {
+        CertPathValidatorException missing = assertThrows(CertPathValidatorException.class, () -> checkClient(new CrlStore()));
+        assertEquals(CertPathValidatorException.BasicReason.UNDETERMINED_REVOCATION_STATUS, missing.getReason());
+
+        X509CRL expired = createCrl(getSubCACertificate(), getSubCAKeyPair(), 1, null, new Date(System.currentTimeMillis() - 1000), null, 0);
+        CertPathValidatorException e = assertThrows(CertPathValidatorException.class, () -> checkClient(CrlStore.of(List.of(expired))));
+        assertEquals(CertPathValidatorException.BasicReason.UNDETERMINED_REVOCATION_STATUS, e.getReason());
+    }
+
+    @Test
+    public void crlWithWrongSignatureShouldBeUndetermined() throws Exception {
+        X509CRL crl = createSubCACrl(1, null, null, 0);
+        CertPathValidatorException e = assertThrows(CertPathValidatorException.class,
+                () -> CrlStore.of(List.of(crl)).check(getClientCertificate(), getRootCACertificate().getPublicKey(), new Date()));
+        assertEquals(CertPathValidatorException.BasicReason.UNDETERMINED_REVOCATION_STATUS, e.getReason());
+    }
+
+    @Test
+    public void directoryShouldBeLoaded(@TempDir Path tmp) throws Exception {
+        Files.write(tmp.resolve("subca.crl"), createSubCACrl(1, null, null, 0).getEncoded());
+        Files.write(tmp.resolve("subca-delta.crl"), createSubCACrl(2, 1L, getClientCertificate().getSerialNumber(), CRLReason.keyCompromise).getEncoded());
+        Files.write(tmp.resolve("readme.txt"), "keine CRL".getBytes());
+
+        assertRevoked(CrlStore.load(tmp.toFile()));
+
+        Files.write(tmp.resolve("broken.crl"), new byte[]{1, 2, 3});
+        assertThrows(CertificateLoadException.class, () -> CrlStore.load(tmp.toFile()));
+    }
+
+    @Test
+    public void certificateValidatorShouldCheckWholePath() throws Exception {
+        CertPathValidationCacheTest.CertificateTar tar = new CertPathValidationCacheTest.CertificateTar();
+        TrustStore trustStore = TrustStore.of(Collections.singleton(getRootCACertificate()));
+
+        CrlStore valid = CrlStore.of(List.of(createRootCrl(), createSubCACrl(1, null, null, 0)));
+        assertEquals(0, new CertificateValidator(trustStore, valid).validate(tar).getValidationErrors().size());
+
+        CrlStore withoutRootCrl = CrlStore.of(List.of(createSubCACrl(1, null, null, 0)));
+        assertEquals(1, new CertificateValidator(trustStore, withoutRootCrl).validate(tar).getValidationErrors().size());
+        assertEquals(0, new CertificateValidator(trustStore, withoutRootCrl).setEnableRevocationChecking(false).validate(tar).getValidationErrors().size());
+
+        CrlStore revoked = CrlStore.of(List.of(createRootCrl(), createSubCACrl(1, null, getClientCertificate().getSerialNumber(), CRLReason.keyCompromise)));
+        assertEquals(1, new CertificateValidator(trustStore, revoked).validate(tar).getValidationErrors().size());
+    }
+}
@@ -0,0 +1,134 @@
+package de.konfidas.ttc.validation;
+
+import de.konfidas.ttc.errors.TtcError;
+import de.konfidas.ttc.exceptions.ValidationException;
+import de.konfidas.ttc.messages.LogMessage;
+import de.konfidas.ttc.messages.VerificationCache;
+import de.konfidas.ttc.tars.LogMessageArchive;
+import de.konfidas.ttc.tars.LogMessageArchiveImplementation;
+import de.konfidas.ttc.utilities.IntegrityKey;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.security.Security;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LogMessageSignatureValidatorTest {
+
+    @BeforeEach
+    public void initialize() {
+        Security.addProvider(new BouncyCastleProvider());
+    }
+
+    /**
+     * Wiederholt die LogMessages eines Archivs, damit sie sich über mehrere Blöcke verteilen.
+     */
+    static class RepeatedTar implements LogMessageArchive {
+        final LogMessageArchive tar;
+        final ArrayList<LogMessage> messages = new ArrayList<>();
+
+        RepeatedTar(LogMessageArchive tar, int repetitions) {
+            this.tar = tar;
+            for (int i = 0; i < repetitions; i++) {
+                messages.addAll(tar.getLogMessages());
+            }
+        }
+
+        @Override
+        public Map<? extends String, ? extends X509Certificate> getIntermediateCertificates() {
+            return tar.getIntermediateCertificates();
+        }
+
+        @Override
+        public Map<? extends String, ? extends X509Certificate> getClientCertificates() {
+            return tar.getClientCertificates();
+        }
+
+        @Override
+        public Collection<LogMessage> getLogMessages() {
+            return messages;
+        }
+
+        @Override
+        public String getFileName() {
+            return tar.getFileName();
+        }
+
+        @Override
+        public ArrayList<TtcError> getAllErrors() {
+            return tar.getAllErrors();
+        }
+
+        @Override
+        public Collection<? extends LogMessage> getSortedLogMessages() {
+            return messages;
+        }
+    }
+
+    static ArrayList<LogMessage> failedMessages(ValidationResult result) {
+        ArrayList<LogMessage> failed = new ArrayList<>();
+        for (ValidationException e : result.getValidationErrors()) {
+            assertTrue(e instanceof LogMessageSignatureValidator.LogMessageSignatureValidationException);
+            failed.add(((LogMessageSignatureValidator.LogMessageSignatureValidationException) e).getLogMessage());
+        }
+        return failed;
+    }
+
+    @Test
+    public void parallelValidationShouldReportErrorsInArchiveOrder() throws Exception {
+        LogMessageArchive tar = new LogMessageArchiveImplementation(new File("testdata" + File.separator + "positive" + File.separator + "softwareUpdate.tar"));
+        RepeatedTar repeated = new RepeatedTar(tar, 3 * LogMessageSignatureValidator.CHUNK_SIZE / tar.getLogMessages().size());
+
+        ArrayList<LogMessage> sequential = failedMessages(new LogMessageSignatureValidator().validate(repeated));
+        assertFalse(sequential.isEmpty());
+
+        ArrayList<LogMessage> parallel = failedMessages(new LogMessageSignatureValidator(4).validate(repeated));
+        assertEquals(sequential.size(), parallel.size());
+        for (int i = 0; i < sequential.size(); i++) {
+            assertSame(sequential.get(i), parallel.get(i));
+        }
+    }
+
+    @Test
+    public void externalExecutorShouldNotBeShutDown() throws Exception {
+        LogMessageArchive tar = new LogMessageArchiveImplementation(new File("testdata" + File.separator + "positive" + File.separator + "6e6c6a42-5c8d-4a9c-9572-26c10619d020.tar"));
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            ValidationResult result = new LogMessageSignatureValidator(executor, 2).validate(tar);
+            assertEquals(0, result.getValidationErrors().size());
+            assertFalse(executor.isShutdown());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void externalExecutorShouldUseTheCache(@TempDir Path tmp) throws Exception {
+        LogMessageArchive tar = new LogMessageArchiveImplementation(new File("testdata" + File.separator + "positive" + File.separator + "6e6c6a42-5c8d-4a9c-9572-26c10619d020.tar"));
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        IntegrityKey key = new IntegrityKey(new byte[IntegrityKey.KEY_LENGTH]);
+        try (VerificationCache cache = VerificationCache.open(tmp.resolve("verification.cache").toFile(), key, false)) {
+            ValidationResult result = new LogMessageSignatureValidator(executor, 2, cache).validate(tar);
+            assertEquals(0, result.getValidationErrors().size());
+            assertEquals(tar.getLogMessages().size(), cache.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void invalidNumberOfThreadsShouldBeRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new LogMessageSignatureValidator(0));
+    }
+}
@@ -0,0 +1,103 @@
+package de.konfidas.ttc.validation;
+
+import de.konfidas.ttc.exceptions.ValidationException;
+import de.konfidas.ttc.messages.LogMessage;
+import de.konfidas.ttc.tars.SerialPartitionedArchive;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class PerSerialValidatorTest {
+
+    static LogMessage message(long signatureCounter, int serial) {
+        return new SignatureCounterValidatorMockedTest.LogMessageMock(BigInteger.valueOf(signatureCounter), new byte[]{(byte) serial});
+    }
+
+    /**
+     * Zwei TSEs, deren LogMessages im Archiv gemischt und unsortiert vorliegen. TSE 0x02 hat eine Lücke.
+     */
+    static ArrayList<LogMessage> createMessages() {
+        ArrayList<LogMessage> messages = new ArrayList<>();
+        messages.add(message(2, 0x02));
+        messages.add(message(2, 0x01));
+        messages.add(message(1, 0x02));
+        messages.add(message(1, 0x01));
+        messages.add(message(3, 0x01));
+        messages.add(message(5, 0x02));
+        return messages;
+    }
+
+    @Test
+    public void messagesShouldBeGroupedBySerialAndSorted() {
+        SerialPartitionedArchive partitioned = SerialPartitionedArchive.of(new AggregatedValidatorTest.CountingTar(createMessages()));
+
+        List<SerialPartitionedArchive.Partition> partitions = partitioned.getPartitions();
+        assertEquals(2, partitions.size());
+        assertEquals("01", partitions.get(0).getSerialNumberHex());
+        assertEquals("02", partitions.get(1).getSerialNumberHex());
+
+        List<LogMessage> sorted = partitions.get(1).getSortedLogMessages();
+        assertEquals(3, sorted.size());
+        assertEquals(BigInteger.ONE, sorted.get(0).getSignatureCounter());
+        assertEquals(BigInteger.TWO, sorted.get(1).getSignatureCounter());
+        assertEquals(BigInteger.valueOf(5), sorted.get(2).getSignatureCounter());
+
+        assertSame(partitions.get(0), partitioned.getPartition(new byte[]{0x01}));
+        assertNull(partitioned.getPartition(new byte[]{0x03}));
+    }
+
+    @Test
+    public void sequentialAndParallelValidationShouldAgree() {
+        List<ValidationException> sequential = new ArrayList<>(new PerSerialValidator(SignatureCounterValidator::new, 1)
+                .validate(new AggregatedValidatorTest.CountingTar(createMessages())).getValidationErrors());
+        List<ValidationException> parallel = new ArrayList<>(new PerSerialValidator(SignatureCounterValidator::new, 4)
+                .validate(new AggregatedValidatorTest.CountingTar(createMessages())).getValidationErrors());
+
+        assertEquals(1, sequential.size());
+        assertTrue(sequential.get(0) instanceof SignatureCounterValidator.SignatureCounterMissingException);
+        assertEquals(sequential.size(), parallel.size());
+        assertEquals(sequential.get(0).getClass(), parallel.get(0).getClass());
+    }
+
+    @Test
+    public void wrappedValidatorShouldBeReported() {
+        ValidationResult result = new PerSerialValidator(TimeStampValidator::new, 2)
+                .validate(new AggregatedValidatorTest.CountingTar(createMessages()));
+
+        assertEquals(1, result.getValidators().size());
+        assertEquals(TimeStampValidator.class, result.getValidators().iterator().next().getClass());
+    }
+
+    @Test
+    public void messagesWithoutSerialNumberShouldBeSkipped() {
+        ArrayList<LogMessage> messages = createMessages();
+        messages.add(new SignatureCounterValidatorMockedTest.LogMessageMock(BigInteger.TEN, null));
+
+        assertEquals(2, SerialPartitionedArchive.of(new AggregatedValidatorTest.CountingTar(messages)).getPartitions().size());
+        assertEquals(1, new PerSerialValidator(SignatureCounterValidator::new, 2)
+                .validate(new AggregatedValidatorTest.CountingTar(messages)).getValidationErrors().size());
+        assertEquals(1, new SignatureCounterValidator()
+                .validate(new AggregatedValidatorTest.CountingTar(messages)).getValidationErrors().size());
+    }
+
+    @Test
+    public void stateShouldBeKeptPerSerialAcrossArchives() {
+        PerSerialValidator validator = new PerSerialValidator(SignatureCounterValidator::new, 2);
+
+        ArrayList<LogMessage> first = new ArrayList<>();
+        first.add(message(1, 0x01));
+        first.add(message(7, 0x02));
+        ArrayList<LogMessage> second = new ArrayList<>();
+        second.add(message(8, 0x02));
+        second.add(message(2, 0x01));
+
+        assertEquals(0, validator.validate(new AggregatedValidatorTest.CountingTar(first)).getValidationErrors().size());
+        assertEquals(0, validator.validate(new AggregatedValidatorTest.CountingTar(second)).getValidationErrors().size());
+        assertEquals(2, validator.validators.size());
+    }
+}
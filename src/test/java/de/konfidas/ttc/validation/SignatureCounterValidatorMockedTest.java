@@ -14,8 +14,10 @@ import java.math.BigInteger;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class SignatureCounterValidatorMockedTest {
@@ -97,7 +99,7 @@ public class SignatureCounterValidatorMockedTest {
 
         @Override
         public String getFileName() {
-            return null;
+            return "Sig-" + signatureCounter + ".log";//NON-NLS
         }
 
         @Override
@@ -352,4 +354,83 @@ public class SignatureCounterValidatorMockedTest {
         assertTrue(validator.validate(tar).getValidationErrors().size() == 2);
     }
 
+
+    @Test
+    public void testUnsortedMessagesOk() {
+        SignatureCounterValidator validator = new SignatureCounterValidator(true);
+        ArrayList<LogMessage> messages = new ArrayList<LogMessage>();
+        messages.add(new LogMessageMock(BigInteger.valueOf(3), new byte[]{0x01}));
+        messages.add(new LogMessageMock(BigInteger.ONE, new byte[]{0x01}));
+        messages.add(new LogMessageMock(BigInteger.valueOf(4), new byte[]{0x01}));
+        messages.add(new LogMessageMock(BigInteger.TWO, new byte[]{0x01}));
+        LogMessageArchive tar = new TestTar(messages);
+        assertTrue(validator.validate(tar).getValidationErrors().isEmpty());
+    }
+
+    @Test
+    public void testUnsortedDuplicateAndMissingCounter() {
+        SignatureCounterValidator validator = new SignatureCounterValidator();
+        ArrayList<LogMessage> messages = new ArrayList<LogMessage>();
+        messages.add(new LogMessageMock(BigInteger.valueOf(5), new byte[]{0x01}));
+        messages.add(new LogMessageMock(BigInteger.ONE, new byte[]{0x01}));
+        messages.add(new LogMessageMock(BigInteger.valueOf(5), new byte[]{0x01}));
+        messages.add(new LogMessageMock(BigInteger.TWO, new byte[]{0x01}));
+        LogMessageArchive tar = new TestTar(messages);
+        List<ValidationException> errors = new ArrayList<>(validator.validate(tar).getValidationErrors());
+        assertEquals(2, errors.size());
+        assertTrue(errors.get(0) instanceof SignatureCounterValidator.SignatureCounterDuplicateException);
+        assertTrue(errors.get(1) instanceof SignatureCounterValidator.SignatureCounterMissingException);
+    }
+
+    @Test
+    public void testArchivesInReverseOrder() {
+        SignatureCounterValidator validator = new SignatureCounterValidator();
+        ArrayList<LogMessage> second = new ArrayList<LogMessage>();
+        second.add(new LogMessageMock(BigInteger.valueOf(3)));
+        second.add(new LogMessageMock(BigInteger.valueOf(4)));
+        ArrayList<LogMessage> first = new ArrayList<LogMessage>();
+        first.add(new LogMessageMock(BigInteger.ONE));
+        first.add(new LogMessageMock(BigInteger.TWO));
+
+        assertTrue(validator.validate(new TestTar(second)).getValidationErrors().isEmpty());
+        assertTrue(validator.validate(new TestTar(first)).getValidationErrors().isEmpty());
+    }
+
+    @Test
+    public void testGapShouldBeReportedOnce() {
+        SignatureCounterValidator validator = new SignatureCounterValidator();
+        ArrayList<LogMessage> first = new ArrayList<LogMessage>();
+        first.add(new LogMessageMock(BigInteger.ONE));
+        first.add(new LogMessageMock(BigInteger.valueOf(10)));
+        ArrayList<LogMessage> second = new ArrayList<LogMessage>();
+        second.add(new LogMessageMock(BigInteger.valueOf(5)));
+
+        assertEquals(1, validator.validate(new TestTar(first)).getValidationErrors().size());
+        assertTrue(validator.validate(new TestTar(second)).getValidationErrors().isEmpty());
+    }
+
+    @Test
+    public void testGapShouldNameTheFileOfAnEarlierArchive() {
+        SignatureCounterValidator validator = new SignatureCounterValidator();
+        ArrayList<LogMessage> first = new ArrayList<LogMessage>();
+        first.add(new LogMessageMock(BigInteger.valueOf(5)));
+        ArrayList<LogMessage> second = new ArrayList<LogMessage>();
+        second.add(new LogMessageMock(BigInteger.ONE));
+
+        assertTrue(validator.validate(new TestTar(first)).getValidationErrors().isEmpty());
+        List<ValidationException> errors = new ArrayList<>(validator.validate(new TestTar(second)).getValidationErrors());
+        assertEquals(1, errors.size());
+        assertEquals("Sig-5.log", ((SignatureCounterValidator.SignatureCounterMissingException) errors.get(0)).getFileName());
+    }
+
+    @Test
+    public void testNegativeCounter() {
+        SignatureCounterValidator validator = new SignatureCounterValidator();
+        ArrayList<LogMessage> messages = new ArrayList<LogMessage>();
+        messages.add(new LogMessageMock(BigInteger.valueOf(-1)));
+        LogMessageArchive tar = new TestTar(messages);
+        Collection<ValidationException> errors = validator.validate(tar).getValidationErrors();
+        assertEquals(1, errors.size());
+        assertTrue(errors.iterator().next() instanceof SignatureCounterValidator.SignatureCounterOutOfRangeException);
+    }
 }
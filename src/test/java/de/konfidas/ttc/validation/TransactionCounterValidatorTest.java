@@ -0,0 +1,129 @@
+package de.konfidas.ttc.validation;
+
+import de.konfidas.ttc.exceptions.ValidationException;
+import de.konfidas.ttc.messages.LogMessage;
+import de.konfidas.ttc.messages.TransactionLogMessage;
+import de.konfidas.ttc.tars.LogMessageArchive;
+import de.konfidas.ttc.tars.LogMessageArchiveImplementation;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TransactionCounterValidatorTest {
+    static long signatureCounter = 0;
+
+    static TransactionLogMessage transaction(String operationType, long transactionNumber, String client, int serial) {
+        TransactionLogMessage msg = mock(TransactionLogMessage.class);
+        long counter = ++signatureCounter;
+        when(msg.getOperationType()).thenReturn(operationType);
+        when(msg.getTransactionNumber()).thenReturn(BigInteger.valueOf(transactionNumber));
+        when(msg.getClientID()).thenReturn(client);
+        when(msg.getSignatureCounter()).thenReturn(BigInteger.valueOf(counter));
+        when(msg.getSerialNumber()).thenReturn(new byte[]{(byte) serial});
+        when(msg.getFileName()).thenReturn(operationType + "_" + transactionNumber + "_Sig-" + counter);//NON-NLS
+        return msg;
+    }
+
+    static TransactionLogMessage start(long transactionNumber) {
+        return transaction(TransactionCounterValidator.START_TRANSACTION, transactionNumber, "kasse1", 1);//NON-NLS
+    }
+
+    static TransactionLogMessage update(long transactionNumber) {
+        return transaction(TransactionCounterValidator.UPDATE_TRANSACTION, transactionNumber, "kasse1", 1);//NON-NLS
+    }
+
+    static TransactionLogMessage finish(long transactionNumber) {
+        return transaction(TransactionCounterValidator.FINISH_TRANSACTION, transactionNumber, "kasse1", 1);//NON-NLS
+    }
+
+    static List<ValidationException> validate(TransactionCounterValidator validator, LogMessage... messages) {
+        ArrayList<LogMessage> list = new ArrayList<>();
+        Collections.addAll(list, messages);
+        return new ArrayList<>(validator.validate(new AggregatedValidatorTest.CountingTar(list)).getValidationErrors());
+    }
+
+    @Test
+    public void completeTransactionsShouldBeValid() {
+        List<ValidationException> errors = validate(new TransactionCounterValidator(true),
+                start(1), update(1), start(2), update(1), finish(1), update(2), finish(2));
+        assertTrue(errors.isEmpty(), errors.toString());
+    }
+
+    @Test
+    public void wrongStateTransitionsShouldBeReported() {
+        List<ValidationException> errors = validate(new TransactionCounterValidator(),
+                start(5), finish(5), update(5), finish(5), start(5), start(7),
+                transaction(TransactionCounterValidator.FINISH_TRANSACTION, 7, "kasse2", 1));//NON-NLS
+
+        assertEquals(5, errors.size(), errors.toString());
+        assertTrue(errors.get(0) instanceof TransactionCounterValidator.TransactionNotOpenException);
+        assertTrue(errors.get(1) instanceof TransactionCounterValidator.TransactionNotOpenException);
+        assertTrue(errors.get(2) instanceof TransactionCounterValidator.DuplicateTransactionCounterFoundException);
+        assertTrue(errors.get(3) instanceof TransactionCounterValidator.WrongTransactionCounterException);
+        assertEquals(6, ((TransactionCounterValidator.WrongTransactionCounterException) errors.get(3)).expectedTransactionCounter);
+        assertTrue(errors.get(4) instanceof TransactionCounterValidator.TransactionClientMismatchException);
+    }
+
+    @Test
+    public void transactionsStartedBeforeTheExportShouldBeIgnored() {
+        assertTrue(validate(new TransactionCounterValidator(), update(3), finish(3), start(4), finish(4)).isEmpty());
+
+        List<ValidationException> errors = validate(new TransactionCounterValidator(true), update(3), start(4), finish(4));
+        assertEquals(2, errors.size());
+        assertTrue(errors.get(0) instanceof TransactionCounterValidator.TransactionNotOpenException);
+        assertTrue(errors.get(1) instanceof TransactionCounterValidator.WrongTransactionCounterException);
+    }
+
+    @Test
+    public void openTransactionsShouldBeReportedOnceAtTheEndOfAnArchive() {
+        TransactionCounterValidator validator = new TransactionCounterValidator();
+        List<ValidationException> errors = validate(validator, start(1), start(2), start(3), finish(2),
+                transaction(TransactionCounterValidator.START_TRANSACTION, 1, "kasse1", 2));//NON-NLS
+
+        assertEquals(3, errors.size());
+        assertEquals(1, ((TransactionCounterValidator.TransactionNotFinishedException) errors.get(0)).getTransactionNumber());
+        assertEquals(3, ((TransactionCounterValidator.TransactionNotFinishedException) errors.get(1)).getTransactionNumber());
+        assertEquals(1, ((TransactionCounterValidator.TransactionNotFinishedException) errors.get(2)).getTransactionNumber());
+
+        // Ein folgendes Archiv darf die offenen Transaktionen beenden, sie werden nicht erneut gemeldet.
+        assertTrue(validate(validator, finish(1), start(4), update(3), finish(3), finish(4)).isEmpty());
+    }
+
+    @Test
+    public void messagesWithoutSerialNumberShouldBeSkipped() throws Exception {
+        TransactionLogMessage withoutSerial = start(1);
+        when(withoutSerial.getSerialNumber()).thenReturn(null);
+        assertTrue(validate(new TransactionCounterValidator(true), withoutSerial, start(1), finish(1)).isEmpty());
+
+        LogMessageArchive multiExport = new LogMessageArchiveImplementation(new File("testdata" + File.separator + "positive" + File.separator + "multiExport.tar"));//NON-NLS
+        assertNotNull(new TransactionCounterValidator().validate(multiExport));
+    }
+
+    @Test
+    public void manyOpenTransactionsShouldBeTracked() {
+        TransactionCounterValidator validator = new TransactionCounterValidator(true);
+        ArrayList<LogMessage> messages = new ArrayList<>();
+        for (long i = 1; i <= 1000; i++) {
+            messages.add(start(i));
+        }
+        // Beendet in einer anderen Reihenfolge, damit Einträge aus der Mitte der Ketten entfernt werden.
+        for (long i = 1000; i >= 1; i -= 2) {
+            messages.add(finish(i));
+        }
+        for (long i = 1; i <= 999; i += 2) {
+            messages.add(update(i));
+            messages.add(finish(i));
+        }
+        assertTrue(validate(validator, messages.toArray(new LogMessage[0])).isEmpty());
+        assertEquals(0, validator.serialStates.values().iterator().next().open.size);
+        assertEquals(1, validator.serialStates.values().iterator().next().started.getRangeCount());
+    }
+}
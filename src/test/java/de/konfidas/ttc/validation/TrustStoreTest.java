@@ -0,0 +1,117 @@
+package de.konfidas.ttc.validation;
+
+import de.konfidas.ttc.exceptions.CertificateLoadException;
+import de.konfidas.ttc.setup.TestCaseBasisWithCA;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.security.Security;
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TrustStoreTest extends TestCaseBasisWithCA {
+
+    @BeforeEach
+    public void initialize() {
+        Security.addProvider(new BouncyCastleProvider());
+    }
+
+    static void assertRootAndSubCA(TrustStore store) {
+        assertEquals(1, store.getTrustAnchors().size());
+        TrustAnchor anchor = store.getTrustAnchors().iterator().next();
+        assertEquals(getRootCACertificate(), anchor.getTrustedCert());
+        assertEquals(Collections.singleton(getSubCACertificate()), new HashSet<>(store.getIntermediateCertificates()));
+    }
+
+    @Test
+    public void directoryShouldBeLoaded(@TempDir Path tmp) throws Exception {
+        Files.write(tmp.resolve("root.cer"), getRootCACertificate().getEncoded());
+        Files.write(tmp.resolve("subca.der"), getSubCACertificate().getEncoded());
+        Files.write(tmp.resolve("readme.txt"), "kein Zertifikat".getBytes());
+
+        TrustStore store = TrustStore.load(tmp.toFile(), null);
+        assertRootAndSubCA(store);
+        assertEquals(Collections.singletonList(getSubCACertificate()), store.buildPath(getClientCertificate(), null));
+    }
+
+    @Test
+    public void selfIssuedCertificatesShouldOnlyBeAnchorsIfSelfSigned() throws Exception {
+        // Ein Link-Zertifikat beim Schlüsselwechsel der Root-CA: Subject und Issuer sind gleich, es ist aber mit dem
+        // Schlüssel der Root-CA und nicht mit dem eigenen signiert.
+        X500Name name = X500Name.getInstance(getRootCACertificate().getSubjectX500Principal().getEncoded());
+        Date now = new Date();
+        X509CertificateHolder holder = new JcaX509v3CertificateBuilder(name, BigInteger.valueOf(4711), now, new Date(now.getTime() + 86_400_000L), name, getSubCAKeyPair().getPublic())
+                .build(new JcaContentSignerBuilder("SHA256withECDSA").setProvider(BouncyCastleProvider.PROVIDER_NAME).build(getRootCAKeyPair().getPrivate()));//NON-NLS
+        X509Certificate link = new JcaX509CertificateConverter().setProvider(BouncyCastleProvider.PROVIDER_NAME).getCertificate(holder);
+
+        TrustStore store = new TrustStore();
+        store.add(getRootCACertificate());
+        store.add(link);
+        assertEquals(1, store.getTrustAnchors().size());
+        assertEquals(getRootCACertificate(), store.getTrustAnchors().iterator().next().getTrustedCert());
+        assertEquals(Collections.singleton(link), new HashSet<>(store.getIntermediateCertificates()));
+    }
+
+    @Test
+    public void keyStoreShouldBeLoaded(@TempDir Path tmp) throws Exception {
+        char[] password = "geheim".toCharArray();
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        keyStore.load(null, null);
+        keyStore.setCertificateEntry("root", getRootCACertificate());
+        keyStore.setCertificateEntry("subca", getSubCACertificate());
+        File file = tmp.resolve("trust.p12").toFile();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            keyStore.store(out, password);
+        }
+
+        assertRootAndSubCA(TrustStore.load(file, password));
+    }
+
+    @Test
+    public void pathShouldBeBuiltFromArchiveIntermediates() {
+        TrustStore store = TrustStore.of(Collections.singleton(getRootCACertificate()));
+        TrustStore.CertificateIndex archive = new TrustStore.CertificateIndex(List.of(getClientCertificate(), getSubCACertificate()));
+
+        assertNull(store.buildPath(getClientCertificate(), null));
+        List<X509Certificate> path = store.buildPath(getClientCertificate(), archive);
+        assertEquals(Collections.singletonList(getSubCACertificate()), path);
+    }
+
+    @Test
+    public void pathShouldBeValidatedWithIntermediatesFromTrustStore() throws Exception {
+        TrustStore store = new TrustStore();
+        store.add(getRootCACertificate());
+        store.add(getSubCACertificate());
+
+        CertPathValidationCacheTest.CertificateTar tar = new CertPathValidationCacheTest.CertificateTar();
+        tar.intermediateCertificates.clear();
+        assertEquals(0, new CertificateValidator(store).setEnableRevocationChecking(false).validate(tar).getValidationErrors().size());
+        assertEquals(1, new CertificateValidator(Collections.singleton(getRootCACertificate())).setEnableRevocationChecking(false).validate(tar).getValidationErrors().size());
+    }
+
+    @Test
+    public void unreadableFileShouldBeRejected(@TempDir Path tmp) throws Exception {
+        Path file = tmp.resolve("broken.cer");
+        Files.write(file, new byte[]{1, 2, 3});
+        assertThrows(CertificateLoadException.class, () -> TrustStore.load(file.toFile(), null));
+    }
+}
@@ -0,0 +1,170 @@
+package de.konfidas.ttc.validation;
+
+import de.konfidas.ttc.messages.LogMessage;
+import de.konfidas.ttc.tars.StreamingLogMessageArchive;
+import de.konfidas.ttc.utilities.IntegrityKey;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+
+public class ValidationProgressTest {
+    final static File softwareUpdate = new File("testdata" + File.separator + "positive" + File.separator + "softwareUpdate.tar");
+
+    final static IntegrityKey KEY = new IntegrityKey(new byte[IntegrityKey.KEY_LENGTH]);
+
+    @TempDir
+    File directory;
+
+    @BeforeEach
+    public void initialize() {
+        Security.addProvider(new BouncyCastleProvider());
+    }
+
+    static List<String> failedFileNames(ValidationResult result) {
+        ArrayList<String> names = new ArrayList<>();
+        for (LogMessage msg : LogMessageSignatureValidatorTest.failedMessages(result)) {
+            names.add(msg.getFileName());
+        }
+        return names;
+    }
+
+    /**
+     * Vermerkt den Fortschritt so, als wäre ein Lauf nach den ersten {@code count} LogMessages abgebrochen.
+     */
+    static void interruptAfter(File directory, StreamingLogMessageArchive tar, int count, List<String> allFailures) throws Exception {
+        ArrayList<LogMessage> messages = new ArrayList<>(tar.getLogMessages());
+        ArrayList<String> failures = new ArrayList<>();
+        for (LogMessage msg : messages.subList(0, count)) {
+            if (allFailures.contains(msg.getFileName())) {
+                failures.add(msg.getFileName());
+            }
+        }
+        String last = messages.get(count - 1).getFileName();
+        ValidationProgress progress = ValidationProgress.open(directory, tar, KEY, false, Integer.MAX_VALUE);
+        progress.advance(last, tar.getOffset(last), count, failures);
+        progress.save();
+    }
+
+    @Test
+    public void progressShouldBeSavedAndLoaded() throws Exception {
+        StreamingLogMessageArchive tar = new StreamingLogMessageArchive(softwareUpdate);
+        ValidationProgress progress = ValidationProgress.open(directory, tar, KEY, true, 2);
+        assertFalse(progress.isResumed());
+
+        progress.advance("a", 10, 1, Collections.emptyList());//NON-NLS
+        assertFalse(progress.getFile().exists());
+        progress.advance("b", 20, 1, Collections.singletonList("b"));//NON-NLS
+        assertTrue(progress.getFile().isFile());
+
+        ValidationProgress loaded = ValidationProgress.open(directory, tar, KEY, true, 2);
+        assertTrue(loaded.isResumed());
+        assertEquals("b", loaded.getLastFileName());//NON-NLS
+        assertEquals(20, loaded.getLastOffset());
+        assertEquals(2, loaded.getProcessed());
+        assertEquals(Collections.singletonList("b"), loaded.getFailedFileNames());//NON-NLS
+
+        assertFalse(ValidationProgress.open(directory, tar, KEY, false, 2).isResumed());
+        loaded.delete();
+        assertFalse(loaded.getFile().exists());
+    }
+
+    @Test
+    public void resumedValidationShouldReportTheSameErrors() throws Exception {
+        StreamingLogMessageArchive tar = new StreamingLogMessageArchive(softwareUpdate);
+        List<String> expected = failedFileNames(new LogMessageSignatureValidator().validate(tar));
+        assertFalse(expected.isEmpty());
+
+        for (int threads : new int[]{1, 2}) {
+            interruptAfter(directory, tar, 12, expected);
+            LogMessageSignatureValidator validator = new LogMessageSignatureValidator(threads).setProgress(directory, KEY, true);
+            assertEquals(expected, failedFileNames(validator.validate(tar)));
+
+            ValidationProgress progress = ValidationProgress.open(directory, tar, KEY, true, 1);
+            assertEquals(tar.getLogMessages().size(), progress.getProcessed());
+            assertEquals(expected, progress.getFailedFileNames());
+
+            validator.discardProgress();
+            assertFalse(progress.getFile().exists());
+        }
+    }
+
+    @Test
+    public void concurrentAggregatedValidatorShouldRecordProgress() throws Exception {
+        StreamingLogMessageArchive tar = new StreamingLogMessageArchive(softwareUpdate, 16, 2);
+        List<String> expected = failedFileNames(new LogMessageSignatureValidator().validate(tar));
+
+        interruptAfter(directory, tar, 12, expected);
+        LogMessageSignatureValidator validator = new LogMessageSignatureValidator(2).setProgress(directory, KEY, true);
+        ConcurrentAggregatedValidator aggregated = new ConcurrentAggregatedValidator(2);
+        aggregated.add(validator);
+        assertEquals(expected, failedFileNames(aggregated.validate(tar)));
+
+        ValidationProgress progress = ValidationProgress.open(directory, tar, KEY, true, 1);
+        assertTrue(progress.isResumed());
+        assertEquals(tar.getLogMessages().size(), progress.getProcessed());
+        assertEquals(expected, progress.getFailedFileNames());
+        tar.close();
+    }
+
+    @Test
+    public void forgedProgressShouldBeIgnored() throws Exception {
+        StreamingLogMessageArchive tar = new StreamingLogMessageArchive(softwareUpdate);
+        List<String> expected = failedFileNames(new LogMessageSignatureValidator().validate(tar));
+        String last = new ArrayList<>(tar.getLogMessages()).get(tar.getLogMessages().size() - 1).getFileName();
+
+        // Ein mit einem anderen Schlüssel geschriebener Fortschritt würde alle LogMessages überspringen.
+        byte[] otherKey = new byte[IntegrityKey.KEY_LENGTH];
+        otherKey[0] = 1;
+        ValidationProgress forged = ValidationProgress.open(directory, tar, new IntegrityKey(otherKey), false, 1);
+        forged.advance(last, tar.getOffset(last), tar.getLogMessages().size(), Collections.emptyList());
+        assertFalse(ValidationProgress.open(directory, tar, KEY, true, 1).isResumed());
+        assertEquals(expected, failedFileNames(new LogMessageSignatureValidator().setProgress(directory, KEY, true).validate(tar)));
+
+        ValidationProgress saved = ValidationProgress.open(directory, tar, KEY, false, 1);
+        saved.advance(last, tar.getOffset(last), tar.getLogMessages().size(), Collections.emptyList());
+        assertTrue(ValidationProgress.open(directory, tar, KEY, true, 1).isResumed());
+        try (RandomAccessFile file = new RandomAccessFile(saved.getFile(), "rw")) {//NON-NLS
+            file.seek(12);
+            int value = file.read();
+            file.seek(12);
+            file.write(value ^ 1);
+        }
+        assertFalse(ValidationProgress.open(directory, tar, KEY, true, 1).isResumed());
+    }
+
+    @Test
+    public void messagesAfterEntryShouldBeStreamed() throws Exception {
+        StreamingLogMessageArchive tar = new StreamingLogMessageArchive(softwareUpdate, 3);
+        ArrayList<LogMessage> all = new ArrayList<>(tar.getLogMessages());
+        ArrayList<LogMessage> tail = new ArrayList<>(tar.getLogMessagesAfter(all.get(9).getFileName()));
+
+        assertEquals(all.subList(10, all.size()), tail);
+        assertEquals(all.get(3), tar.getLogMessage(all.get(3).getFileName()));
+        assertNull(tar.getLogMessage("unknown"));//NON-NLS
+        assertEquals(-1, tar.getOffset("unknown"));//NON-NLS
+        assertThrows(IllegalArgumentException.class, () -> tar.getLogMessagesAfter("unknown"));//NON-NLS
+    }
+
+    @Test
+    public void progressOfChangedArchiveShouldBeIgnored() throws Exception {
+        StreamingLogMessageArchive tar = new StreamingLogMessageArchive(softwareUpdate);
+        List<String> expected = failedFileNames(new LogMessageSignatureValidator().validate(tar));
+        String last = new ArrayList<>(tar.getLogMessages()).get(5).getFileName();
+
+        ValidationProgress progress = ValidationProgress.open(directory, tar, KEY, false, 1);
+        progress.advance(last, tar.getOffset(last) + 512, 6, Collections.emptyList());
+
+        assertEquals(expected, failedFileNames(new LogMessageSignatureValidator().setProgress(directory, KEY, true).validate(tar)));
+    }
+}